@@ -0,0 +1,55 @@
+package com.example.spring_boot.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "app.carts")
+public class CartProperties {
+
+    // Giỏ của khách chưa đăng nhập không đổi trong khoảng này thì bị xóa (TTL index trên updated_at)
+    private Duration anonymousTtl = Duration.ofDays(30);
+
+    // Giỏ trống (mọi loại) không đổi trong khoảng này thì bị job dọn giỏ xóa
+    private Duration emptyCartTtl = Duration.ofDays(1);
+
+    // Chu kỳ chạy job dọn giỏ
+    private Duration compactionInterval = Duration.ofHours(1);
+
+    // Số giỏ xóa trong một lượt (mỗi lượt: một deleteMany + một lượt trả tồn)
+    private int compactionBatchSize = 500;
+
+    public Duration getAnonymousTtl() {
+        return anonymousTtl;
+    }
+
+    public void setAnonymousTtl(Duration anonymousTtl) {
+        this.anonymousTtl = anonymousTtl;
+    }
+
+    public Duration getEmptyCartTtl() {
+        return emptyCartTtl;
+    }
+
+    public void setEmptyCartTtl(Duration emptyCartTtl) {
+        this.emptyCartTtl = emptyCartTtl;
+    }
+
+    public Duration getCompactionInterval() {
+        return compactionInterval;
+    }
+
+    public void setCompactionInterval(Duration compactionInterval) {
+        this.compactionInterval = compactionInterval;
+    }
+
+    public int getCompactionBatchSize() {
+        return compactionBatchSize;
+    }
+
+    public void setCompactionBatchSize(int compactionBatchSize) {
+        this.compactionBatchSize = compactionBatchSize;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.spring_boot.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "app.catalog-snapshot")
+public class CatalogSnapshotProperties {
+
+    // Tắt thì không ghi / nạp file snapshot (đọc catalog chỉ đi Mongo như trước)
+    private boolean enabled = true;
+
+    // File snapshot (ghi ra file tạm rồi đổi tên để không bao giờ đọc phải file ghi dở)
+    private String path = "data/catalog.snapshot";
+
+    // Chu kỳ ghi lại snapshot từ Mongo
+    private Duration interval = Duration.ofMinutes(15);
+
+    // Số product mới nhất nạp sẵn vào ProductCache khi khởi động (cache giới hạn theo dung lượng)
+    private int warmProducts = 5_000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    public void setInterval(Duration interval) {
+        this.interval = interval;
+    }
+
+    public int getWarmProducts() {
+        return warmProducts;
+    }
+
+    public void setWarmProducts(int warmProducts) {
+        this.warmProducts = warmProducts;
+    }
+}
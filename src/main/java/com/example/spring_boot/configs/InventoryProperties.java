@@ -0,0 +1,66 @@
+package com.example.spring_boot.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "app.inventory")
+public class InventoryProperties {
+
+    // Thời gian giữ tồn cho sản phẩm trong giỏ (gia hạn mỗi lần thêm / tăng số lượng)
+    private Duration reservationTtl = Duration.ofMinutes(15);
+
+    // Thời gian giữ tồn sau khi tạo đơn, chờ thanh toán
+    private Duration checkoutHold = Duration.ofMinutes(30);
+
+    // Chu kỳ trả tồn của reservation hết hạn
+    private Duration sweepInterval = Duration.ofMinutes(1);
+
+    // Số reservation hết hạn xử lý tối đa mỗi lượt sweep
+    private int sweepBatchSize = 1_000;
+
+    // Thời gian giữ lại reservation đã đóng (CONVERTED / RELEASED / MERGED) trước khi TTL index xóa
+    private Duration closedRetention = Duration.ofDays(7);
+
+    public Duration getReservationTtl() {
+        return reservationTtl;
+    }
+
+    public void setReservationTtl(Duration reservationTtl) {
+        this.reservationTtl = reservationTtl;
+    }
+
+    public Duration getCheckoutHold() {
+        return checkoutHold;
+    }
+
+    public void setCheckoutHold(Duration checkoutHold) {
+        this.checkoutHold = checkoutHold;
+    }
+
+    public Duration getSweepInterval() {
+        return sweepInterval;
+    }
+
+    public void setSweepInterval(Duration sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    public int getSweepBatchSize() {
+        return sweepBatchSize;
+    }
+
+    public void setSweepBatchSize(int sweepBatchSize) {
+        this.sweepBatchSize = sweepBatchSize;
+    }
+
+    public Duration getClosedRetention() {
+        return closedRetention;
+    }
+
+    public void setClosedRetention(Duration closedRetention) {
+        this.closedRetention = closedRetention;
+    }
+}
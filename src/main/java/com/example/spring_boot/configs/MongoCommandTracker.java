@@ -0,0 +1,276 @@
+package com.example.spring_boot.configs;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.BsonBinaryWriter;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Đếm lệnh Mongo theo request: số lệnh, tổng thời gian, số bytes (lệnh gửi + phản hồi).
+ * - Driver sync gọi listener trên chính thread thực thi lệnh nên request hiện tại giữ trong ThreadLocal
+ * - Task chạy trên thread pool (ví dụ ProductDetailAssembler) được bọc bằng propagate() để tính vào request gọi
+ * - Phát hiện N+1: cùng "hình dạng" query (lệnh + collection + tập key của filter) lặp lại nhiều lần trong 1 request
+ * - Thống kê theo endpoint xem qua /actuator/mongoqueries, metrics qua /actuator/metrics/mongo.request.*
+ */
+@Component
+@Slf4j
+public class MongoCommandTracker implements CommandListener {
+
+    private static final String NO_REQUEST = "(background)"; // Lệnh ngoài HTTP request: startup, job nền
+
+    private final MongoQueryTrackingProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final ThreadLocal<RequestContext> current = new ThreadLocal<>();
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    public MongoCommandTracker(MongoQueryTrackingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /** Thống kê lũy kế của một endpoint */
+    public static final class EndpointStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder commands = new LongAdder();
+        final LongAdder timeNanos = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder nPlusOneRequests = new LongAdder();
+        final LongAdder overBudgetRequests = new LongAdder();
+        final AtomicLong maxCommandsPerRequest = new AtomicLong();
+        final Map<String, LongAdder> repeatedShapes = new ConcurrentHashMap<>(); // shape -> số request bị N+1
+
+        Map<String, Object> toMap() {
+            long requestCount = requests.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("requests", requestCount);
+            map.put("commands", commands.sum());
+            map.put("avgCommandsPerRequest", requestCount == 0 ? 0 : (double) commands.sum() / requestCount);
+            map.put("maxCommandsPerRequest", maxCommandsPerRequest.get());
+            map.put("totalTimeMs", timeNanos.sum() / 1_000_000.0);
+            map.put("totalBytes", bytes.sum());
+            map.put("nPlusOneRequests", nPlusOneRequests.sum());
+            map.put("overBudgetRequests", overBudgetRequests.sum());
+            Map<String, Long> shapes = new LinkedHashMap<>();
+            repeatedShapes.forEach((shape, count) -> shapes.put(shape, count.sum()));
+            map.put("repeatedShapes", shapes);
+            return map;
+        }
+    }
+
+    /** Trạng thái đếm của một request (có thể được nhiều thread cập nhật: khóa trên chính object) */
+    private static final class RequestContext {
+        int commands;
+        long timeNanos;
+        long bytes;
+        final Map<String, Integer> shapeCounts = new HashMap<>();
+        final Map<Integer, Long> pendingBytes = new HashMap<>(); // requestId -> bytes lệnh gửi đi
+    }
+
+    /** Bắt đầu đếm cho request trên thread hiện tại. */
+    public void beginRequest() {
+        if (!properties.isEnabled()) return;
+        current.set(new RequestContext());
+    }
+
+    /**
+     * Bọc task sẽ chạy trên thread khác: gắn request của thread gọi vào worker trong lúc chạy task,
+     * xong thì trả lại trạng thái cũ của worker. Không có request hiện tại -> trả nguyên task.
+     */
+    public <T> Supplier<T> propagate(Supplier<T> task) {
+        RequestContext context = current.get();
+        if (context == null) return task;
+        return () -> {
+            RequestContext previous = current.get(); // CallerRuns: chính thread request
+            current.set(context);
+            try {
+                return task.get();
+            } finally {
+                if (previous != null) current.set(previous);
+                else current.remove();
+            }
+        };
+    }
+
+    /** Kết thúc request: cộng dồn vào thống kê endpoint, kiểm tra N+1 và ngân sách. */
+    public void endRequest(String endpoint) {
+        RequestContext context = current.get();
+        current.remove();
+        if (context == null) return;
+        synchronized (context) {
+            record(endpoint, context);
+        }
+    }
+
+    private void record(String endpoint, RequestContext context) {
+
+        EndpointStats stats = endpoints.computeIfAbsent(endpoint, k -> new EndpointStats());
+        stats.requests.increment();
+        stats.commands.add(context.commands);
+        stats.timeNanos.add(context.timeNanos);
+        stats.bytes.add(context.bytes);
+        stats.maxCommandsPerRequest.accumulateAndGet(context.commands, Math::max);
+
+        DistributionSummary.builder("mongo.request.commands").tag("endpoint", endpoint)
+                .description("Số lệnh Mongo mỗi HTTP request").register(meterRegistry).record(context.commands);
+        DistributionSummary.builder("mongo.request.bytes").tag("endpoint", endpoint).baseUnit("bytes")
+                .description("Bytes Mongo (gửi + nhận) mỗi HTTP request").register(meterRegistry).record(context.bytes);
+        Timer.builder("mongo.request.time").tag("endpoint", endpoint)
+                .description("Tổng thời gian lệnh Mongo mỗi HTTP request").register(meterRegistry)
+                .record(context.timeNanos, TimeUnit.NANOSECONDS);
+
+        boolean nPlusOne = false;
+        for (Map.Entry<String, Integer> e : context.shapeCounts.entrySet()) {
+            if (e.getValue() >= properties.getRepeatedShapeThreshold()) {
+                nPlusOne = true;
+                stats.repeatedShapes.computeIfAbsent(e.getKey(), k -> new LongAdder()).increment();
+                log.warn("⚠️ [MONGO] Possible N+1 on {}: shape {} executed {} times in one request",
+                        endpoint, e.getKey(), e.getValue());
+            }
+        }
+        if (nPlusOne) {
+            stats.nPlusOneRequests.increment();
+            Counter.builder("mongo.n_plus_one.detected").tag("endpoint", endpoint).register(meterRegistry).increment();
+        }
+        if (context.commands > properties.getCommandBudget()) {
+            stats.overBudgetRequests.increment();
+            Counter.builder("mongo.query_budget.exceeded").tag("endpoint", endpoint).register(meterRegistry).increment();
+            log.warn("⚠️ [MONGO] {} issued {} Mongo commands (budget {})",
+                    endpoint, context.commands, properties.getCommandBudget());
+        }
+    }
+
+    /** Thống kê theo endpoint (cho actuator endpoint mongoqueries). */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", properties.isEnabled());
+        result.put("commandBudget", properties.getCommandBudget());
+        result.put("repeatedShapeThreshold", properties.getRepeatedShapeThreshold());
+        Map<String, Object> byEndpoint = new java.util.TreeMap<>();
+        endpoints.forEach((endpoint, stats) -> byEndpoint.put(endpoint, stats.toMap()));
+        result.put("endpoints", byEndpoint);
+        return result;
+    }
+
+    /** Xóa thống kê lũy kế. */
+    public void reset() {
+        endpoints.clear();
+    }
+
+    // =====================================================
+    // CommandListener
+    // =====================================================
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (!properties.isEnabled()) return;
+        RequestContext context = current.get();
+        if (context == null) {
+            endpoints.computeIfAbsent(NO_REQUEST, k -> new EndpointStats()).commands.increment();
+            return;
+        }
+        String shape = shapeOf(event.getCommandName(), event.getCommand());
+        long size = sizeOf(event.getCommand());
+        synchronized (context) {
+            context.commands++;
+            context.shapeCounts.merge(shape, 1, Integer::sum);
+            context.pendingBytes.put(event.getRequestId(), size);
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        RequestContext context = current.get();
+        if (context == null) return;
+        long received = sizeOf(event.getResponse());
+        synchronized (context) {
+            Long sent = context.pendingBytes.remove(event.getRequestId());
+            context.timeNanos += event.getElapsedTime(TimeUnit.NANOSECONDS);
+            context.bytes += (sent != null ? sent : 0) + received;
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        RequestContext context = current.get();
+        if (context == null) return;
+        synchronized (context) {
+            Long sent = context.pendingBytes.remove(event.getRequestId());
+            context.timeNanos += event.getElapsedTime(TimeUnit.NANOSECONDS);
+            context.bytes += sent != null ? sent : 0;
+        }
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    /** "find products {categoryId,deletedAt}" - giá trị bị bỏ, chỉ giữ cấu trúc key */
+    private static String shapeOf(String commandName, BsonDocument command) {
+        BsonValue target = command.get(commandName);
+        String collection = target != null && target.isString() ? target.asString().getValue() : "";
+        BsonValue filter = command.get("filter");
+        if (filter == null && command.containsKey("pipeline")) {
+            BsonArray pipeline = command.getArray("pipeline");
+            filter = pipeline.isEmpty() ? null : pipeline.get(0);
+        }
+        if (filter == null && command.containsKey("query")) {
+            filter = command.get("query"); // count / distinct
+        }
+        return commandName + " " + collection + " " + (filter != null ? keysOf(filter) : "{}");
+    }
+
+    private static String keysOf(BsonValue value) {
+        if (value.isDocument()) {
+            TreeSet<String> parts = new TreeSet<>();
+            for (Map.Entry<String, BsonValue> e : value.asDocument().entrySet()) {
+                BsonValue child = e.getValue();
+                parts.add(child.isDocument() || child.isArray() ? e.getKey() + ":" + keysOf(child) : e.getKey());
+            }
+            return "{" + String.join(",", parts) + "}";
+        }
+        if (value.isArray()) {
+            // $in [..] / $or [..]: chỉ lấy hình dạng phần tử đầu, không phụ thuộc số phần tử
+            BsonArray array = value.asArray();
+            return array.isEmpty() || !(array.get(0).isDocument() || array.get(0).isArray())
+                    ? "[]" : "[" + keysOf(array.get(0)) + "]";
+        }
+        return "?";
+    }
+
+    private static long sizeOf(BsonDocument document) {
+        if (document == null) return 0;
+        if (document instanceof RawBsonDocument raw) {
+            return raw.getByteBuffer().remaining();
+        }
+        try (BasicOutputBuffer buffer = new BasicOutputBuffer();
+             BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            new BsonDocumentCodec().encode(writer, document, EncoderContext.builder().build());
+            return buffer.getPosition();
+        }
+    }
+}
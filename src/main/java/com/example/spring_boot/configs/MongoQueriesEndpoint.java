@@ -0,0 +1,33 @@
+package com.example.spring_boot.configs;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint: GET /actuator/mongoqueries - số lệnh / thời gian / bytes Mongo theo endpoint,
+ * các request vượt ngân sách và các query nghi N+1. DELETE để reset thống kê.
+ */
+@Component
+@Endpoint(id = "mongoqueries")
+public class MongoQueriesEndpoint {
+
+    private final MongoCommandTracker tracker;
+
+    public MongoQueriesEndpoint(MongoCommandTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @ReadOperation
+    public Map<String, Object> queries() {
+        return tracker.snapshot();
+    }
+
+    @DeleteOperation
+    public void reset() {
+        tracker.reset();
+    }
+}
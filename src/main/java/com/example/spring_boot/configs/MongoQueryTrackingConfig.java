@@ -0,0 +1,55 @@
+package com.example.spring_boot.configs;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Gắn MongoCommandTracker vào MongoClient và mở/đóng ngữ cảnh đếm cho mỗi HTTP request
+ */
+@Configuration
+public class MongoQueryTrackingConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoCommandTrackingCustomizer(MongoCommandTracker tracker) {
+        return builder -> builder.addCommandListener(tracker);
+    }
+
+    @Bean
+    public OncePerRequestFilter mongoCommandTrackingFilter(MongoCommandTracker tracker) {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                    FilterChain filterChain) throws ServletException, IOException {
+                tracker.beginRequest();
+                try {
+                    filterChain.doFilter(request, response);
+                } finally {
+                    tracker.endRequest(endpointOf(request));
+                }
+            }
+
+            @Override
+            protected boolean shouldNotFilter(HttpServletRequest request) {
+                String uri = request.getRequestURI();
+                // File tĩnh không chạm Mongo, bỏ qua để bảng thống kê gọn
+                return uri.startsWith("/css/") || uri.startsWith("/js/") || uri.startsWith("/ckeditor/")
+                        || uri.startsWith("/uploads/") || uri.startsWith("/actuator/");
+            }
+        };
+    }
+
+    /** "GET /api/products/{id}" - dùng pattern của handler để gom các id khác nhau về một endpoint */
+    private static String endpointOf(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : "(unmapped)");
+    }
+}
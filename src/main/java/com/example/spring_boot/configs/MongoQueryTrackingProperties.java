@@ -0,0 +1,42 @@
+package com.example.spring_boot.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "app.mongo.query-tracking")
+public class MongoQueryTrackingProperties {
+
+    // Bật/tắt đếm lệnh Mongo theo request (CommandListener)
+    private boolean enabled = true;
+
+    // Số lần lặp cùng một "hình dạng" query trong 1 request thì coi là N+1
+    private int repeatedShapeThreshold = 5;
+
+    // Ngân sách số lệnh Mongo cho mỗi request; vượt quá sẽ log cảnh báo
+    private int commandBudget = 20;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getRepeatedShapeThreshold() {
+        return repeatedShapeThreshold;
+    }
+
+    public void setRepeatedShapeThreshold(int repeatedShapeThreshold) {
+        this.repeatedShapeThreshold = repeatedShapeThreshold;
+    }
+
+    public int getCommandBudget() {
+        return commandBudget;
+    }
+
+    public void setCommandBudget(int commandBudget) {
+        this.commandBudget = commandBudget;
+    }
+}
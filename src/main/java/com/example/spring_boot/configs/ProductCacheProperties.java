@@ -0,0 +1,43 @@
+package com.example.spring_boot.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "app.cache.product")
+public class ProductCacheProperties {
+
+    // Giới hạn theo dung lượng ước lượng, không theo số entry (product có mô tả dài nặng hơn nhiều)
+    private long maxWeightBytes = 32L * 1024 * 1024;
+
+    private Duration expireAfterWrite = Duration.ofMinutes(10);
+
+    // Chu kỳ đọc lại version danh sách products / categories từ Mongo (ghi từ node khác được nhận ra sau tối đa chừng này)
+    private Duration versionRefresh = Duration.ofSeconds(5);
+
+    public long getMaxWeightBytes() {
+        return maxWeightBytes;
+    }
+
+    public void setMaxWeightBytes(long maxWeightBytes) {
+        this.maxWeightBytes = maxWeightBytes;
+    }
+
+    public Duration getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    public void setExpireAfterWrite(Duration expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+    }
+
+    public Duration getVersionRefresh() {
+        return versionRefresh;
+    }
+
+    public void setVersionRefresh(Duration versionRefresh) {
+        this.versionRefresh = versionRefresh;
+    }
+}
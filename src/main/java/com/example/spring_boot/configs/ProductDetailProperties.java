@@ -0,0 +1,33 @@
+package com.example.spring_boot.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "app.product-detail")
+public class ProductDetailProperties {
+
+    // Số thread nạp song song các phần của trang chi tiết (mỗi request dùng tối đa 6 task)
+    private int poolSize = 16;
+
+    // Hạn chót cho cả lần nạp; phần phụ chưa xong thì bỏ qua, product chưa xong thì lỗi
+    private Duration timeout = Duration.ofMillis(800);
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.spring_boot.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "app.product-views")
+public class ProductViewProperties {
+
+    // Chu kỳ ghi dồn lượt xem từ bộ nhớ xuống product_views
+    private Duration flushInterval = Duration.ofSeconds(10);
+
+    // Số product có lượt xem chờ ghi vượt ngưỡng này thì flush sớm (giới hạn bộ nhớ khi có burst)
+    private int maxPendingProducts = 50_000;
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public int getMaxPendingProducts() {
+        return maxPendingProducts;
+    }
+
+    public void setMaxPendingProducts(int maxPendingProducts) {
+        this.maxPendingProducts = maxPendingProducts;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.spring_boot.configs;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Bật @Scheduled cho các job nền (tính lại bảng xếp hạng, đối soát số liệu...)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
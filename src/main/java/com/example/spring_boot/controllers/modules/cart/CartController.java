@@ -3,9 +3,11 @@ package com.example.spring_boot.controllers.modules.cart;
 import com.example.spring_boot.domains.cart.Cart;
 import com.example.spring_boot.services.cart.CartService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.security.Principal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -143,6 +145,37 @@ public class CartController {
         }
     }
     
+    /**
+     * Gộp giỏ khách vào giỏ của user đang đăng nhập
+     * User lấy từ principal đã xác thực, không nhận userId do client gửi (tránh gộp / chiếm giỏ của người khác)
+     */
+    @PostMapping("/merge")
+    public ResponseEntity<Map<String, Object>> mergeCarts(
+            @RequestParam String sessionId,
+            Principal principal) {
+        if (principal == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Cần đăng nhập để gộp giỏ hàng");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+        }
+        try {
+            Cart cart = cartService.mergeCarts(sessionId, principal.getName());
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", cart);
+            response.put("message", "Gộp giỏ hàng thành công");
+            
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Lỗi khi gộp giỏ hàng: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
     /**
      * Lấy tất cả giỏ hàng (Admin)
      */
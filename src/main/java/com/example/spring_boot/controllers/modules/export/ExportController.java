@@ -0,0 +1,93 @@
+package com.example.spring_boot.controllers.modules.export;
+
+import com.example.spring_boot.dto.ApiResponse;
+import com.example.spring_boot.services.export.ExportFormat;
+import com.example.spring_boot.services.export.ExportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Export báo cáo (admin) - stream cursor Mongo ra file, không nạp toàn bộ dữ liệu vào bộ nhớ.
+ */
+@RestController
+@RequestMapping("/api/export")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Export", description = "APIs export products / orders ra CSV, NDJSON, XLSX")
+public class ExportController {
+
+    private final ExportService exportService;
+
+    /**
+     * Export products active;
+     * GET /api/export/products?format=csv&fields=id,name,price,stock&from=2025-01-01&to=2025-12-31
+     */
+    @GetMapping("/products")
+    @Operation(summary = "Export products (csv | ndjson | xlsx)")
+    public ResponseEntity<?> exportProducts(
+            @RequestParam(value = "format", defaultValue = "csv") String format,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to) {
+        ExportFormat exportFormat;
+        try {
+            // Kiểm tra tham số trước khi stream (lỗi giữa chừng không đổi được status code)
+            exportFormat = ExportFormat.from(format);
+            exportService.resolveColumns("products", fields);
+            exportService.parseDate(from, false);
+            exportService.parseDate(to, true);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.fail(e.getMessage()));
+        }
+
+        StreamingResponseBody body = output -> exportService.exportProducts(output, exportFormat, fields, from, to);
+        return attachment("products", exportFormat, body);
+    }
+
+    /**
+     * Export orders (admin);
+     * GET /api/export/orders?format=xlsx&from=2025-10-01&to=2025-10-31&paymentStatus=paid
+     */
+    @GetMapping("/orders")
+    @Operation(summary = "Export orders (csv | ndjson | xlsx)")
+    public ResponseEntity<?> exportOrders(
+            @RequestParam(value = "format", defaultValue = "csv") String format,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "paymentStatus", required = false) String paymentStatus) {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.from(format);
+            exportService.resolveColumns("orders", fields);
+            exportService.parseDate(from, false);
+            exportService.parseDate(to, true);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.fail(e.getMessage()));
+        }
+
+        StreamingResponseBody body = output -> exportService.exportOrders(output, exportFormat, fields, from, to,
+                status, paymentStatus);
+        return attachment("orders", exportFormat, body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> attachment(String name, ExportFormat format,
+            StreamingResponseBody body) {
+        String filename = name + "-" + LocalDate.now() + "." + format.getExtension();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .body(body);
+    }
+}
@@ -1,9 +1,13 @@
 package com.example.spring_boot.controllers.modules.products;
 
 import com.example.spring_boot.domains.products.Category;
+import com.example.spring_boot.domains.products.Product;
 import com.example.spring_boot.dto.ApiResponse;
 import com.example.spring_boot.dto.PageResponse;
+import com.example.spring_boot.services.products.CatalogVersionService;
 import com.example.spring_boot.services.products.CategoryService;
+import com.example.spring_boot.services.products.HydrationMode;
+import com.example.spring_boot.services.products.ProductService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -14,11 +18,10 @@ import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
-import java.util.ArrayList;
 
 /** Module API cho Category (quản lý danh mục sản phẩm) */
 @RestController
@@ -30,19 +33,23 @@ import java.util.ArrayList;
 public class CategoryController {
 
     private final CategoryService categoryService;
+    private final CatalogVersionService catalogVersions;
+    private final ProductService productService;
 
     /**
      * Tạo category mới
      * Test API:
      * - POST /api/categories
      * - Body: {"name":"Electronics","description":"Electronic devices"}
+     * - Body (danh mục con): {"name":"Android","description":"...","parentId":"PARENT_ID"}
      */
     @PostMapping
     @Operation(summary = "Tạo category mới")
     public ResponseEntity<ApiResponse<Category>> create(@RequestBody Map<String, Object> request) {
         String name = (String) request.get("name");
         String description = (String) request.get("description");
-        Category created = categoryService.createCategory(name, description);
+        String parentId = (String) request.get("parentId");
+        Category created = categoryService.createCategory(name, description, parentId);
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(ApiResponse.success(created, "Category created successfully"));
     }
@@ -80,10 +87,61 @@ public class CategoryController {
         return ApiResponse.success(categoryService.restoreCategory(id), "Category restored successfully");
     }
 
+    /**
+     * Di chuyển category (kèm cây con) sang cha khác
+     * Test API:
+     * - PUT /api/categories/{id}/move
+     * - Body: {"parentId":"NEW_PARENT_ID"} hoặc {"parentId":null} để thành danh mục gốc
+     */
+    @PutMapping("/{id}/move")
+    @Operation(summary = "Di chuyển category trong cây")
+    public ApiResponse<Category> move(@PathVariable String id, @RequestBody Map<String, Object> request) {
+        String parentId = (String) request.get("parentId");
+        return ApiResponse.success(categoryService.moveCategory(id, parentId), "Category moved successfully");
+    }
+
+    /** Cây categories cho menu; GET /api/categories/tree */
+    @GetMapping("/tree")
+    @Operation(summary = "Cây categories (menu)")
+    public ApiResponse<List<Map<String, Object>>> tree(WebRequest request) {
+        if (request.checkNotModified(catalogVersions.categoryEtag())) {
+            return null; // 304
+        }
+        return ApiResponse.success(categoryService.getCategoryTree(), "Category tree retrieved successfully");
+    }
+
+    /** Breadcrumb từ gốc tới category; GET /api/categories/{id}/breadcrumb */
+    @GetMapping("/{id}/breadcrumb")
+    @Operation(summary = "Breadcrumb của category")
+    public ApiResponse<List<Map<String, Object>>> breadcrumb(@PathVariable String id, WebRequest request) {
+        if (request.checkNotModified(catalogVersions.categoryEtag())) {
+            return null; // 304
+        }
+        return ApiResponse.success(categoryService.getBreadcrumb(id), "Category breadcrumb retrieved successfully");
+    }
+
+    /** Sản phẩm của cả cây con category; GET /api/categories/{id}/products?page=0&size=20 */
+    @GetMapping("/{id}/products")
+    @Operation(summary = "Sản phẩm thuộc category và các category con")
+    public ApiResponse<PageResponse<Product>> products(@PathVariable String id,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "hydration", defaultValue = "batch") String hydration,
+            WebRequest request) {
+        if (request.checkNotModified(catalogVersions.productListEtag())) {
+            return null; // 304
+        }
+        return ApiResponse.success(productService.getByCategorySubtree(id, page, Math.min(size, 100),
+                HydrationMode.from(hydration)), "Category products retrieved successfully");
+    }
+
     /** GET /api/categories/{id} */
     @GetMapping("/{id}")
     @Operation(summary = "Chi tiết category")
-    public ApiResponse<Category> get(@PathVariable String id) {
+    public ApiResponse<Category> get(@PathVariable String id, WebRequest request) {
+        if (request.checkNotModified(catalogVersions.categoryEtag())) {
+            return null; // 304
+        }
         return ApiResponse.success(categoryService.getCategoryById(id), "Category retrieved successfully");
     }
 
@@ -92,24 +150,16 @@ public class CategoryController {
     @Operation(summary = "Danh sách categories (PageResponse)")
     public ApiResponse<PageResponse<Map<String, Object>>> list(@RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "page", defaultValue = "0") int page,
-            @RequestParam(value = "size", defaultValue = "1000") int size) {
+            @RequestParam(value = "size", defaultValue = "1000") int size,
+            WebRequest request) {
+        if (request.checkNotModified(catalogVersions.categoryEtag())) {
+            return null; // 304: không tính lại số product theo category
+        }
         
         List<Map<String, Object>> items;
         if (name != null) {
-            // Tìm kiếm theo tên - trả về Category thuần
-            List<Category> categories = categoryService.searchCategoriesByName(name);
-            items = new ArrayList<>();
-            for (Category category : categories) {
-                Map<String, Object> categoryWithCount = new HashMap<>();
-                categoryWithCount.put("id", category.getId());
-                categoryWithCount.put("name", category.getName());
-                categoryWithCount.put("description", category.getDescription());
-                categoryWithCount.put("createdAt", category.getCreatedAt());
-                categoryWithCount.put("updatedAt", category.getUpdatedAt());
-                categoryWithCount.put("deletedAt", category.getDeletedAt());
-                categoryWithCount.put("count", categoryService.getProductCountForCategory(category.getId()));
-                items.add(categoryWithCount);
-            }
+            // Tìm kiếm theo tên - count đọc từ productCount của category
+            items = categoryService.withProductCounts(categoryService.searchCategoriesByName(name));
         } else {
             // Lấy tất cả với product count
             items = categoryService.getAllActiveCategoriesWithProductCount();
@@ -2,9 +2,22 @@ package com.example.spring_boot.controllers.modules.products;
 
 import com.example.spring_boot.domains.products.Product;
 import com.example.spring_boot.dto.ApiResponse;
+import com.example.spring_boot.dto.CursorPageResponse;
 import com.example.spring_boot.dto.PageResponse;
+import com.example.spring_boot.dto.ProductDetailResponse;
+import com.example.spring_boot.dto.ProductFacetResponse;
+import com.example.spring_boot.dto.ProductImportResult;
+import com.example.spring_boot.dto.ProductStatsResponse;
+import com.example.spring_boot.dto.ProductSuggestion;
+import com.example.spring_boot.services.products.CatalogVersionService;
+import com.example.spring_boot.services.products.HydrationMode;
+import com.example.spring_boot.services.products.ProductCardSync;
+import com.example.spring_boot.services.products.ProductDetailAssembler;
 import com.example.spring_boot.services.products.ProductService;
-import com.example.spring_boot.services.products.ProductImageService;
+import com.example.spring_boot.services.products.ProductSuggestionIndex;
+import com.example.spring_boot.services.products.ProductImportService;
+import com.example.spring_boot.services.products.ProductViewCounter;
+import com.example.spring_boot.services.products.SalesWindow;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -12,14 +25,19 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
-import java.util.stream.Collectors;
 
 /** Module API cho Product (embed category) */
 @RestController
@@ -30,7 +48,12 @@ import java.util.stream.Collectors;
 public class ProductController {
 
     private final ProductService productService;
-    private final ProductImageService productImageService;
+    private final ProductImportService productImportService;
+    private final CatalogVersionService catalogVersions;
+    private final ProductDetailAssembler productDetailAssembler;
+    private final ProductCardSync productCardSync;
+    private final ProductViewCounter productViewCounter;
+    private final ProductSuggestionIndex productSuggestionIndex;
 
     /**
      * Tạo product mới (embed category)
@@ -67,69 +90,106 @@ public class ProductController {
         return ResponseEntity.ok(ApiResponse.success(null, "Product deleted successfully"));
     }
 
-    /** GET /api/products/{id} */
+    /**
+     * Khôi phục product đã xóa
+     * Test API:
+     * - POST /api/products/{id}/restore
+     */
+    @PostMapping("/{id}/restore")
+    @Operation(summary = "Khôi phục product")
+    public ApiResponse<Product> restore(@PathVariable String id) {
+        return ApiResponse.success(productService.restore(id), "Product restored successfully");
+    }
+
+    /** GET /api/products/{id} - hỗ trợ If-None-Match (304 khi ETag không đổi) */
     @GetMapping("/{id}")
     @Operation(summary = "Chi tiết product")
-    public ApiResponse<Product> get(@PathVariable String id) {
+    public ApiResponse<Product> get(@PathVariable String id, WebRequest request) {
+        String etag = catalogVersions.productEtag(id);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null; // 304, không đọc / serialize product
+        }
         return ApiResponse.success(productService.getById(id), "Product retrieved successfully");
     }
 
-    /** GET /api/products/detail/{id} - Chi tiết sản phẩm với hình ảnh */
+    /**
+     * GET /api/products/detail/{id} - Chi tiết sản phẩm với hình ảnh, thuộc tính
+     * (nạp song song, data.partial = true nếu có phần quá hạn). Số like / lượt xem / đánh giá: /detail/{id}/stats
+     */
     @GetMapping("/detail/{id}")
     @Operation(summary = "Chi tiết sản phẩm với hình ảnh")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> getProductDetail(@PathVariable String id) {
-        Product product = productService.getById(id);
-        if (product == null) {
+    public ResponseEntity<ApiResponse<ProductDetailResponse>> getProductDetail(@PathVariable String id,
+            WebRequest request) {
+        String etag = catalogVersions.productEtag(id); // Version đổi cả khi ảnh / thuộc tính đổi
+        if (etag == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(ApiResponse.fail("Sản phẩm không tồn tại"));
         }
+        productViewCounter.record(id); // Lượt xem tính cả khi trả 304 (chỉ tăng bộ đếm trong bộ nhớ)
+        if (request.checkNotModified(etag)) {
+            return null; // 304
+        }
+        return ResponseEntity.ok(ApiResponse.success(productDetailAssembler.assemble(id),
+                "Chi tiết sản phẩm được lấy thành công"));
+    }
 
-        // Lấy hình ảnh của sản phẩm
-        List<Map<String, Object>> images = productImageService.getByProductId(id).stream()
-                .map(image -> {
-                    Map<String, Object> imageMap = new HashMap<>();
-                    imageMap.put("id", image.getId());
-                    imageMap.put("imageUrl", image.getImageUrl());
-                    imageMap.put("isPrimary", image.getIsPrimary());
-                    imageMap.put("createdAt", image.getCreatedAt());
-                    return imageMap;
-                })
-                .collect(Collectors.toList());
-
-        // Merge sản phẩm và hình ảnh
-        Map<String, Object> productWithImages = new HashMap<>();
-        productWithImages.put("id", product.getId());
-        productWithImages.put("name", product.getName());
-        productWithImages.put("description", product.getDescription());
-        productWithImages.put("price", product.getPrice());
-        productWithImages.put("stock", product.getStock());
-        productWithImages.put("category", product.getCategory());
-        productWithImages.put("createdAt", product.getCreatedAt());
-        productWithImages.put("updatedAt", product.getUpdatedAt());
-        productWithImages.put("deletedAt", product.getDeletedAt());
-        productWithImages.put("images", images);
-
-        return ResponseEntity.ok(ApiResponse.success(productWithImages, "Chi tiết sản phẩm được lấy thành công"));
+    /**
+     * GET /api/products/detail/{id}/stats - Số like, lượt xem + tóm tắt đánh giá (luôn đọc mới, không ETag / cache)
+     */
+    @GetMapping("/detail/{id}/stats")
+    @Operation(summary = "Số like / đánh giá của sản phẩm")
+    public ResponseEntity<ApiResponse<ProductStatsResponse>> getProductStats(@PathVariable String id) {
+        if (catalogVersions.productEtag(id) == null) { // Product không tồn tại / đã xóa
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.fail("Sản phẩm không tồn tại"));
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(ApiResponse.success(productDetailAssembler.assembleStats(id),
+                        "Số liệu sản phẩm được lấy thành công"));
     }
 
+    /**
+     * Danh sách products.
+     * - Mặc định: PageResponse (offset)
+     * - Có tham số cursor (kể cả rỗng cho trang đầu): CursorPageResponse, ví dụ
+     *   GET /api/products?cursor=&size=20&sortBy=createdAt&sortDir=desc&count=none
+     * - hydration=batch (mặc định) | pipeline: nạp category/attributes/ảnh bằng 1 aggregation $lookup
+     */
     @GetMapping
-    @Operation(summary = "Danh sách products (PageResponse)")
-    public ApiResponse<PageResponse<Product>> list(
+    @Operation(summary = "Danh sách products (PageResponse hoặc CursorPageResponse khi có cursor)")
+    public ApiResponse<?> list(
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "categoryId", required = false) String categoryId,
             @RequestParam(value = "page", defaultValue = "0") int page,
-            @RequestParam(value = "size", defaultValue = "1000") int size) {
+            @RequestParam(value = "size", defaultValue = "1000") int size,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "sortBy", defaultValue = "createdAt") String sortBy,
+            @RequestParam(value = "sortDir", defaultValue = "desc") String sortDir,
+            @RequestParam(value = "count", defaultValue = "none") String count,
+            @RequestParam(value = "hydration", defaultValue = "batch") String hydration,
+            WebRequest request) {
+
+        if (request.checkNotModified(catalogVersions.productListEtag())) {
+            return null; // 304: catalog chưa đổi kể từ lần tải trước
+        }
+        HydrationMode mode = HydrationMode.from(hydration);
+        if (cursor != null) {
+            CursorPageResponse<Product> cursorPage = productService.getPagedByCursor(cursor, size, sortBy, sortDir,
+                    name, categoryId, count, mode);
+            return ApiResponse.success(cursorPage, "Products retrieved successfully");
+        }
 
         PageResponse<Product> response;
         if (categoryId != null) {
-            List<Product> items = productService.getByCategoryId(categoryId);
+            List<Product> items = productService.getByCategoryId(categoryId, mode);
             response = new PageResponse<>(items, items.size(), page, size);
         } else if (name != null) {
             List<Product> items = productService.searchByName(name);
             response = new PageResponse<>(items, items.size(), page, size);
         } else {
             Pageable pageable = PageRequest.of(page, size);
-            Page<Product> pageResult = productService.getPaged(pageable);
+            Page<Product> pageResult = productService.getPaged(pageable, null, null, mode);
             response = new PageResponse<>(pageResult.getContent(), pageResult.getTotalElements(), page, size);
         }
         return ApiResponse.success(response, "Products retrieved successfully");
@@ -142,48 +202,208 @@ public class ProductController {
         return ApiResponse.success(productService.searchByName(name), "Products search completed successfully");
     }
 
+    /**
+     * Gợi ý typeahead cho ô tìm kiếm (tên sản phẩm + danh mục, không dấu, xếp theo độ phổ biến),
+     * trả lời từ bộ nhớ; GET /api/products/suggest?q=dien tho&limit=10
+     */
+    @GetMapping("/suggest")
+    @Operation(summary = "Gợi ý tên sản phẩm / danh mục khi gõ tìm kiếm")
+    public ApiResponse<List<ProductSuggestion>> suggest(
+            @RequestParam(value = "q") String q,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return ApiResponse.success(productSuggestionIndex.suggest(q, Math.min(limit, 20)),
+                "Suggestions retrieved successfully");
+    }
+
     /**
      * Phân trang products; GET
      * /api/products/paged?page=0&size=10&sortBy=name&sortDir=asc
+     * Chế độ cursor (keyset): /api/products/paged?cursor=&size=10&sortBy=name&sortDir=asc&count=estimated
+     * rồi gửi lại data.nextCursor cho trang kế tiếp.
      */
     @GetMapping("/paged")
-    @Operation(summary = "Phân trang products")
-    public ApiResponse<PageResponse<Product>> paged(
+    @Operation(summary = "Phân trang products (offset hoặc cursor)")
+    public ApiResponse<?> paged(
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "categoryId", required = false) String categoryId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "name") String sortBy,
-            @RequestParam(defaultValue = "asc") String sortDir) {
+            @RequestParam(defaultValue = "asc") String sortDir,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "count", defaultValue = "none") String count,
+            @RequestParam(value = "hydration", defaultValue = "batch") String hydration,
+            WebRequest request) {
+
+        if (request.checkNotModified(catalogVersions.productListEtag())) {
+            return null; // 304
+        }
+        HydrationMode mode = HydrationMode.from(hydration);
+        if (cursor != null) {
+            CursorPageResponse<Product> cursorPage = productService.getPagedByCursor(cursor, size, sortBy, sortDir,
+                    name, categoryId, count, mode);
+            return ApiResponse.success(cursorPage, "Products pagination completed successfully");
+        }
 
         // Sort sort = sortDir.equalsIgnoreCase("desc") ? Sort.by(sortBy).descending() :
         // Sort.by(sortBy).ascending();
         Pageable pageable = PageRequest.of(page, size);
-        Page<Product> pageResult = productService.getPaged(pageable);
+        Page<Product> pageResult = productService.getPaged(pageable, null, null, mode);
         PageResponse<Product> response = new PageResponse<>(pageResult.getContent(), pageResult.getTotalElements(),
                 page, size);
         return ApiResponse.success(response, "Products pagination completed successfully");
     }
 
     /**
-     * Lấy sản phẩm bán chạy; GET /api/products/best-selling?limit=5
+     * Thống kê sản phẩm active (số lượng, tổng tồn, min/max/avg giá) cho dashboard admin;
+     * GET /api/products/statistics
+     */
+    @GetMapping("/statistics")
+    @Operation(summary = "Thống kê sản phẩm")
+    public ApiResponse<Map<String, Object>> statistics() {
+        return ApiResponse.success(productService.getProductStatistics(), "Product statistics retrieved successfully");
+    }
+
+    /**
+     * Tìm kiếm có facet: trang sản phẩm + số lượng theo danh mục, khoảng giá, thuộc tính.
+     * GET /api/products/facets?name=...&categoryId=...&minPrice=0&maxPrice=5000000&attr=Màu sắc:Đen&page=0&size=12
+     */
+    @GetMapping("/facets")
+    @Operation(summary = "Tìm kiếm products có facet (danh mục, khoảng giá, thuộc tính)")
+    public ApiResponse<ProductFacetResponse<Product>> facets(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "categoryId", required = false) String categoryId,
+            @RequestParam(value = "minPrice", required = false) Double minPrice,
+            @RequestParam(value = "maxPrice", required = false) Double maxPrice,
+            @RequestParam(value = "attr", required = false) List<String> attr,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "12") int size) {
+        return ApiResponse.success(
+                productService.getFaceted(name, categoryId, minPrice, maxPrice, attr, page, size),
+                "Faceted products retrieved successfully");
+    }
+
+    /**
+     * Lọc sản phẩm theo nhiều thuộc tính (cùng tên thì OR, khác tên thì AND), mới nhất trước.
+     * GET /api/products/filter?attr=RAM:8GB&attr=Màu sắc:Đen&attr=Màu sắc:Trắng&page=0&size=20
+     */
+    @GetMapping("/filter")
+    @Operation(summary = "Lọc products theo nhiều thuộc tính (bitmap index)")
+    public ApiResponse<PageResponse<Product>> filterByAttributes(
+            @RequestParam(value = "attr") List<String> attr,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ApiResponse.success(productService.getByAttributeFilters(attr, page, size),
+                "Filtered products retrieved successfully");
+    }
+
+    /**
+     * Lấy sản phẩm bán chạy theo số lượng đã bán; GET /api/products/best-selling?limit=5&window=total|7d|30d
      */
     @GetMapping("/best-selling")
     @Operation(summary = "Lấy sản phẩm bán chạy")
     public ApiResponse<List<Product>> getBestSellingProducts(
-            @RequestParam(value = "limit", defaultValue = "5") int limit) {
-        List<Product> bestSellingProducts = productService.getBestSellingProducts(limit);
+            @RequestParam(value = "limit", defaultValue = "5") int limit,
+            @RequestParam(value = "window", defaultValue = "total") String window,
+            @RequestParam(value = "hydration", defaultValue = "batch") String hydration) {
+        List<Product> bestSellingProducts = productService.getBestSellingProducts(limit, SalesWindow.from(window),
+                HydrationMode.from(hydration));
         return ApiResponse.success(bestSellingProducts, "Best selling products retrieved successfully");
     }
 
+    /**
+     * Sản phẩm thường được mua cùng (từ lịch sử đơn đã thanh toán); GET /api/products/{id}/related?limit=8
+     */
+    @GetMapping("/{id}/related")
+    @Operation(summary = "Sản phẩm thường được mua cùng")
+    public ApiResponse<List<Product>> getRelatedProducts(
+            @PathVariable String id,
+            @RequestParam(value = "limit", defaultValue = "8") int limit,
+            @RequestParam(value = "hydration", defaultValue = "batch") String hydration) {
+        List<Product> relatedProducts = productService.getRelatedProducts(id, Math.min(limit, 20),
+                HydrationMode.from(hydration));
+        return ApiResponse.success(relatedProducts, "Related products retrieved successfully");
+    }
+
     /**
      * Lấy sản phẩm mới; GET /api/products/new?limit=4
      */
     @GetMapping("/new")
     @Operation(summary = "Lấy sản phẩm mới")
     public ApiResponse<List<Product>> getNewProducts(
-            @RequestParam(value = "limit", defaultValue = "4") int limit) {
-        List<Product> newProducts = productService.getNewProducts(limit);
+            @RequestParam(value = "limit", defaultValue = "4") int limit,
+            @RequestParam(value = "hydration", defaultValue = "batch") String hydration) {
+        List<Product> newProducts = productService.getNewProducts(limit, HydrationMode.from(hydration));
         return ApiResponse.success(newProducts, "New products retrieved successfully");
     }
+
+    /**
+     * So sánh hydration BATCH và PIPELINE (round-trip, p50/p99 ms);
+     * GET /api/products/benchmark/hydration?iterations=100&size=20
+     */
+    @GetMapping("/benchmark/hydration")
+    @Operation(summary = "Benchmark chế độ hydration (batch vs pipeline)")
+    public ApiResponse<Map<String, Object>> benchmarkHydration(
+            @RequestParam(value = "iterations", defaultValue = "100") int iterations,
+            @RequestParam(value = "size", defaultValue = "20") int size) {
+        return ApiResponse.success(productService.benchmarkHydration(iterations, size),
+                "Hydration benchmark completed successfully");
+    }
+
+    /**
+     * Đo thời gian tìm kiếm có facet trên dữ liệu hiện có (p50/p99 ms theo kịch bản lọc);
+     * GET /api/products/benchmark/facets?iterations=50&size=12
+     */
+    @GetMapping("/benchmark/facets")
+    @Operation(summary = "Benchmark tìm kiếm có facet")
+    public ApiResponse<Map<String, Object>> benchmarkFacets(
+            @RequestParam(value = "iterations", defaultValue = "50") int iterations,
+            @RequestParam(value = "size", defaultValue = "12") int size) {
+        return ApiResponse.success(productService.benchmarkFaceted(iterations, size),
+                "Faceted search benchmark completed successfully");
+    }
+
+    /**
+     * Tính lại ảnh đại diện + thẻ denormalized (primaryImageUrl, card) cho toàn bộ products (admin);
+     * POST /api/products/cards/rebuild
+     */
+    @PostMapping("/cards/rebuild")
+    @Operation(summary = "Tính lại primaryImageUrl / card cho tất cả products")
+    public ApiResponse<Map<String, Object>> rebuildCards() {
+        long updated = productCardSync.backfill(true);
+        return ApiResponse.success(Map.of("updated", updated), "Product cards rebuilt successfully");
+    }
+
+    /**
+     * Import sản phẩm hàng loạt (CSV / NDJSON) dạng upload file;
+     * POST /api/products/import?format=csv&batchSize=500 (multipart, field "file")
+     */
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Import products từ file CSV / NDJSON")
+    public ApiResponse<ProductImportResult> importFile(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "format", defaultValue = "csv") String format,
+            @RequestParam(value = "batchSize", defaultValue = "500") int batchSize) {
+        try (InputStream input = file.getInputStream()) {
+            return ApiResponse.success(productImportService.importProducts(input, format, batchSize),
+                    "Products imported successfully");
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read import file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Import sản phẩm hàng loạt với nội dung file là body request (stream, không lưu file tạm);
+     * POST /api/products/import?format=ndjson&batchSize=1000
+     */
+    @PostMapping(value = "/import", consumes = { "text/csv", "application/x-ndjson", MediaType.TEXT_PLAIN_VALUE,
+            MediaType.APPLICATION_OCTET_STREAM_VALUE })
+    @Operation(summary = "Import products từ body request (CSV / NDJSON)")
+    public ApiResponse<ProductImportResult> importStream(
+            HttpServletRequest request,
+            @RequestParam(value = "format", defaultValue = "csv") String format,
+            @RequestParam(value = "batchSize", defaultValue = "500") int batchSize) throws IOException {
+        return ApiResponse.success(productImportService.importProducts(request.getInputStream(), format, batchSize),
+                "Products imported successfully");
+    }
 }
@@ -1,6 +1,8 @@
 package com.example.spring_boot.domains.cart;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -9,10 +11,18 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Document(collection = "carts")
+// Job dọn giỏ quét theo updated_at (TTL của giỏ khách được tạo riêng, partial theo anonymous)
+@CompoundIndex(name = "updated_at_1_anonymous_1", def = "{ 'updated_at': 1, 'anonymous': 1 }")
 public class Cart {
     @Id
     private String id;
     
+    // Khóa chủ giỏ (userId hoặc sessionId) - mọi thao tác giỏ tra theo một field có unique index
+    // Partial: giỏ cũ chưa có owner_key (chưa backfill) không đụng nhau ở giá trị null
+    @Indexed(name = "owner_key_1", unique = true, partialFilter = "{ 'owner_key': { $exists: true } }")
+    @Field("owner_key")
+    private String ownerKey;
+    
     @Field("user_id")
     private String userId;
     
@@ -21,6 +31,9 @@ public class Cart {
     
     private List<CartItem> items;
     
+    // Giỏ của khách chưa đăng nhập (key "session_...") - tự hết hạn theo TTL trên updated_at
+    private Boolean anonymous;
+    
     @Field("created_at")
     private LocalDateTime createdAt;
     
@@ -38,18 +51,25 @@ public class Cart {
         this();
         this.userId = userId;
         this.sessionId = sessionId;
+        this.ownerKey = userId != null ? userId : sessionId;
     }
     
     // Getters and Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
     
+    public String getOwnerKey() { return ownerKey; }
+    public void setOwnerKey(String ownerKey) { this.ownerKey = ownerKey; }
+    
     public String getUserId() { return userId; }
     public void setUserId(String userId) { this.userId = userId; }
     
     public String getSessionId() { return sessionId; }
     public void setSessionId(String sessionId) { this.sessionId = sessionId; }
     
+    public Boolean getAnonymous() { return anonymous; }
+    public void setAnonymous(Boolean anonymous) { this.anonymous = anonymous; }
+    
     public List<CartItem> getItems() { return items; }
     public void setItems(List<CartItem> items) { this.items = items; }
     
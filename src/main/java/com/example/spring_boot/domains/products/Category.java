@@ -6,6 +6,8 @@ import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 @Data
 @NoArgsConstructor
@@ -21,6 +23,22 @@ public class Category {
 
     private String description;
 
+    // Cây danh mục: parentId = null là gốc; ancestors = id tổ tiên từ gốc -> cha (materialized path),
+    // index để lấy cả cây con bằng một query { ancestors: id }
+    @Indexed
+    private String parentId;
+
+    @Indexed
+    @Builder.Default
+    private List<String> ancestors = new ArrayList<>();
+
+    @Builder.Default
+    private Integer depth = 0;
+
+    // Số product active thuộc category, cập nhật bằng $inc khi product tạo / xóa / khôi phục / đổi danh mục
+    @Builder.Default
+    private Long productCount = 0L;
+
     @Builder.Default
     private Instant createdAt = Instant.now();
     private Instant updatedAt;
@@ -3,6 +3,8 @@ package com.example.spring_boot.domains.products;
 import lombok.*;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -22,6 +24,13 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 @Document(collection = "products")
+// Index phục vụ phân trang keyset: (deletedAt, sortKey, _id) để cursor luôn là index seek
+@CompoundIndexes({
+        @CompoundIndex(name = "deletedAt_1_createdAt_-1__id_-1", def = "{ 'deletedAt': 1, 'createdAt': -1, '_id': -1 }"),
+        @CompoundIndex(name = "deletedAt_1_name_1__id_1", def = "{ 'deletedAt': 1, 'name': 1, '_id': 1 }"),
+        // Lọc theo category / cây con category ({ categoryId: { $in: [...] } })
+        @CompoundIndex(name = "categoryId_1_deletedAt_1", def = "{ 'categoryId': 1, 'deletedAt': 1 }")
+})
 public class Product {
     @Id
     private String id;
@@ -46,6 +55,13 @@ public class Product {
     @Transient
     private List<ProductImage> images;
 
+    // Ảnh đại diện + thẻ tóm tắt denormalized (ProductCardSync cập nhật), chỉ đọc qua API
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String primaryImageUrl;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private ProductCard card;
+
     @Builder.Default
     private Instant createdAt = Instant.now();
     private Instant updatedAt;
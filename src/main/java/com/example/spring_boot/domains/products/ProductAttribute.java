@@ -3,6 +3,8 @@ package com.example.spring_boot.domains.products;
 import lombok.*;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -17,6 +19,11 @@ import java.time.Instant;
 @AllArgsConstructor
 @Builder
 @Document(collection = "product_attributes")
+// productId: $lookup trong facet + batch populate; name/value: lọc theo thuộc tính
+@CompoundIndexes({
+        @CompoundIndex(name = "productId_1_deletedAt_1", def = "{ 'productId': 1, 'deletedAt': 1 }"),
+        @CompoundIndex(name = "name_1_value_1_deletedAt_1", def = "{ 'name': 1, 'value': 1, 'deletedAt': 1 }")
+})
 public class ProductAttribute {
     @Id
     private String id;
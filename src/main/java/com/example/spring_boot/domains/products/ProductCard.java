@@ -0,0 +1,30 @@
+package com.example.spring_boot.domains.products;
+
+import lombok.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tóm tắt "thẻ sản phẩm" nhúng trong Product để trang danh sách không phải đọc product_images.
+ * Được đồng bộ khi ảnh / thuộc tính thay đổi (ProductCardSync).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductCard {
+    public static final int MAX_HIGHLIGHTS = 3;
+
+    private String primaryImageId;
+    private int imageCount;
+    private int attributeCount;
+
+    @Builder.Default
+    private List<String> highlights = new ArrayList<>(); // "Tên: Giá trị" của vài thuộc tính đầu tiên
+
+    /** Thẻ của product chưa có ảnh / thuộc tính */
+    public static ProductCard empty() {
+        return ProductCard.builder().build();
+    }
+}
@@ -3,6 +3,7 @@ package com.example.spring_boot.domains.products;
 import lombok.*;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -17,6 +18,8 @@ import java.time.Instant;
 @AllArgsConstructor
 @Builder
 @Document(collection = "product_images")
+// productId: batch populate + trang chi tiết
+@CompoundIndex(name = "productId_1_deletedAt_1", def = "{ 'productId': 1, 'deletedAt': 1 }")
 public class ProductImage {
     @Id
     private String id;
@@ -0,0 +1,34 @@
+package com.example.spring_boot.domains.products;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Sản phẩm hay được mua cùng (top-N theo độ tương đồng cosine trên ma trận đồng xuất hiện trong đơn đã thanh toán) */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "product_recommendations")
+public class ProductRecommendation {
+    @Id
+    private String id; // = productId (hex)
+
+    @Builder.Default
+    private List<Related> related = new ArrayList<>(); // Điểm giảm dần
+
+    private Instant updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Related {
+        private String productId;
+        private double score; // cosine = số đơn chung / sqrt(số đơn chứa A * số đơn chứa B)
+        private long coCount; // Số đơn chứa cả hai
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.spring_boot.domains.products;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/** Tổng số lượng đã bán của một sản phẩm (tăng dần khi đơn hàng được thanh toán) */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "product_sales")
+public class ProductSales {
+    @Id
+    private String id; // = productId (hex)
+
+    @Builder.Default
+    private Long totalQuantity = 0L;
+
+    private Instant updatedAt;
+}
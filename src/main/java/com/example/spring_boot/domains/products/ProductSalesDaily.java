@@ -0,0 +1,31 @@
+package com.example.spring_boot.domains.products;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Số lượng bán theo ngày của một sản phẩm - nguồn cho cửa sổ 7/30 ngày.
+ * Bucket quá 40 ngày tự xóa bằng TTL index.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "product_sales_daily")
+public class ProductSalesDaily {
+    @Id
+    private String id; // = productId + ":" + yyyy-MM-dd
+
+    @Indexed
+    private String productId;
+
+    @Indexed(expireAfter = "40d")
+    private Instant day; // Đầu ngày (giờ hệ thống)
+
+    @Builder.Default
+    private Long quantity = 0L;
+}
@@ -0,0 +1,47 @@
+package com.example.spring_boot.domains.products;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/** Số lượng tồn đã giữ cho một giỏ hàng (stock đã bị trừ, hết hạn thì được trả lại) */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "stock_reservations")
+@CompoundIndexes({
+        // Mỗi giỏ chỉ có một reservation ACTIVE cho một sản phẩm
+        @CompoundIndex(name = "owner_1_productId_1_active", def = "{ 'owner': 1, 'productId': 1 }",
+                unique = true, partialFilter = "{ 'status': 'ACTIVE' }"),
+        // Sweeper tìm reservation ACTIVE đã hết hạn
+        @CompoundIndex(name = "status_1_expiresAt_1", def = "{ 'status': 1, 'expiresAt': 1 }")
+})
+public class StockReservation {
+    public static final String ACTIVE = "ACTIVE"; // Đang giữ tồn
+    public static final String CONVERTED = "CONVERTED"; // Đã thành đơn bán (thanh toán thành công)
+    public static final String RELEASED = "RELEASED"; // Đã trả tồn (xóa khỏi giỏ / hết hạn)
+    public static final String MERGED = "MERGED"; // Đã chuyển sang giỏ của user (gộp giỏ khi đăng nhập)
+
+    @Id
+    private String id;
+
+    private String owner; // userId hoặc sessionId của giỏ hàng
+    private String productId; // hex id của product
+    private Integer quantity;
+    private String status;
+    private String orderId; // Đơn hàng khi CONVERTED
+
+    @Indexed(sparse = true)
+    private String claimId; // Lượt claim hàng loạt đã chuyển reservation khỏi ACTIVE
+
+    private Instant expiresAt;
+    private Instant closedAt; // Lúc rời ACTIVE - TTL index (app.inventory.closed-retention) xóa bản đã đóng
+    private Instant createdAt;
+    private Instant updatedAt;
+}
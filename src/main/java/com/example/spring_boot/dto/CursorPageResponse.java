@@ -0,0 +1,29 @@
+package com.example.spring_boot.dto;
+
+import java.util.List;
+
+/**
+ * Gói dữ liệu phân trang keyset (cursor): items + nextCursor.
+ * - nextCursor: null khi đã tới trang cuối
+ * - total: chỉ có khi client yêu cầu đếm (count=exact|estimated), ngược lại null
+ */
+public class CursorPageResponse<T> {
+    public List<T> items;
+    public String nextCursor;
+    public boolean hasNext;
+    public int size;
+    public Long total;
+    public boolean totalEstimated;
+
+    public CursorPageResponse() {
+    }
+
+    public CursorPageResponse(List<T> items, String nextCursor, int size, Long total, boolean totalEstimated) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.hasNext = nextCursor != null;
+        this.size = size;
+        this.total = total;
+        this.totalEstimated = totalEstimated;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.spring_boot.dto;
+
+import com.example.spring_boot.domains.products.Category;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chi tiết sản phẩm cho trang detail: product + ảnh + thuộc tính.
+ * Các phần phụ nạp song song; phần nào quá hạn / lỗi thì để null và liệt kê trong {@code missing}.
+ * Số like / lượt xem / đánh giá không nằm ở đây (ETag của chi tiết không đổi theo chúng): xem ProductStatsResponse.
+ */
+public class ProductDetailResponse {
+    public String id;
+    public String name;
+    public String description;
+    public BigDecimal price;
+    public Integer stock;
+    public Category category;
+    public Instant createdAt;
+    public Instant updatedAt;
+    public Instant deletedAt;
+    public List<ImageItem> images;
+    public List<AttributeItem> attributes;
+    public boolean partial;
+    public List<String> missing = new ArrayList<>();
+
+    /** Ảnh sản phẩm */
+    public static class ImageItem {
+        public String id;
+        public String imageUrl;
+        public Boolean isPrimary;
+        public Instant createdAt;
+
+        public ImageItem() {
+        }
+
+        public ImageItem(String id, String imageUrl, Boolean isPrimary, Instant createdAt) {
+            this.id = id;
+            this.imageUrl = imageUrl;
+            this.isPrimary = isPrimary;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /** Thuộc tính sản phẩm (tên - giá trị) */
+    public static class AttributeItem {
+        public String id;
+        public String name;
+        public String value;
+
+        public AttributeItem() {
+        }
+
+        public AttributeItem(String id, String name, String value) {
+            this.id = id;
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.spring_boot.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kết quả tìm kiếm có facet: trang sản phẩm + số lượng theo danh mục, khoảng giá, thuộc tính.
+ * Mọi con số được tính trong cùng một aggregation ($facet); trang dữ liệu đọc riêng theo index sắp xếp.
+ */
+public class ProductFacetResponse<T> {
+    public List<T> items;
+    public long total;
+    public int currentPage;
+    public int size;
+    public List<FacetCount> categories = new ArrayList<>();
+    public List<PriceBucket> priceRanges = new ArrayList<>();
+    public List<AttributeFacet> attributes = new ArrayList<>();
+
+    /** Một giá trị facet và số sản phẩm khớp */
+    public static class FacetCount {
+        public String value;
+        public String label;
+        public long count;
+
+        public FacetCount() {
+        }
+
+        public FacetCount(String value, String label, long count) {
+            this.value = value;
+            this.label = label;
+            this.count = count;
+        }
+    }
+
+    /** Khoảng giá [min, max); max = null nghĩa là không giới hạn trên */
+    public static class PriceBucket {
+        public Double min;
+        public Double max;
+        public long count;
+
+        public PriceBucket() {
+        }
+
+        public PriceBucket(Double min, Double max, long count) {
+            this.min = min;
+            this.max = max;
+            this.count = count;
+        }
+    }
+
+    /** Các giá trị của một thuộc tính (ví dụ "Màu sắc": Đen 12, Trắng 8) */
+    public static class AttributeFacet {
+        public String name;
+        public List<FacetCount> values = new ArrayList<>();
+
+        public AttributeFacet() {
+        }
+
+        public AttributeFacet(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.spring_boot.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kết quả import sản phẩm hàng loạt.
+ * - errors: lỗi theo dòng (giới hạn số lượng, errorsTruncated = true nếu bị cắt bớt)
+ */
+public class ProductImportResult {
+    public long totalRows;
+    public long inserted;
+    public long failed;
+    public long attributesInserted;
+    public long imagesInserted;
+    public List<RowError> errors = new ArrayList<>();
+    public boolean errorsTruncated;
+    public long durationMs;
+
+    /** Lỗi của một dòng dữ liệu (row tính từ 1, không gồm header CSV) */
+    public static class RowError {
+        public long row;
+        public String message;
+
+        public RowError() {
+        }
+
+        public RowError(long row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.spring_boot.dto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Số liệu thay đổi liên tục của sản phẩm (số like, lượt xem, tóm tắt đánh giá).
+ * Tách khỏi ProductDetailResponse: chi tiết được trả 304 theo ETag, phần này luôn đọc mới.
+ * Phần nào quá hạn / lỗi thì để null và liệt kê trong {@code missing}.
+ */
+public class ProductStatsResponse {
+    public String id;
+    public Long likeCount;
+    public Long viewCount;
+    public ReviewSummary reviews;
+    public boolean partial;
+    public List<String> missing = new ArrayList<>();
+
+    /** Tóm tắt đánh giá: số lượng, điểm trung bình, phân bố theo số sao */
+    public static class ReviewSummary {
+        public long count;
+        public double averageRating;
+        public Map<Integer, Long> ratingCounts = new LinkedHashMap<>();
+    }
+}
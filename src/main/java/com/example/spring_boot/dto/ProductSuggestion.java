@@ -0,0 +1,24 @@
+package com.example.spring_boot.dto;
+
+/**
+ * Một gợi ý typeahead cho ô tìm kiếm: tên sản phẩm hoặc danh mục, xếp theo độ phổ biến.
+ */
+public class ProductSuggestion {
+    public static final String TYPE_PRODUCT = "product";
+    public static final String TYPE_CATEGORY = "category";
+
+    public String type; // product | category
+    public String id;
+    public String text; // Tên gốc (có dấu) để hiển thị
+    public long score; // Độ phổ biến: product = lượt bán * 5 + lượt xem + 1; category = tổng điểm product
+
+    public ProductSuggestion() {
+    }
+
+    public ProductSuggestion(String type, String id, String text, long score) {
+        this.type = type;
+        this.id = id;
+        this.text = text;
+        this.score = score;
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface CartRepository extends MongoRepository<Cart, String> {
@@ -17,9 +18,8 @@ public interface CartRepository extends MongoRepository<Cart, String> {
     // Find by session ID
     Optional<Cart> findBySessionId(String sessionId);
     
-    // Find by user ID or session ID
-    @Query("{ $or: [{ 'userId': ?0 }, { 'sessionId': ?0 }] }")
-    Optional<Cart> findByUserIdOrSessionId(String userIdOrSessionId);
+    // Find by owner key (user ID hoặc session ID) - unique index owner_key_1
+    Optional<Cart> findByOwnerKey(String ownerKey);
     
     // Find all carts by user ID
     List<Cart> findAllByUserId(String userId);
@@ -39,11 +39,11 @@ public interface CartRepository extends MongoRepository<Cart, String> {
     // Delete by session ID
     void deleteBySessionId(String sessionId);
     
-    // Find carts with items
+    // Find carts with items (stream theo cursor - không nạp cả collection vào bộ nhớ, nhớ đóng stream)
     @Query("{ 'items': { $exists: true, $not: { $size: 0 } } }")
-    List<Cart> findCartsWithItems();
+    Stream<Cart> findCartsWithItems();
     
-    // Find empty carts
+    // Find empty carts (stream theo cursor, nhớ đóng stream)
     @Query("{ $or: [{ 'items': { $exists: false } }, { 'items': { $size: 0 } }] }")
-    List<Cart> findEmptyCarts();
+    Stream<Cart> findEmptyCarts();
 }
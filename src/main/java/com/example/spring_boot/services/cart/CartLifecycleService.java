@@ -0,0 +1,185 @@
+package com.example.spring_boot.services.cart; // Package service giỏ hàng
+
+import com.example.spring_boot.configs.CartProperties; // TTL / chu kỳ dọn giỏ
+import com.example.spring_boot.domains.cart.Cart; // Entity giỏ hàng
+import com.example.spring_boot.services.products.InventoryService; // Trả tồn đang giữ của giỏ bị xóa
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô khi quét giỏ
+import org.springframework.dao.DuplicateKeyException; // owner_key trùng khi backfill
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.data.domain.Sort; // Chiều index
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.index.Index; // Định nghĩa TTL index
+import org.springframework.data.mongodb.core.index.PartialIndexFilter; // Chỉ áp TTL cho giỏ khách
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.data.mongodb.core.query.Update; // Backfill cờ anonymous
+import org.springframework.scheduling.annotation.Scheduled; // Job dọn giỏ định kỳ
+import org.springframework.stereotype.Service; // Bean service Spring
+
+import java.time.LocalDateTime; // updated_at của giỏ
+import java.util.ArrayList; // Lô giỏ cần xóa
+import java.util.HashSet; // Tập owner
+import java.util.List; // Danh sách
+import java.util.Set; // Tập owner
+import java.util.concurrent.CompletableFuture; // Tạo index / backfill nền
+import java.util.stream.Stream; // Cursor Mongo
+
+/**
+ * Vòng đời collection carts (giữ working set nhỏ):
+ * - Migration owner_key: giỏ cũ được gán owner_key = user_id (hoặc session_id); giỏ trùng khóa được gộp
+ * - TTL index partial { anonymous: true } trên updated_at: Mongo tự xóa giỏ khách không hoạt động
+ * - Job dọn giỏ: stream (cursor) các giỏ trống quá hạn + giỏ khách quá hạn (gồm giỏ cũ chưa có cờ),
+ *   xóa theo lô bằng deleteMany và trả tồn còn giữ của các giỏ đã xóa
+ */
+@Service // Đăng ký bean service
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class CartLifecycleService {
+
+    private static final String COLLECTION = "carts";
+    private static final String TTL_INDEX = "anonymous_updated_at_ttl";
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+    private final CartProperties properties; // Cấu hình vòng đời giỏ
+    private final InventoryService inventoryService; // Trả tồn đang giữ
+    private final CartService cartService; // Gộp giỏ trùng owner_key
+
+    /**
+     * Backfill owner_key, tạo TTL index + gắn cờ anonymous cho giỏ khách tạo trước khi có cờ
+     * (chạy nền sau khi khởi động).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prepareOnStartup() {
+        CompletableFuture.runAsync(() -> {
+            backfillOwnerKeys();
+            ensureTtlIndex();
+            long flagged = mongoTemplate.updateMulti(
+                    new Query(Criteria.where("anonymous").exists(false).and("user_id").regex("^" + CartService.ANONYMOUS_PREFIX)),
+                    new Update().set("anonymous", true), Cart.class).getModifiedCount();
+            if (flagged > 0) log.info("✅ [CART] Flagged {} legacy anonymous carts", flagged);
+        }).exceptionally(e -> {
+            log.error("❌ [CART] Cart lifecycle setup failed", e);
+            return null;
+        });
+    }
+
+    /**
+     * Dọn giỏ: stream các giỏ quá hạn (chỉ đọc _id + owner), xóa theo lô compaction-batch-size.
+     * Trả về số giỏ đã xóa.
+     */
+    @Scheduled(fixedDelayString = "${app.carts.compaction-interval:PT1H}",
+            initialDelayString = "${app.carts.compaction-interval:PT1H}")
+    public long compact() {
+        long startTime = System.currentTimeMillis();
+        Criteria stale = staleCriteria();
+        Query query = new Query(stale);
+        query.fields().include("_id", "owner_key");
+        query.cursorBatchSize(properties.getCompactionBatchSize());
+
+        long deleted = 0;
+        List<Object> ids = new ArrayList<>();
+        Set<String> owners = new HashSet<>();
+        try (Stream<Document> carts = mongoTemplate.stream(query, Document.class, COLLECTION)) {
+            for (Document cart : (Iterable<Document>) carts::iterator) {
+                ids.add(cart.get("_id"));
+                String owner = cart.getString("owner_key");
+                if (owner != null) owners.add(owner);
+                if (ids.size() >= properties.getCompactionBatchSize()) {
+                    deleted += deleteBatch(ids, owners);
+                }
+            }
+        }
+        if (!ids.isEmpty()) deleted += deleteBatch(ids, owners);
+
+        if (deleted > 0) {
+            log.info("✅ [CART] Compacted carts: {} deleted in {}ms", deleted, System.currentTimeMillis() - startTime);
+        }
+        return deleted;
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    /** Giỏ trống không đổi quá empty-cart-ttl, hoặc giỏ khách không đổi quá anonymous-ttl. */
+    private Criteria staleCriteria() {
+        LocalDateTime now = LocalDateTime.now();
+        Criteria empty = new Criteria().orOperator(
+                Criteria.where("items").exists(false),
+                Criteria.where("items").size(0));
+        return new Criteria().orOperator(
+                new Criteria().andOperator(
+                        Criteria.where("updated_at").lt(now.minus(properties.getEmptyCartTtl())), empty),
+                Criteria.where("updated_at").lt(now.minus(properties.getAnonymousTtl()))
+                        .and("anonymous").is(true),
+                // Giỏ khách cũ chưa được gắn cờ anonymous
+                Criteria.where("updated_at").lt(now.minus(properties.getAnonymousTtl()))
+                        .and("user_id").regex("^" + CartService.ANONYMOUS_PREFIX));
+    }
+
+    /** Xóa một lô (kiểm tra lại điều kiện quá hạn: giỏ vừa được dùng lại thì giữ), trả tồn của owner không còn giỏ. */
+    private long deleteBatch(List<Object> ids, Set<String> owners) {
+        long deleted = mongoTemplate.remove(new Query(new Criteria().andOperator(
+                Criteria.where("_id").in(ids), staleCriteria())), COLLECTION).getDeletedCount();
+
+        // Owner vẫn còn giỏ (giỏ được dùng lại / giỏ trùng) thì không trả tồn của họ
+        Query remainingQuery = new Query(Criteria.where("owner_key").in(owners));
+        remainingQuery.fields().include("owner_key");
+        for (Document remaining : mongoTemplate.find(remainingQuery, Document.class, COLLECTION)) {
+            owners.remove(remaining.getString("owner_key"));
+        }
+        int released = inventoryService.releaseAll(owners);
+        if (released > 0) log.info("🔄 [CART] Released {} stock reservations of deleted carts", released);
+
+        ids.clear();
+        owners.clear();
+        return deleted;
+    }
+
+    /**
+     * Migration: gán owner_key cho giỏ chưa có (user_id, thiếu thì session_id).
+     * Khóa đã thuộc giỏ khác (dữ liệu cũ có giỏ trùng) -> gộp item vào giỏ đó và xóa giỏ trùng.
+     */
+    private void backfillOwnerKeys() {
+        Query query = new Query(Criteria.where("owner_key").exists(false));
+        query.fields().include("_id", "user_id", "session_id");
+        query.cursorBatchSize(properties.getCompactionBatchSize());
+        long keyed = 0;
+        long merged = 0;
+        try (Stream<Document> carts = mongoTemplate.stream(query, Document.class, COLLECTION)) {
+            for (Document cart : (Iterable<Document>) carts::iterator) {
+                String ownerKey = cart.getString("user_id") != null ? cart.getString("user_id") : cart.getString("session_id");
+                if (ownerKey == null) continue; // Giỏ không có chủ: job dọn giỏ xử lý
+                try {
+                    keyed += mongoTemplate.updateFirst(
+                            new Query(Criteria.where("_id").is(cart.get("_id")).and("owner_key").exists(false)),
+                            new Update().set("owner_key", ownerKey), COLLECTION).getModifiedCount();
+                } catch (DuplicateKeyException e) {
+                    cartService.absorbCart(cart.get("_id").toString(), ownerKey);
+                    merged++;
+                }
+            }
+        }
+        if (keyed > 0 || merged > 0) {
+            log.info("✅ [CART] Backfilled owner_key: {} carts keyed, {} duplicate carts merged", keyed, merged);
+        }
+    }
+
+    /** TTL index partial: chỉ giỏ anonymous = true hết hạn theo updated_at. */
+    private void ensureTtlIndex() {
+        try {
+            mongoTemplate.indexOps(COLLECTION).createIndex(new Index()
+                    .on("updated_at", Sort.Direction.ASC)
+                    .named(TTL_INDEX)
+                    .expire(properties.getAnonymousTtl())
+                    .partial(PartialIndexFilter.of(Criteria.where("anonymous").is(true))));
+        } catch (RuntimeException e) {
+            // Index đã tồn tại với TTL khác: đổi app.carts.anonymous-ttl cần drop index cũ (collMod) thủ công
+            log.warn("⚠️ [CART] Could not create TTL index {}: {}", TTL_INDEX, e.getMessage());
+        }
+    }
+}
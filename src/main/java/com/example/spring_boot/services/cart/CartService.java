@@ -4,27 +4,50 @@ import com.example.spring_boot.domains.cart.Cart;
 import com.example.spring_boot.domains.cart.CartItem;
 import com.example.spring_boot.domains.products.Product;
 import com.example.spring_boot.repository.cart.CartRepository;
+import com.example.spring_boot.services.products.InventoryService;
 import com.example.spring_boot.services.products.ProductService;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Service
 public class CartService {
     
+    // Số lần thử lại khi request khác vừa thêm cùng sản phẩm giữa hai bước $inc / $push
+    private static final int MAX_ADD_ATTEMPTS = 3;
+    
+    // Tiền tố session id do client tạo cho khách chưa đăng nhập (cart-api.js)
+    public static final String ANONYMOUS_PREFIX = "session_";
+    
     @Autowired
     private CartRepository cartRepository;
     
     @Autowired
     private ProductService productService;
     
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private InventoryService inventoryService;
+    
     /**
-     * Lấy giỏ hàng theo user ID hoặc session ID
+     * Lấy giỏ hàng theo user ID hoặc session ID (tra theo owner_key có unique index)
      */
     public Optional<Cart> getCart(String userIdOrSessionId) {
-        return cartRepository.findByUserIdOrSessionId(userIdOrSessionId);
+        return cartRepository.findByOwnerKey(userIdOrSessionId);
     }
     
     /**
@@ -32,6 +55,7 @@ public class CartService {
      */
     public Cart createCart(String userId, String sessionId) {
         Cart cart = new Cart(userId, sessionId);
+        cart.setAnonymous(userId == null || userId.startsWith(ANONYMOUS_PREFIX)); // Giỏ khách -> hết hạn theo TTL
         return cartRepository.save(cart);
     }
     
@@ -39,31 +63,82 @@ public class CartService {
      * Lấy hoặc tạo giỏ hàng
      */
     public Cart getOrCreateCart(String userId, String sessionId) {
-        Optional<Cart> existingCart = cartRepository.findByUserIdOrSessionId(userId != null ? userId : sessionId);
+        String ownerKey = userId != null ? userId : sessionId;
+        Optional<Cart> existingCart = cartRepository.findByOwnerKey(ownerKey);
         if (existingCart.isPresent()) {
             return existingCart.get();
         }
-        return createCart(userId, sessionId);
+        try {
+            return createCart(userId, sessionId);
+        } catch (DuplicateKeyException e) {
+            // Request khác vừa tạo giỏ cho cùng owner_key -> dùng giỏ đó
+            return cartRepository.findByOwnerKey(ownerKey).orElseThrow(() -> e);
+        }
+    }
+    
+    /**
+     * Gộp giỏ khách vào giỏ của user khi đăng nhập
+     * - User chưa có giỏ: đổi owner_key của giỏ session thành userId (một findAndModify nguyên tử)
+     * - User đã có giỏ: lấy giỏ session ra (findAndRemove) và cộng dồn item vào giỏ user bằng một update
+     * Tồn đang giữ của session được chuyển sang user. Trả về giỏ của user (null nếu cả hai đều không có giỏ).
+     */
+    public Cart mergeCarts(String sessionId, String userId) {
+        if (sessionId == null || userId == null) {
+            throw new RuntimeException("Thiếu session ID hoặc user ID");
+        }
+        if (sessionId.equals(userId)) {
+            return getCart(userId).orElse(null);
+        }
+        
+        Cart merged;
+        try {
+            merged = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("owner_key").is(sessionId)),
+                    new Update()
+                            .set("owner_key", userId)
+                            .set("user_id", userId)
+                            .set("anonymous", userId.startsWith(ANONYMOUS_PREFIX))
+                            .set("updated_at", LocalDateTime.now()),
+                    FindAndModifyOptions.options().returnNew(true),
+                    Cart.class);
+        } catch (DuplicateKeyException e) {
+            // User đã có giỏ: lấy giỏ session ra (chỉ một request gộp được) rồi cộng dồn vào giỏ user
+            Cart sessionCart = mongoTemplate.findAndRemove(
+                    new Query(Criteria.where("owner_key").is(sessionId)), Cart.class);
+            merged = sessionCart != null ? foldInto(userId, sessionCart) : null;
+        }
+        if (merged == null) {
+            return getCart(userId).orElse(null); // Không có giỏ session để gộp
+        }
+        
+        inventoryService.transferAll(sessionId, userId);
+        return merged;
+    }
+    
+    /**
+     * Gộp một giỏ cũ trùng owner_key (migration backfill) vào giỏ đang giữ khóa đó; trả về giỏ sau gộp.
+     */
+    public Cart absorbCart(String cartId, String ownerKey) {
+        Cart duplicate = mongoTemplate.findAndRemove(new Query(Criteria.where("_id").is(cartId)), Cart.class);
+        return duplicate != null ? foldInto(ownerKey, duplicate) : getCart(ownerKey).orElse(null);
     }
     
     /**
      * Thêm sản phẩm vào giỏ hàng
+     * Giỏ hàng được sửa nguyên tử trên server (findAndModify), không load - sửa - save cả document
+     * Tồn được giữ bằng một update có điều kiện (InventoryService), không đọc - kiểm tra - ghi Product
      */
     public Cart addToCart(String userIdOrSessionId, String productId, Integer quantity) {
+        if (quantity == null || quantity <= 0) {
+            throw new RuntimeException("Số lượng không hợp lệ");
+        }
+        
         // Lấy thông tin sản phẩm
         Product product = productService.getById(productId);
         if (product == null) {
             throw new RuntimeException("Sản phẩm không tồn tại");
         }
         
-        // Kiểm tra số lượng tồn kho
-        if (product.getStock() < quantity) {
-            throw new RuntimeException("Số lượng sản phẩm không đủ");
-        }
-        
-        // Lấy hoặc tạo giỏ hàng
-        Cart cart = getOrCreateCart(userIdOrSessionId, userIdOrSessionId);
-        
         // Tạo cart item
         CartItem cartItem = new CartItem(
             productId,
@@ -72,14 +147,16 @@ public class CartService {
             quantity
         );
         
-        // Thêm vào giỏ hàng
-        cart.addItem(cartItem);
-        
-        // Cập nhật stock
-        product.setStock(product.getStock() - quantity);
-        productService.update(productId, product);
-        
-        return cartRepository.save(cart);
+        // Giữ tồn (stock >= quantity mới trừ được) - không đủ thì dừng ở đây
+        inventoryService.reserve(userIdOrSessionId, productId, quantity);
+        try {
+            // Lấy hoặc tạo giỏ hàng, thêm item ($inc nếu đã có, $push nếu chưa) - trả về giỏ sau cập nhật
+            Cart cart = getOrCreateCart(userIdOrSessionId, userIdOrSessionId);
+            return addItemAtomically(cart.getId(), cartItem);
+        } catch (RuntimeException e) {
+            inventoryService.release(userIdOrSessionId, productId, quantity); // Không thêm được -> trả tồn vừa giữ
+            throw e;
+        }
     }
     
     /**
@@ -93,75 +170,94 @@ public class CartService {
             throw new RuntimeException("Sản phẩm không có trong giỏ hàng");
         }
         
-        // Lấy thông tin sản phẩm để kiểm tra stock
+        // Kiểm tra sản phẩm còn tồn tại
         Product product = productService.getById(productId);
         if (product == null) {
             throw new RuntimeException("Sản phẩm không tồn tại");
         }
         
-        // Tính toán số lượng thay đổi
-        int quantityChange = quantity - existingItem.getQuantity();
+        // Tăng số lượng: giữ thêm tồn trước (không đủ thì dừng, giỏ không đổi)
+        int newQuantity = Math.max(quantity, 0);
+        int reserved = Math.max(newQuantity - existingItem.getQuantity(), 0);
+        inventoryService.reserve(userIdOrSessionId, productId, reserved);
         
-        // Kiểm tra stock
-        if (product.getStock() < quantityChange) {
-            throw new RuntimeException("Số lượng sản phẩm không đủ");
+        // Cập nhật số lượng nguyên tử ($set tại phần tử khớp, $pull nếu <= 0); nhận lại bản trước cập nhật
+        Cart before;
+        try {
+            before = newQuantity > 0
+                    ? modifyItem(cart.getId(), productId, new Update().set("items.$.quantity", newQuantity))
+                    : modifyItem(cart.getId(), productId, pullItem(productId));
+        } catch (RuntimeException e) {
+            inventoryService.release(userIdOrSessionId, productId, reserved); // Không cập nhật được -> trả tồn vừa giữ
+            throw e;
+        }
+        CartItem previousItem = before != null ? before.findItemByProductId(productId) : null;
+        if (previousItem == null) {
+            inventoryService.release(userIdOrSessionId, productId, reserved);
+            throw new RuntimeException("Sản phẩm không có trong giỏ hàng"); // Request khác vừa xóa
         }
         
-        // Cập nhật số lượng
-        cart.updateItemQuantity(productId, quantity);
+        // Số lượng thay đổi tính từ đúng bản mà lệnh cập nhật đã áp dụng
+        int quantityChange = newQuantity - previousItem.getQuantity();
+        before.updateItemQuantity(productId, newQuantity); // Áp cùng thay đổi -> giỏ sau cập nhật
         
-        // Cập nhật stock
-        if (quantityChange > 0) {
-            product.setStock(product.getStock() - quantityChange);
-        } else if (quantityChange < 0) {
-            product.setStock(product.getStock() + (-quantityChange));
+        // Chỉnh phần tồn đã giữ theo thay đổi thực tế (request khác có thể vừa sửa cùng item)
+        if (quantityChange < reserved) {
+            inventoryService.release(userIdOrSessionId, productId, reserved - quantityChange);
+        } else if (quantityChange > reserved) {
+            try {
+                inventoryService.reserve(userIdOrSessionId, productId, quantityChange - reserved);
+            } catch (RuntimeException e) {
+                // Không giữ thêm được: đưa item về số lượng đã được giữ (nếu chưa bị request khác sửa) và báo lỗi
+                mongoTemplate.updateFirst(
+                        new Query(Criteria.where("_id").is(cart.getId()).and("items").elemMatch(
+                                Criteria.where("product_id").is(productId).and("quantity").is(newQuantity))),
+                        new Update().set("items.$.quantity", previousItem.getQuantity() + reserved)
+                                .set("updated_at", LocalDateTime.now()),
+                        Cart.class);
+                throw e;
+            }
         }
-        productService.update(productId, product);
         
-        return cartRepository.save(cart);
+        return before;
     }
     
     /**
-     * Xóa sản phẩm khỏi giỏ hàng
+     * Xóa sản phẩm khỏi giỏ hàng ($pull nguyên tử theo chủ giỏ, một round-trip)
      */
     public Cart removeFromCart(String userIdOrSessionId, String productId) {
-        Cart cart = getCart(userIdOrSessionId).orElseThrow(() -> new RuntimeException("Giỏ hàng không tồn tại"));
-        
-        CartItem item = cart.findItemByProductId(productId);
-        if (item == null) {
+        Cart before = mongoTemplate.findAndModify(
+                new Query(ownerCriteria(userIdOrSessionId).and("items.product_id").is(productId)),
+                pullItem(productId),
+                FindAndModifyOptions.options().returnNew(false),
+                Cart.class);
+        if (before == null) {
             throw new RuntimeException("Sản phẩm không có trong giỏ hàng");
         }
         
-        // Restore stock
-        Product product = productService.getById(productId);
-        if (product != null) {
-            product.setStock(product.getStock() + item.getQuantity());
-            productService.update(productId, product);
-        }
-        
-        // Xóa khỏi giỏ hàng
-        cart.removeItem(productId);
+        // Trả tồn đang giữ theo số lượng đúng lúc xóa
+        CartItem item = before.findItemByProductId(productId);
+        inventoryService.release(userIdOrSessionId, productId, item.getQuantity());
         
-        return cartRepository.save(cart);
+        before.removeItem(productId); // Áp cùng thay đổi -> giỏ sau cập nhật
+        return before;
     }
     
     /**
-     * Làm trống giỏ hàng
+     * Làm trống giỏ hàng ($set items = [] nguyên tử) và trả toàn bộ tồn đang giữ
      */
     public Cart clearCart(String userIdOrSessionId) {
-        Cart cart = getCart(userIdOrSessionId).orElseThrow(() -> new RuntimeException("Giỏ hàng không tồn tại"));
-        
-        // Restore stock cho tất cả sản phẩm
-        for (CartItem item : cart.getItems()) {
-            Product product = productService.getById(item.getProductId());
-            if (product != null) {
-                product.setStock(product.getStock() + item.getQuantity());
-                productService.update(item.getProductId(), product);
-            }
-        }
-        
-        cart.clear();
-        return cartRepository.save(cart);
+        Cart cart = emptyCart(userIdOrSessionId);
+        inventoryService.releaseAll(userIdOrSessionId);
+        return cart;
+    }
+    
+    /**
+     * Làm trống giỏ hàng sau khi thanh toán thành công - KHÔNG trả tồn
+     * (reservation đã được chuyển thành số bán bởi InventoryService.convert)
+     */
+    public Cart clearCartAfterCheckout(String userIdOrSessionId) {
+        return emptyCart(userIdOrSessionId);
     }
     
     /**
@@ -191,4 +287,106 @@ public class CartService {
     public void deleteCartBySessionId(String sessionId) {
         cartRepository.deleteBySessionId(sessionId);
     }
+    
+    // =====================================================
+    // ATOMIC CART MUTATIONS
+    // =====================================================
+    
+    /**
+     * Thêm item vào giỏ bằng findAndModify, trả về giỏ sau cập nhật:
+     * - đã có sản phẩm: $inc items.$.quantity tại phần tử khớp items.product_id
+     * - chưa có: $push, chỉ khi giỏ vẫn chưa có sản phẩm đó (hai request cùng thêm không tạo 2 dòng)
+     */
+    private Cart addItemAtomically(String cartId, CartItem item) {
+        for (int attempt = 0; attempt < MAX_ADD_ATTEMPTS; attempt++) {
+            Cart updated = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(cartId).and("items.product_id").is(item.getProductId())),
+                    new Update().inc("items.$.quantity", item.getQuantity()).set("updated_at", LocalDateTime.now()),
+                    FindAndModifyOptions.options().returnNew(true),
+                    Cart.class);
+            if (updated != null) return updated;
+            
+            updated = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(cartId).and("items.product_id").ne(item.getProductId())),
+                    new Update().push("items", item).set("updated_at", LocalDateTime.now()),
+                    FindAndModifyOptions.options().returnNew(true),
+                    Cart.class);
+            if (updated != null) return updated;
+            // Không khớp nhánh nào: request khác vừa $push sản phẩm này -> thử lại nhánh $inc
+        }
+        throw new RuntimeException("Giỏ hàng không tồn tại");
+    }
+    
+    /** $set items = [] theo chủ giỏ; trả về giỏ đã làm trống. */
+    private Cart emptyCart(String userIdOrSessionId) {
+        Cart cart = mongoTemplate.findAndModify(
+                new Query(ownerCriteria(userIdOrSessionId)),
+                new Update().set("items", List.of()).set("updated_at", LocalDateTime.now()),
+                FindAndModifyOptions.options().returnNew(true),
+                Cart.class);
+        if (cart == null) {
+            throw new RuntimeException("Giỏ hàng không tồn tại");
+        }
+        return cart;
+    }
+    
+    /** Sửa phần tử có product_id trong giỏ; trả về giỏ TRƯỚC cập nhật (null nếu không có item). */
+    private Cart modifyItem(String cartId, String productId, Update update) {
+        return mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(cartId).and("items.product_id").is(productId)),
+                update.set("updated_at", LocalDateTime.now()),
+                FindAndModifyOptions.options().returnNew(false),
+                Cart.class);
+    }
+    
+    /**
+     * Cộng dồn item của giỏ đã lấy ra vào giỏ ownerKey trong MỘT findAndModify (update pipeline, upsert):
+     * sản phẩm đã có thì cộng quantity, chưa có thì nối thêm dòng.
+     */
+    private Cart foldInto(String ownerKey, Cart source) {
+        List<CartItem> sourceItems = source.getItems() != null ? source.getItems() : List.of();
+        Object incoming = new Document("$literal", mongoTemplate.getConverter().convertToMongoType(sourceItems));
+        Object items = new Document("$ifNull", List.of("$items", List.of()));
+        
+        // Dòng đã có: quantity + tổng quantity cùng product_id của giỏ nguồn
+        Document sameProduct = new Document("$filter", new Document("input", incoming)
+                .append("as", "n")
+                .append("cond", new Document("$eq", List.of("$$n.product_id", "$$i.product_id"))));
+        Document summed = new Document("$map", new Document("input", items)
+                .append("as", "i")
+                .append("in", new Document("$mergeObjects", List.of("$$i", new Document("quantity",
+                        new Document("$add", List.of("$$i.quantity", new Document("$sum",
+                                new Document("$map", new Document("input", sameProduct)
+                                        .append("as", "n")
+                                        .append("in", "$$n.quantity"))))))))));
+        // Dòng mới: sản phẩm giỏ đích chưa có
+        Document added = new Document("$filter", new Document("input", incoming)
+                .append("as", "n")
+                .append("cond", new Document("$not", List.of(new Document("$in", List.of("$$n.product_id",
+                        new Document("$map", new Document("input", items).append("as", "i").append("in", "$$i.product_id"))))))));
+        
+        Object now = mongoTemplate.getConverter().convertToMongoType(LocalDateTime.now());
+        Document set = new Document("items", new Document("$concatArrays", List.of(summed, added)))
+                .append("user_id", new Document("$ifNull", List.of("$user_id", ownerKey)))
+                .append("session_id", new Document("$ifNull", List.of("$session_id", ownerKey)))
+                .append("anonymous", ownerKey.startsWith(ANONYMOUS_PREFIX))
+                .append("created_at", new Document("$ifNull", List.of("$created_at", now)))
+                .append("updated_at", now);
+        AggregationOperation setStage = context -> new Document("$set", set);
+        
+        return mongoTemplate.findAndModify(
+                new Query(Criteria.where("owner_key").is(ownerKey)),
+                AggregationUpdate.from(List.of(setStage)),
+                FindAndModifyOptions.options().returnNew(true).upsert(true),
+                Cart.class);
+    }
+    
+    private Update pullItem(String productId) {
+        return new Update().pull("items", new Document("product_id", productId)).set("updated_at", LocalDateTime.now());
+    }
+    
+    /** Giỏ của user hoặc session (giống CartRepository.findByOwnerKey). */
+    private Criteria ownerCriteria(String userIdOrSessionId) {
+        return Criteria.where("owner_key").is(userIdOrSessionId);
+    }
 }
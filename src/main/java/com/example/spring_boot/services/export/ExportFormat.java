@@ -0,0 +1,36 @@
+package com.example.spring_boot.services.export; // Package service export dữ liệu
+
+/**
+ * Định dạng file export: content type + phần mở rộng file.
+ */
+public enum ExportFormat {
+    CSV("text/csv; charset=UTF-8", "csv"),
+    NDJSON("application/x-ndjson", "ndjson"),
+    XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /** Parse từ query param, giá trị rỗng -> CSV */
+    public static ExportFormat from(String value) {
+        if (value == null || value.isBlank()) return CSV;
+        try {
+            return ExportFormat.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported export format: " + value + " (csv, ndjson, xlsx)");
+        }
+    }
+}
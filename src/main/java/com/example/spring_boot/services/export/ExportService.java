@@ -0,0 +1,320 @@
+package com.example.spring_boot.services.export; // Package service export dữ liệu
+
+import com.example.spring_boot.utils.XlsxStreamWriter; // Ghi XLSX streaming
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô từ cursor
+import org.bson.json.JsonMode; // Chế độ JSON relaxed
+import org.bson.json.JsonWriterSettings; // Định dạng JSON cho ObjectId / Date
+import org.bson.types.Decimal128; // Số thập phân Mongo
+import org.bson.types.ObjectId; // Id Mongo
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.stereotype.Service; // Bean service Spring
+
+import java.io.BufferedWriter; // Buffer ghi response
+import java.io.IOException; // Lỗi ghi stream
+import java.io.OutputStream; // Body response
+import java.io.OutputStreamWriter; // Encode UTF-8
+import java.io.Writer; // Ghi text
+import java.nio.charset.StandardCharsets; // UTF-8
+import java.time.Instant; // Thời điểm UTC
+import java.time.LocalDate; // Ngày (from/to dạng yyyy-MM-dd)
+import java.time.ZoneId; // Múi giờ hệ thống
+import java.time.format.DateTimeParseException; // Lỗi parse ngày
+import java.util.ArrayList; // ArrayList implementation
+import java.util.Date; // Ngày lưu trong Mongo
+import java.util.LinkedHashMap; // Giữ thứ tự cột
+import java.util.List; // Danh sách
+import java.util.Map; // Map tên cột -> field Mongo
+import java.util.stream.Stream; // Stream cursor Mongo
+
+/**
+ * Export products / orders ra CSV, NDJSON hoặc XLSX bằng cursor Mongo.
+ * - Đọc từng document từ cursor và ghi thẳng ra response: bộ nhớ không phụ thuộc số bản ghi
+ * - Chỉ lấy các field được yêu cầu (projection) và lọc theo khoảng ngày tạo
+ * - Tên cột theo tên field của API (orderNumber, totalAmount...), tự map sang tên field trong Mongo
+ */
+@Service // Đăng ký bean service
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class ExportService {
+
+    private static final int CURSOR_BATCH_SIZE = 1000; // Số document mỗi lần getMore
+    private static final int FLUSH_EVERY = 1000; // Flush response sau mỗi N dòng
+
+    private static final JsonWriterSettings JSON = JsonWriterSettings.builder()
+            .outputMode(JsonMode.RELAXED)
+            .objectIdConverter((value, writer) -> writer.writeString(value.toHexString()))
+            .dateTimeConverter((value, writer) -> writer.writeString(Instant.ofEpochMilli(value).toString()))
+            .decimal128Converter((value, writer) -> writer.writeNumber(value.bigDecimalValue().toPlainString()))
+            .build();
+
+    /** Cột export của products: tên cột -> field Mongo (thứ tự = thứ tự mặc định) */
+    private static final Map<String, String> PRODUCT_FIELDS = orderedMap(
+            "id", "_id",
+            "name", "name",
+            "description", "description",
+            "price", "price",
+            "stock", "stock",
+            "categoryId", "categoryId",
+            "primaryImageUrl", "primaryImageUrl",
+            "createdAt", "createdAt",
+            "updatedAt", "updatedAt");
+
+    /** Cột export của orders (Order dùng @Field snake_case) */
+    private static final Map<String, String> ORDER_FIELDS = orderedMap(
+            "id", "_id",
+            "orderNumber", "order_number",
+            "userId", "user_id",
+            "username", "username",
+            "phone", "phone",
+            "address", "address",
+            "items", "items",
+            "totalAmount", "total_amount",
+            "status", "status",
+            "paymentMethod", "payment_method",
+            "paymentStatus", "payment_status",
+            "paymentTime", "payment_time",
+            "transactionId", "transaction_id",
+            "createdAt", "created_at",
+            "updatedAt", "updated_at");
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+
+    /** Export products active; fields rỗng -> tất cả cột, from/to lọc theo createdAt. */
+    public void exportProducts(OutputStream output, ExportFormat format, List<String> fields, String from, String to)
+            throws IOException {
+        Query query = new Query(Criteria.where("deletedAt").isNull());
+        export(output, format, "products", PRODUCT_FIELDS, fields, query, "createdAt", from, to);
+    }
+
+    /** Export orders; status / paymentStatus tùy chọn, from/to lọc theo created_at. */
+    public void exportOrders(OutputStream output, ExportFormat format, List<String> fields, String from, String to,
+            String status, String paymentStatus) throws IOException {
+        Query query = new Query();
+        if (status != null && !status.isBlank()) {
+            query.addCriteria(Criteria.where("status").is(status));
+        }
+        if (paymentStatus != null && !paymentStatus.isBlank()) {
+            query.addCriteria(Criteria.where("payment_status").in(paymentStatus.toLowerCase(), paymentStatus.toUpperCase()));
+        }
+        export(output, format, "orders", ORDER_FIELDS, fields, query, "created_at", from, to);
+    }
+
+    /** Kiểm tra danh sách cột trước khi bắt đầu stream (để trả 400 thay vì hỏng response giữa chừng). */
+    public List<String> resolveColumns(String collection, List<String> fields) {
+        return resolveColumns("orders".equals(collection) ? ORDER_FIELDS : PRODUCT_FIELDS, fields);
+    }
+
+    /** Parse from/to (yyyy-MM-dd hoặc ISO-8601 instant); to dạng ngày được tính hết ngày đó. */
+    public Date parseDate(String value, boolean endOfRange) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            if (value.length() <= 10) {
+                LocalDate day = LocalDate.parse(value.trim());
+                if (endOfRange) day = day.plusDays(1);
+                return Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+            }
+            return Date.from(Instant.parse(value.trim()));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date '" + value + "', expected yyyy-MM-dd or ISO-8601 instant");
+        }
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private static List<String> resolveColumns(Map<String, String> available, List<String> fields) {
+        if (fields == null || fields.isEmpty()) return new ArrayList<>(available.keySet());
+        List<String> columns = new ArrayList<>();
+        for (String field : fields) {
+            String name = field.trim();
+            if (name.isEmpty()) continue;
+            if (!available.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown export field '" + name + "', available: " + available.keySet());
+            }
+            if (!columns.contains(name)) columns.add(name);
+        }
+        return columns.isEmpty() ? new ArrayList<>(available.keySet()) : columns;
+    }
+
+    private void export(OutputStream output, ExportFormat format, String collection, Map<String, String> available,
+            List<String> fields, Query query, String dateField, String from, String to) throws IOException {
+        long startTime = System.currentTimeMillis();
+        List<String> columns = resolveColumns(available, fields);
+        List<String> mongoFields = columns.stream().map(available::get).toList();
+
+        Date fromDate = parseDate(from, false);
+        Date toDate = parseDate(to, true);
+        if (fromDate != null || toDate != null) {
+            Criteria range = Criteria.where(dateField);
+            if (fromDate != null) range = range.gte(fromDate);
+            if (toDate != null) range = range.lt(toDate);
+            query.addCriteria(range);
+        }
+        query.fields().include(mongoFields.toArray(String[]::new));
+        if (!mongoFields.contains("_id")) query.fields().exclude("_id");
+        query.cursorBatchSize(CURSOR_BATCH_SIZE);
+
+        long rows = 0;
+        RowWriter writer = newWriter(output, format, collection, columns);
+        try (Stream<Document> docs = mongoTemplate.stream(query, Document.class, collection)) {
+            for (Document doc : (Iterable<Document>) docs::iterator) {
+                List<Object> values = new ArrayList<>(mongoFields.size());
+                for (String field : mongoFields) {
+                    values.add(doc.get(field));
+                }
+                writer.row(values);
+                if (++rows % FLUSH_EVERY == 0) writer.flush();
+            }
+        } finally {
+            writer.close();
+        }
+        log.info("📤 [EXPORT] Exported {} {} as {} in {}ms", rows, collection, format,
+                System.currentTimeMillis() - startTime);
+    }
+
+    private RowWriter newWriter(OutputStream output, ExportFormat format, String sheetName, List<String> columns)
+            throws IOException {
+        return switch (format) {
+            case CSV -> new CsvRowWriter(output, columns);
+            case NDJSON -> new NdjsonRowWriter(output, columns);
+            case XLSX -> new XlsxRowWriter(output, sheetName, columns);
+        };
+    }
+
+    /** Ghi từng dòng theo định dạng đích */
+    private interface RowWriter {
+        void row(List<Object> values) throws IOException;
+
+        void flush() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer out;
+
+        CsvRowWriter(OutputStream output, List<String> columns) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            out.write('\uFEFF'); // BOM để Excel nhận UTF-8 (tiếng Việt)
+            writeLine(new ArrayList<>(columns));
+        }
+
+        @Override
+        public void row(List<Object> values) throws IOException {
+            List<Object> cells = new ArrayList<>(values.size());
+            for (Object value : values) cells.add(toText(value));
+            writeLine(cells);
+        }
+
+        private void writeLine(List<Object> cells) throws IOException {
+            for (int i = 0; i < cells.size(); i++) {
+                if (i > 0) out.write(',');
+                Object cell = cells.get(i);
+                if (cell != null) out.write(escapeCsv(cell.toString()));
+            }
+            out.write("\r\n");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static final class NdjsonRowWriter implements RowWriter {
+        private final Writer out;
+        private final List<String> columns;
+
+        NdjsonRowWriter(OutputStream output, List<String> columns) {
+            this.out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            this.columns = columns;
+        }
+
+        @Override
+        public void row(List<Object> values) throws IOException {
+            Document line = new Document();
+            for (int i = 0; i < columns.size(); i++) {
+                line.append(columns.get(i), values.get(i));
+            }
+            out.write(line.toJson(JSON));
+            out.write('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static final class XlsxRowWriter implements RowWriter {
+        private final XlsxStreamWriter xlsx;
+
+        XlsxRowWriter(OutputStream output, String sheetName, List<String> columns) throws IOException {
+            this.xlsx = new XlsxStreamWriter(output, sheetName);
+            xlsx.writeRow(columns);
+        }
+
+        @Override
+        public void row(List<Object> values) throws IOException {
+            List<Object> cells = new ArrayList<>(values.size());
+            for (Object value : values) {
+                cells.add(value instanceof Number && !(value instanceof Decimal128) ? value : toText(value));
+            }
+            xlsx.writeRow(cells);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            xlsx.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            xlsx.close();
+        }
+    }
+
+    /** Giá trị đơn cho CSV / XLSX: ObjectId -> hex, Date -> ISO, document/mảng lồng nhau -> JSON */
+    private static String toText(Object value) {
+        if (value == null) return null;
+        if (value instanceof ObjectId id) return id.toHexString();
+        if (value instanceof Date date) return date.toInstant().toString();
+        if (value instanceof Decimal128 decimal) return decimal.bigDecimalValue().toPlainString();
+        if (value instanceof Document doc) return doc.toJson(JSON);
+        if (value instanceof List<?> list) {
+            String json = new Document("v", list).toJson(JSON);
+            return json.substring(json.indexOf('['), json.lastIndexOf(']') + 1);
+        }
+        return value.toString();
+    }
+
+    private static String escapeCsv(String value) {
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        return quote ? "\"" + value.replace("\"", "\"\"") + "\"" : value;
+    }
+
+    private static Map<String, String> orderedMap(String... pairs) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            map.put(pairs[i], pairs[i + 1]);
+        }
+        return map;
+    }
+}
@@ -6,16 +6,29 @@ import com.example.spring_boot.domains.order.Order;
 import com.example.spring_boot.domains.order.OrderItem;
 import com.example.spring_boot.repository.order.OrderRepository;
 import com.example.spring_boot.services.cart.CartService;
+import com.example.spring_boot.services.products.InventoryService;
+import com.example.spring_boot.services.products.ProductRecommendationService;
+import com.example.spring_boot.services.products.ProductSalesService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
+@Slf4j
 public class OrderService {
     
     @Autowired
@@ -24,6 +37,21 @@ public class OrderService {
     @Autowired
     private CartService cartService;
     
+    @Autowired
+    private ProductSalesService productSalesService;
+    
+    @Autowired
+    private ProductRecommendationService productRecommendationService;
+    
+    @Autowired
+    private InventoryService inventoryService;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    // Trạng thái thanh toán đã chốt (PAID từ VNPay, paid từ updatePaymentInfo)
+    private static final List<String> PAID_STATUSES = List.of("PAID", "paid");
+    
     /**
      * Tạo đơn hàng từ giỏ hàng
      */
@@ -50,6 +78,9 @@ public class OrderService {
             order.addItem(orderItem);
         }
         
+        // Giữ đủ tồn cho đơn tới hết thời gian chờ thanh toán (giữ bù reservation đã hết hạn)
+        inventoryService.holdForCheckout(userIdOrSessionId, quantitiesByProduct(order));
+        
         // Lưu đơn hàng (chưa xóa cart)
         Order savedOrder = orderRepository.save(order);
         
@@ -189,11 +220,30 @@ public class OrderService {
      * Cập nhật thông tin thanh toán
      */
     public Order updatePaymentInfo(String orderId, String paymentMethod, String transactionId) {
-        Order order = getOrderById(orderId).orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại"));
+        getOrderById(orderId).orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại"));
         
-        order.updatePaymentInfo(paymentMethod, transactionId);
+        LocalDateTime now = LocalDateTime.now();
+        Update update = new Update()
+                .set("payment_method", paymentMethod)
+                .set("transaction_id", transactionId)
+                .set("payment_status", "paid")
+                .set("payment_time", now)
+                .set("status", "paid")
+                .set("updated_at", now);
         
-        return orderRepository.save(order);
+        // Chỉ lần chuyển sang đã thanh toán đầu tiên (update có điều kiện) mới chốt tồn + cộng số lượng bán
+        Order paidOrder = transitionPayment(orderId, update, PAID_STATUSES);
+        if (paidOrder == null) {
+            // Đơn đã thanh toán trước đó: chỉ cập nhật thông tin thanh toán
+            return mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(orderId)),
+                    new Update().set("payment_method", paymentMethod).set("transaction_id", transactionId).set("updated_at", now),
+                    FindAndModifyOptions.options().returnNew(true), Order.class);
+        }
+        
+        inventoryService.convert(ownerOf(paidOrder), orderId, quantitiesByProduct(paidOrder));
+        productSalesService.recordOrder(paidOrder);
+        productRecommendationService.recordOrder(paidOrder);
+        return paidOrder;
     }
     
     /**
@@ -231,7 +281,8 @@ public class OrderService {
     /**
      * Xử lý thanh toán thành công - xóa cart và cập nhật order
      * 
-     * CART: ❌ XÓA HOÀN TOÀN (clearCart)
+     * CART: ❌ XÓA HOÀN TOÀN (clearCartAfterCheckout)
+     * TỒN: ✅ Reservation thành số bán; phần giữ dư trả lại bằng một bulkWrite
      * ORDER: ✅ Cập nhật thành PROCESSING + PAID
      */
     public Order handlePaymentSuccess(String orderId, String transactionId) {
@@ -242,29 +293,69 @@ public class OrderService {
         System.out.println("Order ID: " + orderId);
         System.out.println("Transaction ID: " + transactionId);
         
-        // 1. Cập nhật trạng thái Order
-        order.setStatus("PROCESSING");           // Đơn hàng đang xử lý
-        order.setPaymentStatus("PAID");          // Đã thanh toán
-        order.setTransactionId(transactionId);    // Mã giao dịch VNPay
-        order.setPaymentTime(LocalDateTime.now()); // Thời gian thanh toán
-        order.setUpdatedAt(LocalDateTime.now());
+        // 1. Cập nhật trạng thái Order CÓ ĐIỀU KIỆN (payment_status chưa PAID):
+        //    VNPay có thể gọi lại return/IPN nhiều lần / cùng lúc - chỉ một lần gọi chuyển được sang PAID
+        LocalDateTime now = LocalDateTime.now();
+        Order savedOrder = transitionPayment(orderId, new Update()
+                .set("status", "PROCESSING")           // Đơn hàng đang xử lý
+                .set("payment_status", "PAID")         // Đã thanh toán
+                .set("transaction_id", transactionId)  // Mã giao dịch VNPay
+                .set("payment_time", now)              // Thời gian thanh toán
+                .set("updated_at", now), PAID_STATUSES);
+        if (savedOrder == null) {
+            log.info("ℹ️ [ORDER] Order {} already paid, skipping payment success", orderId);
+            return getOrderById(orderId).orElse(order);
+        }
+        log.info("✅ [ORDER] Order {} marked PAID", savedOrder.getId());
         
-        // 2. XÓA CART HOÀN TOÀN (vì đã thanh toán thành công)
-        String identifier = order.getUserId() != null ? order.getUserId() : order.getSessionId();
-        cartService.clearCart(identifier);
+        // 2. XÓA CART HOÀN TOÀN (vì đã thanh toán thành công) - tồn đang giữ thành số bán, không trả lại
+        String identifier = ownerOf(savedOrder);
+        inventoryService.convert(identifier, orderId, quantitiesByProduct(savedOrder));
+        cartService.clearCartAfterCheckout(identifier);
         System.out.println("✅ Cart đã được xóa cho user: " + identifier);
         
-        // 3. Lưu Order
-        Order savedOrder = orderRepository.save(order);
-        System.out.println("✅ Order đã được cập nhật: " + savedOrder.getId());
+        // 3. Cộng số lượng bán (chỉ lần đầu đơn chuyển sang PAID)
+        productSalesService.recordOrder(savedOrder);
+        productRecommendationService.recordOrder(savedOrder);
         
         return savedOrder;
     }
     
+    /**
+     * Tổng số lượng theo sản phẩm của đơn (gộp dòng trùng sản phẩm)
+     */
+    private Map<String, Integer> quantitiesByProduct(Order order) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItem item : order.getItems()) {
+            quantities.merge(item.getProductId(), item.getQuantity() != null ? item.getQuantity() : 0, Integer::sum);
+        }
+        return quantities;
+    }
+    
+    /**
+     * Chuyển trạng thái thanh toán bằng MỘT findAndModify có điều kiện payment_status không thuộc skippedStatuses.
+     * Trả về đơn sau cập nhật, null nếu đơn đã ở trạng thái đó (lần gọi khác đã chuyển trước).
+     */
+    private Order transitionPayment(String orderId, Update update, List<String> skippedStatuses) {
+        return mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(orderId).and("payment_status").nin(skippedStatuses)),
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                Order.class);
+    }
+    
+    /**
+     * Chủ giỏ / reservation của đơn
+     */
+    private String ownerOf(Order order) {
+        return order.getUserId() != null ? order.getUserId() : order.getSessionId();
+    }
+    
     /**
      * Xử lý thanh toán thất bại - chỉ cập nhật trạng thái
      * 
      * CART: ✅ GIỮ NGUYÊN (không xóa)
+     * TỒN: 🔄 Trả toàn bộ tồn đang giữ (một bulkWrite); thanh toán lại sẽ giữ lại khi tạo đơn
      * ORDER: ❌ Cập nhật thành CANCELLED + FAILED
      */
     public Order handlePaymentFailure(String orderId, String reason) {
@@ -275,18 +366,24 @@ public class OrderService {
         System.out.println("Order ID: " + orderId);
         System.out.println("Reason: " + reason);
         
-        // 1. Cập nhật trạng thái Order
-        order.setStatus("CANCELLED");            // Đơn hàng bị hủy
-        order.setPaymentStatus("FAILED");         // Thanh toán thất bại
-        order.setTransactionId(null);            // Không có mã giao dịch
-        order.setPaymentTime(null);              // Không có thời gian thanh toán
-        order.setUpdatedAt(LocalDateTime.now());
+        // 1. Cập nhật trạng thái Order CÓ ĐIỀU KIỆN: đơn đã thanh toán / đã báo thất bại thì không đổi
+        List<String> skipped = new ArrayList<>(PAID_STATUSES);
+        skipped.add("FAILED");
+        Order savedOrder = transitionPayment(orderId, new Update()
+                .set("status", "CANCELLED")            // Đơn hàng bị hủy
+                .set("payment_status", "FAILED")       // Thanh toán thất bại
+                .unset("transaction_id")               // Không có mã giao dịch
+                .unset("payment_time")                 // Không có thời gian thanh toán
+                .set("updated_at", LocalDateTime.now()), skipped);
+        if (savedOrder == null) {
+            log.info("ℹ️ [ORDER] Order {} already paid or failed, skipping payment failure", orderId);
+            return getOrderById(orderId).orElse(order);
+        }
         
-        // 2. KHÔNG XÓA CART (để user có thể thử lại)
+        // 2. KHÔNG XÓA CART (để user có thể thử lại) - chỉ trả tồn đang giữ cho người mua khác
+        int released = inventoryService.releaseAll(ownerOf(savedOrder));
+        log.info("🔄 [ORDER] Released {} stock reservations of failed order {}", released, savedOrder.getId());
         System.out.println("✅ Cart được giữ nguyên để user thử lại");
-        
-        // 3. Lưu Order
-        Order savedOrder = orderRepository.save(order);
         System.out.println("❌ Order đã được hủy: " + savedOrder.getId());
         
         return savedOrder;
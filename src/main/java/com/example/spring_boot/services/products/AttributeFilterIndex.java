@@ -0,0 +1,385 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô, tránh chi phí mapping khi build index
+import org.bson.types.ObjectId; // ObjectId MongoDB
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.data.domain.Sort; // Thứ tự gán ordinal
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.util.ArrayList; // ArrayList implementation
+import java.util.Arrays; // Sao chép mảng ordinal
+import java.util.BitSet; // Bitmap ordinal
+import java.util.HashMap; // HashMap implementation
+import java.util.LinkedHashSet; // Tập key thuộc tính của product
+import java.util.List; // Danh sách
+import java.util.Map; // Map
+import java.util.Set; // Tập
+import java.util.concurrent.CompletableFuture; // Build index nền
+import java.util.concurrent.ConcurrentHashMap; // Set thread-safe
+import java.util.concurrent.locks.ReentrantReadWriteLock; // Khóa đọc/ghi cho index
+import java.util.stream.Stream; // Stream cursor Mongo
+
+/**
+ * Index bitmap trong bộ nhớ cho lọc sản phẩm theo nhiều thuộc tính (RAM=8GB AND Màu=Đen AND ...).
+ * - Mỗi product active có một ordinal (int); mỗi cặp (name, value) giữ tập ordinal của các product có cặp đó
+ * - Tập thưa lưu mảng int đã sắp xếp, tập dày chuyển sang BitSet (như container của Roaring bitmap)
+ * - Lọc: OR các giá trị cùng tên, AND giữa các tên, AND với tập product active - toàn bộ là phép toán bit
+ * - Cập nhật tăng dần khi product được tạo / xóa mềm và khi thuộc tính được tạo / xóa mềm
+ */
+@Component // Đăng ký bean
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class AttributeFilterIndex {
+
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<String, Integer> ordinals = new HashMap<>(); // productId -> ordinal
+    private List<String> productIds = new ArrayList<>(); // ordinal -> productId
+    private List<String[]> keysByOrdinal = new ArrayList<>(); // ordinal -> các key (name, value) hiện có
+    private BitSet active = new BitSet(); // Ordinal của product chưa bị xóa mềm
+    private Map<String, OrdinalSet> postings = new HashMap<>(); // key (name, value) -> tập ordinal
+    private volatile boolean ready = false;
+    private volatile boolean rebuilding = false;
+    private final Set<String> touchedDuringRebuild = ConcurrentHashMap.newKeySet(); // Thay đổi xảy ra khi đang build
+
+    /** Kết quả lọc: tổng số product khớp + id của trang được yêu cầu */
+    public static final class Result {
+        public final long total;
+        public final List<String> productIds;
+
+        Result(long total, List<String> productIds) {
+            this.total = total;
+            this.productIds = productIds;
+        }
+    }
+
+    /**
+     * Tập ordinal: mảng int đã sắp xếp khi thưa, BitSet khi số phần tử vượt ngưỡng
+     * (mảng tốn 32 bit / phần tử, BitSet tốn 1 bit / product nên dày thì BitSet rẻ hơn).
+     */
+    private static final class OrdinalSet {
+        private static final int MIN_BITMAP_SIZE = 4096;
+
+        final String key; // Instance key dùng chung cho mọi product có cặp (name, value) này
+        private int[] values = new int[4];
+        private int size;
+        private BitSet bits; // != null: đang ở dạng bitmap
+
+        OrdinalSet(String key) {
+            this.key = key;
+        }
+
+        void add(int ordinal, int universe) {
+            if (bits != null) {
+                bits.set(ordinal);
+                return;
+            }
+            int pos = Arrays.binarySearch(values, 0, size, ordinal);
+            if (pos >= 0) return;
+            pos = -pos - 1;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            System.arraycopy(values, pos, values, pos + 1, size - pos);
+            values[pos] = ordinal;
+            size++;
+            if (size > MIN_BITMAP_SIZE && size > universe / 32) {
+                bits = new BitSet(universe);
+                for (int i = 0; i < size; i++) bits.set(values[i]);
+                values = null;
+            }
+        }
+
+        void remove(int ordinal) {
+            if (bits != null) {
+                bits.clear(ordinal);
+                return;
+            }
+            int pos = Arrays.binarySearch(values, 0, size, ordinal);
+            if (pos < 0) return;
+            System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+            size--;
+        }
+
+        boolean isEmpty() {
+            return bits != null ? bits.isEmpty() : size == 0;
+        }
+
+        int cardinality() {
+            return bits != null ? bits.cardinality() : size;
+        }
+
+        /** OR tập này vào target */
+        void orInto(BitSet target) {
+            if (bits != null) {
+                target.or(bits);
+                return;
+            }
+            for (int i = 0; i < size; i++) target.set(values[i]);
+        }
+    }
+
+    /** Index đã build xong chưa (chưa xong thì caller query product_attributes). */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Build index nền sau khi app khởi động xong, không chặn startup. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        CompletableFuture.runAsync(this::rebuild)
+                .exceptionally(e -> {
+                    log.error("❌ [FILTER] Build attribute filter index failed", e);
+                    return null;
+                });
+    }
+
+    /** Build lại toàn bộ index từ Mongo bằng cursor stream, sau đó hoán đổi nguyên khối. */
+    public void rebuild() {
+        long startTime = System.currentTimeMillis();
+        touchedDuringRebuild.clear();
+        rebuilding = true;
+
+        // Bước 1: gán ordinal cho products active theo thứ tự _id (ordinal lớn = product mới hơn)
+        Map<String, Integer> newOrdinals = new HashMap<>();
+        List<String> newProductIds = new ArrayList<>();
+        BitSet newActive = new BitSet();
+        Query productQuery = new Query(Criteria.where("deletedAt").isNull()).with(Sort.by("_id"));
+        productQuery.fields().include("_id");
+        try (Stream<Document> products = mongoTemplate.stream(productQuery, Document.class, "products")) {
+            products.forEach(doc -> {
+                String id = doc.getObjectId("_id").toHexString();
+                int ordinal = newProductIds.size();
+                newOrdinals.put(id, ordinal);
+                newProductIds.add(id);
+                newActive.set(ordinal);
+            });
+        }
+
+        // Bước 2: stream thuộc tính active và thêm ordinal vào tập của từng cặp (name, value)
+        Map<Integer, Set<String>> keys = new HashMap<>();
+        Map<String, OrdinalSet> newPostings = new HashMap<>();
+        Query attrQuery = new Query(Criteria.where("deletedAt").isNull());
+        attrQuery.fields().include("productId", "name", "value");
+        try (Stream<Document> attrs = mongoTemplate.stream(attrQuery, Document.class, "product_attributes")) {
+            attrs.forEach(doc -> {
+                Object pid = doc.get("productId");
+                Integer ordinal = pid != null ? newOrdinals.get(pid.toString()) : null;
+                String key = keyOf(doc.getString("name"), doc.getString("value"));
+                if (ordinal == null || key == null) return;
+                OrdinalSet set = newPostings.computeIfAbsent(key, OrdinalSet::new);
+                set.add(ordinal, newProductIds.size());
+                keys.computeIfAbsent(ordinal, k -> new LinkedHashSet<>()).add(set.key);
+            });
+        }
+        List<String[]> newKeysByOrdinal = new ArrayList<>(newProductIds.size());
+        for (int ordinal = 0; ordinal < newProductIds.size(); ordinal++) {
+            Set<String> productKeys = keys.get(ordinal);
+            newKeysByOrdinal.add(productKeys != null ? productKeys.toArray(String[]::new) : null);
+        }
+
+        lock.writeLock().lock();
+        try {
+            ordinals = newOrdinals;
+            productIds = newProductIds;
+            keysByOrdinal = newKeysByOrdinal;
+            active = newActive;
+            postings = newPostings;
+            ready = true;
+            rebuilding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Áp lại các product bị ghi trong lúc build (snapshot cursor có thể đã bỏ lỡ)
+        for (String id : touchedDuringRebuild) {
+            reload(id);
+        }
+        touchedDuringRebuild.clear();
+        log.info("✅ [FILTER] Built attribute filter index: {} products, {} attribute values in {}ms",
+                newProductIds.size(), newPostings.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /** Thêm product active (mới tạo / được khôi phục); thuộc tính nạp qua reindexAttributes. */
+    public void addProduct(String productId) {
+        if (productId == null) return;
+        if (rebuilding) touchedDuringRebuild.add(productId);
+        lock.writeLock().lock();
+        try {
+            active.set(ordinalOf(productId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Gỡ product bị xóa mềm khỏi tập active và khỏi các tập thuộc tính. */
+    public void removeProduct(String productId) {
+        if (productId == null) return;
+        if (rebuilding) touchedDuringRebuild.add(productId);
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(productId);
+            if (ordinal == null) return;
+            active.clear(ordinal);
+            replaceKeys(ordinal, new String[0]);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Nạp lại thuộc tính active của một product (gọi khi thuộc tính được tạo / xóa mềm). */
+    public void reindexAttributes(ObjectId productId) {
+        if (productId == null) return;
+        String id = productId.toHexString();
+        if (rebuilding) touchedDuringRebuild.add(id);
+        Query attrQuery = new Query(Criteria.where("productId").is(productId).and("deletedAt").isNull());
+        attrQuery.fields().include("name", "value");
+        Set<String> keys = new LinkedHashSet<>();
+        for (Document doc : mongoTemplate.find(attrQuery, Document.class, "product_attributes")) {
+            String key = keyOf(doc.getString("name"), doc.getString("value"));
+            if (key != null) keys.add(key);
+        }
+
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null || !active.get(ordinal)) return; // Product không active trong index -> bỏ qua
+            replaceKeys(ordinal, keys.toArray(String[]::new));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lọc product: filters = tên thuộc tính -> các giá trị chấp nhận (OR trong cùng tên, AND giữa các tên).
+     * Trả về tổng số khớp và id của trang [offset, offset + limit), product mới nhất trước.
+     */
+    public Result filter(Map<String, List<String>> filters, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            BitSet matched = match(filters);
+            List<String> page = new ArrayList<>(Math.max(0, Math.min(limit, 1000)));
+            int skipped = 0;
+            for (int ordinal = matched.length() - 1; ordinal >= 0 && page.size() < limit;
+                    ordinal = matched.previousSetBit(ordinal - 1)) {
+                if (skipped++ < offset) continue;
+                page.add(productIds.get(ordinal));
+            }
+            return new Result(matched.cardinality(), page);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Toàn bộ id product khớp bộ lọc (dùng để ghép vào query Mongo, ví dụ tìm kiếm có facet). */
+    public List<ObjectId> matchingIds(Map<String, List<String>> filters) {
+        lock.readLock().lock();
+        try {
+            BitSet matched = match(filters);
+            List<ObjectId> ids = new ArrayList<>(matched.cardinality());
+            for (int ordinal = matched.nextSetBit(0); ordinal >= 0; ordinal = matched.nextSetBit(ordinal + 1)) {
+                ids.add(new ObjectId(productIds.get(ordinal)));
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    /** Đánh giá bộ lọc thành bitmap (phải giữ read lock); nhóm có ít phần tử nhất được tính trước. */
+    private BitSet match(Map<String, List<String>> filters) {
+        List<List<OrdinalSet>> groups = new ArrayList<>();
+        for (Map.Entry<String, List<String>> filter : filters.entrySet()) {
+            List<OrdinalSet> sets = new ArrayList<>();
+            for (String value : filter.getValue()) {
+                OrdinalSet set = postings.get(keyOf(filter.getKey(), value));
+                if (set != null && !set.isEmpty()) sets.add(set);
+            }
+            if (sets.isEmpty()) return new BitSet(); // Một nhóm không khớp gì -> AND rỗng
+            groups.add(sets);
+        }
+        groups.sort((a, b) -> Integer.compare(estimate(a), estimate(b)));
+
+        BitSet result = null;
+        for (List<OrdinalSet> group : groups) {
+            BitSet union = new BitSet(productIds.size());
+            for (OrdinalSet set : group) set.orInto(union);
+            if (result == null) {
+                result = union;
+            } else {
+                result.and(union);
+            }
+            if (result.isEmpty()) return result;
+        }
+        if (result == null) {
+            result = (BitSet) active.clone(); // Không có điều kiện -> mọi product active
+        } else {
+            result.and(active);
+        }
+        return result;
+    }
+
+    private static int estimate(List<OrdinalSet> group) {
+        int total = 0;
+        for (OrdinalSet set : group) total += set.cardinality();
+        return total;
+    }
+
+    /** Thay tập key của một ordinal: gỡ khỏi tập cũ, thêm vào tập mới (phải giữ write lock). */
+    private void replaceKeys(int ordinal, String[] newKeys) {
+        String[] oldKeys = keysByOrdinal.get(ordinal);
+        if (oldKeys != null) {
+            for (String key : oldKeys) {
+                OrdinalSet set = postings.get(key);
+                if (set == null) continue;
+                set.remove(ordinal);
+                if (set.isEmpty()) postings.remove(key);
+            }
+        }
+        String[] canonicalKeys = new String[newKeys.length];
+        for (int i = 0; i < newKeys.length; i++) {
+            OrdinalSet set = postings.computeIfAbsent(newKeys[i], OrdinalSet::new);
+            set.add(ordinal, productIds.size());
+            canonicalKeys[i] = set.key;
+        }
+        keysByOrdinal.set(ordinal, canonicalKeys.length > 0 ? canonicalKeys : null);
+    }
+
+    /** Ordinal của product, cấp mới nếu chưa có (phải giữ write lock). */
+    private int ordinalOf(String productId) {
+        Integer ordinal = ordinals.get(productId);
+        if (ordinal != null) return ordinal;
+        int next = productIds.size();
+        ordinals.put(productId, next);
+        productIds.add(productId);
+        keysByOrdinal.add(null);
+        return next;
+    }
+
+    /** Đọc lại một product từ Mongo và đồng bộ vào index. */
+    private void reload(String id) {
+        Query productQuery = new Query(Criteria.where("_id").is(new ObjectId(id)).and("deletedAt").isNull());
+        productQuery.fields().include("_id");
+        if (mongoTemplate.exists(productQuery, "products")) {
+            addProduct(id);
+            reindexAttributes(new ObjectId(id));
+        } else {
+            removeProduct(id);
+        }
+    }
+
+    private static String keyOf(String name, String value) {
+        if (name == null || value == null) return null;
+        return name.trim() + KEY_SEPARATOR + value.trim();
+    }
+}
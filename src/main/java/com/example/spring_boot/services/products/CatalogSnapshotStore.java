@@ -0,0 +1,539 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.configs.CatalogSnapshotProperties; // Đường dẫn file + chu kỳ ghi
+import com.example.spring_boot.domains.products.Category; // Entity danh mục
+import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
+import com.example.spring_boot.domains.products.ProductAttribute; // Thuộc tính sản phẩm
+import com.example.spring_boot.domains.products.ProductCard; // Thẻ tóm tắt nhúng trong product
+import com.example.spring_boot.domains.products.ProductImage; // Ảnh đại diện
+
+import com.mongodb.MongoSocketException; // Mất kết nối Mongo
+import com.mongodb.MongoTimeoutException; // Không chọn được server Mongo
+import jakarta.annotation.PostConstruct; // Nạp file trước khi nhận request
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô khi ghi snapshot
+import org.bson.types.Decimal128; // price có thể lưu dạng Decimal128
+import org.bson.types.ObjectId; // Id 12 byte
+import org.springframework.dao.DataAccessResourceFailureException; // Lỗi tài nguyên đã được Spring dịch
+import org.springframework.data.domain.Sort; // Thứ tự ghi
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.scheduling.annotation.Scheduled; // Ghi định kỳ
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.io.BufferedOutputStream; // Ghi file có buffer
+import java.io.ByteArrayOutputStream; // Buffer một bản ghi
+import java.io.DataOutputStream; // Ghi kiểu nguyên thủy big-endian
+import java.io.IOException; // Lỗi I/O
+import java.io.RandomAccessFile; // Vá số bản ghi trong header
+import java.math.BigDecimal; // Giá sản phẩm
+import java.nio.ByteBuffer; // Đọc tuyệt đối trên vùng map
+import java.nio.MappedByteBuffer; // File map vào bộ nhớ
+import java.nio.channels.FileChannel; // Map file
+import java.nio.charset.StandardCharsets; // UTF-8
+import java.nio.file.Files; // Thao tác file
+import java.nio.file.Path; // Đường dẫn
+import java.nio.file.StandardCopyOption; // Đổi tên nguyên tử
+import java.nio.file.StandardOpenOption; // Mở file chỉ đọc
+import java.time.Instant; // Thời điểm UTC
+import java.util.ArrayList; // ArrayList implementation
+import java.util.Arrays; // So sánh id
+import java.util.Comparator; // Thứ tự thuộc tính
+import java.util.Date; // Ngày đọc từ Document
+import java.util.HashSet; // Id stale
+import java.util.Iterator; // Cursor thuộc tính khi merge-join
+import java.util.LinkedHashMap; // Category theo thứ tự ghi
+import java.util.List; // Danh sách
+import java.util.Map; // Map
+import java.util.Set; // Tập
+import java.util.concurrent.atomic.AtomicBoolean; // Chỉ một lần ghi tại một thời điểm
+import java.util.stream.Stream; // Stream cursor Mongo
+
+/**
+ * File snapshot nhị phân của catalog (category, product active kèm thuộc tính + ảnh đại diện) cho
+ * khởi động ấm và đọc khi Mongo gián đoạn.
+ * - Định dạng: header (magic, version, thời điểm, số category, số product) + các bản ghi [int độ dài][payload];
+ *   product sắp theo _id, mỗi bản ghi bắt đầu bằng 12 byte id + 2 mốc version để tra cứu không cần decode
+ * - Nạp bằng memory-map: trong heap chỉ giữ mảng offset, product được decode khi cần (tìm theo id bằng binary search)
+ * - Ghi định kỳ từ Mongo bằng cursor (product theo _id merge-join thuộc tính theo productId), ghi file tạm rồi đổi tên
+ * - Ảnh đại diện lấy từ field denormalized primaryImageUrl + card (không đọc product_images)
+ */
+@Component // Đăng ký bean
+@Slf4j // Bật logging
+public class CatalogSnapshotStore {
+
+    private static final int MAGIC = 0x43534E50; // "CSNP"
+    private static final short FORMAT_VERSION = 3; // 2: category kèm productCount, 3: kèm parentId
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 4 + 4;
+    private static final int PRODUCT_COUNT_OFFSET = 4 + 2 + 8 + 4;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final int ID_BYTES = 12;
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+    private final CatalogSnapshotProperties properties;
+    private final Path path;
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+    private volatile Snapshot current; // null: chưa có snapshot hợp lệ
+
+    public CatalogSnapshotStore(MongoTemplate mongoTemplate, CatalogSnapshotProperties properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.properties = properties;
+        this.path = Path.of(properties.getPath());
+    }
+
+    /** Snapshot đã map vào bộ nhớ; chỉ đọc tuyệt đối nên dùng chung giữa các thread */
+    private static final class Snapshot {
+        final ByteBuffer buffer;
+        final Instant createdAt;
+        final Map<String, Category> categories;
+        final int[] productOffsets; // Vị trí payload của product thứ i (theo _id tăng dần)
+
+        Snapshot(ByteBuffer buffer, Instant createdAt, Map<String, Category> categories, int[] productOffsets) {
+            this.buffer = buffer;
+            this.createdAt = createdAt;
+            this.categories = categories;
+            this.productOffsets = productOffsets;
+        }
+
+        static Snapshot open(Path path) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) throw new IOException("Snapshot larger than 2GB");
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            Reader header = new Reader(buffer, 0);
+            if (buffer.limit() < HEADER_SIZE || header.readInt() != MAGIC) throw new IOException("Not a catalog snapshot");
+            if (header.readShort() != FORMAT_VERSION) throw new IOException("Unsupported snapshot version");
+            Instant createdAt = Instant.ofEpochMilli(header.readLong());
+            int categoryCount = header.readInt();
+            int productCount = header.readInt();
+
+            Map<String, Category> categories = new LinkedHashMap<>();
+            int pos = HEADER_SIZE;
+            for (int i = 0; i < categoryCount; i++) {
+                int length = buffer.getInt(pos);
+                Category category = readCategory(new Reader(buffer, pos + 4));
+                categories.put(category.getId(), category);
+                pos += 4 + length;
+            }
+            int[] offsets = new int[productCount];
+            for (int i = 0; i < productCount; i++) {
+                int length = buffer.getInt(pos);
+                offsets[i] = pos + 4;
+                pos += 4 + length;
+            }
+            if (pos != buffer.limit()) throw new IOException("Truncated catalog snapshot");
+            return new Snapshot(buffer, createdAt, categories, offsets);
+        }
+
+        byte[] idBytes(int index) {
+            byte[] id = new byte[ID_BYTES];
+            buffer.get(productOffsets[index], id);
+            return id;
+        }
+
+        /** Version của product thứ index = updatedAt, không có thì createdAt (giống CatalogVersionService) */
+        long version(int index) {
+            long updatedAt = buffer.getLong(productOffsets[index] + ID_BYTES + 8);
+            return updatedAt != NULL_TIME ? updatedAt : buffer.getLong(productOffsets[index] + ID_BYTES);
+        }
+
+        int indexOf(byte[] id) {
+            int lo = 0;
+            int hi = productOffsets.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = Arrays.compareUnsigned(idBytes(mid), id);
+                if (cmp < 0) lo = mid + 1;
+                else if (cmp > 0) hi = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+
+        Product product(int index) {
+            Reader in = new Reader(buffer, productOffsets[index]);
+            ObjectId id = new ObjectId(in.readBytes(ID_BYTES));
+            Instant createdAt = in.readTime();
+            Instant updatedAt = in.readTime();
+            String name = in.readString();
+            String description = in.readString();
+            String price = in.readString();
+            int stock = in.readInt();
+            String categoryId = in.readString();
+            String primaryImageUrl = in.readString();
+            ProductCard card = null;
+            if (in.readByte() == 1) {
+                card = ProductCard.builder()
+                        .primaryImageId(in.readString())
+                        .imageCount(in.readInt())
+                        .attributeCount(in.readInt())
+                        .build();
+                int highlights = in.readInt();
+                for (int i = 0; i < highlights; i++) card.getHighlights().add(in.readString());
+            }
+            int attributeCount = in.readInt();
+            List<ProductAttribute> attributes = new ArrayList<>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.add(ProductAttribute.builder()
+                        .id(in.readString())
+                        .productId(id)
+                        .name(in.readString())
+                        .value(in.readString())
+                        .createdAt(in.readTime())
+                        .build());
+            }
+
+            List<ProductImage> images = new ArrayList<>();
+            if (primaryImageUrl != null) {
+                images.add(ProductImage.builder()
+                        .id(card != null ? card.getPrimaryImageId() : null)
+                        .productId(id)
+                        .imageUrl(primaryImageUrl)
+                        .isPrimary(true)
+                        .createdAt(null)
+                        .build());
+            }
+            return Product.builder()
+                    .id(id.toHexString())
+                    .name(name)
+                    .description(description)
+                    .price(price != null ? new BigDecimal(price) : null)
+                    .stock(stock != NULL_INT ? stock : null)
+                    .categoryId(categoryId != null ? new ObjectId(categoryId) : null)
+                    .category(categoryId != null ? categories.get(categoryId) : null)
+                    .attributes(attributes)
+                    .images(images)
+                    .primaryImageUrl(primaryImageUrl)
+                    .card(card)
+                    .createdAt(createdAt)
+                    .updatedAt(updatedAt)
+                    .build();
+        }
+
+        private static Category readCategory(Reader in) {
+            return Category.builder()
+                    .id(in.readString())
+                    .name(in.readString())
+                    .description(in.readString())
+                    .createdAt(in.readTime())
+                    .updatedAt(in.readTime())
+                    .productCount(in.readLong())
+                    .parentId(in.readString())
+                    .build();
+        }
+    }
+
+    /** Con trỏ đọc riêng cho mỗi lần decode (buffer dùng chung, chỉ đọc tuyệt đối) */
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private int pos;
+
+        Reader(ByteBuffer buffer, int pos) {
+            this.buffer = buffer;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            return buffer.get(pos++);
+        }
+
+        short readShort() {
+            short value = buffer.getShort(pos);
+            pos += 2;
+            return value;
+        }
+
+        int readInt() {
+            int value = buffer.getInt(pos);
+            pos += 4;
+            return value;
+        }
+
+        long readLong() {
+            long value = buffer.getLong(pos);
+            pos += 8;
+            return value;
+        }
+
+        Instant readTime() {
+            long millis = readLong();
+            return millis != NULL_TIME ? Instant.ofEpochMilli(millis) : null;
+        }
+
+        byte[] readBytes(int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(pos, bytes);
+            pos += length;
+            return bytes;
+        }
+
+        String readString() {
+            int length = readInt();
+            return length >= 0 ? new String(readBytes(length), StandardCharsets.UTF_8) : null;
+        }
+    }
+
+    /** Nạp file snapshot (nếu có) trước khi app nhận request. File hỏng thì bỏ qua. */
+    @PostConstruct
+    public void load() {
+        if (!properties.isEnabled() || !Files.exists(path)) return;
+        try {
+            current = Snapshot.open(path);
+            log.info("✅ [SNAPSHOT] Loaded catalog snapshot {}: {} categories, {} products (taken at {})",
+                    path, current.categories.size(), current.productOffsets.length, current.createdAt);
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ [SNAPSHOT] Ignoring unreadable catalog snapshot {}: {}", path, e.getMessage());
+        }
+    }
+
+    /** Có snapshot để đọc không */
+    public boolean isAvailable() {
+        return current != null;
+    }
+
+    /** Thời điểm chụp snapshot hiện tại (null nếu chưa có) */
+    public Instant getCreatedAt() {
+        Snapshot snapshot = current;
+        return snapshot != null ? snapshot.createdAt : null;
+    }
+
+    /** Product active trong snapshot (đã gắn category / thuộc tính / ảnh đại diện), null nếu không có */
+    public Product findProduct(String id) {
+        Snapshot snapshot = current;
+        if (snapshot == null || id == null || !ObjectId.isValid(id)) return null;
+        int index = snapshot.indexOf(new ObjectId(id).toByteArray());
+        return index >= 0 ? snapshot.product(index) : null;
+    }
+
+    /** Version (updatedAt / createdAt millis) của product trong snapshot, null nếu không có */
+    public Long findVersion(String id) {
+        Snapshot snapshot = current;
+        if (snapshot == null || id == null || !ObjectId.isValid(id)) return null;
+        int index = snapshot.indexOf(new ObjectId(id).toByteArray());
+        return index >= 0 ? snapshot.version(index) : null;
+    }
+
+    /** Trang product mới nhất trước (thứ tự _id giảm dần) */
+    public List<Product> newestProducts(long offset, int limit) {
+        Snapshot snapshot = current;
+        List<Product> products = new ArrayList<>();
+        if (snapshot == null) return products;
+        for (long i = snapshot.productOffsets.length - 1 - offset; i >= 0 && products.size() < limit; i--) {
+            products.add(snapshot.product((int) i));
+        }
+        return products;
+    }
+
+    /** Số product active trong snapshot */
+    public int productCount() {
+        Snapshot snapshot = current;
+        return snapshot != null ? snapshot.productOffsets.length : 0;
+    }
+
+    /** Các category active trong snapshot */
+    public List<Category> categories() {
+        Snapshot snapshot = current;
+        return snapshot != null ? new ArrayList<>(snapshot.categories.values()) : new ArrayList<>();
+    }
+
+    /** Product mới nhất dùng để làm ấm ProductCache khi khởi động */
+    public List<Product> warmSet() {
+        return newestProducts(0, Math.max(0, properties.getWarmProducts()));
+    }
+
+    /**
+     * Đối chiếu snapshot với Mongo (chỉ đọc _id + updatedAt/createdAt): trả về id product đã đổi
+     * hoặc đã bị xóa kể từ lúc chụp.
+     */
+    public Set<String> findStaleProductIds() {
+        Snapshot snapshot = current;
+        Set<String> stale = new HashSet<>();
+        if (snapshot == null) return stale;
+        boolean[] seen = new boolean[snapshot.productOffsets.length];
+        Query query = new Query(Criteria.where("deletedAt").isNull());
+        query.fields().include("updatedAt", "createdAt");
+        try (Stream<Document> docs = mongoTemplate.stream(query, Document.class, "products")) {
+            docs.forEach(doc -> {
+                ObjectId id = doc.getObjectId("_id");
+                int index = snapshot.indexOf(id.toByteArray());
+                if (index < 0) return; // Product mới: chưa từng được nạp từ snapshot
+                seen[index] = true;
+                if (snapshot.version(index) != versionOf(doc)) stale.add(id.toHexString());
+            });
+        }
+        for (int i = 0; i < seen.length; i++) {
+            if (!seen[i]) stale.add(new ObjectId(snapshot.idBytes(i)).toHexString());
+        }
+        return stale;
+    }
+
+    /** Ghi snapshot mới từ Mongo (file tạm -> đổi tên nguyên tử), sau đó map file mới. */
+    @Scheduled(fixedDelayString = "${app.catalog-snapshot.interval:PT15M}",
+            initialDelayString = "${app.catalog-snapshot.interval:PT15M}")
+    public void write() {
+        if (!properties.isEnabled() || !writing.compareAndSet(false, true)) return;
+        long startTime = System.currentTimeMillis();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if (path.toAbsolutePath().getParent() != null) Files.createDirectories(path.toAbsolutePath().getParent());
+            int productCount = 0;
+            int categoryCount;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                Query categoryQuery = new Query(Criteria.where("deletedAt").isNull());
+                categoryQuery.fields().include("name", "description", "createdAt", "updatedAt", "productCount", "parentId");
+                List<Document> categories = mongoTemplate.find(categoryQuery, Document.class, "categories");
+                categoryCount = categories.size();
+
+                out.writeInt(MAGIC);
+                out.writeShort(FORMAT_VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(categoryCount);
+                out.writeInt(0); // Số product: vá lại sau khi ghi xong
+
+                ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(1024);
+                DataOutputStream record = new DataOutputStream(recordBytes);
+                for (Document category : categories) {
+                    recordBytes.reset();
+                    writeString(record, category.getObjectId("_id").toHexString());
+                    writeString(record, category.getString("name"));
+                    writeString(record, category.getString("description"));
+                    writeTime(record, category.getDate("createdAt"));
+                    writeTime(record, category.getDate("updatedAt"));
+                    Object count = category.get("productCount");
+                    record.writeLong(count instanceof Number n ? n.longValue() : 0L);
+                    writeString(record, category.getString("parentId"));
+                    writeRecord(out, recordBytes);
+                }
+
+                // Product theo _id, thuộc tính theo productId: hai cursor chạy song song (merge-join)
+                Query productQuery = new Query(Criteria.where("deletedAt").isNull()).with(Sort.by("_id"));
+                productQuery.fields().include("name", "description", "price", "stock", "categoryId",
+                        "primaryImageUrl", "card", "createdAt", "updatedAt");
+                Query attributeQuery = new Query(Criteria.where("deletedAt").isNull()).with(Sort.by("productId"));
+                attributeQuery.fields().include("productId", "name", "value", "createdAt");
+                try (Stream<Document> products = mongoTemplate.stream(productQuery, Document.class, "products");
+                        Stream<Document> attributes = mongoTemplate.stream(attributeQuery, Document.class,
+                                "product_attributes")) {
+                    Iterator<Document> attributeCursor = attributes.iterator();
+                    Document pendingAttribute = attributeCursor.hasNext() ? attributeCursor.next() : null;
+                    for (Document product : (Iterable<Document>) products::iterator) {
+                        ObjectId productId = product.getObjectId("_id");
+                        List<Document> productAttributes = new ArrayList<>();
+                        while (pendingAttribute != null) {
+                            ObjectId owner = pendingAttribute.getObjectId("productId");
+                            int cmp = owner != null ? owner.compareTo(productId) : -1;
+                            if (cmp > 0) break;
+                            if (cmp == 0) productAttributes.add(pendingAttribute);
+                            pendingAttribute = attributeCursor.hasNext() ? attributeCursor.next() : null;
+                        }
+                        recordBytes.reset();
+                        writeProduct(record, product, productAttributes);
+                        writeRecord(out, recordBytes);
+                        productCount++;
+                    }
+                }
+            }
+            try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw")) {
+                file.seek(PRODUCT_COUNT_OFFSET);
+                file.writeInt(productCount);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            current = Snapshot.open(path);
+            log.info("✅ [SNAPSHOT] Wrote catalog snapshot {}: {} categories, {} products, {} KB in {}ms", path,
+                    categoryCount, productCount, Files.size(path) / 1024, System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            // Giữ snapshot cũ; lần ghi sau thử lại
+            log.error("❌ [SNAPSHOT] Write catalog snapshot failed", e);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // File tạm sẽ bị ghi đè ở lần sau
+            }
+        } finally {
+            writing.set(false);
+        }
+    }
+
+    /** Lỗi do Mongo không truy cập được (mất kết nối / timeout) -> caller có thể đọc từ snapshot */
+    public static boolean isMongoUnavailable(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof DataAccessResourceFailureException || e instanceof MongoSocketException
+                    || e instanceof MongoTimeoutException) {
+                return true;
+            }
+            if (e.getCause() == e) break;
+        }
+        return false;
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private static void writeProduct(DataOutputStream out, Document product, List<Document> attributes)
+            throws IOException {
+        out.write(product.getObjectId("_id").toByteArray());
+        writeTime(out, product.getDate("createdAt"));
+        writeTime(out, product.getDate("updatedAt"));
+        writeString(out, product.getString("name"));
+        writeString(out, product.getString("description"));
+        Object price = product.get("price");
+        writeString(out, price instanceof Decimal128 d ? d.bigDecimalValue().toPlainString()
+                : price != null ? price.toString() : null);
+        Object stock = product.get("stock");
+        out.writeInt(stock instanceof Number n ? n.intValue() : NULL_INT);
+        Object categoryId = product.get("categoryId");
+        writeString(out, categoryId != null ? categoryId.toString() : null);
+        writeString(out, product.getString("primaryImageUrl"));
+
+        Document card = product.get("card", Document.class);
+        out.writeByte(card != null ? 1 : 0);
+        if (card != null) {
+            writeString(out, card.getString("primaryImageId"));
+            out.writeInt(card.get("imageCount") instanceof Number n ? n.intValue() : 0);
+            out.writeInt(card.get("attributeCount") instanceof Number n ? n.intValue() : 0);
+            List<String> highlights = card.getList("highlights", String.class, List.of());
+            out.writeInt(highlights.size());
+            for (String highlight : highlights) writeString(out, highlight);
+        }
+
+        attributes.sort(Comparator.comparing((Document a) -> a.getDate("createdAt"),
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+        out.writeInt(attributes.size());
+        for (Document attribute : attributes) {
+            writeString(out, attribute.getObjectId("_id").toHexString());
+            writeString(out, attribute.getString("name"));
+            writeString(out, attribute.getString("value"));
+            writeTime(out, attribute.getDate("createdAt"));
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, ByteArrayOutputStream record) throws IOException {
+        out.writeInt(record.size());
+        record.writeTo(out);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeTime(DataOutputStream out, Date value) throws IOException {
+        out.writeLong(value != null ? value.getTime() : NULL_TIME);
+    }
+
+    private static long versionOf(Document doc) {
+        Date updatedAt = doc.getDate("updatedAt");
+        Date createdAt = doc.getDate("createdAt");
+        if (updatedAt != null) return updatedAt.getTime();
+        return createdAt != null ? createdAt.getTime() : NULL_TIME;
+    }
+}
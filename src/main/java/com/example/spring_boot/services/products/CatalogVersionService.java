@@ -0,0 +1,156 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.configs.ProductCacheProperties; // TTL dùng chung với ProductCache
+
+import com.github.benmanes.caffeine.cache.Cache; // Cache Caffeine
+import com.github.benmanes.caffeine.cache.Caffeine; // Builder cache
+import com.github.benmanes.caffeine.cache.LoadingCache; // Version collection đọc lại định kỳ
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô khi nạp version
+import org.bson.types.ObjectId; // Id product
+import org.springframework.data.mongodb.core.FindAndModifyOptions; // Upsert + trả bản mới
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.data.mongodb.core.query.Update; // $inc bộ đếm version
+import org.springframework.stereotype.Service; // Bean service Spring
+
+import java.time.Instant; // Thời điểm UTC
+import java.util.Date; // updatedAt đọc từ Document
+
+/**
+ * Version stamp cho ETag của API đọc catalog (GET có If-None-Match -> 304, không hydrate / serialize).
+ * - Product: version = updatedAt (hoặc createdAt) lưu trong map bộ nhớ; miss thì đọc 1 field theo _id
+ * - Collection: bộ đếm products / categories trong collection catalog_versions, $inc mỗi lần ghi,
+ *   dùng cho ETag của danh sách; mỗi node đọc lại sau app.cache.product.version-refresh
+ * - Mọi thao tác ghi catalog (product, ảnh, thuộc tính, category) phải báo về đây
+ *
+ * Version product nằm trong bộ nhớ của từng node (giống ProductCache): ghi từ node khác được nhận ra
+ * sau khi entry hết hạn (app.cache.product.expire-after-write).
+ */
+@Service // Đăng ký bean service
+@Slf4j // Bật logging
+public class CatalogVersionService {
+
+    private static final long MAX_TRACKED_PRODUCTS = 200_000; // Mỗi entry chỉ là id + long
+    private static final String VERSIONS_COLLECTION = "catalog_versions";
+    private static final String PRODUCTS = "products";
+    private static final String CATEGORIES = "categories";
+    // Version dùng khi chưa đọc được bộ đếm (Mongo gián đoạn lúc khởi động): khác mọi ETag trước restart
+    private static final long FALLBACK_VERSION = -System.currentTimeMillis();
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+    private final CatalogSnapshotStore catalogSnapshot; // Version dự phòng khi Mongo gián đoạn
+    private final Cache<String, Long> productVersions;
+    // Version collection: đọc lại nền sau version-refresh, đọc lỗi thì giữ giá trị cũ
+    private final LoadingCache<String, Long> collectionVersions;
+
+    public CatalogVersionService(MongoTemplate mongoTemplate, CatalogSnapshotStore catalogSnapshot,
+            ProductCacheProperties properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.catalogSnapshot = catalogSnapshot;
+        this.productVersions = Caffeine.newBuilder()
+                .maximumSize(MAX_TRACKED_PRODUCTS)
+                .expireAfterWrite(properties.getExpireAfterWrite())
+                .build();
+        this.collectionVersions = Caffeine.newBuilder()
+                .refreshAfterWrite(properties.getVersionRefresh())
+                .build(this::loadCollectionVersion);
+    }
+
+    /** ETag của một product active; null nếu không tồn tại / đã xóa (caller đi luồng đọc thường). */
+    public String productEtag(String productId) {
+        if (productId == null || !ObjectId.isValid(productId)) return null;
+        Long version;
+        try {
+            version = productVersions.get(productId, this::loadVersion);
+        } catch (RuntimeException e) {
+            if (!CatalogSnapshotStore.isMongoUnavailable(e)) throw e;
+            version = catalogSnapshot.findVersion(productId); // Không cache: Mongo trở lại thì đọc version thật
+        }
+        if (version == null) return null;
+        // Chi tiết product có embed category nên gồm cả version categories
+        return "\"p" + productId + "-" + Long.toHexString(version) + "-" + Long.toHexString(collectionVersion(CATEGORIES)) + "\"";
+    }
+
+    /** ETag cho danh sách products (embed category). */
+    public String productListEtag() {
+        return "\"pl-" + Long.toHexString(collectionVersion(PRODUCTS)) + "-" + Long.toHexString(collectionVersion(CATEGORIES)) + "\"";
+    }
+
+    /** ETag cho category (danh sách category có kèm số product nên phụ thuộc cả products). */
+    public String categoryEtag() {
+        return "\"c-" + Long.toHexString(collectionVersion(CATEGORIES)) + "-" + Long.toHexString(collectionVersion(PRODUCTS)) + "\"";
+    }
+
+    /** Product được tạo / cập nhật với updatedAt đã lưu. */
+    public void productChanged(String productId, Instant updatedAt) {
+        if (productId == null) return;
+        productVersions.put(productId, (updatedAt != null ? updatedAt : Instant.now()).toEpochMilli());
+        bump(PRODUCTS);
+    }
+
+    /** Product bị xóa mềm. */
+    public void productRemoved(String productId) {
+        if (productId != null) productVersions.invalidate(productId);
+        bump(PRODUCTS);
+    }
+
+    /** Ghi hàng loạt (import, backfill thẻ...): đổi version danh sách. */
+    public void productsChanged() {
+        bump(PRODUCTS);
+    }
+
+    /** Category được tạo / sửa / xóa / khôi phục. */
+    public void categoriesChanged() {
+        bump(CATEGORIES);
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    /** Version hiện tại của collection; Mongo gián đoạn khi chưa từng đọc được thì dùng FALLBACK_VERSION. */
+    private long collectionVersion(String key) {
+        try {
+            return collectionVersions.get(key);
+        } catch (RuntimeException e) {
+            if (!CatalogSnapshotStore.isMongoUnavailable(e)) throw e;
+            return FALLBACK_VERSION;
+        }
+    }
+
+    /** $inc bộ đếm dùng chung để mọi node đổi ETag; node hiện tại thấy ngay version mới. */
+    private void bump(String key) {
+        try {
+            Document doc = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(key)),
+                    new Update().inc("version", 1L),
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    Document.class, VERSIONS_COLLECTION);
+            collectionVersions.put(key, ((Number) doc.get("version")).longValue());
+        } catch (RuntimeException e) {
+            // Dữ liệu đã ghi xong: không làm hỏng thao tác ghi, lần đọc sau tự nạp lại từ Mongo
+            log.warn("⚠️ [CATALOG] Could not bump {} version: {}", key, e.getMessage());
+            collectionVersions.invalidate(key);
+        }
+    }
+
+    /** Đọc bộ đếm version của collection (chưa có document -> 0). */
+    private Long loadCollectionVersion(String key) {
+        Document doc = mongoTemplate.findById(key, Document.class, VERSIONS_COLLECTION);
+        return doc != null ? ((Number) doc.get("version")).longValue() : 0L;
+    }
+
+    /** Đọc version từ DB: chỉ updatedAt / createdAt theo _id (rẻ hơn nhiều so với đọc + hydrate product). */
+    private Long loadVersion(String productId) {
+        Query query = new Query(Criteria.where("_id").is(new ObjectId(productId)).and("deletedAt").isNull());
+        query.fields().include("updatedAt", "createdAt");
+        Document doc = mongoTemplate.findOne(query, Document.class, "products");
+        if (doc == null) return null;
+        Date updatedAt = doc.getDate("updatedAt");
+        Date createdAt = doc.getDate("createdAt");
+        if (updatedAt != null) return updatedAt.getTime();
+        return createdAt != null ? createdAt.getTime() : 0L;
+    }
+}
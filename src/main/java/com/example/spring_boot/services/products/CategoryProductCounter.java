@@ -0,0 +1,121 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.domains.products.Category; // Entity danh mục
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô cho aggregation
+import org.bson.types.ObjectId; // Id category
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.data.mongodb.core.BulkOperations; // Ghi hàng loạt
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.data.mongodb.core.query.Update; // $inc / $set
+import org.springframework.scheduling.annotation.Scheduled; // Đối soát định kỳ
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.util.HashMap; // HashMap implementation
+import java.util.List; // Danh sách
+import java.util.Map; // Map categoryId -> số product
+import java.util.Objects; // So sánh categoryId
+import java.util.concurrent.CompletableFuture; // Đối soát nền khi khởi động
+
+/**
+ * Bộ đếm Category.productCount (số product active của mỗi category).
+ * - Product tạo / xóa mềm / khôi phục / đổi danh mục: $inc nguyên tử trên document category
+ * - Sidebar đọc thẳng field productCount (một query danh sách category, không đếm từng category)
+ * - Đối soát bằng MỘT aggregation $group theo categoryId khi khởi động, định kỳ và sau import
+ */
+@Component // Đăng ký bean
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class CategoryProductCounter {
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+    private final CatalogVersionService catalogVersions; // Đổi ETag category khi đối soát sửa số đếm
+
+    /** Product active được thêm vào category (tạo mới / khôi phục). */
+    public void increment(ObjectId categoryId) {
+        adjust(categoryId, 1);
+    }
+
+    /** Product active rời category (xóa mềm). */
+    public void decrement(ObjectId categoryId) {
+        adjust(categoryId, -1);
+    }
+
+    /** Product active chuyển category. */
+    public void move(ObjectId fromCategoryId, ObjectId toCategoryId) {
+        if (Objects.equals(fromCategoryId, toCategoryId)) return;
+        adjust(fromCategoryId, -1);
+        adjust(toCategoryId, 1);
+    }
+
+    /** Số product active theo category trong MỘT aggregation $group (không N query count). */
+    public Map<String, Long> countByCategory() {
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("deletedAt", null).append("categoryId", new Document("$ne", null))),
+                new Document("$group", new Document("_id", "$categoryId").append("count", new Document("$sum", 1))));
+        Map<String, Long> counts = new HashMap<>();
+        for (Document doc : mongoTemplate.getCollection("products").aggregate(pipeline)) {
+            counts.put(doc.get("_id").toString(), ((Number) doc.get("count")).longValue());
+        }
+        return counts;
+    }
+
+    /** Đối soát nền sau khi app khởi động (category cũ chưa có productCount). */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        CompletableFuture.runAsync(this::reconcile)
+                .exceptionally(e -> {
+                    log.error("❌ [CATEGORY] Initial product count reconciliation failed", e);
+                    return null;
+                });
+    }
+
+    /** Ghi lại productCount của mọi category từ aggregation (bulk, unordered); trả về số category bị lệch. */
+    @Scheduled(fixedDelayString = "${app.category-counts.reconcile-interval:PT6H}",
+            initialDelayString = "${app.category-counts.reconcile-interval:PT6H}")
+    public int reconcile() {
+        long startTime = System.currentTimeMillis();
+        Map<String, Long> counts = countByCategory();
+
+        Query query = new Query();
+        query.fields().include("productCount");
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Category.class);
+        int drifted = 0;
+        for (Document category : mongoTemplate.find(query, Document.class, "categories")) {
+            String id = category.get("_id").toString();
+            long expected = counts.getOrDefault(id, 0L);
+            Object stored = category.get("productCount");
+            if (stored instanceof Number n && n.longValue() == expected) continue;
+            ops.updateOne(new Query(Criteria.where("_id").is(category.get("_id"))),
+                    new Update().set("productCount", expected));
+            drifted++;
+        }
+        if (drifted > 0) {
+            ops.execute();
+            catalogVersions.categoriesChanged();
+        }
+        log.info("✅ [CATEGORY] Reconciled category product counts: {} corrected in {}ms",
+                drifted, System.currentTimeMillis() - startTime);
+        return drifted;
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private void adjust(ObjectId categoryId, long delta) {
+        if (categoryId == null) return;
+        try {
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(categoryId)),
+                    new Update().inc("productCount", delta), Category.class);
+        } catch (Exception e) {
+            // Không làm hỏng thao tác product; đối soát định kỳ sẽ sửa lại
+            log.error("❌ [CATEGORY] Adjust product count failed, categoryId={}, delta={}", categoryId, delta, e);
+        }
+    }
+}
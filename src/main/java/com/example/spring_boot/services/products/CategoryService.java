@@ -8,9 +8,11 @@ import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
 import org.springframework.data.domain.Page; // Kết quả phân trang
 import org.springframework.data.domain.PageImpl; // Page impl dựa trên danh sách
 import org.springframework.data.domain.Pageable; // Đầu vào phân trang
+import org.springframework.data.mongodb.core.BulkOperations; // Ghi lại ancestors của cây con hàng loạt
 import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template cho query tối ưu
 import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
 import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.data.mongodb.core.query.Update; // $set parentId / ancestors / depth
 import org.springframework.stereotype.Service; // Bean service Spring
 import org.springframework.transaction.annotation.Transactional; // Transaction wrapper
 
@@ -19,6 +21,8 @@ import java.util.List; // Danh sách kết quả
 import java.util.Map; // Map cho kết quả
 import java.util.HashMap; // HashMap implementation
 import java.util.ArrayList; // ArrayList implementation
+import java.util.Objects; // So sánh parentId
+import org.bson.Document; // Document thô khi đọc ancestors cây con
 import org.bson.types.ObjectId; // ObjectId cho query
 import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
 
@@ -30,21 +34,38 @@ public class CategoryService {
 
     private final CategoryRepository categoryRepository; // DAO danh mục
     private final MongoTemplate mongoTemplate; // MongoDB template cho query tối ưu
+    private final ProductService productService; // Bỏ cache category đã embed trong product
+    private final CatalogVersionService catalogVersions; // Đổi ETag của category / product
+    private final ProductSuggestionIndex productSuggestionIndex; // Gợi ý typeahead theo tên
+    private final CatalogSnapshotStore catalogSnapshot; // Danh sách category dự phòng khi Mongo gián đoạn
+    private final CategoryTreeCache categoryTreeCache; // Cây menu / breadcrumb trong bộ nhớ
 
-    /** Tạo category mới. */
+    /** Tạo category gốc mới. */
     public Category createCategory(String name, String description) {
-        log.info("Creating new category: {}", name); // Log thao tác tạo
+        return createCategory(name, description, null);
+    }
+
+    /** Tạo category mới; parentId != null thì tạo làm con của category đó. */
+    public Category createCategory(String name, String description, String parentId) {
+        log.info("Creating new category: {}, parentId={}", name, parentId); // Log thao tác tạo
         try {
             // Kiểm tra tên category đã tồn tại chưa
             if (categoryRepository.existsByNameIgnoreCaseAndDeletedAtIsNull(name)) { // Trùng tên còn active
                 throw new RuntimeException("Category with name '" + name + "' already exists");
             }
+            List<String> ancestors = ancestorsUnder(parentId); // Tổ tiên từ gốc -> cha
             Category category = Category.builder()
                     .name(name) // Gán tên
                     .description(description) // Gán mô tả
+                    .parentId(parentId) // Gán cha (null = gốc)
+                    .ancestors(ancestors) // Materialized path
+                    .depth(ancestors.size()) // Độ sâu trong cây
                     .createdAt(Instant.now()) // Thời điểm tạo
                     .build();
             Category savedCategory = categoryRepository.save(category); // Lưu entity
+            catalogVersions.categoriesChanged(); // Đổi ETag danh sách category
+            categoryTreeCache.invalidate(); // Nạp lại cây menu
+            productSuggestionIndex.categoryChanged(savedCategory); // Thêm tên vào typeahead
             log.info("Category created successfully with ID: {}", savedCategory.getId()); // Log thành công
             return savedCategory; // Trả về kết quả
         } catch (Exception e) {
@@ -80,6 +101,10 @@ public class CategoryService {
             throw new RuntimeException("Category with name '" + name + "' already exists");
         }
 
+        productService.evictCategory(id); // Product đang embed tên cũ
+        catalogVersions.categoriesChanged(); // Đổi ETag category + product embed category
+        categoryTreeCache.invalidate(); // Tên mới trong menu / breadcrumb
+        productSuggestionIndex.categoryChanged(existingCategory); // Vá typeahead theo tên mới
         log.info("✅ Category updated successfully - ID: {}, Name: '{}'", id, name);
         return existingCategory;
     }
@@ -92,8 +117,14 @@ public class CategoryService {
                     .orElseThrow(() -> new RuntimeException("Category not found with ID: " + id)); // Không thấy -> lỗi
             if (category.getDeletedAt() != null)
                 throw new RuntimeException("Category has been deleted"); // Đã xóa mềm -> chặn thao tác lặp
+            if (mongoTemplate.exists(new Query(Criteria.where("parentId").is(id).and("deletedAt").isNull()), Category.class))
+                throw new RuntimeException("Category has active subcategories"); // Còn con -> xóa / di chuyển con trước
             category.setDeletedAt(Instant.now()); // Đánh dấu xóa mềm
             categoryRepository.save(category); // Lưu thay đổi
+            productService.evictCategory(id); // Bỏ cache category đã xóa
+            catalogVersions.categoriesChanged(); // Đổi ETag category + product embed category
+            categoryTreeCache.invalidate(); // Gỡ khỏi cây menu
+            productSuggestionIndex.categoryRemoved(id); // Gỡ khỏi typeahead
             log.info("Category soft deleted successfully"); // Log thành công
         } catch (Exception e) {
             log.error("deleteCategory failed, id={}", id, e); // Log lỗi
@@ -109,9 +140,15 @@ public class CategoryService {
                     .orElseThrow(() -> new RuntimeException("Category not found with ID: " + id)); // Không thấy -> lỗi
             if (category.getDeletedAt() == null)
                 throw new RuntimeException("Category has not been deleted"); // Chưa xóa -> thao tác không hợp lệ
+            if (category.getParentId() != null && categoryRepository.findByIdAndDeletedAtIsNull(category.getParentId()).isEmpty())
+                throw new RuntimeException("Parent category has been deleted"); // Khôi phục cha trước
             category.setDeletedAt(null); // Bỏ cờ xóa mềm
             category.setUpdatedAt(Instant.now()); // Gán thời điểm cập nhật
             Category restoredCategory = categoryRepository.save(category); // Lưu thay đổi
+            productService.evictCategory(id); // Bỏ cache category cũ
+            catalogVersions.categoriesChanged(); // Đổi ETag category + product embed category
+            categoryTreeCache.invalidate(); // Đưa lại vào cây menu
+            productSuggestionIndex.categoryChanged(restoredCategory); // Đưa tên trở lại typeahead
             log.info("Category restored successfully"); // Log thành công
             return restoredCategory; // Trả về kết quả
         } catch (Exception e) {
@@ -120,6 +157,86 @@ public class CategoryService {
         }
     }
 
+    /**
+     * Di chuyển category (kèm cả cây con) sang cha mới; newParentId = null để thành gốc.
+     * Cây con được ghi lại ancestors / depth bằng một bulk write.
+     */
+    public Category moveCategory(String id, String newParentId) {
+        log.info("Moving category {} under {}", id, newParentId); // Log thao tác di chuyển
+        try {
+            Category category = categoryRepository.findByIdAndDeletedAtIsNull(id) // Chỉ category active
+                    .orElseThrow(() -> new RuntimeException("Category not found with ID: " + id));
+            if (Objects.equals(category.getParentId(), newParentId)) return category; // Không đổi cha
+
+            List<String> newAncestors = ancestorsUnder(newParentId);
+            if (id.equals(newParentId) || newAncestors.contains(id))
+                throw new RuntimeException("Cannot move a category into its own subtree"); // Chặn tạo vòng
+
+            Instant now = Instant.now();
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(id)),
+                    new Update().set("parentId", newParentId)
+                            .set("ancestors", newAncestors)
+                            .set("depth", newAncestors.size())
+                            .set("updatedAt", now),
+                    Category.class);
+
+            // Cây con: thay tổ tiên cũ của category bằng tổ tiên mới, giữ nguyên phần từ category trở xuống
+            Query descendantsQuery = new Query(Criteria.where("ancestors").is(id));
+            descendantsQuery.fields().include("ancestors");
+            List<Document> descendants = mongoTemplate.find(descendantsQuery, Document.class, "categories");
+            List<String> movedIds = new ArrayList<>(descendants.size() + 1);
+            movedIds.add(id);
+            if (!descendants.isEmpty()) {
+                BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, "categories");
+                for (Document descendant : descendants) {
+                    List<String> oldAncestors = descendant.getList("ancestors", String.class);
+                    List<String> ancestors = new ArrayList<>(newAncestors);
+                    ancestors.addAll(oldAncestors.subList(oldAncestors.indexOf(id), oldAncestors.size()));
+                    ops.updateOne(new Query(Criteria.where("_id").is(descendant.get("_id"))),
+                            new Update().set("ancestors", ancestors).set("depth", ancestors.size()));
+                    movedIds.add(descendant.get("_id").toString());
+                }
+                ops.execute();
+            }
+
+            movedIds.forEach(productService::evictCategory); // Product đang embed ancestors cũ
+            catalogVersions.categoriesChanged(); // Đổi ETag category + product embed category
+            categoryTreeCache.invalidate(); // Nạp lại cây menu
+
+            category.setParentId(newParentId);
+            category.setAncestors(newAncestors);
+            category.setDepth(newAncestors.size());
+            category.setUpdatedAt(now);
+            log.info("Category moved successfully with {} descendants", descendants.size()); // Log thành công
+            return category; // Trả về kết quả
+        } catch (Exception e) {
+            log.error("moveCategory failed, id={}, newParentId={}", id, newParentId, e); // Log lỗi
+            throw new RuntimeException("Failed to move category: " + e.getMessage(), e); // Bao lỗi nghiệp vụ
+        }
+    }
+
+    /** Cây category active cho menu (từ CategoryTreeCache, không query DB mỗi lần). */
+    public List<Map<String, Object>> getCategoryTree() {
+        return categoryTreeCache.menu();
+    }
+
+    /** Breadcrumb từ gốc tới category. */
+    public List<Map<String, Object>> getBreadcrumb(String id) {
+        List<Map<String, Object>> breadcrumb = categoryTreeCache.breadcrumb(id);
+        if (breadcrumb.isEmpty()) throw new RuntimeException("Category not found with ID: " + id);
+        return breadcrumb;
+    }
+
+    /** Tổ tiên (gốc -> cha) của một category mới nằm dưới parentId; rỗng nếu parentId = null. */
+    private List<String> ancestorsUnder(String parentId) {
+        if (parentId == null) return new ArrayList<>();
+        Category parent = categoryRepository.findByIdAndDeletedAtIsNull(parentId)
+                .orElseThrow(() -> new RuntimeException("Parent category not found with ID: " + parentId));
+        List<String> ancestors = new ArrayList<>(parent.getAncestors() != null ? parent.getAncestors() : List.of());
+        ancestors.add(parent.getId());
+        return ancestors;
+    }
+
     /** Lấy category theo ID. */
     @Transactional(readOnly = true)
     public Category getCategoryById(String id) {
@@ -145,7 +262,7 @@ public class CategoryService {
         try {
             // Sử dụng MongoTemplate với projection để chỉ lấy fields cần thiết
             Query query = new Query(Criteria.where("deletedAt").isNull());
-            query.fields().include("name", "description", "createdAt", "updatedAt");
+            query.fields().include("name", "description", "createdAt", "updatedAt", "productCount");
 
             List<Category> categories = mongoTemplate.find(query, Category.class);
 
@@ -153,6 +270,11 @@ public class CategoryService {
             log.info("✅ [PERFORMANCE] Retrieved {} categories in {}ms", categories.size(), endTime - startTime);
             return categories;
         } catch (Exception e) {
+            if (CatalogSnapshotStore.isMongoUnavailable(e) && catalogSnapshot.isAvailable()) {
+                log.warn("⚠️ [SNAPSHOT] Mongo unavailable, serving categories from snapshot taken at {}",
+                        catalogSnapshot.getCreatedAt());
+                return catalogSnapshot.categories();
+            }
             log.error("❌ [PERFORMANCE] getAllActiveCategories failed", e); // Log lỗi
             throw new RuntimeException("Failed to list categories: " + e.getMessage(), e); // Bao lỗi nghiệp vụ
         }
@@ -174,7 +296,7 @@ public class CategoryService {
                         .addCriteria(Criteria.where("name").regex(name, "i"));
             }
 
-            query.fields().include("name", "description", "createdAt", "updatedAt");
+            query.fields().include("name", "description", "createdAt", "updatedAt", "productCount");
 
             List<Category> categories = mongoTemplate.find(query, Category.class);
 
@@ -197,7 +319,7 @@ public class CategoryService {
 
         try {
             Query query = new Query(Criteria.where("deletedAt").isNull());
-            query.fields().include("name", "description", "createdAt", "updatedAt");
+            query.fields().include("name", "description", "createdAt", "updatedAt", "productCount");
 
             // Apply pagination
             query.skip(pageable.getOffset());
@@ -271,27 +393,8 @@ public class CategoryService {
         log.info("📊 [PERFORMANCE] Getting categories with product counts");
 
         try {
-            // Lấy tất cả categories active
-            List<Category> categories = getAllActiveCategories();
-
-            // Tạo danh sách kết quả với product count
-            List<Map<String, Object>> result = new ArrayList<>();
-
-            for (Category category : categories) {
-                Map<String, Object> categoryWithCount = new HashMap<>();
-                categoryWithCount.put("id", category.getId());
-                categoryWithCount.put("name", category.getName());
-                categoryWithCount.put("description", category.getDescription());
-                categoryWithCount.put("createdAt", category.getCreatedAt());
-                categoryWithCount.put("updatedAt", category.getUpdatedAt());
-                categoryWithCount.put("deletedAt", category.getDeletedAt());
-
-                // Đếm số sản phẩm cho category này
-                long productCount = getProductCountForCategory(category.getId());
-                categoryWithCount.put("count", productCount);
-
-                result.add(categoryWithCount);
-            }
+            // Lấy tất cả categories active (đã kèm productCount, không đếm từng category)
+            List<Map<String, Object>> result = withProductCounts(getAllActiveCategories());
 
             long endTime = System.currentTimeMillis();
             log.info("✅ [PERFORMANCE] Retrieved {} categories with product counts in {}ms",
@@ -304,6 +407,27 @@ public class CategoryService {
         }
     }
 
+    /**
+     * Chuyển danh sách category sang Map kèm "count" đọc từ field productCount
+     * (bộ đếm tăng dần, đối soát bởi CategoryProductCounter) - không query thêm.
+     */
+    public List<Map<String, Object>> withProductCounts(List<Category> categories) {
+        List<Map<String, Object>> result = new ArrayList<>(categories.size());
+        for (Category category : categories) {
+            Map<String, Object> categoryWithCount = new HashMap<>();
+            categoryWithCount.put("id", category.getId());
+            categoryWithCount.put("name", category.getName());
+            categoryWithCount.put("description", category.getDescription());
+            categoryWithCount.put("createdAt", category.getCreatedAt());
+            categoryWithCount.put("updatedAt", category.getUpdatedAt());
+            categoryWithCount.put("deletedAt", category.getDeletedAt());
+            Long productCount = category.getProductCount();
+            categoryWithCount.put("count", productCount != null ? Math.max(productCount, 0L) : 0L);
+            result.add(categoryWithCount);
+        }
+        return result;
+    }
+
     /**
      * Đếm số sản phẩm cho một category
      */
@@ -0,0 +1,195 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô khi nạp cây
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.util.ArrayList; // ArrayList implementation
+import java.util.Collections; // Đảo breadcrumb về thứ tự gốc -> lá
+import java.util.Comparator; // Sắp xếp theo tên
+import java.util.HashMap; // HashMap implementation
+import java.util.LinkedHashMap; // Giữ thứ tự field khi trả JSON
+import java.util.List; // Danh sách
+import java.util.Map; // Map id -> node
+import java.util.concurrent.CompletableFuture; // Nạp nền khi khởi động
+import java.util.concurrent.atomic.AtomicLong; // Đếm số lần invalidate
+
+/**
+ * Cây danh mục trong bộ nhớ cho menu và breadcrumb (không query Mongo mỗi lần render).
+ * - Snapshot bất biến (id -> node, danh sách gốc), nạp một lần từ các category active
+ * - Ghi category trên node này gọi invalidate(); lần đọc sau nạp lại
+ * - Ghi từ node khác được nhận ra sau CACHE_TTL (giống cache category của ProductService)
+ */
+@Component // Đăng ký bean
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class CategoryTreeCache {
+
+    private static final long CACHE_TTL = 300000; // 5 minutes
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+    private final CatalogSnapshotStore catalogSnapshot; // Cây dự phòng khi Mongo gián đoạn
+
+    private volatile Tree tree; // null = cần nạp lại
+    private volatile long loadedAt = 0;
+    private final AtomicLong generation = new AtomicLong(); // Tăng mỗi lần invalidate
+
+    /** Node của cây; children sắp theo tên */
+    private static final class Node {
+        final String id;
+        final String name;
+        final String parentId;
+        final long productCount; // Product active gắn trực tiếp vào category
+        final List<Node> children = new ArrayList<>();
+        Node parent;
+        int depth;
+        long subtreeCount; // Product active của cả cây con
+
+        Node(String id, String name, String parentId, long productCount) {
+            this.id = id;
+            this.name = name;
+            this.parentId = parentId;
+            this.productCount = productCount;
+        }
+    }
+
+    private record Tree(Map<String, Node> nodes, List<Node> roots) {
+    }
+
+    /** Nạp nền sau khi app khởi động để request menu đầu tiên không phải chờ. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        CompletableFuture.runAsync(this::current)
+                .exceptionally(e -> {
+                    log.error("❌ [CATEGORY] Initial category tree load failed", e);
+                    return null;
+                });
+    }
+
+    /** Bỏ cây hiện tại (gọi sau khi tạo / sửa / xóa / khôi phục / di chuyển category). */
+    public void invalidate() {
+        generation.incrementAndGet();
+        tree = null;
+    }
+
+    /**
+     * Cây menu: mỗi node gồm id, name, depth, count (product của cả cây con), children.
+     */
+    public List<Map<String, Object>> menu() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Node root : current().roots()) result.add(toMenuItem(root));
+        return result;
+    }
+
+    /** Breadcrumb từ gốc tới category (gồm chính nó); rỗng nếu category không active. */
+    public List<Map<String, Object>> breadcrumb(String categoryId) {
+        Tree loaded = current();
+        Node node = categoryId != null ? loaded.nodes().get(categoryId) : null;
+        if (node == null) return List.of();
+        List<Map<String, Object>> path = new ArrayList<>(node.depth + 1);
+        for (Node n = node; n != null && path.size() < loaded.nodes().size(); n = n.parent) { // Chặn vòng lặp nếu dữ liệu lỗi
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", n.id);
+            item.put("name", n.name);
+            path.add(item);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private Tree current() {
+        Tree loaded = tree;
+        if (loaded != null && System.currentTimeMillis() - loadedAt < CACHE_TTL) return loaded;
+        synchronized (this) {
+            Tree latest = tree;
+            if (latest != null && System.currentTimeMillis() - loadedAt < CACHE_TTL) return latest;
+            long loadingGeneration = generation.get();
+            Tree fresh;
+            try {
+                fresh = load();
+            } catch (RuntimeException e) {
+                if (!CatalogSnapshotStore.isMongoUnavailable(e)) throw e;
+                if (loaded != null) return loaded; // Giữ cây cũ khi Mongo gián đoạn
+                if (!catalogSnapshot.isAvailable()) throw e;
+                log.warn("⚠️ [SNAPSHOT] Mongo unavailable, building category tree from snapshot taken at {}",
+                        catalogSnapshot.getCreatedAt());
+                return build(catalogSnapshot.categories().stream()
+                        .map(c -> new Node(c.getId(), c.getName(), c.getParentId(),
+                                c.getProductCount() != null ? c.getProductCount() : 0L))
+                        .toList());
+            }
+            // Có invalidate trong lúc nạp -> vẫn dùng cây này nhưng lần đọc sau nạp lại
+            loadedAt = generation.get() == loadingGeneration ? System.currentTimeMillis() : 0;
+            tree = fresh;
+            return fresh;
+        }
+    }
+
+    private Tree load() {
+        long startTime = System.currentTimeMillis();
+        Query query = new Query(Criteria.where("deletedAt").isNull());
+        query.fields().include("name", "parentId", "productCount");
+        List<Node> nodes = new ArrayList<>();
+        for (Document doc : mongoTemplate.find(query, Document.class, "categories")) {
+            Object count = doc.get("productCount");
+            nodes.add(new Node(doc.get("_id").toString(), doc.getString("name"), doc.getString("parentId"),
+                    count instanceof Number n ? n.longValue() : 0L));
+        }
+        Tree loaded = build(nodes);
+        log.info("✅ [CATEGORY] Loaded category tree: {} categories, {} roots in {}ms",
+                loaded.nodes().size(), loaded.roots().size(), System.currentTimeMillis() - startTime);
+        return loaded;
+    }
+
+    /** Nối node theo parentId; cha không active (đã xóa / thiếu) thì node thành gốc. */
+    private static Tree build(List<Node> nodes) {
+        Map<String, Node> byId = new HashMap<>(nodes.size() * 2);
+        for (Node node : nodes) byId.put(node.id, node);
+        List<Node> roots = new ArrayList<>();
+        for (Node node : nodes) {
+            Node parent = node.parentId != null ? byId.get(node.parentId) : null;
+            if (parent != null) {
+                node.parent = parent;
+                parent.children.add(node);
+            } else {
+                roots.add(node);
+            }
+        }
+        Comparator<Node> byName = Comparator.comparing(n -> n.name != null ? n.name : "", String.CASE_INSENSITIVE_ORDER);
+        roots.sort(byName);
+        for (Node root : roots) finish(root, 0, byName);
+        return new Tree(byId, roots);
+    }
+
+    /** Gán depth, tổng product của cây con và sắp xếp con (duyệt sâu). */
+    private static long finish(Node node, int depth, Comparator<Node> byName) {
+        node.depth = depth;
+        node.children.sort(byName);
+        long total = node.productCount;
+        for (Node child : node.children) total += finish(child, depth + 1, byName);
+        node.subtreeCount = total;
+        return total;
+    }
+
+    private static Map<String, Object> toMenuItem(Node node) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", node.id);
+        item.put("name", node.name);
+        item.put("depth", node.depth);
+        item.put("count", node.subtreeCount);
+        List<Map<String, Object>> children = new ArrayList<>(node.children.size());
+        for (Node child : node.children) children.add(toMenuItem(child));
+        item.put("children", children);
+        return item;
+    }
+}
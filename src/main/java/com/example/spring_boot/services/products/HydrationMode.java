@@ -0,0 +1,21 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+/**
+ * Cách nạp dữ liệu liên quan (category, attributes, ảnh đại diện) cho danh sách product.
+ * - BATCH: query product rồi batch query category / attributes / images (mặc định, 3-4 round-trip)
+ * - PIPELINE: một aggregation duy nhất với $lookup (1 round-trip)
+ */
+public enum HydrationMode {
+    BATCH,
+    PIPELINE;
+
+    /** Parse từ query param, giá trị rỗng / không hợp lệ -> BATCH */
+    public static HydrationMode from(String value) {
+        if (value == null || value.isBlank()) return BATCH;
+        try {
+            return HydrationMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return BATCH;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.configs.InventoryProperties; // Thời gian giữ tồn / chu kỳ sweep
+import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
+import com.example.spring_boot.domains.products.StockReservation; // Reservation giữ tồn
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.types.ObjectId; // Id product
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.dao.DuplicateKeyException; // Hai upsert reservation cùng lúc
+import org.springframework.data.domain.Sort; // Chiều index
+import org.springframework.data.mongodb.core.BulkOperations; // $inc tồn hàng loạt
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.index.Index; // TTL index cho reservation đã đóng
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.data.mongodb.core.query.Update; // $inc / $set
+import org.springframework.scheduling.annotation.Scheduled; // Sweeper định kỳ
+import org.springframework.stereotype.Service; // Bean service Spring
+
+import java.time.Instant; // Thời điểm UTC
+import java.util.Collection; // Tập owner
+import java.util.HashMap; // Cộng dồn delta theo product
+import java.util.List; // Danh sách
+import java.util.Map; // productId -> số lượng
+import java.util.UUID; // Mã claim cho một lượt trả hàng loạt
+import java.util.concurrent.CompletableFuture; // Tạo index nền khi khởi động
+
+/**
+ * Giữ tồn cho giỏ hàng (stock_reservations), không đọc - kiểm tra - ghi Product.
+ * - Giữ: MỘT update có điều kiện { stock >= qty } với $inc stock -qty (không bao giờ âm / bán vượt)
+ *   rồi ghi reservation ACTIVE (owner, productId) có expiresAt
+ * - Trả: chỉ trả đúng phần đang giữ (claim reservation trước, $inc stock sau) -> không cộng trùng
+ * - Hết hạn: sweeper claim reservation ACTIVE quá hạn (ACTIVE -> RELEASED) rồi trả tồn
+ * - Thanh toán: reservation ACTIVE -> CONVERTED (tồn đã trừ thành số bán)
+ * - Gộp giỏ khi đăng nhập: reservation của session chuyển sang user (ACTIVE -> MERGED), tồn không đổi
+ * - Trả hàng loạt (làm trống giỏ, hủy đơn, sweep): claim bằng một updateMany gắn claimId,
+ *   cộng tồn bằng một bulkWrite $inc unordered, chỉ bỏ cache các product bị chạm
+ * - Reservation đã đóng được ghi closedAt, TTL index xóa sau app.inventory.closed-retention
+ */
+@Service // Đăng ký bean service
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class InventoryService {
+
+    private static final int MAX_CAS_ATTEMPTS = 5; // Số lần thử lại khi reservation đổi giữa đọc và ghi
+    private static final String CLOSED_TTL_INDEX = "closedAt_ttl";
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+    private final InventoryProperties properties; // Cấu hình giữ tồn
+    private final ProductCache productCache; // Bỏ product có tồn đổi khỏi cache
+    private final ProductStatistics productStatistics; // Tổng tồn duy trì tăng dần
+    private final CatalogVersionService catalogVersions; // Đổi ETag khi tồn đổi
+
+    /** TTL index trên closedAt: reservation đã đóng tự bị xóa sau closed-retention (bản ACTIVE không có closedAt). */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureClosedTtlIndex() {
+        CompletableFuture.runAsync(() -> mongoTemplate.indexOps(StockReservation.class).createIndex(new Index()
+                        .on("closedAt", Sort.Direction.ASC)
+                        .named(CLOSED_TTL_INDEX)
+                        .expire(properties.getClosedRetention())))
+                .exceptionally(e -> {
+                    // Index đã tồn tại với TTL khác: đổi app.inventory.closed-retention cần drop index cũ thủ công
+                    log.warn("⚠️ [INVENTORY] Could not create TTL index {}: {}", CLOSED_TTL_INDEX, e.getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * Giữ qty sản phẩm cho giỏ owner (cộng dồn vào reservation ACTIVE, gia hạn expiresAt).
+     * Không đủ tồn -> RuntimeException, không có gì bị thay đổi.
+     */
+    public void reserve(String owner, String productId, int quantity) {
+        if (quantity <= 0) return;
+        if (!tryDecrement(productId, quantity)) {
+            throw new RuntimeException("Số lượng sản phẩm không đủ");
+        }
+        try {
+            upsertReservation(owner, productId, quantity, properties.getReservationTtl().toMillis());
+        } catch (RuntimeException e) {
+            increment(productId, quantity); // Không ghi được reservation -> trả lại tồn vừa trừ
+            throw e;
+        }
+    }
+
+    /** Trả tối đa qty đang giữ của giỏ owner cho sản phẩm; trả về số lượng thực sự được trả. */
+    public int release(String owner, String productId, int quantity) {
+        if (quantity <= 0) return 0;
+        for (int attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+            StockReservation reservation = mongoTemplate.findOne(activeQuery(owner, productId), StockReservation.class);
+            if (reservation == null) return 0; // Không giữ gì (đã hết hạn / đã trả)
+
+            int held = reservation.getQuantity();
+            int released = Math.min(quantity, held);
+            Update update = released == held
+                    ? new Update().set("status", StockReservation.RELEASED).set("closedAt", Instant.now())
+                    : new Update().inc("quantity", -released);
+            // CAS theo quantity đã đọc: chỉ một request trả được phần này
+            Query claim = new Query(Criteria.where("_id").is(reservation.getId())
+                    .and("status").is(StockReservation.ACTIVE)
+                    .and("quantity").is(held));
+            if (mongoTemplate.updateFirst(claim, update.set("updatedAt", Instant.now()), StockReservation.class)
+                    .getModifiedCount() == 1) {
+                increment(productId, released);
+                return released;
+            }
+        }
+        throw new RuntimeException("Reservation changed concurrently, please retry");
+    }
+
+    /** Trả toàn bộ tồn đang giữ của giỏ owner (làm trống giỏ / thanh toán thất bại); trả về số reservation được trả. */
+    public int releaseAll(String owner) {
+        return releaseAll(List.of(owner));
+    }
+
+    /** Trả toàn bộ tồn đang giữ của nhiều giỏ (giỏ bị dọn) trong một lượt claim + một bulkWrite. */
+    public int releaseAll(Collection<String> owners) {
+        if (owners.isEmpty()) return 0;
+        List<StockReservation> claimed = claimAll(Criteria.where("owner").in(owners)
+                .and("status").is(StockReservation.ACTIVE), StockReservation.RELEASED, null);
+        adjustStock(heldByProduct(claimed));
+        return claimed.size();
+    }
+
+    /**
+     * Gộp giỏ khi đăng nhập: chuyển toàn bộ reservation ACTIVE của fromOwner sang toOwner (tồn không đổi).
+     * Claim bằng một updateMany (ACTIVE -> MERGED) rồi cộng dồn vào reservation của toOwner;
+     * trả về số reservation được chuyển.
+     */
+    public int transferAll(String fromOwner, String toOwner) {
+        List<StockReservation> claimed = claimAll(Criteria.where("owner").is(fromOwner)
+                .and("status").is(StockReservation.ACTIVE), StockReservation.MERGED, null);
+        long ttlMillis = properties.getReservationTtl().toMillis();
+        heldByProduct(claimed).forEach((productId, quantity) -> {
+            try {
+                upsertReservation(toOwner, productId, quantity, ttlMillis);
+            } catch (RuntimeException e) {
+                increment(productId, quantity); // Không ghi được reservation mới -> trả tồn thay vì giữ mồ côi
+                log.warn("⚠️ [INVENTORY] Could not move reservation of {} to {}: {}", productId, toOwner, e.getMessage());
+            }
+        });
+        return claimed.size();
+    }
+
+    /**
+     * Cộng / trừ tồn của nhiều product trong MỘT bulkWrite unordered ($inc theo delta),
+     * rồi chỉ bỏ cache + đổi version của các product bị chạm. Không kiểm tra stock >= 0:
+     * dùng để trả tồn; trừ tồn cho khách phải đi qua reserve.
+     */
+    public void adjustStock(Map<String, Integer> deltas) {
+        Map<String, Integer> changes = new HashMap<>();
+        deltas.forEach((productId, delta) -> {
+            if (delta != null && delta != 0 && ObjectId.isValid(productId)) changes.put(productId, delta);
+        });
+        if (changes.isEmpty()) return;
+
+        Instant now = Instant.now();
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        changes.forEach((productId, delta) -> ops.updateOne(
+                new Query(Criteria.where("_id").is(new ObjectId(productId))),
+                new Update().inc("stock", delta).set("updatedAt", now)));
+        ops.execute();
+        changes.forEach((productId, delta) -> stockChanged(productId, delta, now));
+    }
+
+    /**
+     * Chuẩn bị thanh toán: đảm bảo mỗi item đã được giữ đủ (giữ bù phần reservation đã hết hạn)
+     * và gia hạn toàn bộ reservation của giỏ tới hết thời gian chờ thanh toán.
+     */
+    public void holdForCheckout(String owner, Map<String, Integer> items) {
+        long holdMillis = properties.getCheckoutHold().toMillis();
+        for (Map.Entry<String, Integer> item : items.entrySet()) {
+            StockReservation reservation = mongoTemplate.findOne(activeQuery(owner, item.getKey()), StockReservation.class);
+            int held = reservation != null ? reservation.getQuantity() : 0;
+            int missing = item.getValue() - held;
+            if (missing > 0) {
+                if (!tryDecrement(item.getKey(), missing)) {
+                    throw new RuntimeException("Số lượng sản phẩm không đủ");
+                }
+                upsertReservation(owner, item.getKey(), missing, holdMillis);
+            }
+        }
+        mongoTemplate.updateMulti(new Query(Criteria.where("owner").is(owner).and("status").is(StockReservation.ACTIVE)),
+                new Update().set("expiresAt", Instant.now().plusMillis(holdMillis)).set("updatedAt", Instant.now()),
+                StockReservation.class);
+    }
+
+    /**
+     * Đơn đã thanh toán: chuyển reservation của giỏ thành số bán (CONVERTED).
+     * Giữ thiếu (reservation đã hết hạn / vừa bị trả) -> trừ bù; giữ dư -> trả phần dư.
+     */
+    public void convert(String owner, String orderId, Map<String, Integer> items) {
+        Map<String, Integer> heldByProduct = heldByProduct(claimAll(Criteria.where("owner").is(owner)
+                .and("status").is(StockReservation.ACTIVE)
+                .and("productId").in(items.keySet()), StockReservation.CONVERTED, orderId));
+        Map<String, Integer> corrections = new HashMap<>();
+        for (Map.Entry<String, Integer> item : items.entrySet()) {
+            String productId = item.getKey();
+            int sold = item.getValue();
+            int held = heldByProduct.getOrDefault(productId, 0);
+            if (held > sold) {
+                corrections.put(productId, held - sold);
+            } else if (held < sold && !tryDecrement(productId, sold - held)) {
+                // Đơn đã thanh toán nên không thể từ chối: vẫn trừ. Tồn âm tạm thời nếu lượt trả tồn khác
+                // đã claim reservation nhưng chưa cộng lại; âm thật = bán vượt, cần xử lý thủ công
+                log.warn("⚠️ [INVENTORY] Paid order {} takes stock without a hold: product={}, sold={}, reserved={}",
+                        orderId, productId, sold, held);
+                corrections.put(productId, held - sold);
+            }
+        }
+        adjustStock(corrections);
+        // Reservation còn lại của giỏ (sản phẩm không có trong đơn) được trả lại
+        releaseAll(owner);
+    }
+
+    /** Trả tồn của reservation ACTIVE đã hết hạn (tối đa sweep-batch-size mỗi lượt, claim trước khi cộng tồn). */
+    @Scheduled(fixedDelayString = "${app.inventory.sweep-interval:PT1M}",
+            initialDelayString = "${app.inventory.sweep-interval:PT1M}")
+    public int releaseExpired() {
+        Query expiredQuery = new Query(Criteria.where("status").is(StockReservation.ACTIVE)
+                .and("expiresAt").lt(Instant.now()))
+                .limit(properties.getSweepBatchSize());
+        expiredQuery.fields().include("_id");
+        List<String> expiredIds = mongoTemplate.find(expiredQuery, StockReservation.class).stream()
+                .map(StockReservation::getId)
+                .toList();
+        if (expiredIds.isEmpty()) return 0;
+
+        // Claim lại theo status: request khác vừa trả / chuyển đổi thì bỏ qua reservation đó
+        List<StockReservation> claimed = claimAll(Criteria.where("_id").in(expiredIds)
+                .and("status").is(StockReservation.ACTIVE), StockReservation.RELEASED, null);
+        adjustStock(heldByProduct(claimed));
+        int released = claimed.size();
+        if (released > 0) {
+            log.info("✅ [INVENTORY] Released {} expired stock reservations", released);
+        }
+        return released;
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    /** Trừ tồn có điều kiện trong MỘT update: chỉ khớp khi product active và stock >= qty. */
+    private boolean tryDecrement(String productId, int quantity) {
+        if (!ObjectId.isValid(productId)) return false;
+        Instant now = Instant.now();
+        Query query = new Query(Criteria.where("_id").is(new ObjectId(productId))
+                .and("deletedAt").isNull()
+                .and("stock").gte(quantity));
+        boolean decremented = mongoTemplate.updateFirst(query,
+                new Update().inc("stock", -quantity).set("updatedAt", now), Product.class)
+                .getModifiedCount() == 1;
+        if (decremented) stockChanged(productId, -quantity, now);
+        return decremented;
+    }
+
+    private void increment(String productId, int quantity) {
+        if (quantity <= 0) return;
+        adjustStock(Map.of(productId, quantity));
+    }
+
+    private void stockChanged(String productId, long delta, Instant updatedAt) {
+        productCache.evict(productId);
+        productStatistics.onStockChanged(delta);
+        catalogVersions.productChanged(productId, updatedAt);
+    }
+
+    /** Cộng qty vào reservation ACTIVE (tạo nếu chưa có) và gia hạn; thử lại một lần khi đụng unique index. */
+    private void upsertReservation(String owner, String productId, int quantity, long ttlMillis) {
+        Instant now = Instant.now();
+        Update update = new Update()
+                .inc("quantity", quantity)
+                .set("expiresAt", now.plusMillis(ttlMillis))
+                .set("updatedAt", now)
+                .setOnInsert("createdAt", now);
+        try {
+            mongoTemplate.upsert(activeQuery(owner, productId), update, StockReservation.class);
+        } catch (DuplicateKeyException e) {
+            mongoTemplate.upsert(activeQuery(owner, productId), update, StockReservation.class); // Request khác vừa tạo
+        }
+    }
+
+    /**
+     * Chuyển mọi reservation khớp criteria (phải gồm status ACTIVE) sang trạng thái mới bằng MỘT updateMany
+     * gắn claimId, rồi đọc lại đúng các bản lượt này đã claim (request chạy song song không claim trùng).
+     */
+    private List<StockReservation> claimAll(Criteria criteria, String status, String orderId) {
+        String claimId = UUID.randomUUID().toString();
+        Instant now = Instant.now();
+        Update update = new Update().set("status", status).set("claimId", claimId).set("closedAt", now).set("updatedAt", now);
+        if (orderId != null) update.set("orderId", orderId);
+        if (mongoTemplate.updateMulti(new Query(criteria), update, StockReservation.class).getModifiedCount() == 0) {
+            return List.of();
+        }
+        return mongoTemplate.find(new Query(Criteria.where("claimId").is(claimId)), StockReservation.class);
+    }
+
+    private static Map<String, Integer> heldByProduct(List<StockReservation> reservations) {
+        Map<String, Integer> held = new HashMap<>();
+        for (StockReservation reservation : reservations) {
+            held.merge(reservation.getProductId(), reservation.getQuantity() != null ? reservation.getQuantity() : 0,
+                    Integer::sum);
+        }
+        return held;
+    }
+
+    private static Query activeQuery(String owner, String productId) {
+        return new Query(Criteria.where("owner").is(owner)
+                .and("productId").is(productId)
+                .and("status").is(StockReservation.ACTIVE));
+    }
+}
@@ -23,13 +23,22 @@ public class ProductAttributeService {
 
     private final ProductAttributeRepository productAttributeRepository; // DAO thuộc tính sản phẩm
     private final MongoTemplate mongoTemplate; // MongoDB template cho query tối ưu
+    private final ProductCache productCache; // Bỏ cache product khi ảnh/thuộc tính thay đổi
+    private final ProductCardSync productCardSync; // Đồng bộ primaryImageUrl / card + version của product
+    private final ProductSearchIndex productSearchIndex; // Đồng bộ text thuộc tính vào search index
+    private final AttributeFilterIndex attributeFilterIndex; // Đồng bộ bitmap lọc theo thuộc tính
 
     /** Tạo thuộc tính mới cho sản phẩm. */
     public ProductAttribute create(ProductAttribute attr) {
         try {
             attr.setId(null); // Reset id để đảm bảo tạo mới
             attr.setCreatedAt(Instant.now()); // Gán thời điểm tạo
-            return productAttributeRepository.save(attr); // Lưu và trả về entity đã lưu
+            ProductAttribute saved = productAttributeRepository.save(attr); // Lưu entity
+            productSearchIndex.reindexAttributes(saved.getProductId()); // Cập nhật search index
+            attributeFilterIndex.reindexAttributes(saved.getProductId()); // Cập nhật filter index
+            productCardSync.refresh(saved.getProductId()); // Đồng bộ ảnh đại diện / thẻ + updatedAt của product
+            productCache.evict(saved.getProductId() != null ? saved.getProductId().toHexString() : null); // Bỏ cache product
+            return saved; // Trả về entity đã lưu
         } catch (Exception e) {
             log.error("Create product attribute failed, productId={}", attr != null ? attr.getProductId() : null, e); // Log ngữ cảnh
             throw new RuntimeException("Failed to create product attribute: " + e.getMessage(), e); // Bao lỗi nghiệp vụ
@@ -45,6 +54,10 @@ public class ProductAttributeService {
                 throw new RuntimeException("Product attribute has been deleted"); // Đã xóa mềm -> chặn thao tác lặp
             attr.setDeletedAt(Instant.now()); // Đánh dấu xóa mềm
             productAttributeRepository.save(attr); // Lưu thay đổi
+            productSearchIndex.reindexAttributes(attr.getProductId()); // Cập nhật search index
+            attributeFilterIndex.reindexAttributes(attr.getProductId()); // Cập nhật filter index
+            productCardSync.refresh(attr.getProductId()); // Đồng bộ ảnh đại diện / thẻ + updatedAt của product
+            productCache.evict(attr.getProductId() != null ? attr.getProductId().toHexString() : null); // Bỏ cache product
         } catch (Exception e) {
             log.error("Soft delete product attribute failed, id={}", id, e); // Log ngữ cảnh lỗi
             throw new RuntimeException("Failed to soft delete product attribute: " + e.getMessage(), e); // Bao lỗi nghiệp vụ
@@ -0,0 +1,127 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.configs.ProductCacheProperties; // Cấu hình dung lượng / TTL
+import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
+import com.example.spring_boot.domains.products.ProductAttribute; // Thuộc tính sản phẩm
+import com.example.spring_boot.domains.products.ProductImage; // Ảnh sản phẩm
+
+import com.github.benmanes.caffeine.cache.Cache; // Cache Caffeine
+import com.github.benmanes.caffeine.cache.Caffeine; // Builder cache
+import io.micrometer.core.instrument.MeterRegistry; // Registry metrics của actuator
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics; // Bind hit/miss/eviction
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.util.ArrayList; // Sao chép danh sách
+import java.util.function.Function; // Loader khi cache miss
+
+/**
+ * Cache read-through cho product theo id (Caffeine, eviction W-TinyLFU).
+ * - Giới hạn theo dung lượng ước lượng của entry, không theo số lượng
+ * - Trả về bản sao: caller (ví dụ CartService) sửa stock trên object trả về không làm bẩn cache
+ * - Metrics: cache.gets / cache.evictions / cache.size với tag cache=products
+ */
+@Component // Đăng ký bean
+public class ProductCache {
+
+    private static final String CACHE_NAME = "products";
+    private static final int BASE_WEIGHT = 512; // Overhead object + các field số / Instant
+    private static final int CHILD_WEIGHT = 160; // Mỗi attribute / image
+
+    private final Cache<String, Product> cache;
+
+    public ProductCache(ProductCacheProperties properties, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxWeightBytes())
+                .weigher((String id, Product product) -> estimateWeight(product))
+                .expireAfterWrite(properties.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /** Lấy product từ cache, miss thì gọi loader (loader trả null -> không cache). */
+    public Product get(String id, Function<String, Product> loader) {
+        Product cached = cache.get(id, loader);
+        return cached != null ? copyOf(cached) : null;
+    }
+
+    /** Nạp sẵn một product đã populate (làm ấm cache từ snapshot khi khởi động). */
+    public void put(Product product) {
+        if (product == null || product.getId() == null) return;
+        cache.put(product.getId(), copyOf(product));
+    }
+
+    /** Bỏ entry của một product (sau khi product / ảnh / thuộc tính của nó thay đổi). */
+    public void evict(String id) {
+        if (id == null) return;
+        cache.invalidate(id);
+    }
+
+    /** Bỏ các product đang embed category này (category đổi tên / bị xóa). */
+    public void evictByCategory(String categoryId) {
+        if (categoryId == null) return;
+        cache.asMap().values().removeIf(p -> p.getCategoryId() != null
+                && categoryId.equals(p.getCategoryId().toHexString()));
+    }
+
+    /** Xóa toàn bộ cache (chỉ dùng cho thao tác hàng loạt). */
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private static int estimateWeight(Product product) {
+        int weight = BASE_WEIGHT;
+        weight += 2 * length(product.getName());
+        weight += 2 * length(product.getDescription());
+        weight += 2 * length(product.getPrimaryImageUrl());
+        if (product.getCard() != null) {
+            weight += CHILD_WEIGHT;
+            for (String highlight : product.getCard().getHighlights()) {
+                weight += 2 * length(highlight);
+            }
+        }
+        if (product.getCategory() != null) {
+            weight += BASE_WEIGHT / 2 + 2 * length(product.getCategory().getName())
+                    + 2 * length(product.getCategory().getDescription());
+        }
+        if (product.getAttributes() != null) {
+            for (ProductAttribute attr : product.getAttributes()) {
+                weight += CHILD_WEIGHT + 2 * (length(attr.getName()) + length(attr.getValue()));
+            }
+        }
+        if (product.getImages() != null) {
+            for (ProductImage img : product.getImages()) {
+                weight += CHILD_WEIGHT + 2 * length(img.getImageUrl());
+            }
+        }
+        return weight;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /** Sao chép nông: field top-level và danh sách con mới; category/attribute/image dùng chung (chỉ đọc). */
+    private static Product copyOf(Product source) {
+        return Product.builder()
+                .id(source.getId())
+                .name(source.getName())
+                .description(source.getDescription())
+                .price(source.getPrice())
+                .stock(source.getStock())
+                .categoryId(source.getCategoryId())
+                .category(source.getCategory())
+                .attributes(source.getAttributes() != null ? new ArrayList<>(source.getAttributes()) : null)
+                .images(source.getImages() != null ? new ArrayList<>(source.getImages()) : null)
+                .primaryImageUrl(source.getPrimaryImageUrl())
+                .card(source.getCard())
+                .createdAt(source.getCreatedAt())
+                .updatedAt(source.getUpdatedAt())
+                .deletedAt(source.getDeletedAt())
+                .build();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
+import com.example.spring_boot.domains.products.ProductCard; // Thẻ tóm tắt nhúng trong product
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô khi đọc ảnh / thuộc tính
+import org.bson.types.ObjectId; // Id product
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.data.domain.Sort; // Thứ tự ảnh / thuộc tính
+import org.springframework.data.mongodb.core.BulkOperations; // Ghi hàng loạt khi backfill
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.data.mongodb.core.query.Update; // Cập nhật field denormalized
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.time.Instant; // Thời điểm UTC
+import java.util.ArrayList; // ArrayList implementation
+import java.util.HashMap; // Map productId -> thẻ
+import java.util.List; // Danh sách
+import java.util.Map; // Map
+import java.util.concurrent.CompletableFuture; // Backfill nền khi khởi động
+import java.util.stream.Stream; // Stream cursor Mongo
+
+/**
+ * Đồng bộ field denormalized primaryImageUrl + card của Product từ product_images / product_attributes.
+ * - ProductImageService / ProductAttributeService gọi refresh sau mỗi lần ghi (cùng lúc cập nhật updatedAt)
+ * - Backfill khi khởi động cho product chưa có card, hoặc tính lại toàn bộ qua API admin
+ * - Ảnh đại diện: ảnh active có isPrimary = true, không có thì ảnh tạo sớm nhất (giống thứ tự batch populate)
+ */
+@Component // Đăng ký bean
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class ProductCardSync {
+
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+    private final CatalogVersionService catalogVersions; // Đổi version (ETag) của product
+    private final ProductCache productCache; // Bỏ cache sau backfill
+
+    /** Kết quả tính thẻ cho một product */
+    private static final class CardData {
+        String primaryImageUrl;
+        final ProductCard card = ProductCard.empty();
+    }
+
+    /** Tính lại thẻ của một product sau khi ảnh / thuộc tính thay đổi, đồng thời cập nhật updatedAt. */
+    public void refresh(ObjectId productId) {
+        if (productId == null) return;
+        CardData data = loadCards(List.of(productId)).get(productId);
+        Instant now = Instant.now();
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(productId)),
+                toUpdate(data).set("updatedAt", now), Product.class);
+        catalogVersions.productChanged(productId.toHexString(), now);
+    }
+
+    /** Backfill nền sau khi app khởi động (chỉ product chưa có card). */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        CompletableFuture.runAsync(() -> backfill(false))
+                .exceptionally(e -> {
+                    log.error("❌ [CARD] Product card backfill failed", e);
+                    return null;
+                });
+    }
+
+    /**
+     * Tính thẻ theo lô cho các product (all = false: chỉ product chưa có card).
+     * Trả về số product đã cập nhật.
+     */
+    public long backfill(boolean all) {
+        long startTime = System.currentTimeMillis();
+        Query query = all ? new Query() : new Query(Criteria.where("card").exists(false));
+        query.fields().include("_id");
+        query.cursorBatchSize(BACKFILL_BATCH_SIZE);
+
+        long updated = 0;
+        List<ObjectId> batch = new ArrayList<>(BACKFILL_BATCH_SIZE);
+        try (Stream<Document> docs = mongoTemplate.stream(query, Document.class, "products")) {
+            for (Document doc : (Iterable<Document>) docs::iterator) {
+                batch.add(doc.getObjectId("_id"));
+                if (batch.size() >= BACKFILL_BATCH_SIZE) {
+                    updated += writeBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) updated += writeBatch(batch);
+
+        if (updated > 0) {
+            productCache.evictAll(); // Entry cũ chưa có card
+            catalogVersions.productsChanged();
+        }
+        log.info("✅ [CARD] Backfilled product cards: {} products in {}ms", updated,
+                System.currentTimeMillis() - startTime);
+        return updated;
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private int writeBatch(List<ObjectId> productIds) {
+        Map<ObjectId, CardData> cards = loadCards(productIds);
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (ObjectId productId : productIds) {
+            ops.updateOne(new Query(Criteria.where("_id").is(productId)), toUpdate(cards.get(productId)));
+        }
+        return ops.execute().getMatchedCount();
+    }
+
+    /** Đọc ảnh + thuộc tính active của các product trong 2 query ($in) và dựng thẻ. */
+    private Map<ObjectId, CardData> loadCards(List<ObjectId> productIds) {
+        Map<ObjectId, CardData> cards = new HashMap<>();
+        for (ObjectId productId : productIds) {
+            cards.put(productId, new CardData());
+        }
+
+        Query imageQuery = new Query(Criteria.where("productId").in(productIds).and("deletedAt").isNull());
+        imageQuery.fields().include("productId", "imageUrl");
+        imageQuery.with(Sort.by("isPrimary").descending().and(Sort.by("createdAt").ascending()));
+        for (Document image : mongoTemplate.find(imageQuery, Document.class, "product_images")) {
+            CardData data = cards.get(image.getObjectId("productId"));
+            if (data == null) continue;
+            if (data.card.getImageCount() == 0) {
+                data.primaryImageUrl = image.getString("imageUrl");
+                data.card.setPrimaryImageId(image.getObjectId("_id").toHexString());
+            }
+            data.card.setImageCount(data.card.getImageCount() + 1);
+        }
+
+        Query attributeQuery = new Query(Criteria.where("productId").in(productIds).and("deletedAt").isNull());
+        attributeQuery.fields().include("productId", "name", "value");
+        attributeQuery.with(Sort.by("createdAt").ascending());
+        for (Document attribute : mongoTemplate.find(attributeQuery, Document.class, "product_attributes")) {
+            CardData data = cards.get(attribute.getObjectId("productId"));
+            if (data == null) continue;
+            data.card.setAttributeCount(data.card.getAttributeCount() + 1);
+            if (data.card.getHighlights().size() < ProductCard.MAX_HIGHLIGHTS) {
+                data.card.getHighlights().add(attribute.getString("name") + ": " + attribute.getString("value"));
+            }
+        }
+        return cards;
+    }
+
+    private static Update toUpdate(CardData data) {
+        return new Update().set("primaryImageUrl", data.primaryImageUrl).set("card", data.card);
+    }
+}
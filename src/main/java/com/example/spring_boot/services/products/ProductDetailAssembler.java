@@ -0,0 +1,197 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.configs.MongoCommandTracker; // Tính lệnh Mongo của task vào request gọi
+import com.example.spring_boot.configs.ProductDetailProperties; // Pool size + deadline
+import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
+import com.example.spring_boot.domains.products.ProductAttribute; // Thuộc tính sản phẩm
+import com.example.spring_boot.domains.products.ProductImage; // Ảnh sản phẩm
+import com.example.spring_boot.dto.ProductDetailResponse; // DTO chi tiết sản phẩm
+import com.example.spring_boot.dto.ProductStatsResponse; // DTO số like / đánh giá
+
+import jakarta.annotation.PreDestroy; // Tắt pool khi dừng app
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô cho aggregation
+import org.bson.types.ObjectId; // Id product
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.time.Duration; // Deadline
+import java.util.List; // Danh sách
+import java.util.concurrent.ArrayBlockingQueue; // Hàng đợi có giới hạn
+import java.util.concurrent.CompletableFuture; // Task song song
+import java.util.concurrent.ExecutionException; // Task lỗi
+import java.util.concurrent.ThreadPoolExecutor; // Pool cố định
+import java.util.concurrent.TimeUnit; // Đơn vị thời gian
+import java.util.concurrent.TimeoutException; // Quá hạn
+import java.util.concurrent.atomic.AtomicInteger; // Đánh số thread
+import java.util.function.Supplier; // Task nạp dữ liệu
+
+/**
+ * Dựng chi tiết sản phẩm bằng cách nạp song song: product (qua ProductCache), ảnh, thuộc tính.
+ * Số like, lượt xem + tóm tắt đánh giá nạp riêng (assembleStats) vì chi tiết được trả 304 theo ETag của product.
+ * Độ trễ ≈ task chậm nhất thay vì tổng các task.
+ * - Cả lần nạp có một deadline chung; phần phụ quá hạn / lỗi -> null + ghi vào missing (partial)
+ * - Product là phần bắt buộc: quá hạn / lỗi -> RuntimeException
+ * - Pool cố định, hàng đợi có giới hạn; pool đầy thì chạy ngay trên thread request (CallerRuns)
+ */
+@Component // Đăng ký bean
+@Slf4j // Bật logging
+public class ProductDetailAssembler {
+
+    private final ProductService productService; // Product + category (read-through cache)
+    private final ProductImageService productImageService; // Danh sách ảnh
+    private final ProductAttributeService productAttributeService; // Danh sách thuộc tính
+    private final ProductLikeService productLikeService; // Đếm like
+    private final ProductViewCounter productViewCounter; // Lượt xem (DB + chờ flush)
+    private final MongoTemplate mongoTemplate; // Aggregation đánh giá
+    private final MongoCommandTracker mongoCommandTracker; // Đếm lệnh Mongo theo request
+    private final Duration timeout;
+    private final ThreadPoolExecutor executor;
+
+    public ProductDetailAssembler(ProductService productService, ProductImageService productImageService,
+            ProductAttributeService productAttributeService, ProductLikeService productLikeService,
+            ProductViewCounter productViewCounter, MongoTemplate mongoTemplate, MongoCommandTracker mongoCommandTracker,
+            ProductDetailProperties properties) {
+        this.productService = productService;
+        this.productImageService = productImageService;
+        this.productAttributeService = productAttributeService;
+        this.productLikeService = productLikeService;
+        this.productViewCounter = productViewCounter;
+        this.mongoTemplate = mongoTemplate;
+        this.mongoCommandTracker = mongoCommandTracker;
+        this.timeout = properties.getTimeout();
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        int poolSize = Math.max(1, properties.getPoolSize());
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(poolSize * 16),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "product-detail-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** Nạp chi tiết sản phẩm (caller đã kiểm tra product tồn tại). */
+    public ProductDetailResponse assemble(String productId) {
+        long startTime = System.currentTimeMillis();
+        long deadline = System.nanoTime() + timeout.toNanos();
+
+        CompletableFuture<Product> productTask = submit(() -> productService.getById(productId));
+        CompletableFuture<List<ProductImage>> imagesTask = submit(() -> productImageService.getByProductId(productId));
+        CompletableFuture<List<ProductAttribute>> attributesTask =
+                submit(() -> productAttributeService.getByProductId(productId));
+
+        ProductDetailResponse detail = new ProductDetailResponse();
+        Product product = await(productTask, deadline, "product", productId, detail.missing);
+        if (product == null) {
+            List.of(imagesTask, attributesTask).forEach(task -> task.cancel(true));
+            throw new RuntimeException("Failed to load product detail: product unavailable, id=" + productId);
+        }
+
+        detail.id = product.getId();
+        detail.name = product.getName();
+        detail.description = product.getDescription();
+        detail.price = product.getPrice();
+        detail.stock = product.getStock();
+        detail.category = product.getCategory();
+        detail.createdAt = product.getCreatedAt();
+        detail.updatedAt = product.getUpdatedAt();
+        detail.deletedAt = product.getDeletedAt();
+
+        List<ProductImage> images = await(imagesTask, deadline, "images", productId, detail.missing);
+        if (images != null) {
+            detail.images = images.stream()
+                    .map(img -> new ProductDetailResponse.ImageItem(img.getId(), img.getImageUrl(),
+                            img.getIsPrimary(), img.getCreatedAt()))
+                    .toList();
+        }
+        List<ProductAttribute> attributes = await(attributesTask, deadline, "attributes", productId, detail.missing);
+        if (attributes != null) {
+            detail.attributes = attributes.stream()
+                    .map(attr -> new ProductDetailResponse.AttributeItem(attr.getId(), attr.getName(), attr.getValue()))
+                    .toList();
+        }
+        detail.partial = !detail.missing.isEmpty();
+
+        log.info("✅ [PERFORMANCE] Assembled product detail {} in {}ms{}", productId,
+                System.currentTimeMillis() - startTime, detail.partial ? " (missing " + detail.missing + ")" : "");
+        return detail;
+    }
+
+    /** Nạp song song số like, lượt xem + tóm tắt đánh giá (không cache, không ETag). */
+    public ProductStatsResponse assembleStats(String productId) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+
+        CompletableFuture<Long> likesTask = submit(() -> productLikeService.countByProductId(productId));
+        CompletableFuture<Long> viewsTask = submit(() -> productViewCounter.getViews(productId));
+        CompletableFuture<ProductStatsResponse.ReviewSummary> reviewsTask = submit(() -> loadReviewSummary(productId));
+
+        ProductStatsResponse stats = new ProductStatsResponse();
+        stats.id = productId;
+        stats.likeCount = await(likesTask, deadline, "likeCount", productId, stats.missing);
+        stats.viewCount = await(viewsTask, deadline, "viewCount", productId, stats.missing);
+        stats.reviews = await(reviewsTask, deadline, "reviews", productId, stats.missing);
+        stats.partial = !stats.missing.isEmpty();
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    /** Chạy task trên pool; lệnh Mongo của task được tính vào request đang gọi (không phải "(background)"). */
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(mongoCommandTracker.propagate(task), executor);
+    }
+
+    /** Chờ task trong thời gian còn lại của deadline; quá hạn / lỗi -> null và ghi nhận phần bị thiếu. */
+    private <T> T await(CompletableFuture<T> task, long deadline, String section, String productId,
+            List<String> missing) {
+        try {
+            return task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            log.warn("⚠️ [PERFORMANCE] Product detail {}: '{}' exceeded deadline {}ms", productId, section,
+                    timeout.toMillis());
+        } catch (ExecutionException e) {
+            log.warn("⚠️ [PERFORMANCE] Product detail {}: '{}' failed: {}", productId, section,
+                    e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.cancel(true);
+        }
+        missing.add(section);
+        return null;
+    }
+
+    /** Số đánh giá, điểm trung bình và phân bố theo số sao trong một aggregation (tối đa 5 nhóm). */
+    private ProductStatsResponse.ReviewSummary loadReviewSummary(String productId) {
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("productId", new ObjectId(productId))
+                        .append("deletedAt", null)
+                        .append("rating", new Document("$ne", null))),
+                new Document("$group", new Document("_id", "$rating").append("count", new Document("$sum", 1))),
+                new Document("$sort", new Document("_id", -1)));
+
+        ProductStatsResponse.ReviewSummary summary = new ProductStatsResponse.ReviewSummary();
+        long ratingSum = 0;
+        for (Document doc : mongoTemplate.getCollection("product_reviews").aggregate(pipeline)) {
+            int rating = ((Number) doc.get("_id")).intValue();
+            long count = ((Number) doc.get("count")).longValue();
+            summary.ratingCounts.put(rating, count);
+            summary.count += count;
+            ratingSum += rating * count;
+        }
+        summary.averageRating = summary.count == 0 ? 0.0
+                : Math.round(ratingSum * 100.0 / summary.count) / 100.0;
+        return summary;
+    }
+}
@@ -23,13 +23,18 @@ public class ProductImageService {
 
     private final ProductImageRepository productImageRepository; // DAO ảnh sản phẩm
     private final MongoTemplate mongoTemplate; // MongoDB template cho query tối ưu
+    private final ProductCache productCache; // Bỏ cache product khi ảnh/thuộc tính thay đổi
+    private final ProductCardSync productCardSync; // Đồng bộ primaryImageUrl / card + version của product
 
     /** Tạo mới ảnh cho sản phẩm. */
     public ProductImage create(ProductImage image) {
         try {
             image.setId(null); // Reset id để đảm bảo tạo mới
             image.setCreatedAt(Instant.now()); // Gán thời điểm tạo
-            return productImageRepository.save(image); // Lưu và trả về entity đã lưu
+            ProductImage saved = productImageRepository.save(image); // Lưu entity
+            productCardSync.refresh(saved.getProductId()); // Đồng bộ ảnh đại diện / thẻ + updatedAt của product
+            productCache.evict(saved.getProductId() != null ? saved.getProductId().toHexString() : null); // Bỏ cache product
+            return saved; // Trả về entity đã lưu
         } catch (Exception e) {
             log.error("Create product image failed, productId={}", image != null ? image.getProductId() : null, e); // Log ngữ cảnh
             throw new RuntimeException("Failed to create product image: " + e.getMessage(), e); // Bao lỗi nghiệp vụ
@@ -45,6 +50,8 @@ public class ProductImageService {
                 throw new RuntimeException("Product image has been deleted"); // Đã xóa mềm -> chặn thao tác lặp
             img.setDeletedAt(Instant.now()); // Đánh dấu xóa mềm
             productImageRepository.save(img); // Lưu thay đổi
+            productCardSync.refresh(img.getProductId()); // Đồng bộ ảnh đại diện / thẻ + updatedAt của product
+            productCache.evict(img.getProductId() != null ? img.getProductId().toHexString() : null); // Bỏ cache product
         } catch (Exception e) {
             log.error("Soft delete product image failed, id={}", id, e); // Log ngữ cảnh lỗi
             throw new RuntimeException("Failed to soft delete product image: " + e.getMessage(), e); // Bao lỗi nghiệp vụ
@@ -60,7 +67,7 @@ public class ProductImageService {
         try {
             Query query = new Query(Criteria.where("productId").is(new ObjectId(productId))
                     .and("deletedAt").isNull());
-            query.fields().include("imageUrl", "altText", "productId", "createdAt");
+            query.fields().include("imageUrl", "altText", "isPrimary", "productId", "createdAt");
             
             List<ProductImage> images = mongoTemplate.find(query, ProductImage.class);
             
@@ -0,0 +1,363 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
+import com.example.spring_boot.domains.products.ProductAttribute; // Thuộc tính sản phẩm
+import com.example.spring_boot.domains.products.ProductCard; // Thẻ tóm tắt denormalized
+import com.example.spring_boot.domains.products.ProductImage; // Ảnh sản phẩm
+import com.example.spring_boot.dto.ProductImportResult; // Kết quả import
+import com.example.spring_boot.utils.CsvReader; // Đọc CSV theo record
+
+import com.fasterxml.jackson.databind.JsonNode; // Node JSON của một dòng NDJSON
+import com.fasterxml.jackson.databind.ObjectMapper; // Parse JSON
+import com.mongodb.bulk.BulkWriteError; // Lỗi từng phần tử trong bulk
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô cho tập id category
+import org.bson.types.ObjectId; // Id gán trước cho product
+import org.springframework.data.mongodb.BulkOperationException; // Bulk ghi lỗi một phần
+import org.springframework.data.mongodb.core.BulkOperations; // Ghi hàng loạt
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.stereotype.Service; // Bean service Spring
+
+import java.io.BufferedReader; // Đọc theo dòng cho NDJSON
+import java.io.IOException; // Lỗi đọc stream
+import java.io.InputStream; // Body request / file upload
+import java.io.InputStreamReader; // Decode UTF-8
+import java.math.BigDecimal; // Giá sản phẩm
+import java.nio.charset.StandardCharsets; // UTF-8
+import java.time.Instant; // Thời điểm UTC
+import java.util.ArrayList; // ArrayList implementation
+import java.util.HashMap; // Vị trí cột CSV
+import java.util.HashSet; // Tập id category / index lỗi
+import java.util.List; // Danh sách
+import java.util.Map; // Map cột
+import java.util.Set; // Tập
+import java.util.concurrent.CompletableFuture; // Rebuild search index nền
+
+/**
+ * Import sản phẩm hàng loạt từ CSV hoặc NDJSON.
+ * - Đọc từng dòng từ stream, chỉ giữ một batch trong bộ nhớ (heap không phụ thuộc kích thước file)
+ * - Product được gán ObjectId trước, ghi bằng bulk insert unordered theo batch;
+ *   attributes / images chỉ ghi cho các product insert thành công
+ * - Lỗi theo dòng được gom lại (có giới hạn), cache / thống kê / search index làm mới một lần ở cuối
+ *
+ * CSV header: name,description,price,stock,categoryId,attributes,images
+ *   attributes = "Màu sắc:Đen|RAM:8GB", images = "url1|url2" (ảnh đầu tiên là ảnh chính)
+ * NDJSON: {"name":..,"price":..,"stock":..,"categoryId":..,"attributes":[{"name":..,"value":..}],"images":["url"]}
+ */
+@Service // Đăng ký bean service
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class ProductImportService {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int MAX_BATCH_SIZE = 5000;
+    private static final int MAX_REPORTED_ERRORS = 1000; // Giới hạn lỗi trả về để không phình bộ nhớ
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+    private final ObjectMapper objectMapper; // Parse NDJSON
+    private final ProductSearchIndex productSearchIndex; // Làm mới search index sau import
+    private final AttributeFilterIndex attributeFilterIndex; // Cấp ordinal cho product mới import
+    private final ProductSuggestionIndex productSuggestionIndex; // Thêm tên product mới vào typeahead
+    private final ProductStatistics productStatistics; // Đối soát thống kê sau import
+    private final CatalogVersionService catalogVersions; // Đổi ETag danh sách sau import
+    private final CategoryProductCounter categoryProductCounter; // Đối soát productCount của category sau import
+
+    /** Một dòng đã parse, chờ ghi trong batch */
+    private static final class PendingRow {
+        final long row;
+        final Product product;
+        final List<ProductAttribute> attributes;
+        final List<ProductImage> images;
+
+        PendingRow(long row, Product product, List<ProductAttribute> attributes, List<ProductImage> images) {
+            this.row = row;
+            this.product = product;
+            this.attributes = attributes;
+            this.images = images;
+        }
+    }
+
+    /**
+     * Import từ stream; format = csv | ndjson.
+     * Stream do caller quản lý (không đóng ở đây).
+     */
+    public ProductImportResult importProducts(InputStream input, String format, int batchSize) {
+        long startTime = System.currentTimeMillis();
+        int effectiveBatch = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        ProductImportResult result = new ProductImportResult();
+        Set<String> categoryIds = loadActiveCategoryIds();
+        List<PendingRow> batch = new ArrayList<>(effectiveBatch);
+
+        log.info("📥 [IMPORT] Starting product import: format={}, batchSize={}", format, effectiveBatch);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            if ("ndjson".equalsIgnoreCase(format) || "jsonl".equalsIgnoreCase(format)) {
+                readNdjson(reader, categoryIds, result, batch, effectiveBatch);
+            } else if ("csv".equalsIgnoreCase(format)) {
+                readCsv(reader, categoryIds, result, batch, effectiveBatch);
+            } else {
+                throw new IllegalArgumentException("Unsupported import format: " + format);
+            }
+            flush(batch, result);
+        } catch (IOException e) {
+            log.error("❌ [IMPORT] Read import stream failed after {} rows", result.totalRows, e);
+            throw new RuntimeException("Failed to read import file: " + e.getMessage(), e);
+        } finally {
+            // Làm mới một lần cho cả file, kể cả khi dừng giữa chừng
+            if (result.inserted > 0) {
+                catalogVersions.productsChanged();
+                CompletableFuture.runAsync(productSearchIndex::rebuild);
+                CompletableFuture.runAsync(attributeFilterIndex::rebuild);
+                CompletableFuture.runAsync(productSuggestionIndex::reload);
+                CompletableFuture.runAsync(productStatistics::reconcile);
+                CompletableFuture.runAsync(categoryProductCounter::reconcile);
+            }
+        }
+
+        result.durationMs = System.currentTimeMillis() - startTime;
+        log.info("✅ [IMPORT] Imported {}/{} products ({} failed) in {}ms",
+                result.inserted, result.totalRows, result.failed, result.durationMs);
+        return result;
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private void readCsv(BufferedReader reader, Set<String> categoryIds, ProductImportResult result,
+            List<PendingRow> batch, int batchSize) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.readRecord();
+        if (header == null) return;
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().replace("\uFEFF", "").toLowerCase(), i); // Bỏ BOM của Excel
+        }
+        if (!columns.containsKey("name")) {
+            throw new IllegalArgumentException("CSV header must contain a 'name' column");
+        }
+
+        List<String> record;
+        while ((record = csv.readRecord()) != null) {
+            if (record.size() == 1 && record.get(0).isBlank()) continue; // Dòng trống
+            long row = ++result.totalRows;
+            try {
+                Product product = buildProduct(cell(record, columns, "name"), cell(record, columns, "description"),
+                        cell(record, columns, "price"), cell(record, columns, "stock"),
+                        cell(record, columns, "categoryid"), categoryIds);
+                ObjectId productId = new ObjectId(product.getId());
+
+                List<ProductAttribute> attributes = new ArrayList<>();
+                String rawAttributes = cell(record, columns, "attributes");
+                if (rawAttributes != null && !rawAttributes.isBlank()) {
+                    for (String pair : rawAttributes.split("\\|")) {
+                        int sep = pair.indexOf(':');
+                        if (sep <= 0) throw new IllegalArgumentException("Invalid attribute '" + pair + "', expected Name:Value");
+                        attributes.add(buildAttribute(productId, pair.substring(0, sep), pair.substring(sep + 1)));
+                    }
+                }
+                List<ProductImage> images = new ArrayList<>();
+                String rawImages = cell(record, columns, "images");
+                if (rawImages != null && !rawImages.isBlank()) {
+                    for (String url : rawImages.split("\\|")) {
+                        if (!url.isBlank()) images.add(buildImage(productId, url.trim(), images.isEmpty()));
+                    }
+                }
+                batch.add(pendingRow(row, product, attributes, images));
+            } catch (IllegalArgumentException e) {
+                addError(result, row, e.getMessage());
+            }
+            if (batch.size() >= batchSize) flush(batch, result);
+        }
+    }
+
+    private void readNdjson(BufferedReader reader, Set<String> categoryIds, ProductImportResult result,
+            List<PendingRow> batch, int batchSize) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue;
+            long row = ++result.totalRows;
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                Product product = buildProduct(text(node, "name"), text(node, "description"), text(node, "price"),
+                        text(node, "stock"), text(node, "categoryId"), categoryIds);
+                ObjectId productId = new ObjectId(product.getId());
+
+                List<ProductAttribute> attributes = new ArrayList<>();
+                for (JsonNode attr : node.path("attributes")) {
+                    attributes.add(buildAttribute(productId, text(attr, "name"), text(attr, "value")));
+                }
+                List<ProductImage> images = new ArrayList<>();
+                for (JsonNode img : node.path("images")) {
+                    String url = img.isTextual() ? img.asText() : text(img, "imageUrl");
+                    if (url != null && !url.isBlank()) images.add(buildImage(productId, url.trim(), images.isEmpty()));
+                }
+                batch.add(pendingRow(row, product, attributes, images));
+            } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+                addError(result, row, "Invalid JSON: " + e.getOriginalMessage());
+            } catch (IllegalArgumentException e) {
+                addError(result, row, e.getMessage());
+            }
+            if (batch.size() >= batchSize) flush(batch, result);
+        }
+    }
+
+    /** Gắn ảnh đại diện + thẻ denormalized (đã biết đủ ảnh / thuộc tính của dòng) rồi tạo PendingRow. */
+    private static PendingRow pendingRow(long row, Product product, List<ProductAttribute> attributes,
+            List<ProductImage> images) {
+        ProductCard card = ProductCard.empty();
+        if (!images.isEmpty()) {
+            ProductImage primary = images.get(0);
+            primary.setId(new ObjectId().toHexString()); // Gán id trước để card trỏ tới ảnh đại diện
+            product.setPrimaryImageUrl(primary.getImageUrl());
+            card.setPrimaryImageId(primary.getId());
+        }
+        card.setImageCount(images.size());
+        card.setAttributeCount(attributes.size());
+        for (ProductAttribute attr : attributes) {
+            if (card.getHighlights().size() >= ProductCard.MAX_HIGHLIGHTS) break;
+            card.getHighlights().add(attr.getName() + ": " + attr.getValue());
+        }
+        product.setCard(card);
+        return new PendingRow(row, product, attributes, images);
+    }
+
+    /** Ghi một batch: bulk insert products (unordered), rồi attributes / images của các product thành công. */
+    private void flush(List<PendingRow> batch, ProductImportResult result) {
+        if (batch.isEmpty()) return;
+
+        Set<Integer> failedIndexes = new HashSet<>();
+        try {
+            BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+            ops.insert(batch.stream().map(r -> r.product).toList());
+            ops.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failedIndexes.add(error.getIndex());
+                addError(result, batch.get(error.getIndex()).row, error.getMessage());
+            }
+        }
+
+        List<ProductAttribute> attributes = new ArrayList<>();
+        List<ProductImage> images = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (failedIndexes.contains(i)) continue;
+            result.inserted++;
+            attributes.addAll(batch.get(i).attributes);
+            images.addAll(batch.get(i).images);
+        }
+        result.attributesInserted += insertChildren(attributes, ProductAttribute.class);
+        result.imagesInserted += insertChildren(images, ProductImage.class);
+        batch.clear();
+    }
+
+    private <T> long insertChildren(List<T> documents, Class<T> type) {
+        if (documents.isEmpty()) return 0;
+        try {
+            BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, type);
+            ops.insert(documents);
+            return ops.execute().getInsertedCount();
+        } catch (BulkOperationException e) {
+            log.warn("⚠️ [IMPORT] {} of {} {} documents failed", e.getErrors().size(), documents.size(),
+                    type.getSimpleName());
+            return e.getResult().getInsertedCount();
+        }
+    }
+
+    private Product buildProduct(String name, String description, String price, String stock, String categoryId,
+            Set<String> categoryIds) {
+        if (name == null || name.isBlank()) throw new IllegalArgumentException("name is required");
+
+        BigDecimal parsedPrice = null;
+        if (price != null && !price.isBlank()) {
+            try {
+                parsedPrice = new BigDecimal(price.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid price '" + price + "'");
+            }
+            if (parsedPrice.signum() < 0) throw new IllegalArgumentException("price must not be negative");
+        }
+
+        int parsedStock = 0;
+        if (stock != null && !stock.isBlank()) {
+            try {
+                parsedStock = Integer.parseInt(stock.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid stock '" + stock + "'");
+            }
+            if (parsedStock < 0) throw new IllegalArgumentException("stock must not be negative");
+        }
+
+        ObjectId parsedCategory = null;
+        if (categoryId != null && !categoryId.isBlank()) {
+            if (!categoryIds.contains(categoryId.trim())) {
+                throw new IllegalArgumentException("Category not found: " + categoryId);
+            }
+            parsedCategory = new ObjectId(categoryId.trim());
+        }
+
+        return Product.builder()
+                .id(new ObjectId().toHexString()) // Gán id trước để liên kết attributes / images trong cùng batch
+                .name(name.trim())
+                .description(description)
+                .price(parsedPrice)
+                .stock(parsedStock)
+                .categoryId(parsedCategory)
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    private ProductAttribute buildAttribute(ObjectId productId, String name, String value) {
+        if (name == null || name.isBlank() || value == null) {
+            throw new IllegalArgumentException("Attribute name and value are required");
+        }
+        return ProductAttribute.builder()
+                .productId(productId)
+                .name(name.trim())
+                .value(value.trim())
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    private ProductImage buildImage(ObjectId productId, String url, boolean primary) {
+        return ProductImage.builder()
+                .productId(productId)
+                .imageUrl(url)
+                .isPrimary(primary)
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    /** Tập id category active, nạp một lần cho cả file (số category nhỏ) */
+    private Set<String> loadActiveCategoryIds() {
+        Query query = new Query(Criteria.where("deletedAt").isNull());
+        query.fields().include("_id");
+        Set<String> ids = new HashSet<>();
+        for (Document doc : mongoTemplate.find(query, Document.class, "categories")) {
+            ids.add(doc.getObjectId("_id").toHexString());
+        }
+        return ids;
+    }
+
+    private static void addError(ProductImportResult result, long row, String message) {
+        result.failed++;
+        if (result.errors.size() < MAX_REPORTED_ERRORS) {
+            result.errors.add(new ProductImportResult.RowError(row, message));
+        } else {
+            result.errorsTruncated = true;
+        }
+    }
+
+    private static String cell(List<String> record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        return index != null && index < record.size() ? record.get(index) : null;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
@@ -82,4 +82,17 @@ public class ProductLikeService {
             throw new RuntimeException("Failed to get product likes: " + e.getMessage(), e);
         }
     }
+
+    @Transactional(readOnly = true)
+    /** Đếm số like đang hoạt động của sản phẩm (count phía DB, không tải danh sách like). */
+    public long countByProductId(String productId) {
+        try {
+            Query query = new Query(Criteria.where("productId").is(new ObjectId(productId))
+                    .and("deletedAt").isNull());
+            return mongoTemplate.count(query, ProductLike.class);
+        } catch (Exception e) {
+            log.error("❌ [PERFORMANCE] Count likes by product failed, productId={}", productId, e);
+            throw new RuntimeException("Failed to count product likes: " + e.getMessage(), e);
+        }
+    }
 }
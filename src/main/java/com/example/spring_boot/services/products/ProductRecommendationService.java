@@ -0,0 +1,325 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.domains.order.Order; // Đơn hàng
+import com.example.spring_boot.domains.order.OrderItem; // Dòng đơn hàng
+import com.example.spring_boot.domains.products.ProductRecommendation; // Kết quả gợi ý đã lưu
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô khi đọc orders
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.data.mongodb.core.BulkOperations; // Ghi hàng loạt
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.data.mongodb.core.query.Update; // Update related / updatedAt
+import org.springframework.scheduling.annotation.Scheduled; // Job định kỳ
+import org.springframework.stereotype.Service; // Bean service Spring
+
+import java.time.Instant; // Thời điểm UTC
+import java.util.ArrayList; // ArrayList implementation
+import java.util.Arrays; // Sắp xếp giỏ
+import java.util.Collection; // Tập product cần tính lại
+import java.util.Comparator; // Thứ tự điểm
+import java.util.HashMap; // HashMap implementation
+import java.util.LinkedHashSet; // Product distinct trong một đơn
+import java.util.List; // Danh sách
+import java.util.Map; // Map
+import java.util.PriorityQueue; // Heap top-N
+import java.util.Set; // Tập
+import java.util.concurrent.CompletableFuture; // Build nền khi khởi động
+import java.util.concurrent.ConcurrentHashMap; // Map đọc không khóa
+import java.util.concurrent.ForkJoinPool; // Chia việc đếm theo core
+import java.util.concurrent.RecursiveTask; // Tác vụ fork-join
+import java.util.stream.Collectors; // Collect song song
+import java.util.stream.Stream; // Stream cursor Mongo
+
+/**
+ * Gợi ý "thường được mua cùng" từ lịch sử đơn đã thanh toán.
+ * - Mỗi đơn là một giỏ (tập product distinct); đếm số đơn chứa từng product và từng cặp product
+ *   vào ma trận đồng xuất hiện thưa (chỉ lưu cặp có xuất hiện)
+ * - Điểm cosine(A, B) = đơn chung / sqrt(đơn chứa A * đơn chứa B), giữ top-N cho mỗi product
+ * - Job batch: đếm bằng fork-join trên các lô giỏ, chấm điểm song song theo product, lưu product_recommendations
+ * - Đơn mới thanh toán: cộng vào ma trận và tính lại hàng của các product trong đơn (tăng dần)
+ * - API đọc từ map trong bộ nhớ; trước khi build xong thì đọc từ kết quả đã lưu lần trước
+ */
+@Service // Đăng ký bean service
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class ProductRecommendationService {
+
+    private static final int TOP_N = 20; // Số gợi ý lưu cho mỗi product
+    private static final int MAX_BASKET_SIZE = 100; // Giỏ lớn hơn (đơn sỉ) chỉ đếm product, không đếm cặp
+    private static final int FORK_THRESHOLD = 2_000; // Số giỏ tối đa của một tác vụ lá
+    private static final int WRITE_BATCH_SIZE = 1_000;
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+
+    private final Object countsLock = new Object(); // Bảo vệ itemCounts / pairCounts / pendingOrders
+    private Map<String, Long> itemCounts = new HashMap<>(); // productId -> số đơn chứa product
+    private Map<String, Map<String, Long>> pairCounts = new HashMap<>(); // A -> (B -> số đơn chứa cả A và B), đối xứng
+    private boolean countsReady = false;
+    private boolean rebuilding = false;
+    private final Map<String, String[]> pendingOrders = new HashMap<>(); // Đơn thanh toán trong lúc rebuild
+    private volatile Map<String, List<ProductRecommendation.Related>> related = new ConcurrentHashMap<>();
+
+    /** Bộ đếm của một lô giỏ (kết quả tác vụ fork-join) */
+    private static final class Counts {
+        final Map<String, Long> items = new HashMap<>();
+        final Map<String, Map<String, Long>> pairs = new HashMap<>();
+
+        void add(String[] basket) {
+            for (String item : basket) {
+                items.merge(item, 1L, Long::sum);
+            }
+            if (basket.length > MAX_BASKET_SIZE) return;
+            for (int i = 0; i < basket.length; i++) {
+                for (int j = i + 1; j < basket.length; j++) {
+                    pairs.computeIfAbsent(basket[i], k -> new HashMap<>()).merge(basket[j], 1L, Long::sum);
+                    pairs.computeIfAbsent(basket[j], k -> new HashMap<>()).merge(basket[i], 1L, Long::sum);
+                }
+            }
+        }
+
+        /** Gộp other vào this (caller truyền bộ nhỏ hơn làm other) */
+        Counts merge(Counts other) {
+            other.items.forEach((item, count) -> items.merge(item, count, Long::sum));
+            other.pairs.forEach((item, row) -> {
+                Map<String, Long> target = pairs.get(item);
+                if (target == null) {
+                    pairs.put(item, row);
+                } else {
+                    row.forEach((neighbor, count) -> target.merge(neighbor, count, Long::sum));
+                }
+            });
+            return this;
+        }
+    }
+
+    /** Đếm đồng xuất hiện cho baskets[from, to): chia đôi tới ngưỡng rồi gộp kết quả */
+    private static final class CountTask extends RecursiveTask<Counts> {
+        private final List<String[]> baskets;
+        private final int from;
+        private final int to;
+
+        CountTask(List<String[]> baskets, int from, int to) {
+            this.baskets = baskets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Counts compute() {
+            if (to - from <= FORK_THRESHOLD) {
+                Counts counts = new Counts();
+                for (int i = from; i < to; i++) {
+                    counts.add(baskets.get(i));
+                }
+                return counts;
+            }
+            int mid = (from + to) >>> 1;
+            CountTask left = new CountTask(baskets, from, mid);
+            left.fork();
+            Counts right = new CountTask(baskets, mid, to).compute();
+            Counts leftCounts = left.join();
+            return leftCounts.pairs.size() >= right.pairs.size() ? leftCounts.merge(right) : right.merge(leftCounts);
+        }
+    }
+
+    /** productId gợi ý cho một product, điểm giảm dần (có thể gồm product đã xóa mềm, caller tự lọc). */
+    public List<String> relatedProductIds(String productId, int limit) {
+        List<ProductRecommendation.Related> items = related.get(productId);
+        if (items == null) return List.of();
+        return items.stream().limit(limit).map(ProductRecommendation.Related::getProductId).toList();
+    }
+
+    /** Nạp kết quả đã lưu để phục vụ ngay, sau đó dựng lại ma trận từ orders (nền). */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        CompletableFuture.runAsync(() -> {
+            loadStored();
+            rebuild();
+        }).exceptionally(e -> {
+            log.error("❌ [RECOMMEND] Load recommendations failed", e);
+            return null;
+        });
+    }
+
+    /**
+     * Ghi nhận một đơn vừa được thanh toán: cộng vào ma trận và tính lại gợi ý của các product trong đơn.
+     * Caller chỉ gọi một lần cho mỗi đơn (khi chuyển trạng thái sang đã thanh toán).
+     */
+    public void recordOrder(Order order) {
+        if (order == null || order.getItems() == null) return;
+        String[] basket = basketOf(order.getItems().stream().map(OrderItem::getProductId).toList());
+        if (basket.length == 0) return;
+
+        try {
+            Map<String, List<ProductRecommendation.Related>> rows;
+            synchronized (countsLock) {
+                if (rebuilding) {
+                    pendingOrders.put(order.getId(), basket); // Áp sau khi rebuild nếu cursor chưa đọc đơn này
+                    return;
+                }
+                if (!countsReady) return; // Chưa có ma trận: lần rebuild đầu tiên sẽ đọc đơn này từ DB
+                applyBasket(basket);
+                rows = scoreRows(Arrays.asList(basket));
+            }
+            related.putAll(rows);
+            save(rows, Instant.now());
+            log.info("🤝 [RECOMMEND] Recorded order {}: updated {} products", order.getId(), rows.size());
+        } catch (Exception e) {
+            // Không làm hỏng luồng thanh toán; job rebuild định kỳ sẽ đối soát
+            log.error("❌ [RECOMMEND] Record order failed, orderId={}", order.getId(), e);
+        }
+    }
+
+    /**
+     * Dựng lại toàn bộ ma trận + gợi ý từ đơn đã thanh toán (định kỳ để hàng xóm của các product
+     * trong đơn mới cũng được chấm điểm lại).
+     */
+    @Scheduled(cron = "${app.recommendations.rebuild-cron:0 30 0 * * *}")
+    public void rebuild() {
+        long startTime = System.currentTimeMillis();
+        synchronized (countsLock) {
+            if (rebuilding) return;
+            rebuilding = true;
+            pendingOrders.clear();
+        }
+
+        try {
+            // Bước 1: đọc giỏ của các đơn đã thanh toán (chỉ items.product_id)
+            List<String[]> baskets = new ArrayList<>();
+            Query query = new Query(Criteria.where("payment_status").in("PAID", "paid"));
+            query.fields().include("items.product_id");
+            try (Stream<Document> orders = mongoTemplate.stream(query, Document.class, "orders")) {
+                orders.forEach(doc -> {
+                    List<String> productIds = new ArrayList<>();
+                    for (Document item : doc.getList("items", Document.class, List.of())) {
+                        productIds.add(item.getString("product_id"));
+                    }
+                    String[] basket = basketOf(productIds);
+                    if (basket.length > 0) baskets.add(basket);
+                    synchronized (countsLock) {
+                        pendingOrders.remove(String.valueOf(doc.get("_id"))); // Cursor đã đọc -> không áp lại
+                    }
+                });
+            }
+
+            // Bước 2: đếm song song bằng fork-join
+            Counts counts = baskets.isEmpty() ? new Counts()
+                    : ForkJoinPool.commonPool().invoke(new CountTask(baskets, 0, baskets.size()));
+
+            Map<String, List<ProductRecommendation.Related>> rows;
+            int pending;
+            synchronized (countsLock) {
+                itemCounts = counts.items;
+                pairCounts = counts.pairs;
+                pendingOrders.values().forEach(this::applyBasket);
+                pending = pendingOrders.size();
+                pendingOrders.clear();
+                countsReady = true;
+                rebuilding = false;
+
+                // Bước 3: chấm điểm song song theo product (mỗi hàng độc lập, chỉ đọc ma trận)
+                rows = pairCounts.keySet().parallelStream()
+                        .collect(Collectors.toConcurrentMap(item -> item, this::scoreRow));
+            }
+            related = new ConcurrentHashMap<>(rows);
+
+            // Bước 4: lưu kết quả, xóa bản ghi của product không còn cặp nào
+            Instant now = Instant.now();
+            save(rows, now);
+            mongoTemplate.remove(new Query(Criteria.where("updatedAt").lt(now)), ProductRecommendation.class);
+
+            log.info("✅ [RECOMMEND] Rebuilt recommendations: {} orders, {} products, {} applied after scan in {}ms",
+                    baskets.size(), rows.size(), pending, System.currentTimeMillis() - startTime);
+        } finally {
+            synchronized (countsLock) {
+                rebuilding = false;
+            }
+        }
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    /** Giỏ = product distinct của đơn, sắp xếp để cặp (A, B) luôn đếm cùng thứ tự */
+    private static String[] basketOf(Collection<String> productIds) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String productId : productIds) {
+            if (productId != null && !productId.isBlank()) distinct.add(productId);
+        }
+        String[] basket = distinct.toArray(String[]::new);
+        Arrays.sort(basket);
+        return basket;
+    }
+
+    /** Cộng một giỏ vào ma trận hiện tại (phải giữ countsLock) */
+    private void applyBasket(String[] basket) {
+        Counts delta = new Counts();
+        delta.add(basket);
+        delta.items.forEach((item, count) -> itemCounts.merge(item, count, Long::sum));
+        delta.pairs.forEach((item, row) -> {
+            Map<String, Long> target = pairCounts.computeIfAbsent(item, k -> new HashMap<>());
+            row.forEach((neighbor, count) -> target.merge(neighbor, count, Long::sum));
+        });
+    }
+
+    /** Chấm điểm lại các hàng (phải giữ countsLock) */
+    private Map<String, List<ProductRecommendation.Related>> scoreRows(Collection<String> items) {
+        Map<String, List<ProductRecommendation.Related>> rows = new HashMap<>();
+        for (String item : items) {
+            if (pairCounts.containsKey(item)) rows.put(item, scoreRow(item));
+        }
+        return rows;
+    }
+
+    /** Top-N hàng xóm của một product theo cosine, dùng min-heap kích thước N */
+    private List<ProductRecommendation.Related> scoreRow(String item) {
+        Map<String, Long> row = pairCounts.getOrDefault(item, Map.of());
+        long itemCount = itemCounts.getOrDefault(item, 0L);
+        Comparator<ProductRecommendation.Related> byScore = Comparator
+                .comparingDouble(ProductRecommendation.Related::getScore)
+                .thenComparingLong(ProductRecommendation.Related::getCoCount);
+        PriorityQueue<ProductRecommendation.Related> heap = new PriorityQueue<>(TOP_N + 1, byScore);
+        row.forEach((neighbor, coCount) -> {
+            long neighborCount = itemCounts.getOrDefault(neighbor, 0L);
+            if (itemCount == 0 || neighborCount == 0) return;
+            double score = coCount / Math.sqrt((double) itemCount * neighborCount);
+            heap.add(new ProductRecommendation.Related(neighbor, Math.round(score * 10_000) / 10_000.0, coCount));
+            if (heap.size() > TOP_N) heap.poll();
+        });
+        List<ProductRecommendation.Related> top = new ArrayList<>(heap);
+        top.sort(byScore.reversed());
+        return top;
+    }
+
+    /** Ghi các hàng gợi ý (bulk upsert, unordered) */
+    private void save(Map<String, List<ProductRecommendation.Related>> rows, Instant now) {
+        BulkOperations ops = null;
+        int size = 0;
+        for (Map.Entry<String, List<ProductRecommendation.Related>> row : rows.entrySet()) {
+            if (ops == null) ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductRecommendation.class);
+            ops.upsert(new Query(Criteria.where("_id").is(row.getKey())),
+                    new Update().set("related", row.getValue()).set("updatedAt", now));
+            if (++size >= WRITE_BATCH_SIZE) {
+                ops.execute();
+                ops = null;
+                size = 0;
+            }
+        }
+        if (ops != null) ops.execute();
+    }
+
+    /** Đọc kết quả lần build trước để API có dữ liệu ngay khi khởi động */
+    private void loadStored() {
+        Map<String, List<ProductRecommendation.Related>> stored = new ConcurrentHashMap<>();
+        try (Stream<ProductRecommendation> docs = mongoTemplate.stream(new Query(), ProductRecommendation.class)) {
+            docs.forEach(doc -> stored.put(doc.getId(), doc.getRelated()));
+        }
+        if (related.isEmpty()) related = stored;
+    }
+}
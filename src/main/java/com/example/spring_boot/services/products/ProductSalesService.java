@@ -0,0 +1,248 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.domains.order.Order; // Đơn hàng
+import com.example.spring_boot.domains.order.OrderItem; // Dòng đơn hàng
+import com.example.spring_boot.domains.products.ProductSales; // Tổng bán theo sản phẩm
+import com.example.spring_boot.domains.products.ProductSalesDaily; // Bán theo ngày
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô cho aggregation
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.data.mongodb.core.BulkOperations; // Ghi hàng loạt
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.data.mongodb.core.query.Update; // Update $inc / $set
+import org.springframework.scheduling.annotation.Scheduled; // Job định kỳ
+import org.springframework.stereotype.Service; // Bean service Spring
+
+import java.time.Instant; // Thời điểm UTC
+import java.time.LocalDate; // Ngày theo giờ hệ thống
+import java.time.ZoneId; // Múi giờ hệ thống
+import java.util.ArrayList; // ArrayList implementation
+import java.util.Comparator; // Thứ tự xếp hạng
+import java.util.EnumMap; // Ranking theo cửa sổ
+import java.util.HashMap; // HashMap implementation
+import java.util.List; // Danh sách
+import java.util.Map; // Map productId -> số lượng
+import java.util.TreeSet; // Tập có thứ tự cho top-K
+import java.util.concurrent.CompletableFuture; // Build nền khi khởi động
+import java.util.stream.Stream; // Stream cursor Mongo
+
+/**
+ * Bộ đếm bán hàng theo sản phẩm + bảng xếp hạng top-K trong bộ nhớ.
+ * - Khi đơn hàng chuyển sang đã thanh toán: $inc tổng bán và bucket ngày (bulk, unordered)
+ * - Ranking TOTAL / 7 ngày / 30 ngày cập nhật tăng dần, đọc top-K không cần sort collection
+ * - Mỗi đêm tính lại cửa sổ 7/30 ngày từ bucket ngày để loại bỏ các ngày đã trôi ra ngoài
+ */
+@Service // Đăng ký bean service
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class ProductSalesService {
+
+    private static final String SALES_COLLECTION = "product_sales";
+    private static final String DAILY_COLLECTION = "product_sales_daily";
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+
+    private final Map<SalesWindow, Ranking> rankings = new EnumMap<>(SalesWindow.class);
+    private volatile boolean ready = false;
+
+    {
+        for (SalesWindow window : SalesWindow.values()) {
+            rankings.put(window, new Ranking());
+        }
+    }
+
+    /**
+     * Bảng xếp hạng: điểm theo productId + tập có thứ tự (điểm giảm dần, id tăng dần).
+     * Cập nhật O(log n), đọc top-K O(K).
+     */
+    private static final class Ranking {
+        private final Map<String, Long> scores = new HashMap<>();
+        private final TreeSet<Map.Entry<String, Long>> ordered = new TreeSet<>(
+                Comparator.<Map.Entry<String, Long>>comparingLong(Map.Entry::getValue).reversed()
+                        .thenComparing(Map.Entry::getKey));
+
+        synchronized void add(String productId, long delta) {
+            Long previous = scores.get(productId);
+            if (previous != null) ordered.remove(Map.entry(productId, previous));
+            long next = (previous != null ? previous : 0) + delta;
+            scores.put(productId, next);
+            ordered.add(Map.entry(productId, next));
+        }
+
+        synchronized void replaceAll(Map<String, Long> newScores) {
+            scores.clear();
+            ordered.clear();
+            newScores.forEach((id, score) -> {
+                scores.put(id, score);
+                ordered.add(Map.entry(id, score));
+            });
+        }
+
+        synchronized List<String> top(int k) {
+            List<String> ids = new ArrayList<>(Math.min(k, ordered.size()));
+            for (Map.Entry<String, Long> e : ordered) {
+                if (ids.size() >= k) break;
+                if (e.getValue() <= 0) break;
+                ids.add(e.getKey());
+            }
+            return ids;
+        }
+    }
+
+    /** Ranking đã nạp xong chưa (chưa xong thì caller dùng fallback). */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Top productId bán chạy nhất trong cửa sổ (có thể gồm sản phẩm đã xóa mềm, caller tự lọc). */
+    public List<String> topProductIds(SalesWindow window, int k) {
+        return rankings.get(window).top(k);
+    }
+
+    /**
+     * Ghi nhận số lượng bán của một đơn vừa được thanh toán.
+     * Caller chịu trách nhiệm chỉ gọi một lần cho mỗi đơn (khi chuyển trạng thái sang đã thanh toán).
+     */
+    public void recordOrder(Order order) {
+        if (order == null || order.getItems() == null || order.getItems().isEmpty()) return;
+        Map<String, Long> quantities = new HashMap<>();
+        for (OrderItem item : order.getItems()) {
+            if (item.getProductId() == null || item.getQuantity() == null || item.getQuantity() <= 0) continue;
+            quantities.merge(item.getProductId(), item.getQuantity().longValue(), Long::sum);
+        }
+        if (quantities.isEmpty()) return;
+
+        try {
+            LocalDate today = LocalDate.now();
+            Instant dayStart = today.atStartOfDay(ZoneId.systemDefault()).toInstant();
+            Instant now = Instant.now();
+
+            BulkOperations totals = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductSales.class);
+            BulkOperations daily = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductSalesDaily.class);
+            quantities.forEach((productId, qty) -> {
+                totals.upsert(new Query(Criteria.where("_id").is(productId)),
+                        new Update().inc("totalQuantity", qty).set("updatedAt", now));
+                daily.upsert(new Query(Criteria.where("_id").is(productId + ":" + today)),
+                        new Update().inc("quantity", qty)
+                                .setOnInsert("productId", productId)
+                                .setOnInsert("day", dayStart));
+            });
+            totals.execute();
+            daily.execute();
+
+            // Ngày hôm nay luôn nằm trong mọi cửa sổ nên cộng thẳng vào cả 3 ranking
+            quantities.forEach((productId, qty) -> {
+                for (Ranking ranking : rankings.values()) {
+                    ranking.add(productId, qty);
+                }
+            });
+            log.info("📈 [SALES] Recorded order {}: {} products", order.getId(), quantities.size());
+        } catch (Exception e) {
+            // Không làm hỏng luồng thanh toán; job tính lại hằng đêm sẽ đối soát
+            log.error("❌ [SALES] Record sales failed, orderId={}", order.getId(), e);
+        }
+    }
+
+    /** Nạp ranking nền sau khi app khởi động (backfill từ orders nếu chưa có dữ liệu). */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        CompletableFuture.runAsync(() -> {
+            if (mongoTemplate.estimatedCount(SALES_COLLECTION) == 0) {
+                backfillFromOrders();
+            }
+            rebuildRankings();
+        }).exceptionally(e -> {
+            log.error("❌ [SALES] Load sales rankings failed", e);
+            return null;
+        });
+    }
+
+    /** Tính lại toàn bộ ranking từ Mongo - chạy hằng đêm để các ngày cũ trôi khỏi cửa sổ 7/30 ngày. */
+    @Scheduled(cron = "${app.sales.ranking-rebuild-cron:0 5 0 * * *}")
+    public void rebuildRankings() {
+        long startTime = System.currentTimeMillis();
+
+        Map<String, Long> totals = new HashMap<>();
+        Query totalQuery = new Query();
+        totalQuery.fields().include("totalQuantity");
+        try (Stream<Document> docs = mongoTemplate.stream(totalQuery, Document.class, SALES_COLLECTION)) {
+            // _id hex được QueryMapper lưu thành ObjectId khi upsert -> đọc dạng chuỗi
+            docs.forEach(doc -> totals.put(String.valueOf(doc.get("_id")), ((Number) doc.get("totalQuantity")).longValue()));
+        }
+        rankings.get(SalesWindow.TOTAL).replaceAll(totals);
+
+        for (SalesWindow window : SalesWindow.values()) {
+            if (window.getDays() == 0) continue;
+            rankings.get(window).replaceAll(sumSince(window.getDays()));
+        }
+        ready = true;
+        log.info("✅ [SALES] Rebuilt sales rankings: {} products in {}ms",
+                totals.size(), System.currentTimeMillis() - startTime);
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    /** Tổng bán theo productId của N ngày gần nhất (tính cả hôm nay). */
+    private Map<String, Long> sumSince(int days) {
+        Instant from = LocalDate.now().minusDays(days - 1L).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("day", new Document("$gte", java.util.Date.from(from)))),
+                new Document("$group", new Document("_id", "$productId")
+                        .append("quantity", new Document("$sum", "$quantity"))));
+        Map<String, Long> sums = new HashMap<>();
+        for (Document doc : mongoTemplate.getCollection(DAILY_COLLECTION).aggregate(pipeline)) {
+            sums.put(doc.getString("_id"), ((Number) doc.get("quantity")).longValue());
+        }
+        return sums;
+    }
+
+    /** Lần đầu chạy: dựng lại bộ đếm từ các đơn đã thanh toán (một aggregation, ghi bulk). */
+    private void backfillFromOrders() {
+        long startTime = System.currentTimeMillis();
+        String zone = ZoneId.systemDefault().getId();
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("payment_status", new Document("$in", List.of("PAID", "paid")))),
+                new Document("$unwind", "$items"),
+                new Document("$group", new Document("_id", new Document("productId", "$items.product_id")
+                        .append("day", new Document("$dateToString", new Document("format", "%Y-%m-%d")
+                                .append("date", new Document("$ifNull", List.of("$payment_time", "$updated_at")))
+                                .append("timezone", zone))))
+                        .append("quantity", new Document("$sum", "$items.quantity"))));
+
+        Map<String, Long> totals = new HashMap<>();
+        BulkOperations daily = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductSalesDaily.class);
+        int dailyCount = 0;
+        for (Document doc : mongoTemplate.getCollection("orders").aggregate(pipeline).allowDiskUse(true)) {
+            Document key = doc.get("_id", Document.class);
+            String productId = key.getString("productId");
+            String day = key.getString("day");
+            if (productId == null) continue;
+            long qty = ((Number) doc.get("quantity")).longValue();
+            totals.merge(productId, qty, Long::sum);
+            if (day != null) {
+                LocalDate date = LocalDate.parse(day);
+                daily.upsert(new Query(Criteria.where("_id").is(productId + ":" + date)),
+                        new Update().set("quantity", qty).set("productId", productId)
+                                .set("day", date.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+                dailyCount++;
+            }
+        }
+        if (totals.isEmpty()) return;
+
+        if (dailyCount > 0) daily.execute();
+        BulkOperations totalOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductSales.class);
+        Instant now = Instant.now();
+        totals.forEach((productId, qty) -> totalOps.upsert(new Query(Criteria.where("_id").is(productId)),
+                new Update().set("totalQuantity", qty).set("updatedAt", now)));
+        totalOps.execute();
+        log.info("✅ [SALES] Backfilled sales counters from orders: {} products, {} daily buckets in {}ms",
+                totals.size(), dailyCount, System.currentTimeMillis() - startTime);
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
+import com.example.spring_boot.utils.TextNormalizer; // Bỏ dấu + tách token
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô, tránh chi phí mapping khi build index
+import org.bson.types.ObjectId; // ObjectId MongoDB
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.util.ArrayList; // ArrayList implementation
+import java.util.Collections; // Danh sách rỗng
+import java.util.HashMap; // HashMap implementation
+import java.util.List; // Danh sách kết quả
+import java.util.Map; // Map posting/tf
+import java.util.NavigableMap; // Duyệt term theo prefix
+import java.util.Set; // Tập id thay đổi khi build
+import java.util.TreeMap; // Term dictionary có thứ tự
+import java.util.concurrent.CompletableFuture; // Build index nền
+import java.util.concurrent.ConcurrentHashMap; // Set thread-safe
+import java.util.concurrent.locks.ReentrantReadWriteLock; // Khóa đọc/ghi cho index
+import java.util.stream.Stream; // Stream cursor Mongo
+
+/**
+ * Inverted index trong bộ nhớ cho tìm kiếm sản phẩm (thay cho $regex quét toàn collection).
+ * - Token hóa name / description / attributes, bỏ dấu tiếng Việt ("dien thoai" khớp "điện thoại")
+ * - Xếp hạng BM25, trọng số theo field: name x3, attribute x2, description x1
+ * - Cập nhật tăng dần khi create / update / softDelete product và khi thuộc tính thay đổi
+ */
+@Component // Đăng ký bean
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class ProductSearchIndex {
+
+    private static final double K1 = 1.2; // BM25: độ bão hòa tần suất term
+    private static final double B = 0.75; // BM25: chuẩn hóa theo độ dài document
+    private static final int NAME_WEIGHT = 3;
+    private static final int ATTRIBUTE_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    private static final int MAX_PREFIX_EXPANSIONS = 30; // Giới hạn số term khi mở rộng prefix token cuối
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private TreeMap<String, Map<String, Integer>> postings = new TreeMap<>(); // term -> (productId -> tf có trọng số)
+    private Map<String, DocEntry> docs = new HashMap<>(); // productId -> thống kê document
+    private long totalLength = 0; // Tổng độ dài (có trọng số) để tính avgdl
+    private volatile boolean ready = false;
+    private volatile boolean rebuilding = false;
+    private final Set<String> touchedDuringRebuild = ConcurrentHashMap.newKeySet(); // Thay đổi xảy ra khi đang build
+
+    /** Thống kê của một document trong index; giữ tf theo field để cập nhật từng phần. */
+    private static final class DocEntry {
+        Map<String, Integer> textTf = Map.of(); // name + description
+        Map<String, Integer> attributeTf = Map.of(); // attributes
+        Map<String, Integer> combinedTf = Map.of();
+        int length;
+    }
+
+    /** Index đã build xong chưa (chưa xong thì caller dùng regex fallback). */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Số document đang có trong index. */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Build index nền sau khi app khởi động xong, không chặn startup. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        CompletableFuture.runAsync(this::rebuild)
+                .exceptionally(e -> {
+                    log.error("❌ [SEARCH] Build search index failed", e);
+                    return null;
+                });
+    }
+
+    /** Build lại toàn bộ index từ Mongo bằng cursor stream, sau đó hoán đổi nguyên khối. */
+    public void rebuild() {
+        long startTime = System.currentTimeMillis();
+        touchedDuringRebuild.clear();
+        rebuilding = true;
+
+        // Bước 1: gom text thuộc tính theo productId
+        Map<String, StringBuilder> attributeText = new HashMap<>();
+        Query attrQuery = new Query(Criteria.where("deletedAt").isNull());
+        attrQuery.fields().include("productId", "name", "value");
+        try (Stream<Document> attrs = mongoTemplate.stream(attrQuery, Document.class, "product_attributes")) {
+            attrs.forEach(doc -> {
+                Object pid = doc.get("productId");
+                if (pid == null) return;
+                attributeText.computeIfAbsent(pid.toString(), k -> new StringBuilder())
+                        .append(' ').append(doc.getString("name"))
+                        .append(' ').append(doc.getString("value"));
+            });
+        }
+
+        // Bước 2: stream products active và index vào cấu trúc mới
+        TreeMap<String, Map<String, Integer>> newPostings = new TreeMap<>();
+        Map<String, DocEntry> newDocs = new HashMap<>();
+        long[] newTotal = {0};
+        Query productQuery = new Query(Criteria.where("deletedAt").isNull());
+        productQuery.fields().include("name", "description");
+        try (Stream<Document> products = mongoTemplate.stream(productQuery, Document.class, "products")) {
+            products.forEach(doc -> {
+                String id = doc.getObjectId("_id").toHexString();
+                StringBuilder attrs = attributeText.get(id);
+                DocEntry entry = new DocEntry();
+                entry.textTf = textTermFrequencies(doc.getString("name"), doc.getString("description"));
+                entry.attributeTf = attributeTermFrequencies(attrs != null ? attrs.toString() : null);
+                newTotal[0] += addDoc(newPostings, newDocs, id, entry);
+            });
+        }
+
+        lock.writeLock().lock();
+        try {
+            postings = newPostings;
+            docs = newDocs;
+            totalLength = newTotal[0];
+            ready = true;
+            rebuilding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Áp lại các product bị ghi trong lúc build (snapshot cursor có thể đã bỏ lỡ)
+        for (String id : touchedDuringRebuild) {
+            reload(id);
+        }
+        touchedDuringRebuild.clear();
+        log.info("✅ [SEARCH] Built search index: {} products, {} terms in {}ms",
+                newDocs.size(), newPostings.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /** Index (hoặc index lại) name/description của product; giữ nguyên phần attributes đã có. */
+    public void index(Product product) {
+        if (product == null || product.getId() == null) return;
+        if (rebuilding) touchedDuringRebuild.add(product.getId());
+        Map<String, Integer> textTf = textTermFrequencies(product.getName(), product.getDescription());
+        lock.writeLock().lock();
+        try {
+            DocEntry previous = removeDoc(product.getId());
+            DocEntry entry = new DocEntry();
+            entry.textTf = textTf;
+            entry.attributeTf = previous != null ? previous.attributeTf : Map.of();
+            totalLength += addDoc(postings, docs, product.getId(), entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Gỡ product khỏi index (soft delete). */
+    public void remove(String productId) {
+        if (productId == null) return;
+        if (rebuilding) touchedDuringRebuild.add(productId);
+        lock.writeLock().lock();
+        try {
+            removeDoc(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Nạp lại text thuộc tính active của một product (gọi khi thuộc tính được tạo / xóa mềm). */
+    public void reindexAttributes(ObjectId productId) {
+        if (productId == null) return;
+        if (rebuilding) touchedDuringRebuild.add(productId.toHexString());
+        Query attrQuery = new Query(Criteria.where("productId").is(productId).and("deletedAt").isNull());
+        attrQuery.fields().include("name", "value");
+        StringBuilder text = new StringBuilder();
+        for (Document doc : mongoTemplate.find(attrQuery, Document.class, "product_attributes")) {
+            text.append(' ').append(doc.getString("name")).append(' ').append(doc.getString("value"));
+        }
+        Map<String, Integer> attributeTf = attributeTermFrequencies(text.toString());
+
+        String id = productId.toHexString();
+        lock.writeLock().lock();
+        try {
+            DocEntry previous = removeDoc(id);
+            if (previous == null) return; // Product không active trong index -> bỏ qua
+            DocEntry entry = new DocEntry();
+            entry.textTf = previous.textTf;
+            entry.attributeTf = attributeTf;
+            totalLength += addDoc(postings, docs, id, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tìm kiếm BM25, trả về danh sách productId theo điểm giảm dần.
+     * Mọi token đều phải khớp (AND); token cuối được mở rộng theo prefix để hỗ trợ gõ dở.
+     * Nếu AND không có kết quả thì nới thành OR.
+     */
+    public List<String> search(String queryText, int limit) {
+        List<String> tokens = TextNormalizer.tokenize(queryText);
+        if (tokens.isEmpty()) return Collections.emptyList();
+        boolean lastIsPrefix = !Character.isWhitespace(queryText.charAt(queryText.length() - 1));
+
+        lock.readLock().lock();
+        try {
+            if (docs.isEmpty()) return Collections.emptyList();
+            double avgLength = (double) totalLength / docs.size();
+
+            // Mỗi token tạo ra một nhóm term (token cuối có thể là nhiều term theo prefix)
+            List<Map<String, Double>> groupScores = new ArrayList<>();
+            for (int i = 0; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                List<String> terms = (i == tokens.size() - 1 && lastIsPrefix) ? expandPrefix(token) : List.of(token);
+                Map<String, Double> scores = new HashMap<>();
+                for (String term : terms) {
+                    Map<String, Integer> posting = postings.get(term);
+                    if (posting == null) continue;
+                    double idf = Math.log(1 + (docs.size() - posting.size() + 0.5) / (posting.size() + 0.5));
+                    for (Map.Entry<String, Integer> e : posting.entrySet()) {
+                        double tf = e.getValue();
+                        double norm = K1 * (1 - B + B * docs.get(e.getKey()).length / avgLength);
+                        double score = idf * tf * (K1 + 1) / (tf + norm);
+                        scores.merge(e.getKey(), score, Math::max); // Các term cùng prefix: lấy điểm cao nhất
+                    }
+                }
+                groupScores.add(scores);
+            }
+
+            Map<String, Double> combined = combine(groupScores, true);
+            if (combined.isEmpty() && groupScores.size() > 1) {
+                combined = combine(groupScores, false);
+            }
+
+            return combined.entrySet().stream()
+                    .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    /** Đọc lại một product từ Mongo và đồng bộ vào index. */
+    private void reload(String id) {
+        Query productQuery = new Query(Criteria.where("_id").is(new ObjectId(id)).and("deletedAt").isNull());
+        productQuery.fields().include("name", "description");
+        Document doc = mongoTemplate.findOne(productQuery, Document.class, "products");
+        if (doc == null) {
+            remove(id);
+            return;
+        }
+        Product product = Product.builder()
+                .id(id)
+                .name(doc.getString("name"))
+                .description(doc.getString("description"))
+                .build();
+        index(product);
+        reindexAttributes(new ObjectId(id));
+    }
+
+    private List<String> expandPrefix(String prefix) {
+        NavigableMap<String, Map<String, Integer>> range = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        List<String> terms = new ArrayList<>();
+        for (String term : range.keySet()) {
+            terms.add(term);
+            if (terms.size() >= MAX_PREFIX_EXPANSIONS) break;
+        }
+        return terms;
+    }
+
+    /** Cộng điểm các nhóm; requireAll = true chỉ giữ document khớp mọi nhóm. */
+    private Map<String, Double> combine(List<Map<String, Double>> groupScores, boolean requireAll) {
+        Map<String, Double> result = new HashMap<>();
+        Map<String, Integer> hits = new HashMap<>();
+        for (Map<String, Double> scores : groupScores) {
+            scores.forEach((id, score) -> {
+                result.merge(id, score, Double::sum);
+                hits.merge(id, 1, Integer::sum);
+            });
+        }
+        if (requireAll) {
+            result.keySet().removeIf(id -> hits.get(id) < groupScores.size());
+        }
+        return result;
+    }
+
+    private Map<String, Integer> textTermFrequencies(String name, String description) {
+        Map<String, Integer> tf = new HashMap<>();
+        for (String token : TextNormalizer.tokenize(name)) tf.merge(token, NAME_WEIGHT, Integer::sum);
+        for (String token : TextNormalizer.tokenize(TextNormalizer.stripHtml(description))) {
+            tf.merge(token, DESCRIPTION_WEIGHT, Integer::sum);
+        }
+        return tf;
+    }
+
+    private Map<String, Integer> attributeTermFrequencies(String attributeText) {
+        if (attributeText == null || attributeText.isBlank()) return Map.of();
+        Map<String, Integer> tf = new HashMap<>();
+        for (String token : TextNormalizer.tokenize(attributeText)) tf.merge(token, ATTRIBUTE_WEIGHT, Integer::sum);
+        return tf;
+    }
+
+    /** Thêm document vào posting lists; trả về độ dài document để cộng vào totalLength. */
+    private static int addDoc(TreeMap<String, Map<String, Integer>> postings, Map<String, DocEntry> docs,
+            String id, DocEntry entry) {
+        Map<String, Integer> combined = new HashMap<>(entry.textTf);
+        entry.attributeTf.forEach((term, tf) -> combined.merge(term, tf, Integer::sum));
+        entry.combinedTf = combined;
+        int length = 0;
+        for (Map.Entry<String, Integer> e : combined.entrySet()) {
+            postings.computeIfAbsent(e.getKey(), k -> new HashMap<>()).put(id, e.getValue());
+            length += e.getValue();
+        }
+        entry.length = length;
+        docs.put(id, entry);
+        return length;
+    }
+
+    /** Gỡ document khỏi posting lists (phải giữ write lock). */
+    private DocEntry removeDoc(String id) {
+        DocEntry previous = docs.remove(id);
+        if (previous == null) return null;
+        for (String term : previous.combinedTf.keySet()) {
+            Map<String, Integer> posting = postings.get(term);
+            if (posting == null) continue;
+            posting.remove(id);
+            if (posting.isEmpty()) postings.remove(term);
+        }
+        totalLength -= previous.length;
+        return previous;
+    }
+}
@@ -2,11 +2,15 @@ package com.example.spring_boot.services.products; // Package service quản lý
 
 import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
 import com.example.spring_boot.domains.products.ProductAttribute; // Thuộc tính sản phẩm
+import com.example.spring_boot.domains.products.ProductCard; // Thẻ tóm tắt denormalized
 import com.example.spring_boot.domains.products.ProductImage; // Ảnh sản phẩm
+import com.example.spring_boot.dto.CursorPageResponse; // Kết quả phân trang keyset
 import com.example.spring_boot.dto.PageResponse;
+import com.example.spring_boot.dto.ProductFacetResponse; // Kết quả tìm kiếm có facet
 import com.example.spring_boot.domains.products.Category; // Entity danh mục
 import com.example.spring_boot.repository.products.ProductRepository; // Repository Mongo cho sản phẩm
 import com.example.spring_boot.repository.products.CategoryRepository; // Repository danh mục
+import com.example.spring_boot.utils.CursorCodec; // Mã hóa cursor phân trang keyset
 
 import lombok.RequiredArgsConstructor; // Inject constructor cho field final
 import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
@@ -14,12 +18,22 @@ import org.springframework.data.domain.Page; // Kết quả phân trang
 import org.springframework.data.domain.PageImpl; // Triển khai Page từ danh sách
 import org.springframework.data.domain.Pageable; // Đầu vào phân trang
 import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template cho query tối ưu
+import org.springframework.data.mongodb.core.convert.MongoConverter; // Đọc Document -> entity
+import org.springframework.data.mongodb.core.convert.QueryMapper; // Map Query theo kiểu field của entity
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity; // Metadata mapping entity
+import org.springframework.data.mongodb.core.FindAndModifyOptions; // Trả document sau khi $set
 import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
 import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.data.mongodb.core.query.Update; // $set các field được sửa
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
 import org.springframework.data.domain.Sort; // Sort cho ordering
+import org.springframework.http.HttpStatus; // Mã trạng thái HTTP
 import org.springframework.stereotype.Service; // Bean service Spring
 import org.springframework.transaction.annotation.Transactional; // Transaction wrapper
+import org.springframework.web.server.ResponseStatusException; // Exception HTTP chuẩn
 
+import java.math.BigDecimal; // Giá sản phẩm
 import java.time.Instant; // Thời điểm UTC
 import java.util.List; // Danh sách kết quả
 import java.util.Map; // Map cho batch operations
@@ -28,9 +42,11 @@ import java.util.HashSet; // HashSet implementation
 import java.util.ArrayList; // ArrayList implementation
 import java.util.HashMap; // HashMap implementation
 import java.util.Objects; // Objects utility
+import java.util.concurrent.CompletableFuture; // Đối chiếu snapshot ở nền
 import java.util.concurrent.ConcurrentHashMap; // Thread-safe cache
 import java.util.stream.Collectors; // Stream operations
 import org.bson.types.ObjectId; // ObjectId cho batch query
+import org.bson.Document; // Pipeline aggregation dạng Document
 import org.springframework.scheduling.annotation.Async; // Async processing
 
 @Service // Đăng ký bean service
@@ -42,6 +58,17 @@ public class ProductService {
     private final ProductRepository productRepository; // DAO sản phẩm
     private final CategoryRepository categoryRepository; // DAO danh mục
     private final MongoTemplate mongoTemplate; // MongoDB template cho query tối ưu
+    private final ProductSearchIndex productSearchIndex; // Inverted index tìm kiếm sản phẩm
+    private final AttributeFilterIndex attributeFilterIndex; // Bitmap index lọc theo thuộc tính
+    private final ProductSuggestionIndex productSuggestionIndex; // Gợi ý typeahead theo tên
+    private final ProductCache productCache; // Cache read-through theo id
+    private final ProductSalesService productSalesService; // Bảng xếp hạng bán chạy
+    private final ProductRecommendationService productRecommendationService; // Gợi ý mua cùng
+    private final ProductStatistics productStatistics; // Thống kê duy trì tăng dần
+    private final CatalogVersionService catalogVersions; // Version stamp cho ETag
+    private final CatalogSnapshotStore catalogSnapshot; // Snapshot catalog cho khởi động ấm / đọc khi Mongo lỗi
+    private final CategoryProductCounter categoryProductCounter; // Bộ đếm productCount trên category
+    private final InventoryService inventoryService; // Sửa tồn bằng $inc (không ghi đè reservation đang chạy)
     
     // In-memory cache cho categories (thread-safe)
     private final Map<String, Category> categoryCache = new ConcurrentHashMap<>();
@@ -59,11 +86,18 @@ public class ProductService {
             }
 
             product.setId(null); // Reset id để luôn tạo mới
+            product.setPrimaryImageUrl(null); // Product mới chưa có ảnh / thuộc tính
+            product.setCard(ProductCard.empty());
             product.setCreatedAt(Instant.now()); // Gán thời điểm tạo
             Product savedProduct = productRepository.save(product); // Lưu và nhận entity đã lưu
+            productSearchIndex.index(savedProduct); // Cập nhật search index
+            attributeFilterIndex.addProduct(savedProduct.getId()); // Cấp ordinal trong filter index
+            productSuggestionIndex.productChanged(savedProduct); // Thêm tên vào typeahead
 
-            // Clear cache khi có thay đổi dữ liệu
-            clearCache();
+            // Product mới chưa có trong cache, chỉ cập nhật thống kê
+            productStatistics.onCreated(savedProduct);
+            catalogVersions.productChanged(savedProduct.getId(), savedProduct.getCreatedAt());
+            categoryProductCounter.increment(savedProduct.getCategoryId()); // +1 product cho category
 
             return savedProduct; // Trả về entity đã lưu
         } catch (Exception e) {
@@ -81,6 +115,7 @@ public class ProductService {
                 throw new RuntimeException("Product has been deleted"); // Đã xóa mềm -> chặn cập nhật
 
             // Validate categoryId nếu có thay đổi
+            ObjectId oldCategoryId = existing.getCategoryId(); // Giữ danh mục cũ để chuyển bộ đếm
             if (updated.getCategoryId() != null && !updated.getCategoryId().equals(existing.getCategoryId())) {
                 if (!categoryRepository.existsById(updated.getCategoryId().toHexString())) {
                     throw new RuntimeException("Category not found");
@@ -88,16 +123,36 @@ public class ProductService {
                 existing.setCategoryId(updated.getCategoryId()); // Cập nhật danh mục
             }
 
-            existing.setName(updated.getName()); // Cập nhật tên
-            existing.setDescription(updated.getDescription()); // Cập nhật mô tả
-            existing.setPrice(updated.getPrice()); // Cập nhật giá
-            existing.setStock(updated.getStock()); // Cập nhật tồn
-            existing.setUpdatedAt(Instant.now()); // Gán thời điểm cập nhật
-
-            Product savedProduct = productRepository.save(existing); // Lưu thay đổi
+            BigDecimal oldPrice = existing.getPrice(); // Giữ giá cũ để cập nhật thống kê
+
+            // Chỉ $set các field admin sửa: save cả document sẽ ghi đè stock đã bị $inc (giữ / trả tồn) giữa đọc và ghi
+            Product savedProduct = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(id).and("deletedAt").isNull()),
+                    new Update()
+                            .set("name", updated.getName()) // Cập nhật tên
+                            .set("description", updated.getDescription()) // Cập nhật mô tả
+                            .set("price", updated.getPrice()) // Cập nhật giá
+                            .set("categoryId", existing.getCategoryId()) // Cập nhật danh mục
+                            .set("updatedAt", Instant.now()), // Gán thời điểm cập nhật
+                    FindAndModifyOptions.options().returnNew(true),
+                    Product.class);
+            if (savedProduct == null) throw new RuntimeException("Product has been deleted"); // Bị xóa mềm giữa chừng
+
+            // Tồn: đổi theo chênh lệch so với tồn vừa đọc, đi qua $inc của InventoryService
+            int stockDelta = updated.getStock() != null
+                    ? updated.getStock() - (existing.getStock() != null ? existing.getStock() : 0) : 0;
+            productStatistics.onUpdated(oldPrice, savedProduct.getStock(), savedProduct); // Chỉ giá; tồn do adjustStock ghi nhận
+            if (stockDelta != 0) {
+                inventoryService.adjustStock(Map.of(id, stockDelta));
+                savedProduct.setStock((savedProduct.getStock() != null ? savedProduct.getStock() : 0) + stockDelta);
+            }
+            productSearchIndex.index(savedProduct); // Cập nhật search index
+            productSuggestionIndex.productChanged(savedProduct); // Vá typeahead nếu đổi tên
 
-            // Clear cache khi có thay đổi dữ liệu
-            clearCache();
+            // Chỉ bỏ entry của product này
+            productCache.evict(id);
+            catalogVersions.productChanged(id, savedProduct.getUpdatedAt());
+            categoryProductCounter.move(oldCategoryId, savedProduct.getCategoryId()); // No-op nếu không đổi danh mục
 
             return savedProduct; // Trả về kết quả
         } catch (Exception e) {
@@ -114,36 +169,75 @@ public class ProductService {
             if (existing.getDeletedAt() != null)
                 throw new RuntimeException("Product has been deleted"); // Đã xóa mềm -> chặn thao tác lặp
             existing.setDeletedAt(Instant.now()); // Đánh dấu xóa mềm
-            productRepository.save(existing); // Lưu thay đổi
+            existing.setUpdatedAt(existing.getDeletedAt()); // Xóa cũng là một lần cập nhật (đổi version)
+            // Chỉ $set cờ xóa: không ghi đè stock đang được giữ / trả bằng $inc
+            long modified = mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(id).and("deletedAt").isNull()),
+                    new Update().set("deletedAt", existing.getDeletedAt()).set("updatedAt", existing.getUpdatedAt()),
+                    Product.class).getModifiedCount();
+            if (modified == 0) throw new RuntimeException("Product has been deleted"); // Đã bị xóa giữa chừng
+            productSearchIndex.remove(id); // Gỡ khỏi search index
+            attributeFilterIndex.removeProduct(id); // Gỡ khỏi filter index
+            productSuggestionIndex.productRemoved(id); // Gỡ khỏi typeahead
             
-            // Clear cache khi có thay đổi dữ liệu
-            clearCache();
+            // Chỉ bỏ entry của product này + cập nhật thống kê
+            productCache.evict(id);
+            productStatistics.onDeleted(existing);
+            catalogVersions.productRemoved(id);
+            categoryProductCounter.decrement(existing.getCategoryId()); // -1 product cho category
         } catch (Exception e) {
             log.error("Soft delete product failed, id={}", id, e); // Log ngữ cảnh lỗi
             throw new RuntimeException("Failed to soft delete product: " + e.getMessage(), e); // Bao lỗi nghiệp vụ
         }
     }
 
+    /** Khôi phục product đã xóa mềm. */
+    public Product restore(String id) {
+        try {
+            Product existing = productRepository.findById(id) // Tìm theo id
+                    .orElseThrow(() -> new RuntimeException("Product not found with ID: " + id)); // Không thấy -> lỗi
+            if (existing.getDeletedAt() == null)
+                throw new RuntimeException("Product is not deleted"); // Chưa xóa -> không cần khôi phục
+            // Bỏ đánh dấu xóa mềm; khôi phục cũng là một lần cập nhật (đổi version). Không ghi đè stock
+            Product savedProduct = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(id).and("deletedAt").ne(null)),
+                    new Update().unset("deletedAt").set("updatedAt", Instant.now()),
+                    FindAndModifyOptions.options().returnNew(true),
+                    Product.class);
+            if (savedProduct == null) throw new RuntimeException("Product is not deleted"); // Đã được khôi phục giữa chừng
+            productSearchIndex.index(savedProduct); // Đưa lại vào search index
+            attributeFilterIndex.addProduct(id); // Đánh dấu active trong filter index
+            attributeFilterIndex.reindexAttributes(new ObjectId(id)); // Nạp lại thuộc tính active
+            productSuggestionIndex.productChanged(savedProduct); // Thêm lại vào typeahead
+
+            productCache.evict(id);
+            productStatistics.onCreated(savedProduct); // Product quay lại tập active
+            catalogVersions.productChanged(id, savedProduct.getUpdatedAt());
+            categoryProductCounter.increment(savedProduct.getCategoryId()); // +1 product cho category
+
+            return savedProduct; // Trả về kết quả
+        } catch (Exception e) {
+            log.error("Restore product failed, id={}", id, e); // Log ngữ cảnh lỗi
+            throw new RuntimeException("Failed to restore product: " + e.getMessage(), e); // Bao lỗi nghiệp vụ
+        }
+    }
+
     @Transactional(readOnly = true)
-    /** Lấy product theo id (chỉ trả về nếu chưa bị xóa mềm) - TỐI ƯU HÓA. */
+    /** Lấy product theo id (chỉ trả về nếu chưa bị xóa mềm) - read-through qua ProductCache. */
     public Product getById(String id) {
         try {
-            // Sử dụng MongoTemplate với projection tối ưu
-            Query query = new Query(Criteria.where("_id").is(id).and("deletedAt").isNull());
-            query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt");
-            
-            Product p = mongoTemplate.findOne(query, Product.class);
+            Product p = productCache.get(id, this::loadActiveById); // Trả về bản sao, caller được phép sửa
             if (p == null) {
                 throw new RuntimeException("Product not found with ID: " + id);
             }
-
-            // Batch populate cho single product (tối ưu hơn)
-            List<Product> singleProductList = List.of(p);
-            batchPopulateCategories(singleProductList);
-            batchPopulateAttributesAndImages(singleProductList);
-
             return p; // Trả về entity đã populate
         } catch (Exception e) {
+            Product degraded = CatalogSnapshotStore.isMongoUnavailable(e) ? catalogSnapshot.findProduct(id) : null;
+            if (degraded != null) {
+                log.warn("⚠️ [SNAPSHOT] Mongo unavailable, serving product {} from snapshot taken at {}",
+                        id, catalogSnapshot.getCreatedAt());
+                return degraded;
+            }
             log.error("Get product by id failed, id={}", id, e); // Log lỗi
             throw new RuntimeException("Failed to get product: " + e.getMessage(), e); //
             // Bao lỗi nghiệp vụ
@@ -153,23 +247,26 @@ public class ProductService {
     @Transactional(readOnly = true)
     /** Lấy sản phẩm đang hoạt động theo trang - TỐI ƯU HÓA với batch loading. */
     public PageResponse<Product> getAllActive(int page, int size) {
+        return getAllActive(page, size, HydrationMode.BATCH);
+    }
+
+    @Transactional(readOnly = true)
+    /** Lấy sản phẩm đang hoạt động theo trang với chế độ hydration chỉ định. */
+    public PageResponse<Product> getAllActive(int page, int size, HydrationMode hydration) {
         long startTime = System.currentTimeMillis();
         log.info("🚀 [PERFORMANCE] Getting active products with pagination: page={}, size={}", page, size);
 
         try {
             Query query = new Query(Criteria.where("deletedAt").isNull());
-            query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt");
+            query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt",
+                    "primaryImageUrl", "card");
             optimizeQuery(query, "getAllActive");
 
             // Pagination
             query.skip((long) page * size).limit(size);
 
-            List<Product> products = mongoTemplate.find(query, Product.class);
-
-            // Batch load categories
-            batchPopulateCategories(products);
-            // Batch load attributes & images
-            batchPopulateAttributesAndImages(products);
+            // Load products + categories + attributes & images theo chế độ hydration
+            List<Product> products = findHydrated(query, hydration);
 
             // Count total products for pagination metadata
             long total = mongoTemplate.count(new Query(Criteria.where("deletedAt").isNull()), Product.class);
@@ -179,37 +276,51 @@ public class ProductService {
 
             return new PageResponse<>(products, total, page, size);
         } catch (Exception e) {
+            if (CatalogSnapshotStore.isMongoUnavailable(e) && catalogSnapshot.isAvailable()) {
+                log.warn("⚠️ [SNAPSHOT] Mongo unavailable, serving product page {} from snapshot taken at {}",
+                        page, catalogSnapshot.getCreatedAt());
+                return new PageResponse<>(catalogSnapshot.newestProducts((long) page * size, size),
+                        catalogSnapshot.productCount(), page, size);
+            }
             log.error("❌ [PERFORMANCE] Get active products failed", e);
             throw new RuntimeException("Failed to list products: " + e.getMessage(), e);
         }
     }
 
     @Transactional(readOnly = true)
-    /** Tìm kiếm theo tên (ignore-case) - TỐI ƯU HÓA với compound query. */
+    /** Tìm kiếm theo tên/mô tả/thuộc tính - dùng inverted index (BM25), fallback regex khi index chưa build xong. */
     public List<Product> searchByName(String name) {
         long startTime = System.currentTimeMillis();
         log.info("🔍 [PERFORMANCE] Searching products by name: {}", name);
 
         try {
-            // Sử dụng MongoTemplate với compound query tối ưu
-            Query query = new Query();
+            List<Product> products;
 
-            if (name == null || name.trim().isEmpty()) {
-                // Nếu search term rỗng, lấy tất cả active products
-                query.addCriteria(Criteria.where("deletedAt").isNull());
+            if (name != null && !name.trim().isEmpty() && productSearchIndex.isReady()) {
+                // Index trả về id theo thứ tự điểm, chỉ fetch đúng các id này bằng _id index
+                List<String> rankedIds = productSearchIndex.search(name, SEARCH_RESULT_LIMIT);
+                products = findActiveByIdsInOrder(rankedIds);
             } else {
-                // Compound query: name search + soft delete filter
-                query.addCriteria(Criteria.where("deletedAt").isNull())
-                        .addCriteria(Criteria.where("name").regex(name, "i")); // Case-insensitive regex
-            }
-            optimizeQuery(query, "search");
+                // Sử dụng MongoTemplate với compound query tối ưu
+                Query query = new Query();
 
-            // Projection để chỉ lấy fields cần thiết
-            query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt");
+                if (name == null || name.trim().isEmpty()) {
+                    // Nếu search term rỗng, lấy tất cả active products
+                    query.addCriteria(Criteria.where("deletedAt").isNull());
+                } else {
+                    // Compound query: name search + soft delete filter
+                    query.addCriteria(Criteria.where("deletedAt").isNull())
+                            .addCriteria(Criteria.where("name").regex(java.util.regex.Pattern.quote(name), "i")); // Case-insensitive regex
+                }
+                optimizeQuery(query, "search");
 
-            List<Product> products = mongoTemplate.find(query, Product.class);
-            log.info("📊 [PERFORMANCE] Found {} products matching '{}' in {}ms",
-                    products.size(), name, System.currentTimeMillis() - startTime);
+                // Projection để chỉ lấy fields cần thiết
+                query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt");
+
+                products = mongoTemplate.find(query, Product.class);
+            }
+            log.info("📊 [PERFORMANCE] Found {} products matching '{}' in {}ms (index={})",
+                    products.size(), name, System.currentTimeMillis() - startTime, productSearchIndex.isReady());
 
             // BATCH LOADING: Load tất cả categories trong 1 query
             batchPopulateCategories(products);
@@ -228,6 +339,12 @@ public class ProductService {
     @Transactional(readOnly = true)
     /** Lấy sản phẩm theo categoryId - TỐI ƯU HÓA với compound index. */
     public List<Product> getByCategoryId(String categoryId) {
+        return getByCategoryId(categoryId, HydrationMode.BATCH);
+    }
+
+    @Transactional(readOnly = true)
+    /** Lấy sản phẩm theo categoryId với chế độ hydration chỉ định. */
+    public List<Product> getByCategoryId(String categoryId, HydrationMode hydration) {
         long startTime = System.currentTimeMillis();
         log.info("📂 [PERFORMANCE] Getting products by category: {}", categoryId);
 
@@ -240,14 +357,10 @@ public class ProductService {
             // Projection để chỉ lấy fields cần thiết
             query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt");
 
-            List<Product> products = mongoTemplate.find(query, Product.class);
-            log.info("📊 [PERFORMANCE] Found {} products in category {} in {}ms",
-                    products.size(), categoryId, System.currentTimeMillis() - startTime);
-
-            // BATCH LOADING: Load tất cả categories trong 1 query
-            batchPopulateCategories(products);
-            // BATCH LOADING: Load attributes & images
-            batchPopulateAttributesAndImages(products);
+            // Load products + categories + attributes & images theo chế độ hydration
+            List<Product> products = findHydrated(query, hydration);
+            log.info("📊 [PERFORMANCE] Found {} products in category {} in {}ms ({})",
+                    products.size(), categoryId, System.currentTimeMillis() - startTime, hydration);
 
             long endTime = System.currentTimeMillis();
             log.info("✅ [PERFORMANCE] Category query completed in {}ms", endTime - startTime);
@@ -258,9 +371,57 @@ public class ProductService {
         }
     }
 
+    @Transactional(readOnly = true)
+    /**
+     * Sản phẩm active của cả cây con category (gồm chính nó), mới nhất trước.
+     * Hai query có index: category con theo ancestors, rồi product theo { categoryId: { $in } }.
+     */
+    public PageResponse<Product> getByCategorySubtree(String categoryId, int page, int size, HydrationMode hydration) {
+        long startTime = System.currentTimeMillis();
+        log.info("📂 [PERFORMANCE] Getting products by category subtree: {}", categoryId);
+
+        try {
+            if (!ObjectId.isValid(categoryId)) throw new RuntimeException("Invalid category ID: " + categoryId);
+            Query subtreeQuery = new Query(new Criteria().orOperator(
+                    Criteria.where("_id").is(new ObjectId(categoryId)),
+                    Criteria.where("ancestors").is(categoryId))
+                    .and("deletedAt").isNull());
+            subtreeQuery.fields().include("_id");
+            List<ObjectId> categoryIds = mongoTemplate.find(subtreeQuery, Document.class, "categories").stream()
+                    .map(doc -> doc.getObjectId("_id"))
+                    .toList();
+            if (categoryIds.isEmpty()) throw new RuntimeException("Category not found with ID: " + categoryId);
+
+            Criteria criteria = Criteria.where("categoryId").in(categoryIds).and("deletedAt").isNull();
+            Query query = new Query(criteria);
+            optimizeQuery(query, "category");
+            query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt",
+                    "primaryImageUrl", "card");
+            query.with(Sort.by(Sort.Direction.DESC, "createdAt"));
+            query.skip((long) page * size).limit(size);
+
+            // Load products + categories + attributes & images theo chế độ hydration
+            List<Product> products = findHydrated(query, hydration);
+            long total = mongoTemplate.count(new Query(criteria), Product.class);
+
+            log.info("✅ [PERFORMANCE] Found {} of {} products in {} categories under {} in {}ms",
+                    products.size(), total, categoryIds.size(), categoryId, System.currentTimeMillis() - startTime);
+            return new PageResponse<>(products, total, page, size);
+        } catch (Exception e) {
+            log.error("❌ [PERFORMANCE] Get products by category subtree failed, categoryId={}", categoryId, e); // Log lỗi
+            throw new RuntimeException("Failed to get products by category subtree: " + e.getMessage(), e); // Bao lỗi nghiệp vụ
+        }
+    }
+
     @Transactional(readOnly = true)
     /** Phân trang sản phẩm active với filtering - TỐI ƯU HÓA với skip/limit. */
     public Page<Product> getPaged(Pageable pageable, String name, String categoryId) {
+        return getPaged(pageable, name, categoryId, HydrationMode.BATCH);
+    }
+
+    @Transactional(readOnly = true)
+    /** Phân trang sản phẩm active với filtering và chế độ hydration chỉ định. */
+    public Page<Product> getPaged(Pageable pageable, String name, String categoryId, HydrationMode hydration) {
         long startTime = System.currentTimeMillis();
         log.info("📄 [PERFORMANCE] Getting paged products: page={}, size={}",
                 pageable.getPageNumber(), pageable.getPageSize());
@@ -268,23 +429,10 @@ public class ProductService {
         try {
             // Sử dụng skip/limit thay vì load tất cả rồi slice
             Query query = new Query(Criteria.where("deletedAt").isNull());
-            
+
             // Apply filters
-            if (name != null && !name.trim().isEmpty()) {
-                query.addCriteria(Criteria.where("name").regex(name, "i"));
-                log.debug("🔄 [DEBUG] Filtering by name: {}", name);
-            }
-            
-            if (categoryId != null && !categoryId.trim().isEmpty()) {
-                try {
-                    ObjectId categoryObjectId = new ObjectId(categoryId);
-                    query.addCriteria(Criteria.where("categoryId").is(categoryObjectId));
-                    log.debug("🔄 [DEBUG] Filtering by categoryId: {}", categoryId);
-                } catch (Exception e) {
-                    log.warn("🔄 [DEBUG] Invalid categoryId format: {}", categoryId);
-                }
-            }
-            
+            applyListingFilters(query, name, categoryId);
+
             // Debug: Log query
             log.debug("🔄 [DEBUG] Query: {}", query.toString());
             // Projection để chỉ lấy fields cần thiết
@@ -305,9 +453,10 @@ public class ProductService {
                 query.with(org.springframework.data.domain.Sort.by("createdAt").descending());
             }
 
-            List<Product> products = mongoTemplate.find(query, Product.class);
-            log.info("📊 [PERFORMANCE] Retrieved {} products for page {} in {}ms",
-                    products.size(), pageable.getPageNumber(), System.currentTimeMillis() - startTime);
+            // Load products + categories + attributes & images theo chế độ hydration
+            List<Product> products = findHydrated(query, hydration);
+            log.info("📊 [PERFORMANCE] Retrieved {} products for page {} in {}ms ({})",
+                    products.size(), pageable.getPageNumber(), System.currentTimeMillis() - startTime, hydration);
             
             // Debug: Kiểm tra categoryId của products
             log.debug("🔄 [DEBUG] Checking categoryIds in retrieved products:");
@@ -315,26 +464,10 @@ public class ProductService {
                 log.debug("🔄 [DEBUG] Product ID: {}, categoryId: {}", 
                         product.getId(), product.getCategoryId());
             }
-            
-            // Debug: Kiểm tra trực tiếp database
-            Query debugQuery = new Query(Criteria.where("deletedAt").isNull());
-            debugQuery.limit(1);
-            debugQuery.fields().include("id", "categoryId");
-            List<Product> debugProducts = mongoTemplate.find(debugQuery, Product.class);
-            if (!debugProducts.isEmpty()) {
-                Product debugProduct = debugProducts.get(0);
-                log.debug("🔄 [DEBUG] Direct DB query - Product ID: {}, categoryId: {}", 
-                        debugProduct.getId(), debugProduct.getCategoryId());
-            }
 
             // Count total records (separate query for efficiency)
             long totalCount = getTotalActiveCount();
 
-            // BATCH LOADING: Load tất cả categories trong 1 query
-            batchPopulateCategories(products);
-            // // BATCH LOADING: Load attributes & images
-            batchPopulateAttributesAndImages(products);
-
             long endTime = System.currentTimeMillis();
             log.info("✅ [PERFORMANCE] Pagination completed in {}ms", endTime - startTime);
 
@@ -353,10 +486,647 @@ public class ProductService {
         return getPaged(pageable, null, null);
     }
 
+    private static final int SEARCH_RESULT_LIMIT = 200; // Số kết quả tối đa của searchByName
+
+    /** Các sortKey hỗ trợ phân trang keyset (mỗi key có compound index deletedAt + key + _id). */
+    private static final Set<String> CURSOR_SORT_KEYS = Set.of("createdAt", "name");
+
+    /**
+     * Phân trang keyset (cursor) - chi phí trang 5.000 bằng trang 1.
+     * Không dùng skip: điều kiện (sortKey, _id) > cursor được phục vụ bằng index seek.
+     * countMode: none (mặc định, không đếm) | estimated (metadata collection) | exact (count theo filter).
+     */
+    @Transactional(readOnly = true)
+    public CursorPageResponse<Product> getPagedByCursor(String cursor, int size, String sortBy, String sortDir,
+            String name, String categoryId, String countMode) {
+        return getPagedByCursor(cursor, size, sortBy, sortDir, name, categoryId, countMode, HydrationMode.BATCH);
+    }
+
+    /** Phân trang keyset với chế độ hydration chỉ định. */
+    @Transactional(readOnly = true)
+    public CursorPageResponse<Product> getPagedByCursor(String cursor, int size, String sortBy, String sortDir,
+            String name, String categoryId, String countMode, HydrationMode hydration) {
+        long startTime = System.currentTimeMillis();
+
+        // Decode cursor trước try để lỗi cursor trả 400 thay vì bị bao thành lỗi 500
+        CursorCodec.Position position = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                position = CursorCodec.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+            }
+            if (!ObjectId.isValid(position.id)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor id");
+            }
+        }
+        // Cursor quyết định thứ tự sắp xếp, tránh client đổi sortBy giữa các trang
+        String sortKey = position != null ? position.sortKey
+                : (sortBy != null && CURSOR_SORT_KEYS.contains(sortBy) ? sortBy : "createdAt");
+        if (!CURSOR_SORT_KEYS.contains(sortKey)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported cursor sort key: " + sortKey);
+        }
+        boolean descending = position != null ? position.descending : !"asc".equalsIgnoreCase(sortDir);
+        int pageSize = Math.max(1, Math.min(size, 100));
+
+        log.info("📄 [PERFORMANCE] Getting cursor page: sortKey={}, desc={}, size={}, hasCursor={}",
+                sortKey, descending, pageSize, position != null);
+
+        try {
+            Query query = new Query(Criteria.where("deletedAt").isNull());
+            applyListingFilters(query, name, categoryId);
+
+            // Query đếm chỉ dùng filter, không có điều kiện keyset
+            Query countQuery = new Query(Criteria.where("deletedAt").isNull());
+            applyListingFilters(countQuery, name, categoryId);
+
+            if (position != null) {
+                query.addCriteria(keysetCriteria(sortKey, descending, position));
+            }
+
+            Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+            query.with(Sort.by(direction, sortKey).and(Sort.by(direction, "_id")));
+            query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt",
+                    "primaryImageUrl", "card");
+            query.limit(pageSize + 1); // Lấy dư 1 bản ghi để biết còn trang sau hay không
+
+            List<Product> products = findHydrated(query, hydration);
+
+            String nextCursor = null;
+            if (products.size() > pageSize) {
+                products = new ArrayList<>(products.subList(0, pageSize));
+                Product last = products.get(pageSize - 1);
+                Object lastValue = "name".equals(sortKey) ? last.getName() : last.getCreatedAt();
+                nextCursor = CursorCodec.encode(sortKey, descending, last.getId(), lastValue);
+            }
+
+            Long total = null;
+            boolean estimated = false;
+            if ("exact".equalsIgnoreCase(countMode)) {
+                total = mongoTemplate.count(countQuery, Product.class);
+            } else if ("estimated".equalsIgnoreCase(countMode)) {
+                // Đọc từ metadata collection (O(1)), bao gồm cả bản ghi đã xóa mềm nên chỉ là ước lượng
+                total = mongoTemplate.estimatedCount(Product.class);
+                estimated = true;
+            }
+
+            log.info("✅ [PERFORMANCE] Cursor page completed in {}ms, retrieved {} products",
+                    System.currentTimeMillis() - startTime, products.size());
+            return new CursorPageResponse<>(products, nextCursor, pageSize, total, estimated);
+        } catch (Exception e) {
+            log.error("❌ [PERFORMANCE] Get cursor page failed, sortKey={}, size={}", sortKey, pageSize, e);
+            throw new RuntimeException("Failed to paginate products by cursor: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lọc sản phẩm theo nhiều thuộc tính "Tên:Giá trị" (cùng tên thì OR, khác tên thì AND), mới nhất trước.
+     * Dùng bitmap index trong bộ nhớ; fallback query product_attributes khi index chưa build xong.
+     */
+    @Transactional(readOnly = true)
+    public PageResponse<Product> getByAttributeFilters(List<String> attributeFilters, int page, int size) {
+        long startTime = System.currentTimeMillis();
+        int pageSize = Math.max(1, Math.min(size, 100));
+        int pageIndex = Math.max(0, page);
+        if (attributeFilters == null || attributeFilters.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At least one attribute filter is required");
+        }
+        Map<String, List<String>> groups = parseAttributeFilters(attributeFilters);
+
+        try {
+            List<String> pageIds;
+            long total;
+            if (attributeFilterIndex.isReady()) {
+                AttributeFilterIndex.Result result = attributeFilterIndex.filter(groups, pageIndex * pageSize, pageSize);
+                pageIds = result.productIds;
+                total = result.total;
+            } else {
+                Query query = new Query(Criteria.where("_id").in(findProductIdsByAttributes(groups))
+                        .and("deletedAt").isNull());
+                total = mongoTemplate.count(query, Product.class);
+                query.fields().include("_id");
+                query.with(Sort.by("_id").descending()).skip((long) pageIndex * pageSize).limit(pageSize);
+                pageIds = mongoTemplate.find(query, Product.class).stream()
+                        .map(Product::getId)
+                        .collect(Collectors.toList());
+            }
+
+            List<Product> products = findActiveByIdsInOrder(pageIds);
+            batchPopulateCategories(products);
+            batchPopulateAttributesAndImages(products);
+
+            log.info("✅ [PERFORMANCE] Attribute filter {} matched {} products in {}ms (index={})",
+                    groups, total, System.currentTimeMillis() - startTime, attributeFilterIndex.isReady());
+            return new PageResponse<>(products, total, pageIndex, pageSize);
+        } catch (Exception e) {
+            log.error("❌ [PERFORMANCE] Filter products by attributes failed, attrs={}", attributeFilters, e);
+            throw new RuntimeException("Failed to filter products by attributes: " + e.getMessage(), e);
+        }
+    }
+
+    /** Mốc khoảng giá cho facet (VND); giá >= mốc cuối rơi vào bucket "trở lên" */
+    private static final List<Double> PRICE_FACET_BOUNDARIES = List.of(
+            0d, 1_000_000d, 5_000_000d, 10_000_000d, 20_000_000d, 50_000_000d);
+    private static final int ATTRIBUTE_FACET_LIMIT = 200; // Số cặp name/value tối đa trả về
+    private static final int ATTRIBUTE_ID_IN_LIMIT = 10_000; // Quá số id này thì lọc thuộc tính bằng $lookup
+
+    /**
+     * Tìm kiếm có facet - số lượng theo danh mục, khoảng giá, thuộc tính trong MỘT aggregation $facet
+     * (không bắn N query count riêng lẻ); trang sản phẩm đọc bằng một aggregation riêng mà $match + $sort
+     * đứng đầu để dùng index (deletedAt, createdAt, _id) và dừng sau skip + limit, không sort cả tập khớp.
+     * attributeFilters: danh sách "Tên:Giá trị"; cùng tên thì OR, khác tên thì AND.
+     */
+    @Transactional(readOnly = true)
+    public ProductFacetResponse<Product> getFaceted(String name, String categoryId, Double minPrice, Double maxPrice,
+            List<String> attributeFilters, int page, int size) {
+        long startTime = System.currentTimeMillis();
+        int pageSize = Math.max(1, Math.min(size, 100));
+        int pageIndex = Math.max(0, page);
+        log.info("🧭 [PERFORMANCE] Getting faceted products: name={}, categoryId={}, price=[{}, {}], attrs={}, page={}",
+                name, categoryId, minPrice, maxPrice, attributeFilters, pageIndex);
+
+        try {
+            Query filter = new Query(Criteria.where("deletedAt").isNull());
+            applyListingFilters(filter, name, categoryId);
+            List<Document> attributeStages = new ArrayList<>();
+            if (attributeFilters != null && !attributeFilters.isEmpty()) {
+                Map<String, List<String>> groups = parseAttributeFilters(attributeFilters);
+                List<ObjectId> matchedIds = attributeFilterIndex.isReady() ? attributeFilterIndex.matchingIds(groups) : null;
+                if (matchedIds != null && matchedIds.size() <= ATTRIBUTE_ID_IN_LIMIT) {
+                    filter.addCriteria(new Criteria().andOperator(Criteria.where("_id").in(matchedIds)));
+                } else {
+                    // Tập khớp lớn (hoặc index chưa sẵn sàng): không đẩy danh sách _id không giới hạn vào $in
+                    attributeStages = attributeMatchStages(groups);
+                }
+            }
+
+            // price lưu dạng BigDecimal (chuỗi) -> đổi sang số để lọc / chia bucket
+            Document priceValue = new Document("$convert", new Document("input", "$price").append("to", "double")
+                    .append("onError", null).append("onNull", null));
+            Document match = new Document(filter.getQueryObject());
+            if (minPrice != null || maxPrice != null) {
+                List<Document> bounds = new ArrayList<>();
+                if (minPrice != null) bounds.add(new Document("$gte", List.of(priceValue, minPrice)));
+                if (maxPrice != null) bounds.add(new Document("$lte", List.of(priceValue, maxPrice)));
+                match.append("$expr", new Document("$and", bounds));
+            }
+
+            // Trang sản phẩm: $match + $sort đầu pipeline -> index walk theo createdAt, dừng sau skip + limit
+            List<Document> itemsPipeline = new ArrayList<>();
+            itemsPipeline.add(new Document("$match", match));
+            itemsPipeline.add(new Document("$sort", new Document("createdAt", -1).append("_id", -1)));
+            itemsPipeline.addAll(attributeStages);
+            itemsPipeline.add(new Document("$skip", (long) pageIndex * pageSize));
+            itemsPipeline.add(new Document("$limit", pageSize));
+
+            List<Document> pipeline = new ArrayList<>();
+            pipeline.add(new Document("$match", match));
+            pipeline.addAll(attributeStages);
+            pipeline.add(new Document("$addFields", new Document("priceValue", priceValue)));
+
+            Document facets = new Document()
+                    .append("total", List.of(new Document("$count", "count")))
+                    .append("categories", List.of(
+                            new Document("$group", new Document("_id", "$categoryId")
+                                    .append("count", new Document("$sum", 1))),
+                            new Document("$lookup", new Document("from", "categories")
+                                    .append("localField", "_id").append("foreignField", "_id")
+                                    .append("as", "category")),
+                            new Document("$project", new Document("count", 1)
+                                    .append("label", new Document("$first", "$category.name"))),
+                            new Document("$sort", new Document("count", -1))))
+                    .append("priceRanges", List.of(
+                            new Document("$bucket", new Document("groupBy", "$priceValue")
+                                    .append("boundaries", PRICE_FACET_BOUNDARIES)
+                                    .append("default", "unpriced")
+                                    .append("output", new Document("count", new Document("$sum", 1))))))
+                    .append("attributes", List.of(
+                            // Chỉ nhánh này cần thuộc tính nên $lookup đặt trong facet, dùng index productId
+                            new Document("$lookup", new Document("from", "product_attributes")
+                                    .append("localField", "_id").append("foreignField", "productId")
+                                    .append("pipeline", List.of(
+                                            new Document("$match", new Document("deletedAt", null)),
+                                            new Document("$project", new Document("_id", 0).append("name", 1).append("value", 1))))
+                                    .append("as", "attrs")),
+                            new Document("$unwind", "$attrs"),
+                            new Document("$group", new Document("_id",
+                                    new Document("name", "$attrs.name").append("value", "$attrs.value"))
+                                    .append("count", new Document("$sum", 1))),
+                            new Document("$sort", new Document("_id.name", 1).append("count", -1)),
+                            new Document("$limit", ATTRIBUTE_FACET_LIMIT)));
+            pipeline.add(new Document("$facet", facets));
+
+            Document result = mongoTemplate.getCollection("products").aggregate(pipeline)
+                    .allowDiskUse(true).first();
+
+            ProductFacetResponse<Product> response = new ProductFacetResponse<>();
+            response.currentPage = pageIndex;
+            response.size = pageSize;
+            response.items = new ArrayList<>();
+            for (Document doc : mongoTemplate.getCollection("products").aggregate(itemsPipeline)) {
+                response.items.add(mongoTemplate.getConverter().read(Product.class, doc));
+            }
+            if (result != null) {
+                List<Document> totalDocs = result.getList("total", Document.class);
+                response.total = totalDocs.isEmpty() ? 0 : ((Number) totalDocs.get(0).get("count")).longValue();
+                readFacetCounts(result, response);
+            }
+
+            batchPopulateCategories(response.items);
+            batchPopulateAttributesAndImages(response.items);
+
+            log.info("✅ [PERFORMANCE] Faceted search completed in {}ms, total={}, page items={}",
+                    System.currentTimeMillis() - startTime, response.total, response.items.size());
+            return response;
+        } catch (Exception e) {
+            log.error("❌ [PERFORMANCE] Faceted search failed, name={}, categoryId={}", name, categoryId, e);
+            throw new RuntimeException("Failed to get faceted products: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Benchmark hai chế độ hydration trên cùng trang sản phẩm mới nhất:
+     * trả về round-trip mỗi lần gọi, p50 / p99 / trung bình (ms) cho BATCH và PIPELINE.
+     * Chạy xen kẽ hai chế độ để cache Mongo / JIT ảnh hưởng như nhau.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> benchmarkHydration(int iterations, int size) {
+        int runs = Math.max(1, Math.min(iterations, 500));
+        int pageSize = Math.max(1, Math.min(size, 100));
+        log.info("⏱️ [PERFORMANCE] Benchmarking hydration modes: iterations={}, size={}", runs, pageSize);
+
+        Map<HydrationMode, long[]> timings = new HashMap<>();
+        for (HydrationMode mode : HydrationMode.values()) {
+            timings.put(mode, new long[runs]);
+            findHydrated(newestProductsQuery(pageSize), mode); // Warm-up
+        }
+        for (int i = 0; i < runs; i++) {
+            for (HydrationMode mode : HydrationMode.values()) {
+                long start = System.nanoTime();
+                findHydrated(newestProductsQuery(pageSize), mode);
+                timings.get(mode)[i] = System.nanoTime() - start;
+            }
+        }
+
+        Map<String, Object> report = new java.util.LinkedHashMap<>();
+        report.put("iterations", runs);
+        report.put("size", pageSize);
+        for (HydrationMode mode : HydrationMode.values()) {
+            Map<String, Object> stats = new java.util.LinkedHashMap<>();
+            // BATCH: products + attributes + images, + categories khi cache category hết hạn
+            stats.put("roundTrips", mode == HydrationMode.PIPELINE ? "1" : "3-4");
+            stats.putAll(latencyStats(timings.get(mode)));
+            report.put(mode.name().toLowerCase(), stats);
+        }
+        log.info("✅ [PERFORMANCE] Hydration benchmark: {}", report);
+        return report;
+    }
+
+    /**
+     * Benchmark tìm kiếm có facet trên dữ liệu hiện có (chạy sau khi import >= 100k products):
+     * p50 / p99 / trung bình (ms) cho không lọc, lọc danh mục, khoảng giá, thuộc tính và trang sâu.
+     * Danh mục / thuộc tính lấy từ facet phổ biến nhất của lần chạy không lọc.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> benchmarkFaceted(int iterations, int size) {
+        int runs = Math.max(1, Math.min(iterations, 200));
+        int pageSize = Math.max(1, Math.min(size, 100));
+        log.info("⏱️ [PERFORMANCE] Benchmarking faceted search: iterations={}, size={}", runs, pageSize);
+
+        ProductFacetResponse<Product> all = getFaceted(null, null, null, null, null, 0, pageSize); // Warm-up
+        Map<String, java.util.function.Supplier<ProductFacetResponse<Product>>> scenarios = new java.util.LinkedHashMap<>();
+        scenarios.put("all", () -> getFaceted(null, null, null, null, null, 0, pageSize));
+        if (!all.categories.isEmpty() && all.categories.get(0).value != null) {
+            String topCategory = all.categories.get(0).value;
+            scenarios.put("category", () -> getFaceted(null, topCategory, null, null, null, 0, pageSize));
+        }
+        scenarios.put("priceRange", () -> getFaceted(null, null, 1_000_000d, 10_000_000d, null, 0, pageSize));
+        if (!all.attributes.isEmpty() && !all.attributes.get(0).values.isEmpty()) {
+            List<String> topAttribute = List.of(all.attributes.get(0).name + ":" + all.attributes.get(0).values.get(0).value);
+            scenarios.put("attribute", () -> getFaceted(null, null, null, null, topAttribute, 0, pageSize));
+        }
+        int deepPage = (int) Math.min(Math.max(all.total / pageSize - 1, 0), 1_000);
+        scenarios.put("deepPage", () -> getFaceted(null, null, null, null, null, deepPage, pageSize));
+
+        Map<String, Object> report = new java.util.LinkedHashMap<>();
+        report.put("products", all.total);
+        report.put("iterations", runs);
+        report.put("size", pageSize);
+        scenarios.forEach((scenario, call) -> {
+            long[] samples = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                call.get();
+                samples[i] = System.nanoTime() - start;
+            }
+            report.put(scenario, latencyStats(samples));
+        });
+        log.info("✅ [PERFORMANCE] Faceted search benchmark: {}", report);
+        return report;
+    }
+
+    /** p50 / p99 / trung bình (ms) của các mẫu thời gian (ns). */
+    private static Map<String, Object> latencyStats(long[] samples) {
+        java.util.Arrays.sort(samples);
+        Map<String, Object> stats = new java.util.LinkedHashMap<>();
+        stats.put("p50Ms", samples[(int) Math.floor(0.50 * (samples.length - 1))] / 1_000_000.0);
+        stats.put("p99Ms", samples[(int) Math.floor(0.99 * (samples.length - 1))] / 1_000_000.0);
+        stats.put("meanMs", java.util.Arrays.stream(samples).average().orElse(0) / 1_000_000.0);
+        return stats;
+    }
+
+    private Query newestProductsQuery(int size) {
+        Query query = new Query(Criteria.where("deletedAt").isNull());
+        query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt",
+                "primaryImageUrl", "card");
+        query.with(Sort.by("createdAt").descending()).limit(size);
+        return query;
+    }
+
     // =====================================================
     // HELPER METHODS - Các phương thức hỗ trợ tối ưu hóa
     // =====================================================
 
+    /**
+     * Áp dụng filter tên/danh mục dùng chung cho các API danh sách.
+     * Tên lọc theo "chứa chuỗi" (regex) để trang / tổng / facet đúng và đầy đủ;
+     * search index (BM25, top-N, có fallback OR) chỉ dùng để xếp hạng ở searchByName.
+     */
+    private void applyListingFilters(Query query, String name, String categoryId) {
+        if (name != null && !name.trim().isEmpty()) {
+            query.addCriteria(Criteria.where("name").regex(java.util.regex.Pattern.quote(name), "i"));
+            log.debug("🔄 [DEBUG] Filtering by name: {}", name);
+        }
+
+        if (categoryId != null && !categoryId.trim().isEmpty()) {
+            try {
+                ObjectId categoryObjectId = new ObjectId(categoryId);
+                query.addCriteria(Criteria.where("categoryId").is(categoryObjectId));
+                log.debug("🔄 [DEBUG] Filtering by categoryId: {}", categoryId);
+            } catch (Exception e) {
+                log.warn("🔄 [DEBUG] Invalid categoryId format: {}", categoryId);
+            }
+        }
+    }
+
+    /**
+     * Tách danh sách "Tên:Giá trị" thành nhóm theo tên (giữ thứ tự xuất hiện)
+     */
+    private Map<String, List<String>> parseAttributeFilters(List<String> attributeFilters) {
+        Map<String, List<String>> groups = new java.util.LinkedHashMap<>();
+        for (String raw : attributeFilters) {
+            int sep = raw != null ? raw.indexOf(':') : -1;
+            if (sep <= 0 || sep == raw.length() - 1) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid attribute filter: " + raw);
+            }
+            groups.computeIfAbsent(raw.substring(0, sep).trim(), k -> new ArrayList<>())
+                    .add(raw.substring(sep + 1).trim());
+        }
+        return groups;
+    }
+
+    /**
+     * Lấy id sản phẩm từ product_attributes (fallback khi filter index chưa build xong):
+     * mỗi tên một query ($in các giá trị), giao các tập id giữa các tên
+     */
+    private List<ObjectId> findProductIdsByAttributes(Map<String, List<String>> groups) {
+        Set<ObjectId> matched = null;
+        for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+            Query attrQuery = new Query(Criteria.where("name").is(group.getKey())
+                    .and("value").in(group.getValue())
+                    .and("deletedAt").isNull());
+            Set<ObjectId> ids = new HashSet<>(mongoTemplate.findDistinct(attrQuery, "productId",
+                    ProductAttribute.class, ObjectId.class));
+            if (matched == null) {
+                matched = ids;
+            } else {
+                matched.retainAll(ids);
+            }
+            if (matched.isEmpty()) break;
+        }
+        return matched == null ? new ArrayList<>() : new ArrayList<>(matched);
+    }
+
+    /**
+     * Lọc thuộc tính trong pipeline (khi tập id khớp quá lớn cho $in): $lookup product_attributes theo productId
+     * (index), chỉ lấy các cặp name/value được lọc, rồi yêu cầu đủ mọi tên (cùng tên OR, khác tên AND)
+     */
+    private List<Document> attributeMatchStages(Map<String, List<String>> groups) {
+        List<Document> pairs = new ArrayList<>();
+        List<Document> requiredNames = new ArrayList<>();
+        groups.forEach((attrName, values) -> {
+            pairs.add(new Document("name", attrName).append("value", new Document("$in", values)));
+            requiredNames.add(new Document("matchedAttrs.name", attrName));
+        });
+        return List.of(
+                new Document("$lookup", new Document("from", "product_attributes")
+                        .append("localField", "_id").append("foreignField", "productId")
+                        .append("pipeline", List.of(
+                                new Document("$match", new Document("deletedAt", null).append("$or", pairs)),
+                                new Document("$project", new Document("_id", 0).append("name", 1))))
+                        .append("as", "matchedAttrs")),
+                new Document("$match", new Document("$and", requiredNames)),
+                new Document("$project", new Document("matchedAttrs", 0)));
+    }
+
+    /**
+     * Đọc các nhánh facet (categories / priceRanges / attributes) từ kết quả $facet
+     */
+    private void readFacetCounts(Document result, ProductFacetResponse<Product> response) {
+        for (Document doc : result.getList("categories", Document.class)) {
+            Object categoryId = doc.get("_id");
+            response.categories.add(new ProductFacetResponse.FacetCount(
+                    categoryId != null ? categoryId.toString() : null,
+                    doc.getString("label"),
+                    ((Number) doc.get("count")).longValue()));
+        }
+
+        for (Document doc : result.getList("priceRanges", Document.class)) {
+            Object lower = doc.get("_id");
+            if (!(lower instanceof Number)) continue; // Bucket "unpriced": giá không đọc được
+            double min = ((Number) lower).doubleValue();
+            int index = PRICE_FACET_BOUNDARIES.indexOf(min);
+            Double max = index >= 0 && index + 1 < PRICE_FACET_BOUNDARIES.size()
+                    ? PRICE_FACET_BOUNDARIES.get(index + 1) : null;
+            response.priceRanges.add(new ProductFacetResponse.PriceBucket(min, max,
+                    ((Number) doc.get("count")).longValue()));
+        }
+
+        Map<String, ProductFacetResponse.AttributeFacet> byName = new java.util.LinkedHashMap<>();
+        for (Document doc : result.getList("attributes", Document.class)) {
+            Document key = doc.get("_id", Document.class);
+            String attrName = key.getString("name");
+            String attrValue = key.getString("value");
+            byName.computeIfAbsent(attrName, ProductFacetResponse.AttributeFacet::new)
+                    .values.add(new ProductFacetResponse.FacetCount(attrValue, attrValue,
+                            ((Number) doc.get("count")).longValue()));
+        }
+        response.attributes.addAll(byName.values());
+    }
+
+    /**
+     * Đọc product active từ DB và populate category/attributes/images (loader của ProductCache)
+     */
+    private Product loadActiveById(String id) {
+        // Sử dụng MongoTemplate với projection tối ưu
+        Query query = new Query(Criteria.where("_id").is(id).and("deletedAt").isNull());
+        query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt",
+                "primaryImageUrl", "card");
+
+        Product p = mongoTemplate.findOne(query, Product.class);
+        if (p == null) return null; // Không cache kết quả rỗng
+
+        // Batch populate cho single product (tối ưu hơn)
+        List<Product> singleProductList = List.of(p);
+        batchPopulateCategories(singleProductList);
+        batchPopulateAttributesAndImages(singleProductList);
+        return p;
+    }
+
+    /**
+     * Lấy các product active theo danh sách id, giữ nguyên thứ tự của danh sách (thứ tự xếp hạng search)
+     */
+    private List<Product> findActiveByIdsInOrder(List<String> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
+        List<ObjectId> objectIds = ids.stream().map(ObjectId::new).collect(Collectors.toList());
+        Query query = new Query(Criteria.where("_id").in(objectIds).and("deletedAt").isNull());
+        query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt",
+                "primaryImageUrl", "card");
+        Map<String, Product> byId = new HashMap<>();
+        for (Product p : mongoTemplate.find(query, Product.class)) {
+            byId.put(p.getId(), p);
+        }
+        List<Product> ordered = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Product p = byId.get(id);
+            if (p != null) ordered.add(p);
+        }
+        return ordered;
+    }
+
+    /**
+     * Điều kiện keyset: (sortKey, _id) đứng sau vị trí cursor theo hướng sort.
+     * Giá trị null / thiếu được Mongo xếp nhỏ nhất (cuối cùng khi sort giảm dần) nên cần xử lý riêng.
+     */
+    private Criteria keysetCriteria(String sortKey, boolean descending, CursorCodec.Position position) {
+        ObjectId lastId = new ObjectId(position.id); // Đã kiểm tra hợp lệ khi decode cursor
+        Object value = position.value;
+
+        if (value == null) {
+            Criteria sameNullKey = descending
+                    ? Criteria.where(sortKey).isNull().and("_id").lt(lastId)
+                    : Criteria.where(sortKey).isNull().and("_id").gt(lastId);
+            return descending
+                    ? sameNullKey
+                    : new Criteria().orOperator(Criteria.where(sortKey).ne(null), sameNullKey);
+        }
+
+        return descending
+                ? new Criteria().orOperator(
+                        Criteria.where(sortKey).lt(value),
+                        Criteria.where(sortKey).is(value).and("_id").lt(lastId),
+                        Criteria.where(sortKey).isNull()) // null / thiếu đứng sau mọi giá trị khi giảm dần
+                : new Criteria().orOperator(
+                        Criteria.where(sortKey).gt(value),
+                        Criteria.where(sortKey).is(value).and("_id").gt(lastId));
+    }
+
+    /**
+     * Chạy query product và nạp category / attributes / ảnh đại diện theo chế độ hydration
+     */
+    private List<Product> findHydrated(Query query, HydrationMode hydration) {
+        if (hydration == HydrationMode.PIPELINE) {
+            return findByPipeline(query);
+        }
+        List<Product> products = mongoTemplate.find(query, Product.class);
+        // BATCH LOADING: Load tất cả categories trong 1 query
+        batchPopulateCategories(products);
+        // BATCH LOADING: Load attributes & images trong 2 query
+        batchPopulateAttributesAndImages(products);
+        return products;
+    }
+
+    /**
+     * Hydration 1 round-trip: $match/$sort/$skip/$limit trên products rồi $lookup category,
+     * attributes active và ảnh đại diện (sub-pipeline $sort + $limit 1) trong cùng aggregation
+     */
+    private List<Product> findByPipeline(Query query) {
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(Product.class);
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+
+        List<Document> pipeline = new ArrayList<>();
+        // Map query qua entity để kiểu field khớp với Mongo (vd categoryId String -> ObjectId)
+        pipeline.add(new Document("$match", queryMapper.getMappedObject(query.getQueryObject(), entity)));
+        if (!query.getSortObject().isEmpty()) {
+            pipeline.add(new Document("$sort", queryMapper.getMappedSort(query.getSortObject(), entity)));
+        }
+        if (query.getSkip() > 0) pipeline.add(new Document("$skip", query.getSkip()));
+        if (query.isLimited()) pipeline.add(new Document("$limit", query.getLimit()));
+        if (!query.getFieldsObject().isEmpty()) {
+            pipeline.add(new Document("$project", queryMapper.getMappedFields(query.getFieldsObject(), entity)));
+        }
+
+        pipeline.add(new Document("$lookup", new Document("from", "categories")
+                .append("localField", "categoryId").append("foreignField", "_id")
+                .append("pipeline", List.of(new Document("$project",
+                        new Document("name", 1).append("description", 1).append("createdAt", 1))))
+                .append("as", "category")));
+        pipeline.add(new Document("$lookup", new Document("from", "product_attributes")
+                .append("localField", "_id").append("foreignField", "productId")
+                .append("pipeline", List.of(
+                        new Document("$match", new Document("deletedAt", null)),
+                        new Document("$project", new Document("name", 1).append("value", 1).append("productId", 1))))
+                .append("as", "attributes")));
+        // Ảnh: product đã có card dùng primaryImageUrl, sub-pipeline chỉ chạy cho product chưa backfill
+        pipeline.add(new Document("$lookup", new Document("from", "product_images")
+                .append("localField", "_id").append("foreignField", "productId")
+                .append("let", new Document("hasCard",
+                        new Document("$ne", List.of(new Document("$type", "$card"), "missing"))))
+                .append("pipeline", List.of(
+                        new Document("$match", new Document("$expr", new Document("$not", List.of("$$hasCard")))),
+                        new Document("$match", new Document("deletedAt", null)),
+                        new Document("$sort", new Document("isPrimary", -1).append("createdAt", 1)),
+                        new Document("$limit", 1), // Chỉ ảnh đại diện
+                        new Document("$project", new Document("imageUrl", 1).append("isPrimary", 1).append("productId", 1))))
+                .append("as", "images")));
+
+        var aggregate = mongoTemplate.getCollection("products").aggregate(pipeline);
+        if (query.getHint() != null) {
+            aggregate.hintString(query.getHint());
+        }
+
+        List<Product> products = new ArrayList<>();
+        MongoConverter converter = mongoTemplate.getConverter();
+        for (Document doc : aggregate) {
+            List<Document> categories = doc.getList("category", Document.class);
+            List<Document> attributes = doc.getList("attributes", Document.class);
+            List<Document> images = doc.getList("images", Document.class);
+            doc.remove("category");
+            doc.remove("attributes");
+            doc.remove("images");
+
+            Product product = converter.read(Product.class, doc);
+            if (categories != null && !categories.isEmpty()) {
+                product.setCategory(converter.read(Category.class, categories.get(0)));
+            }
+            if (attributes != null && !attributes.isEmpty()) {
+                product.setAttributes(attributes.stream()
+                        .map(a -> converter.read(ProductAttribute.class, a))
+                        .collect(Collectors.toList()));
+            }
+            if (product.getCard() != null) {
+                product.setImages(primaryImageOf(product));
+            } else if (images != null && !images.isEmpty()) {
+                product.setImages(images.stream()
+                        .map(i -> converter.read(ProductImage.class, i))
+                        .collect(Collectors.toList()));
+            }
+            products.add(product);
+        }
+        return products;
+    }
+
     /**
      * Batch populate categories với caching - TỐI ƯU HÓA
      * Tối ưu: Single query + in-memory cache để load tất cả categories cần thiết
@@ -480,78 +1250,13 @@ public class ProductService {
         return mongoTemplate.count(countQuery, Product.class);
     }
 
-    // Cache cho statistics
-    private volatile Map<String, Object> statisticsCache = null;
-    private volatile long statisticsCacheTimestamp = 0;
-    private static final long STATISTICS_CACHE_TTL = 600000; // 10 minutes
-
     /**
-     * Tạo thống kê sản phẩm với aggregation và caching - TỐI ƯU HÓA
-     * Tối ưu: Single aggregation query + caching cho multiple statistics
+     * Thống kê sản phẩm active - đọc O(1) từ ProductStatistics (duy trì tăng dần khi ghi,
+     * đối soát định kỳ với DB) thay vì chạy $group toàn collection
      */
     @Transactional(readOnly = true)
     public Map<String, Object> getProductStatistics() {
-        // Check cache first
-        long currentTime = System.currentTimeMillis();
-        if (statisticsCache != null && (currentTime - statisticsCacheTimestamp) < STATISTICS_CACHE_TTL) {
-            log.debug("📈 [PERFORMANCE] Returning cached statistics");
-            return new java.util.HashMap<>(statisticsCache);
-        }
-
-        log.info("📈 [PERFORMANCE] Getting product statistics");
-        long startTime = System.currentTimeMillis();
-
-        try {
-            // Sử dụng aggregation để tính toán statistics trong 1 query
-            org.springframework.data.mongodb.core.aggregation.Aggregation aggregation = org.springframework.data.mongodb.core.aggregation.Aggregation
-                    .newAggregation(
-                            // Match active products only
-                            org.springframework.data.mongodb.core.aggregation.Aggregation.match(
-                                    Criteria.where("deletedAt").isNull()),
-
-                            // Group and calculate statistics
-                            org.springframework.data.mongodb.core.aggregation.Aggregation.group()
-                                    .count().as("totalProducts")
-                                    .avg("price").as("averagePrice")
-                                    .sum("stock").as("totalStock")
-                                    .min("price").as("minPrice")
-                                    .max("price").as("maxPrice"),
-
-                            // Project results
-                            org.springframework.data.mongodb.core.aggregation.Aggregation.project()
-                                    .and("totalProducts").as("totalProducts")
-                                    .and("averagePrice").as("averagePrice")
-                                    .and("totalStock").as("totalStock")
-                                    .and("minPrice").as("minPrice")
-                                    .and("maxPrice").as("maxPrice"));
-
-            @SuppressWarnings("rawtypes")
-            org.springframework.data.mongodb.core.aggregation.AggregationResults<Map> results = mongoTemplate
-                    .aggregate(aggregation, "products", Map.class);
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> stats = (Map<String, Object>) results.getUniqueMappedResult();
-            if (stats == null) {
-                stats = Map.of(
-                        "totalProducts", 0L,
-                        "averagePrice", 0.0,
-                        "totalStock", 0L,
-                        "minPrice", 0.0,
-                        "maxPrice", 0.0);
-            }
-
-            // Update cache
-            statisticsCache = new java.util.HashMap<>(stats);
-            statisticsCacheTimestamp = currentTime;
-
-            long endTime = System.currentTimeMillis();
-            log.info("✅ [PERFORMANCE] Statistics completed in {}ms: {}", endTime - startTime, stats);
-            return stats;
-
-        } catch (Exception e) {
-            log.error("❌ [PERFORMANCE] Error getting statistics", e);
-            throw new RuntimeException("Failed to get statistics: " + e.getMessage(), e);
-        }
+        return productStatistics.snapshot();
     }
 
     /**
@@ -578,12 +1283,19 @@ public class ProductService {
             attrQuery.fields().include("name", "value", "productId");
             List<ProductAttribute> allAttributes = mongoTemplate.find(attrQuery, ProductAttribute.class);
 
-            // Query images - chỉ lấy 1 ảnh đại diện cho mỗi sản phẩm
-            Query imgQuery = new Query(Criteria.where("productId").in(productObjectIds)
-                    .and("deletedAt").isNull());
-            imgQuery.fields().include("imageUrl", "isPrimary", "productId");
-            imgQuery.with(Sort.by("isPrimary").descending().and(Sort.by("createdAt").ascending()));
-            List<ProductImage> allImages = mongoTemplate.find(imgQuery, ProductImage.class);
+            // Query images - chỉ cho product chưa có card (chưa backfill); còn lại dùng primaryImageUrl đã denormalize
+            List<ObjectId> idsWithoutCard = products.stream()
+                    .filter(p -> p.getCard() == null && p.getId() != null && !p.getId().isBlank())
+                    .map(p -> new ObjectId(p.getId()))
+                    .collect(Collectors.toList());
+            List<ProductImage> allImages = List.of();
+            if (!idsWithoutCard.isEmpty()) {
+                Query imgQuery = new Query(Criteria.where("productId").in(idsWithoutCard)
+                        .and("deletedAt").isNull());
+                imgQuery.fields().include("imageUrl", "isPrimary", "productId");
+                imgQuery.with(Sort.by("isPrimary").descending().and(Sort.by("createdAt").ascending()));
+                allImages = mongoTemplate.find(imgQuery, ProductImage.class);
+            }
 
             // Group attributes by productId - sử dụng HashMap cho O(1) lookup
             Map<String, List<ProductAttribute>> productIdToAttributes = new HashMap<>();
@@ -609,7 +1321,7 @@ public class ProductService {
                 if (pid != null) {
                     List<ProductAttribute> attrs = productIdToAttributes.get(pid);
                     if (attrs != null) p.setAttributes(attrs);
-                    List<ProductImage> imgs = productIdToImages.get(pid);
+                    List<ProductImage> imgs = p.getCard() != null ? primaryImageOf(p) : productIdToImages.get(pid);
                     if (imgs != null) p.setImages(imgs);
                 }
             }
@@ -624,6 +1336,21 @@ public class ProductService {
         }
     }
 
+    /**
+     * Ảnh đại diện dựng từ field denormalized (primaryImageUrl + card.primaryImageId), không đọc product_images
+     */
+    private static List<ProductImage> primaryImageOf(Product product) {
+        if (product.getPrimaryImageUrl() == null) return null;
+        ProductImage image = ProductImage.builder()
+                .id(product.getCard().getPrimaryImageId())
+                .productId(new ObjectId(product.getId()))
+                .imageUrl(product.getPrimaryImageUrl())
+                .isPrimary(true)
+                .createdAt(null)
+                .build();
+        return new ArrayList<>(List.of(image));
+    }
+
     /**
      * Fallback sequential processing nếu parallel processing thất bại
      */
@@ -683,16 +1410,25 @@ public class ProductService {
     }
 
     /**
-     * Clear cache khi có thay đổi dữ liệu
+     * Clear toàn bộ cache (chỉ dùng cho thao tác hàng loạt; ghi đơn lẻ dùng evict theo id)
      */
     public void clearCache() {
         categoryCache.clear();
-        statisticsCache = null;
+        productCache.evictAll();
         categoryCacheTimestamp = 0;
-        statisticsCacheTimestamp = 0;
         log.info("🧹 [PERFORMANCE] Cache cleared");
     }
 
+    /**
+     * Bỏ cache của một category và các product đang embed category đó (gọi khi category đổi / bị xóa)
+     */
+    public void evictCategory(String categoryId) {
+        if (categoryId == null) return;
+        categoryCache.remove(categoryId);
+        productCache.evictByCategory(categoryId);
+        log.debug("🧹 [PERFORMANCE] Evicted category {} from cache", categoryId);
+    }
+
     /**
      * Tối ưu hóa query với compound index hints
      */
@@ -711,30 +1447,64 @@ public class ProductService {
     }
 
     /**
-     * Lấy sản phẩm bán chạy - TỐI ƯU HÓA
-     * Sắp xếp theo stock thấp nhất (đã bán nhiều) và createdAt gần đây
+     * Lấy sản phẩm bán chạy - xếp hạng theo số lượng đã bán (toàn thời gian)
      */
     @Transactional(readOnly = true)
     public List<Product> getBestSellingProducts(int limit) {
+        return getBestSellingProducts(limit, SalesWindow.TOTAL, HydrationMode.BATCH);
+    }
+
+    /**
+     * Lấy sản phẩm bán chạy với chế độ hydration chỉ định
+     */
+    @Transactional(readOnly = true)
+    public List<Product> getBestSellingProducts(int limit, HydrationMode hydration) {
+        return getBestSellingProducts(limit, SalesWindow.TOTAL, hydration);
+    }
+
+    /**
+     * Lấy sản phẩm bán chạy trong cửa sổ thời gian (total / 7 ngày / 30 ngày).
+     * Thứ tự lấy từ bảng top-K trong ProductSalesService (không sort collection products);
+     * thiếu thì bù bằng sản phẩm mới nhất.
+     */
+    @Transactional(readOnly = true)
+    public List<Product> getBestSellingProducts(int limit, SalesWindow window, HydrationMode hydration) {
         long startTime = System.currentTimeMillis();
-        log.info("🔥 [PERFORMANCE] Getting best selling products, limit={}", limit);
+        log.info("🔥 [PERFORMANCE] Getting best selling products, limit={}, window={}", limit, window);
 
         try {
-            Query query = new Query(Criteria.where("deletedAt").isNull());
-            query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt");
-            
-            // Sắp xếp theo stock thấp (đã bán nhiều) và createdAt gần đây
-            query.with(org.springframework.data.domain.Sort.by("stock").ascending()
-                    .and(org.springframework.data.domain.Sort.by("createdAt").descending()));
-            
-            query.limit(limit);
-            
-            List<Product> products = mongoTemplate.find(query, Product.class);
-            
-            // Batch load categories, attributes và images
-            batchPopulateCategories(products);
-            batchPopulateAttributesAndImages(products);
-            
+            List<Product> products = new ArrayList<>();
+            if (limit <= 0) return products;
+
+            // Lấy dư id để bù cho sản phẩm đã bị xóa mềm
+            List<String> rankedIds = productSalesService.topProductIds(window, limit * 2);
+            if (!rankedIds.isEmpty()) {
+                Query query = new Query(Criteria.where("_id").in(
+                        rankedIds.stream().map(ObjectId::new).collect(Collectors.toList()))
+                        .and("deletedAt").isNull());
+                query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt",
+                        "primaryImageUrl", "card");
+                Map<String, Product> byId = new HashMap<>();
+                for (Product p : findHydrated(query, hydration)) {
+                    byId.put(p.getId(), p);
+                }
+                for (String id : rankedIds) {
+                    Product p = byId.get(id);
+                    if (p != null) products.add(p);
+                    if (products.size() >= limit) break;
+                }
+            }
+
+            // Chưa đủ (ít đơn hàng / ranking đang nạp): bù bằng sản phẩm mới nhất
+            if (products.size() < limit) {
+                List<ObjectId> excluded = products.stream().map(p -> new ObjectId(p.getId())).collect(Collectors.toList());
+                Query padding = new Query(Criteria.where("deletedAt").isNull().and("_id").nin(excluded));
+                padding.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt",
+                        "primaryImageUrl", "card");
+                padding.with(Sort.by("createdAt").descending()).limit(limit - products.size());
+                products.addAll(findHydrated(padding, hydration));
+            }
+
             long endTime = System.currentTimeMillis();
             log.info("✅ [PERFORMANCE] Retrieved {} best selling products in {}ms", 
                     products.size(), endTime - startTime);
@@ -746,29 +1516,73 @@ public class ProductService {
         }
     }
 
+    /**
+     * Sản phẩm thường được mua cùng với product đã cho (thứ tự theo điểm gợi ý trong bộ nhớ).
+     * Chưa có dữ liệu đơn hàng thì trả về danh sách rỗng.
+     */
+    @Transactional(readOnly = true)
+    public List<Product> getRelatedProducts(String id, int limit, HydrationMode hydration) {
+        long startTime = System.currentTimeMillis();
+        try {
+            List<Product> products = new ArrayList<>();
+            if (limit <= 0) return products;
+
+            // Lấy dư id để bù cho sản phẩm đã bị xóa mềm
+            List<String> rankedIds = productRecommendationService.relatedProductIds(id, limit * 2);
+            if (rankedIds.isEmpty()) return products;
+            Query query = new Query(Criteria.where("_id").in(
+                    rankedIds.stream().map(ObjectId::new).collect(Collectors.toList()))
+                    .and("deletedAt").isNull());
+            query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt",
+                    "primaryImageUrl", "card");
+            Map<String, Product> byId = new HashMap<>();
+            for (Product p : findHydrated(query, hydration)) {
+                byId.put(p.getId(), p);
+            }
+            for (String relatedId : rankedIds) {
+                Product p = byId.get(relatedId);
+                if (p != null) products.add(p);
+                if (products.size() >= limit) break;
+            }
+
+            log.info("✅ [PERFORMANCE] Retrieved {} related products for {} in {}ms",
+                    products.size(), id, System.currentTimeMillis() - startTime);
+            return products;
+        } catch (Exception e) {
+            log.error("❌ [PERFORMANCE] Error getting related products, id={}", id, e);
+            throw new RuntimeException("Failed to get related products: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Lấy sản phẩm mới - TỐI ƯU HÓA
      * Sắp xếp theo createdAt gần đây nhất
      */
     @Transactional(readOnly = true)
     public List<Product> getNewProducts(int limit) {
+        return getNewProducts(limit, HydrationMode.BATCH);
+    }
+
+    /**
+     * Lấy sản phẩm mới với chế độ hydration chỉ định
+     */
+    @Transactional(readOnly = true)
+    public List<Product> getNewProducts(int limit, HydrationMode hydration) {
         long startTime = System.currentTimeMillis();
         log.info("🆕 [PERFORMANCE] Getting new products, limit={}", limit);
 
         try {
             Query query = new Query(Criteria.where("deletedAt").isNull());
-            query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt");
+            query.fields().include("name", "description", "price", "stock", "categoryId", "createdAt", "updatedAt",
+                    "primaryImageUrl", "card");
             
             // Sắp xếp theo createdAt gần đây nhất
             query.with(org.springframework.data.domain.Sort.by("createdAt").descending());
             
             query.limit(limit);
             
-            List<Product> products = mongoTemplate.find(query, Product.class);
-            
-            // Batch load categories, attributes và images
-            batchPopulateCategories(products);
-            batchPopulateAttributesAndImages(products);
+            // Load products + categories + attributes & images theo chế độ hydration
+            List<Product> products = findHydrated(query, hydration);
             
             long endTime = System.currentTimeMillis();
             log.info("✅ [PERFORMANCE] Retrieved {} new products in {}ms", 
@@ -781,6 +1595,38 @@ public class ProductService {
         }
     }
 
+    /**
+     * Khởi động ấm: nạp category + product mới nhất từ file snapshot vào cache ngay (không chờ Mongo),
+     * sau đó đối chiếu với Mongo ở nền - bỏ entry đã đổi / đã xóa, nạp lại category và ghi snapshot mới.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmFromSnapshot() {
+        if (catalogSnapshot.isAvailable()) {
+            long startTime = System.currentTimeMillis();
+            for (Category category : catalogSnapshot.categories()) {
+                categoryCache.put(category.getId(), category);
+            }
+            categoryCacheTimestamp = System.currentTimeMillis();
+            List<Product> warm = catalogSnapshot.warmSet();
+            warm.forEach(productCache::put);
+            log.info("🔥 [SNAPSHOT] Warmed caches from snapshot taken at {}: {} products in {}ms",
+                    catalogSnapshot.getCreatedAt(), warm.size(), System.currentTimeMillis() - startTime);
+        }
+
+        CompletableFuture.runAsync(() -> {
+            if (catalogSnapshot.isAvailable()) {
+                Set<String> stale = catalogSnapshot.findStaleProductIds();
+                stale.forEach(productCache::evict);
+                log.info("✅ [SNAPSHOT] Reconciled snapshot with Mongo: {} stale products evicted", stale.size());
+            }
+            preloadCategories();
+            catalogSnapshot.write();
+        }).exceptionally(e -> {
+            log.error("❌ [SNAPSHOT] Snapshot reconciliation failed", e);
+            return null;
+        });
+    }
+
     /**
      * Preload categories vào cache
      */
@@ -0,0 +1,206 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô khi đối soát
+import org.bson.types.Decimal128; // Giá lưu dạng Decimal128
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.scheduling.annotation.Scheduled; // Job đối soát định kỳ
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.math.BigDecimal; // Giá sản phẩm
+import java.math.RoundingMode; // Làm tròn giá trung bình
+import java.util.ArrayList; // Thay đổi ghi nhận trong lúc đối soát
+import java.util.LinkedHashMap; // Giữ thứ tự key khi trả về
+import java.util.List; // Thay đổi ghi nhận trong lúc đối soát
+import java.util.Map; // Kết quả thống kê
+import java.util.TreeMap; // Multiset giá để lấy min/max
+import java.util.concurrent.CompletableFuture; // Đối soát nền khi khởi động
+import java.util.stream.Stream; // Stream cursor Mongo
+
+/**
+ * Thống kê sản phẩm active duy trì tăng dần: số lượng, tổng tồn, min/max/avg giá.
+ * - ProductService gọi onCreated / onUpdated / onDeleted sau mỗi lần ghi, đọc thống kê O(1)
+ * - Min/max giữ bằng multiset giá (TreeMap giá -> số sản phẩm) để xóa giá đang là min/max vẫn đúng
+ * - Job đối soát định kỳ tính lại từ Mongo để sửa sai lệch (ghi ngoài service, lỗi giữa chừng...);
+ *   thay đổi đến trong lúc đang quét được ghi lại và áp lên kết quả mới trước khi hoán đổi
+ */
+@Component // Đăng ký bean
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class ProductStatistics {
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+
+    private long totalProducts;
+    private long totalStock;
+    private long pricedProducts; // Số sản phẩm có giá (avg bỏ qua giá null như $avg)
+    private BigDecimal sumPrice = BigDecimal.ZERO;
+    private TreeMap<BigDecimal, Integer> prices = new TreeMap<>();
+    private volatile long reconciledAt = 0;
+    private List<Delta> deltasDuringReconcile; // != null khi đang đối soát: thay đổi cần áp lại sau hoán đổi
+
+    /** Một thay đổi thống kê: số product, tồn, giá bị bỏ / giá được thêm (null = không đổi). */
+    private record Delta(long products, long stock, BigDecimal removedPrice, BigDecimal addedPrice) {
+    }
+
+    /** Ghi nhận product mới (hoặc được khôi phục). */
+    public void onCreated(Product product) {
+        record(new Delta(1, stockOf(product.getStock()), null, product.getPrice()));
+    }
+
+    /** Ghi nhận thay đổi giá / tồn của product active. */
+    public void onUpdated(BigDecimal oldPrice, Integer oldStock, Product updated) {
+        record(new Delta(0, stockOf(updated.getStock()) - stockOf(oldStock), oldPrice, updated.getPrice()));
+    }
+
+    /** Ghi nhận tồn thay đổi bằng $inc (giữ / trả tồn cho giỏ hàng). */
+    public void onStockChanged(long delta) {
+        record(new Delta(0, delta, null, null));
+    }
+
+    /** Ghi nhận product bị xóa mềm. */
+    public void onDeleted(Product product) {
+        record(new Delta(-1, -stockOf(product.getStock()), product.getPrice(), null));
+    }
+
+    /** Ảnh chụp thống kê hiện tại (cùng key với kết quả aggregation trước đây). */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("totalProducts", totalProducts);
+        stats.put("averagePrice", pricedProducts == 0 ? 0.0
+                : sumPrice.divide(BigDecimal.valueOf(pricedProducts), 2, RoundingMode.HALF_UP).doubleValue());
+        stats.put("totalStock", totalStock);
+        stats.put("minPrice", prices.isEmpty() ? 0.0 : prices.firstKey().doubleValue());
+        stats.put("maxPrice", prices.isEmpty() ? 0.0 : prices.lastKey().doubleValue());
+        stats.put("reconciledAt", reconciledAt);
+        return stats;
+    }
+
+    /** Đối soát lần đầu sau khi app khởi động. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        CompletableFuture.runAsync(this::reconcile)
+                .exceptionally(e -> {
+                    log.error("❌ [STATISTICS] Initial reconciliation failed", e);
+                    return null;
+                });
+    }
+
+    /** Tính lại toàn bộ từ Mongo (một lượt cursor, chỉ đọc price + stock) rồi hoán đổi. */
+    @Scheduled(fixedDelayString = "${app.statistics.reconcile-interval:PT1H}",
+            initialDelayString = "${app.statistics.reconcile-interval:PT1H}")
+    public void reconcile() {
+        long startTime = System.currentTimeMillis();
+        long count = 0;
+        long stock = 0;
+        long priced = 0;
+        BigDecimal sum = BigDecimal.ZERO;
+        TreeMap<BigDecimal, Integer> newPrices = new TreeMap<>();
+        synchronized (this) {
+            deltasDuringReconcile = new ArrayList<>();
+        }
+
+        Query query = new Query(Criteria.where("deletedAt").isNull());
+        query.fields().include("price", "stock");
+        try (Stream<Document> docs = mongoTemplate.stream(query, Document.class, "products")) {
+            for (Document doc : (Iterable<Document>) docs::iterator) {
+                count++;
+                Object rawStock = doc.get("stock");
+                stock += rawStock instanceof Number n ? n.longValue() : 0;
+                BigDecimal price = toBigDecimal(doc.get("price"));
+                if (price != null) {
+                    priced++;
+                    sum = sum.add(price);
+                    newPrices.merge(price, 1, Integer::sum);
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                deltasDuringReconcile = null; // Giữ thống kê hiện tại (đã nhận đủ thay đổi)
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            List<Delta> pending = deltasDuringReconcile;
+            deltasDuringReconcile = null;
+            long previousProducts = totalProducts;
+            long previousStock = totalStock;
+            totalProducts = count;
+            totalStock = stock;
+            pricedProducts = priced;
+            sumPrice = sum;
+            prices = newPrices;
+            // Thay đổi đến trong lúc quét: áp lại lên kết quả mới để không bị mất tới lần đối soát sau
+            for (Delta delta : pending) apply(delta);
+            if (totalProducts != previousProducts || totalStock != previousStock) {
+                log.warn("⚠️ [STATISTICS] Drift corrected: products {} -> {}, stock {} -> {}",
+                        previousProducts, totalProducts, previousStock, totalStock);
+            }
+            reconciledAt = System.currentTimeMillis();
+        }
+        log.info("✅ [STATISTICS] Reconciled product statistics: {} products in {}ms",
+                count, System.currentTimeMillis() - startTime);
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private synchronized void record(Delta delta) {
+        apply(delta);
+        if (deltasDuringReconcile != null) deltasDuringReconcile.add(delta);
+    }
+
+    private void apply(Delta delta) {
+        totalProducts += delta.products();
+        totalStock += delta.stock();
+        removePrice(delta.removedPrice());
+        addPrice(delta.addedPrice());
+    }
+
+    private void addPrice(BigDecimal price) {
+        if (price == null) return;
+        BigDecimal key = price.stripTrailingZeros();
+        prices.merge(key, 1, Integer::sum);
+        pricedProducts++;
+        sumPrice = sumPrice.add(key);
+    }
+
+    private void removePrice(BigDecimal price) {
+        if (price == null) return;
+        BigDecimal key = price.stripTrailingZeros();
+        Integer count = prices.get(key);
+        if (count == null) return; // Lệch với DB (ghi trước lần đối soát đầu) -> để job đối soát sửa
+        if (count > 1) {
+            prices.put(key, count - 1);
+        } else {
+            prices.remove(key);
+        }
+        pricedProducts--;
+        sumPrice = sumPrice.subtract(key);
+    }
+
+    private static long stockOf(Integer stock) {
+        return stock != null ? stock : 0;
+    }
+
+    /** price được lưu dạng chuỗi (BigDecimal mặc định) hoặc Decimal128/số với dữ liệu cũ */
+    private static BigDecimal toBigDecimal(Object raw) {
+        if (raw == null) return null;
+        try {
+            if (raw instanceof Decimal128 d) return d.bigDecimalValue().stripTrailingZeros();
+            if (raw instanceof Number n) return new BigDecimal(n.toString()).stripTrailingZeros();
+            return new BigDecimal(raw.toString()).stripTrailingZeros();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.domains.products.Category; // Entity danh mục
+import com.example.spring_boot.domains.products.Product; // Entity sản phẩm
+import com.example.spring_boot.dto.ProductSuggestion; // Một gợi ý typeahead
+import com.example.spring_boot.utils.TextNormalizer; // Bỏ dấu + tách token
+
+import lombok.RequiredArgsConstructor; // Inject constructor cho field final
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document thô khi nạp dữ liệu
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Sự kiện app sẵn sàng
+import org.springframework.context.event.EventListener; // Lắng nghe sự kiện Spring
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.data.mongodb.core.query.Criteria; // Criteria cho query
+import org.springframework.data.mongodb.core.query.Query; // Query builder
+import org.springframework.scheduling.annotation.Scheduled; // Nạp lại định kỳ
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.util.ArrayList; // ArrayList implementation
+import java.util.Arrays; // Sắp xếp key
+import java.util.Comparator; // Thứ tự điểm
+import java.util.HashMap; // HashMap implementation
+import java.util.HashSet; // Id đã trả về
+import java.util.List; // Danh sách
+import java.util.Map; // Map
+import java.util.PriorityQueue; // Best-first khi lấy top-K
+import java.util.Set; // Tập
+import java.util.concurrent.CompletableFuture; // Build nền
+import java.util.concurrent.ConcurrentHashMap; // Map thread-safe
+import java.util.concurrent.atomic.AtomicBoolean; // Chỉ một lần build tại một thời điểm
+import java.util.stream.Stream; // Stream cursor Mongo
+
+/**
+ * Gợi ý typeahead cho ô tìm kiếm từ tên sản phẩm + danh mục, không chạm Mongo khi truy vấn.
+ * - Key = tên đã bỏ dấu / lowercase, bắt đầu từ mỗi từ (gõ "samsung" khớp "Điện thoại Samsung")
+ * - Snapshot bất biến: mảng key đã sắp xếp (prefix = một khoảng liên tiếp, tìm bằng binary search)
+ *   + segment tree giữ vị trí key có điểm cao nhất mỗi đoạn -> top-K trong khoảng bằng best-first, O(K log n)
+ * - Ghi catalog được vá vào overlay nhỏ (đọc cùng snapshot); overlay đủ lớn thì dựng lại snapshot từ bộ nhớ
+ * - Độ phổ biến (lượt bán, lượt xem) nạp lại từ Mongo định kỳ
+ */
+@Component // Đăng ký bean
+@RequiredArgsConstructor // Tạo constructor cho field final
+@Slf4j // Bật logging
+public class ProductSuggestionIndex {
+
+    private static final int MAX_WORD_STARTS = 4; // Số vị trí bắt đầu từ được index cho mỗi tên
+    private static final int MAX_KEY_LENGTH = 48; // Cắt key dài (prefix gõ vào hiếm khi dài hơn)
+    private static final int OVERLAY_REBUILD_THRESHOLD = 1_000;
+    private static final int SALES_WEIGHT = 5;
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+
+    private final Map<String, ProductSuggestion> entries = new ConcurrentHashMap<>(); // "p:id" / "c:id" -> gợi ý hiện tại
+    private final Map<String, Overlay> overlay = new ConcurrentHashMap<>(); // Thay đổi chưa có trong snapshot
+    private final AtomicBoolean building = new AtomicBoolean(false);
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile boolean ready = false;
+
+    /** Thay đổi chưa gộp vào snapshot; suggestion = null nghĩa là đã bị xóa */
+    private record Overlay(ProductSuggestion suggestion, String[] keys) {
+    }
+
+    /** Mảng key đã sắp xếp + segment tree argmax theo điểm */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new String[0], new ProductSuggestion[0]);
+
+        final String[] keys;
+        final ProductSuggestion[] owners; // owners[i] là gợi ý của keys[i]
+        final int size; // Số lá của segment tree (lũy thừa của 2)
+        final int[] tree; // tree[node] = vị trí key có điểm cao nhất trong đoạn, -1 nếu rỗng
+
+        Snapshot(String[] keys, ProductSuggestion[] owners) {
+            this.keys = keys;
+            this.owners = owners;
+            int leaves = 1;
+            while (leaves < keys.length) leaves <<= 1;
+            this.size = leaves;
+            this.tree = new int[leaves * 2];
+            Arrays.fill(tree, -1);
+            for (int i = 0; i < keys.length; i++) tree[leaves + i] = i;
+            for (int node = leaves - 1; node >= 1; node--) tree[node] = better(tree[node * 2], tree[node * 2 + 1]);
+        }
+
+        int better(int a, int b) {
+            if (a < 0) return b;
+            if (b < 0) return a;
+            return owners[b].score > owners[a].score ? b : a;
+        }
+
+        /** Vị trí key có điểm cao nhất trong [from, to) */
+        int argmax(int from, int to) {
+            int best = -1;
+            for (int lo = from + size, hi = to + size; lo < hi; lo >>= 1, hi >>= 1) {
+                if ((lo & 1) == 1) best = better(best, tree[lo++]);
+                if ((hi & 1) == 1) best = better(best, tree[--hi]);
+            }
+            return best;
+        }
+
+        /** Khoảng [from, to) các key bắt đầu bằng prefix */
+        int[] range(String prefix) {
+            int from = lowerBound(prefix);
+            int to = lowerBound(prefix + Character.MAX_VALUE);
+            return new int[] { from, to };
+        }
+
+        private int lowerBound(String key) {
+            int lo = 0;
+            int hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid].compareTo(key) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    /** Index đã nạp xong chưa */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Top-K gợi ý có một key bắt đầu bằng prefix (đã bỏ dấu), điểm giảm dần.
+     * Mỗi sản phẩm / danh mục xuất hiện tối đa một lần.
+     */
+    public List<ProductSuggestion> suggest(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty() || limit <= 0) return List.of();
+
+        Snapshot current = snapshot;
+        Map<String, Overlay> patches = overlay;
+        Set<String> seen = new HashSet<>();
+        List<ProductSuggestion> results = new ArrayList<>(limit);
+
+        // Best-first trên segment tree: lấy đoạn có đỉnh cao nhất, tách đôi quanh đỉnh đó
+        int[] range = current.range(normalized);
+        Comparator<int[]> byScore = Comparator.comparingLong(r -> -current.owners[r[2]].score);
+        PriorityQueue<int[]> queue = new PriorityQueue<>(byScore); // {from, to, argmax}
+        pushRange(current, queue, range[0], range[1]);
+        while (!queue.isEmpty() && results.size() < limit) {
+            int[] top = queue.poll();
+            ProductSuggestion candidate = current.owners[top[2]];
+            String entryKey = entryKey(candidate.type, candidate.id);
+            // Bỏ qua bản trong snapshot nếu đã trùng hoặc đã bị overlay thay / xóa
+            if (!patches.containsKey(entryKey) && seen.add(entryKey)) results.add(candidate);
+            pushRange(current, queue, top[0], top[2]);
+            pushRange(current, queue, top[2] + 1, top[1]);
+        }
+
+        // Gộp các thay đổi trong overlay khớp prefix (overlay nhỏ, quét tuyến tính)
+        boolean merged = false;
+        for (Map.Entry<String, Overlay> patch : patches.entrySet()) {
+            Overlay o = patch.getValue();
+            if (o.suggestion() == null || seen.contains(patch.getKey())) continue;
+            for (String key : o.keys()) {
+                if (key.startsWith(normalized)) {
+                    results.add(o.suggestion());
+                    seen.add(patch.getKey());
+                    merged = true;
+                    break;
+                }
+            }
+        }
+        if (merged) {
+            results.sort(Comparator.comparingLong((ProductSuggestion s) -> s.score).reversed());
+            if (results.size() > limit) results = new ArrayList<>(results.subList(0, limit));
+        }
+        return results;
+    }
+
+    /** Nạp lần đầu nền sau khi app khởi động xong. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        CompletableFuture.runAsync(this::reload)
+                .exceptionally(e -> {
+                    log.error("❌ [SUGGEST] Build suggestion index failed", e);
+                    return null;
+                });
+    }
+
+    /** Nạp lại toàn bộ từ Mongo (tên + độ phổ biến mới nhất) rồi dựng snapshot. */
+    @Scheduled(fixedDelayString = "${app.suggestions.reload-interval:PT1H}",
+            initialDelayString = "${app.suggestions.reload-interval:PT1H}")
+    public void reload() {
+        long startTime = System.currentTimeMillis();
+        Map<String, Long> sold = readCounts("product_sales", "totalQuantity");
+        Map<String, Long> views = readCounts("product_views", "count");
+
+        Map<String, ProductSuggestion> loaded = new HashMap<>();
+        Map<String, Long> categoryScores = new HashMap<>();
+        Query productQuery = new Query(Criteria.where("deletedAt").isNull());
+        productQuery.fields().include("name", "categoryId");
+        try (Stream<Document> products = mongoTemplate.stream(productQuery, Document.class, "products")) {
+            products.forEach(doc -> {
+                String id = doc.getObjectId("_id").toHexString();
+                long score = 1 + sold.getOrDefault(id, 0L) * SALES_WEIGHT + views.getOrDefault(id, 0L);
+                String name = doc.getString("name");
+                if (name != null && !name.isBlank()) {
+                    loaded.put(entryKey(ProductSuggestion.TYPE_PRODUCT, id),
+                            new ProductSuggestion(ProductSuggestion.TYPE_PRODUCT, id, name, score));
+                }
+                Object categoryId = doc.get("categoryId");
+                if (categoryId != null) categoryScores.merge(categoryId.toString(), score, Long::sum);
+            });
+        }
+        Query categoryQuery = new Query(Criteria.where("deletedAt").isNull());
+        categoryQuery.fields().include("name");
+        try (Stream<Document> categories = mongoTemplate.stream(categoryQuery, Document.class, "categories")) {
+            categories.forEach(doc -> {
+                String id = doc.getObjectId("_id").toHexString();
+                String name = doc.getString("name");
+                if (name == null || name.isBlank()) return;
+                loaded.put(entryKey(ProductSuggestion.TYPE_CATEGORY, id), new ProductSuggestion(
+                        ProductSuggestion.TYPE_CATEGORY, id, name, 1 + categoryScores.getOrDefault(id, 0L)));
+            });
+        }
+
+        entries.keySet().retainAll(loaded.keySet());
+        entries.putAll(loaded);
+        // Thay đổi xảy ra trong lúc đọc vẫn nằm trong overlay và được áp lại khi dựng snapshot
+        overlay.forEach((key, o) -> {
+            if (o.suggestion() == null) entries.remove(key);
+            else entries.put(key, o.suggestion());
+        });
+        buildSnapshot();
+        ready = true;
+        log.info("✅ [SUGGEST] Reloaded suggestion index: {} entries in {}ms", loaded.size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    /** Product được tạo / đổi tên (giữ điểm phổ biến hiện có). */
+    public void productChanged(Product product) {
+        if (product == null || product.getId() == null) return;
+        if (product.getName() == null || product.getName().isBlank()) {
+            productRemoved(product.getId());
+            return;
+        }
+        String key = entryKey(ProductSuggestion.TYPE_PRODUCT, product.getId());
+        ProductSuggestion previous = entries.get(key);
+        if (previous != null && previous.text.equals(product.getName())) return; // Tên không đổi
+        patch(key, new ProductSuggestion(ProductSuggestion.TYPE_PRODUCT, product.getId(), product.getName(),
+                previous != null ? previous.score : 1));
+    }
+
+    public void productRemoved(String productId) {
+        if (productId != null) patch(entryKey(ProductSuggestion.TYPE_PRODUCT, productId), null);
+    }
+
+    /** Category được tạo / đổi tên / khôi phục. */
+    public void categoryChanged(Category category) {
+        if (category == null || category.getId() == null || category.getName() == null) return;
+        String key = entryKey(ProductSuggestion.TYPE_CATEGORY, category.getId());
+        ProductSuggestion previous = entries.get(key);
+        patch(key, new ProductSuggestion(ProductSuggestion.TYPE_CATEGORY, category.getId(), category.getName(),
+                previous != null ? previous.score : 1));
+    }
+
+    public void categoryRemoved(String categoryId) {
+        if (categoryId != null) patch(entryKey(ProductSuggestion.TYPE_CATEGORY, categoryId), null);
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private void patch(String key, ProductSuggestion suggestion) {
+        if (suggestion == null) entries.remove(key);
+        else entries.put(key, suggestion);
+        overlay.put(key, new Overlay(suggestion, suggestion != null ? keysOf(suggestion.text) : new String[0]));
+        if (ready && overlay.size() >= OVERLAY_REBUILD_THRESHOLD && !building.get()) {
+            CompletableFuture.runAsync(this::buildSnapshot); // Gộp overlay vào snapshot (từ bộ nhớ)
+        }
+    }
+
+    /** Dựng snapshot từ entries; chỉ xóa khỏi overlay những thay đổi đã nằm trong snapshot mới. */
+    private void buildSnapshot() {
+        if (!building.compareAndSet(false, true)) return;
+        try {
+            Map<String, Overlay> applied = new HashMap<>(overlay);
+            List<Map.Entry<String, ProductSuggestion>> pairs = new ArrayList<>();
+            for (ProductSuggestion suggestion : entries.values()) {
+                for (String key : keysOf(suggestion.text)) pairs.add(Map.entry(key, suggestion));
+            }
+            pairs.sort(Map.Entry.comparingByKey());
+            String[] keys = new String[pairs.size()];
+            ProductSuggestion[] owners = new ProductSuggestion[pairs.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = pairs.get(i).getKey();
+                owners[i] = pairs.get(i).getValue();
+            }
+            snapshot = new Snapshot(keys, owners);
+            applied.forEach(overlay::remove); // remove(key, value): giữ thay đổi mới hơn
+        } finally {
+            building.set(false);
+        }
+    }
+
+    private void pushRange(Snapshot current, PriorityQueue<int[]> queue, int from, int to) {
+        if (from >= to) return;
+        int best = current.argmax(from, to);
+        if (best >= 0) queue.add(new int[] { from, to, best });
+    }
+
+    /** Key của một tên: chuỗi đã chuẩn hóa bắt đầu từ mỗi từ (tối đa MAX_WORD_STARTS từ đầu) */
+    private static String[] keysOf(String text) {
+        List<String> tokens = TextNormalizer.tokenize(text);
+        List<String> keys = new ArrayList<>(Math.min(tokens.size(), MAX_WORD_STARTS));
+        for (int start = 0; start < tokens.size() && start < MAX_WORD_STARTS; start++) {
+            String key = String.join(" ", tokens.subList(start, tokens.size()));
+            keys.add(key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key);
+        }
+        return keys.toArray(String[]::new);
+    }
+
+    /** Chuẩn hóa chuỗi người dùng gõ giống key; giữ khoảng trắng cuối để "dien " không khớp "dieu" */
+    private static String normalize(String prefix) {
+        if (prefix == null) return "";
+        String normalized = String.join(" ", TextNormalizer.tokenize(prefix));
+        if (normalized.isEmpty()) return normalized;
+        if (Character.isWhitespace(prefix.charAt(prefix.length() - 1))) normalized += " ";
+        return normalized.length() > MAX_KEY_LENGTH ? normalized.substring(0, MAX_KEY_LENGTH) : normalized;
+    }
+
+    private static String entryKey(String type, String id) {
+        return (ProductSuggestion.TYPE_CATEGORY.equals(type) ? "c:" : "p:") + id;
+    }
+
+    private Map<String, Long> readCounts(String collection, String field) {
+        Map<String, Long> counts = new HashMap<>();
+        Query query = new Query();
+        query.fields().include(field);
+        try (Stream<Document> docs = mongoTemplate.stream(query, Document.class, collection)) {
+            docs.forEach(doc -> {
+                Object value = doc.get(field);
+                if (value instanceof Number n) counts.put(String.valueOf(doc.get("_id")), n.longValue());
+            });
+        }
+        return counts;
+    }
+}
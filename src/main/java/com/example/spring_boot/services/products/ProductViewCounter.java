@@ -0,0 +1,168 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+import com.example.spring_boot.configs.ProductViewProperties; // Chu kỳ flush + ngưỡng flush sớm
+
+import com.mongodb.MongoBulkWriteException; // Lỗi một phần của bulkWrite
+import com.mongodb.WriteConcern; // Write concern nới lỏng cho lượt xem
+import com.mongodb.client.MongoCollection; // Collection product_views
+import com.mongodb.client.model.Filters; // Filter theo _id
+import com.mongodb.client.model.UpdateOneModel; // Một thao tác $inc trong bulkWrite
+import com.mongodb.client.model.UpdateOptions; // Upsert
+import com.mongodb.client.model.BulkWriteOptions; // Unordered bulkWrite
+import com.mongodb.client.model.Updates; // $inc / $set
+import com.mongodb.client.model.WriteModel; // Kiểu chung của thao tác bulk
+import jakarta.annotation.PreDestroy; // Flush khi dừng app
+import lombok.extern.slf4j.Slf4j; // Hỗ trợ logging
+import org.bson.Document; // Document product_views
+import org.bson.types.ObjectId; // Id product
+import org.springframework.data.mongodb.core.MongoTemplate; // MongoDB template
+import org.springframework.scheduling.annotation.Scheduled; // Flush định kỳ
+import org.springframework.stereotype.Component; // Bean Spring
+
+import java.time.Instant; // Thời điểm flush
+import java.util.ArrayList; // Danh sách thao tác bulk
+import java.util.Date; // lastViewedAt
+import java.util.HashMap; // Delta của một lần flush
+import java.util.List; // Danh sách
+import java.util.Map; // Map
+import java.util.concurrent.CompletableFuture; // Flush sớm ngoài thread request
+import java.util.concurrent.ConcurrentHashMap; // Bộ đếm theo product
+import java.util.concurrent.atomic.AtomicBoolean; // Chỉ một lần flush tại một thời điểm
+import java.util.concurrent.atomic.LongAdder; // Bộ đếm phân mảnh, không tranh chấp khi nhiều thread
+
+/**
+ * Đếm lượt xem trang chi tiết sản phẩm theo kiểu write-behind.
+ * - Mỗi lượt xem chỉ tăng LongAdder trong bộ nhớ (không I/O trên thread request)
+ * - Định kỳ gom delta của mọi product thành MỘT bulkWrite unordered các $inc (upsert) vào product_views
+ * - Write concern nới lỏng (w:1, không chờ journal); bulk lỗi thì cộng delta trở lại để lần sau ghi tiếp
+ * - Flush sớm (nền) khi số product chờ ghi vượt ngưỡng, flush lần cuối khi dừng app
+ *
+ * Lượt xem là số gần đúng: nếu process chết đột ngột sẽ mất tối đa một chu kỳ flush.
+ */
+@Component // Đăng ký bean
+@Slf4j // Bật logging
+public class ProductViewCounter {
+
+    private static final String COLLECTION = "product_views"; // { _id: productId, count, lastViewedAt }
+
+    private final MongoTemplate mongoTemplate; // MongoDB template
+    private final int maxPendingProducts;
+    private final ConcurrentHashMap<String, LongAdder> pending = new ConcurrentHashMap<>(); // productId -> lượt xem chưa ghi
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    public ProductViewCounter(MongoTemplate mongoTemplate, ProductViewProperties properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxPendingProducts = Math.max(1, properties.getMaxPendingProducts());
+    }
+
+    /** Ghi nhận một lượt xem (chỉ thao tác bộ nhớ). */
+    public void record(String productId) {
+        if (productId == null) return;
+        LongAdder adder = pending.computeIfAbsent(productId, k -> new LongAdder());
+        adder.increment();
+        if (pending.get(productId) != adder) {
+            // Flush vừa bỏ bộ đếm này (đang = 0) trước khi tăng: chuyển phần còn lại sang bộ đếm đang dùng
+            long orphaned = adder.sumThenReset();
+            if (orphaned > 0) pending.computeIfAbsent(productId, k -> new LongAdder()).add(orphaned);
+        }
+        if (pending.size() > maxPendingProducts && !flushing.get()) {
+            CompletableFuture.runAsync(this::flush); // Không chặn thread request
+        }
+    }
+
+    /** Tổng lượt xem = số đã ghi trong DB + số đang chờ flush. */
+    public long getViews(String productId) {
+        Document doc = mongoTemplate.getCollection(COLLECTION)
+                .find(Filters.eq("_id", new ObjectId(productId)))
+                .projection(new Document("count", 1))
+                .first();
+        long stored = doc != null && doc.get("count") instanceof Number n ? n.longValue() : 0;
+        LongAdder adder = pending.get(productId);
+        return stored + (adder != null ? adder.sum() : 0);
+    }
+
+    /** Ghi dồn delta xuống DB; bỏ qua nếu đang có lần flush khác chạy. Trả về số product đã ghi. */
+    @Scheduled(fixedDelayString = "${app.product-views.flush-interval:PT10S}",
+            initialDelayString = "${app.product-views.flush-interval:PT10S}")
+    public int flush() {
+        if (!flushing.compareAndSet(false, true)) return 0;
+        try {
+            return doFlush();
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        // Chờ lần flush đang chạy (nếu có) rồi ghi phần còn lại
+        while (!flushing.compareAndSet(false, true)) {
+            Thread.onSpinWait();
+        }
+        try {
+            int flushed = doFlush();
+            log.info("✅ [VIEWS] Flushed view counters on shutdown: {} products", flushed);
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    // =====================================================
+    // HELPER METHODS
+    // =====================================================
+
+    private int doFlush() {
+        long startTime = System.currentTimeMillis();
+        Map<String, Long> deltas = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : pending.entrySet()) {
+            long delta = entry.getValue().sumThenReset();
+            if (delta > 0) {
+                deltas.put(entry.getKey(), delta);
+            } else {
+                // Không có lượt xem trong cả chu kỳ -> bỏ bộ đếm để map không phình mãi.
+                // Chỉ bỏ khi vẫn = 0 (kiểm tra trong lock của entry); lượt xem rơi vào bộ đếm đã bỏ
+                // được record() chuyển sang bộ đếm mới
+                pending.computeIfPresent(entry.getKey(), (id, adder) -> adder.sum() == 0 ? null : adder);
+            }
+        }
+        if (deltas.isEmpty()) return 0;
+
+        Date now = Date.from(Instant.now());
+        List<WriteModel<Document>> ops = new ArrayList<>(deltas.size());
+        List<String> opIds = new ArrayList<>(deltas.size()); // opIds[i] là product của ops[i]
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            if (!ObjectId.isValid(delta.getKey())) continue;
+            opIds.add(delta.getKey());
+            ops.add(new UpdateOneModel<>(
+                    Filters.eq("_id", new ObjectId(delta.getKey())),
+                    Updates.combine(Updates.inc("count", delta.getValue()), Updates.set("lastViewedAt", now)),
+                    new UpdateOptions().upsert(true)));
+        }
+        if (ops.isEmpty()) return 0;
+
+        MongoCollection<Document> collection = mongoTemplate.getCollection(COLLECTION)
+                .withWriteConcern(WriteConcern.W1.withJournal(false));
+        try {
+            collection.bulkWrite(ops, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // Unordered: các thao tác khác đã ghi, chỉ cộng trả delta của thao tác lỗi
+            e.getWriteErrors().forEach(error -> requeue(opIds.get(error.getIndex()), deltas));
+            log.warn("⚠️ [VIEWS] Flush view counters partially failed ({}/{} products), will retry",
+                    e.getWriteErrors().size(), ops.size());
+            return ops.size() - e.getWriteErrors().size();
+        } catch (Exception e) {
+            // Cộng trả delta để lần flush sau thử lại (không mất lượt xem)
+            opIds.forEach(id -> requeue(id, deltas));
+            log.warn("⚠️ [VIEWS] Flush view counters failed ({} products), will retry: {}", deltas.size(),
+                    e.getMessage());
+            return 0;
+        }
+        log.debug("📊 [VIEWS] Flushed {} product view counters in {}ms", ops.size(),
+                System.currentTimeMillis() - startTime);
+        return ops.size();
+    }
+
+    private void requeue(String productId, Map<String, Long> deltas) {
+        pending.computeIfAbsent(productId, k -> new LongAdder()).add(deltas.get(productId));
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.spring_boot.services.products; // Package service quản lý sản phẩm
+
+/**
+ * Cửa sổ thời gian cho bảng xếp hạng bán chạy.
+ */
+public enum SalesWindow {
+    TOTAL(0),
+    LAST_7_DAYS(7),
+    LAST_30_DAYS(30);
+
+    private final int days;
+
+    SalesWindow(int days) {
+        this.days = days;
+    }
+
+    /** Số ngày của cửa sổ; 0 = toàn thời gian */
+    public int getDays() {
+        return days;
+    }
+
+    /** Parse từ query param: total | 7d | 30d (mặc định total) */
+    public static SalesWindow from(String value) {
+        if (value == null) return TOTAL;
+        return switch (value.trim().toLowerCase()) {
+            case "7d", "7", "week" -> LAST_7_DAYS;
+            case "30d", "30", "month" -> LAST_30_DAYS;
+            default -> TOTAL;
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.spring_boot.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Mã hóa/giải mã cursor cho phân trang keyset.
+ * Cursor là chuỗi base64url "opaque" chứa (sortKey, hướng sort, _id, giá trị sortKey của bản ghi cuối).
+ * Client chỉ cần gửi lại nguyên chuỗi nextCursor, không cần hiểu nội dung.
+ */
+public final class CursorCodec {
+    private static final String VERSION = "v1";
+    private static final char SEP = '|';
+
+    private CursorCodec() {}
+
+    /** Vị trí đã giải mã từ cursor */
+    public static final class Position {
+        public final String sortKey;
+        public final boolean descending;
+        public final String id;
+        /** Giá trị sortKey của bản ghi cuối trang trước (String, Instant hoặc null) */
+        public final Object value;
+
+        public Position(String sortKey, boolean descending, String id, Object value) {
+            this.sortKey = sortKey;
+            this.descending = descending;
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    /** Tạo cursor từ bản ghi cuối cùng của trang hiện tại */
+    public static String encode(String sortKey, boolean descending, String id, Object value) {
+        StringBuilder sb = new StringBuilder(VERSION).append(SEP)
+                .append(sortKey).append(SEP)
+                .append(descending ? 'd' : 'a').append(SEP)
+                .append(id).append(SEP);
+        if (value == null) {
+            sb.append('n');
+        } else if (value instanceof Instant instant) {
+            sb.append('t').append(instant.toEpochMilli());
+        } else {
+            sb.append('s').append(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Giải mã cursor; ném IllegalArgumentException nếu cursor hỏng hoặc bị sửa tay */
+    public static Position decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // Giá trị đặt cuối cùng nên có thể chứa ký tự '|'
+            String[] parts = raw.split("\\|", 5);
+            if (parts.length != 5 || !VERSION.equals(parts[0])) {
+                throw new IllegalArgumentException("Unsupported cursor format");
+            }
+            String typed = parts[4];
+            Object value;
+            switch (typed.charAt(0)) {
+                case 'n' -> value = null;
+                case 't' -> value = Instant.ofEpochMilli(Long.parseLong(typed.substring(1)));
+                case 's' -> value = typed.substring(1);
+                default -> throw new IllegalArgumentException("Unsupported cursor value type");
+            }
+            return new Position(parts[1], "d".equals(parts[2]), parts[3], value);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + e.getMessage(), e);
+        }
+    }
+}
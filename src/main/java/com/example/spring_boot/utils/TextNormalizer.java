@@ -0,0 +1,49 @@
+package com.example.spring_boot.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tiện ích chuẩn hóa văn bản cho tìm kiếm: bỏ dấu tiếng Việt, lowercase, tách token.
+ * Ví dụ: "Điện Thoại Samsung" -> ["dien", "thoai", "samsung"].
+ */
+public final class TextNormalizer {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern HTML_TAGS = Pattern.compile("<[^>]*>|&[a-zA-Z#0-9]+;");
+
+    private TextNormalizer() {}
+
+    /** Bỏ dấu + lowercase; "đ/Đ" không tách được bằng NFD nên thay thủ công */
+    public static String fold(String input) {
+        if (input == null || input.isEmpty()) return "";
+        String decomposed = Normalizer.normalize(input, Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return stripped.replace('đ', 'd').replace('Đ', 'D').toLowerCase();
+    }
+
+    /** Bỏ thẻ HTML (mô tả sản phẩm lưu từ CKEditor) trước khi tách token */
+    public static String stripHtml(String input) {
+        if (input == null || input.isEmpty()) return "";
+        return HTML_TAGS.matcher(input).replaceAll(" ");
+    }
+
+    /** Tách văn bản đã fold thành các token chữ/số */
+    public static List<String> tokenize(String input) {
+        List<String> tokens = new ArrayList<>();
+        String folded = fold(input);
+        int start = -1;
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (start < 0) start = i;
+            } else if (start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) tokens.add(folded.substring(start));
+        return tokens;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.spring_boot.services.cart;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.example.spring_boot.domains.cart.Cart;
+import com.example.spring_boot.domains.products.Product;
+import com.example.spring_boot.repository.cart.CartRepository;
+import com.example.spring_boot.services.products.InventoryService;
+import com.example.spring_boot.services.products.ProductService;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+
+@Testcontainers(disabledWithoutDocker = true)
+class CartServiceConcurrencyTest {
+
+	private static final int THREADS = 32;
+	private static final String OWNER = "session_concurrent";
+
+	@Container
+	static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+	private static MongoClient client;
+	private static ExecutorService executor;
+	private MongoTemplate mongoTemplate;
+	private CartService cartService;
+
+	@BeforeAll
+	static void connect() {
+		client = MongoClients.create(MONGO.getConnectionString());
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@AfterAll
+	static void disconnect() {
+		executor.shutdownNow();
+		client.close();
+	}
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate = new MongoTemplate(client, "cart_test");
+		mongoTemplate.getDb().drop();
+		// Unique index owner_key như khi chạy app (auto-index-creation)
+		new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext())
+				.resolveIndexFor(Cart.class)
+				.forEach(mongoTemplate.indexOps(Cart.class)::createIndex);
+
+		// Tồn do InventoryService lo (có test riêng): ở đây chỉ kiểm tra giỏ
+		ProductService productService = mock(ProductService.class);
+		when(productService.getById(anyString())).thenAnswer(call -> Product.builder()
+				.id(call.getArgument(0)).name("Áo thun").price(new BigDecimal("150000")).build());
+
+		cartService = new CartService();
+		ReflectionTestUtils.setField(cartService, "cartRepository",
+				new MongoRepositoryFactory(mongoTemplate).getRepository(CartRepository.class));
+		ReflectionTestUtils.setField(cartService, "productService", productService);
+		ReflectionTestUtils.setField(cartService, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(cartService, "inventoryService", mock(InventoryService.class));
+	}
+
+	@Test
+	void concurrentAddsOfOneProductSumIntoOneLine() throws Exception {
+		String productId = new ObjectId().toHexString();
+
+		runConcurrently(THREADS, i -> () -> cartService.addToCart(OWNER, productId, 1));
+
+		assertEquals(1, mongoTemplate.count(new Query(), Cart.class));
+		Cart cart = cartService.getCart(OWNER).orElseThrow();
+		assertEquals(1, cart.getItems().size());
+		assertEquals(THREADS, cart.findItemByProductId(productId).getQuantity());
+	}
+
+	@Test
+	void concurrentAddsOfDifferentProductsKeepEveryLine() throws Exception {
+		List<String> productIds = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) productIds.add(new ObjectId().toHexString());
+
+		runConcurrently(THREADS, i -> () -> cartService.addToCart(OWNER, productIds.get(i), 2));
+
+		Cart cart = cartService.getCart(OWNER).orElseThrow();
+		assertEquals(THREADS, cart.getItems().size());
+		assertEquals(THREADS * 2, cart.getTotalItems());
+	}
+
+	@Test
+	void concurrentRemovalsDoNotDropOtherAdds() throws Exception {
+		String kept = new ObjectId().toHexString();
+		String removed = new ObjectId().toHexString();
+		cartService.addToCart(OWNER, removed, 1);
+
+		List<Boolean> removals = runConcurrently(THREADS, i -> () -> {
+			if (i % 2 == 0) {
+				cartService.addToCart(OWNER, kept, 1);
+				return false;
+			}
+			try {
+				cartService.removeFromCart(OWNER, removed);
+				return true;
+			} catch (RuntimeException e) {
+				return false; // Request khác đã xóa trước
+			}
+		});
+
+		assertEquals(1, removals.stream().filter(Boolean::booleanValue).count());
+		Cart cart = cartService.getCart(OWNER).orElseThrow();
+		assertNull(cart.findItemByProductId(removed));
+		assertEquals(THREADS / 2, cart.findItemByProductId(kept).getQuantity());
+	}
+
+	/** Chạy n tác vụ cùng lúc (chờ chung một latch rồi mới bắt đầu), trả kết quả theo thứ tự. */
+	private static <T> List<T> runConcurrently(int n, IntFunction<Callable<T>> task) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<T>> futures = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			Callable<T> callable = task.apply(i);
+			futures.add(executor.submit(() -> {
+				start.await();
+				return callable.call();
+			}));
+		}
+		start.countDown();
+		List<T> results = new ArrayList<>();
+		for (Future<T> future : futures) {
+			results.add(future.get(30, TimeUnit.SECONDS));
+		}
+		return results;
+	}
+
+}
@@ -0,0 +1,197 @@
+package com.example.spring_boot.services.products;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.example.spring_boot.configs.InventoryProperties;
+import com.example.spring_boot.domains.products.Product;
+import com.example.spring_boot.domains.products.StockReservation;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+
+@Testcontainers(disabledWithoutDocker = true)
+class InventoryServiceConcurrencyTest {
+
+	private static final int THREADS = 32;
+
+	@Container
+	static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+	private static MongoClient client;
+	private static ExecutorService executor;
+	private MongoTemplate mongoTemplate;
+
+	@BeforeAll
+	static void connect() {
+		client = MongoClients.create(MONGO.getConnectionString());
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@AfterAll
+	static void disconnect() {
+		executor.shutdownNow();
+		client.close();
+	}
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate = new MongoTemplate(client, "inventory_test");
+		mongoTemplate.getDb().drop();
+		// Unique index { owner, productId } cho ACTIVE như khi chạy app (auto-index-creation)
+		new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext())
+				.resolveIndexFor(StockReservation.class)
+				.forEach(mongoTemplate.indexOps(StockReservation.class)::createIndex);
+	}
+
+	@Test
+	void reservingTheLastUnitsNeverOversells() throws Exception {
+		int stock = 5;
+		String productId = product(stock);
+		InventoryService inventory = inventory(Duration.ofMinutes(15));
+
+		List<Boolean> results = runConcurrently(THREADS, i -> () -> {
+			try {
+				inventory.reserve("session_" + i, productId, 1);
+				return true;
+			} catch (RuntimeException e) {
+				return false;
+			}
+		});
+
+		assertEquals(stock, results.stream().filter(Boolean::booleanValue).count());
+		assertEquals(0, stockOf(productId));
+		assertEquals(stock, activeHeld(productId));
+	}
+
+	@Test
+	void concurrentHoldsOfOneCartAccumulateIntoOneReservation() throws Exception {
+		String productId = product(THREADS);
+		InventoryService inventory = inventory(Duration.ofMinutes(15));
+
+		runConcurrently(THREADS, i -> () -> {
+			inventory.reserve("session_same", productId, 1);
+			return true;
+		});
+
+		assertEquals(0, stockOf(productId));
+		List<StockReservation> active = mongoTemplate.find(activeOf(productId), StockReservation.class);
+		assertEquals(1, active.size());
+		assertEquals(THREADS, active.get(0).getQuantity());
+	}
+
+	@Test
+	void concurrentReleasesAndSweepsReturnHeldStockOnce() throws Exception {
+		int owners = 8;
+		String productId = product(owners * 2);
+		// TTL 0: mọi reservation hết hạn ngay nên sweeper tranh claim với releaseAll
+		InventoryService inventory = inventory(Duration.ZERO);
+		List<String> ownerKeys = new ArrayList<>();
+		for (int i = 0; i < owners; i++) {
+			ownerKeys.add("session_" + i);
+			inventory.reserve("session_" + i, productId, 2);
+		}
+		assertEquals(0, stockOf(productId));
+
+		runConcurrently(THREADS, i -> () -> switch (i % 3) {
+			case 0 -> inventory.releaseAll(ownerKeys.get(i % owners));
+			case 1 -> inventory.releaseAll(ownerKeys);
+			default -> inventory.releaseExpired();
+		});
+
+		assertEquals(owners * 2, stockOf(productId));
+		assertEquals(0, activeHeld(productId));
+	}
+
+	@Test
+	void convertRacingReleaseNeitherDoubleCountsNorOversells() throws Exception {
+		InventoryService inventory = inventory(Duration.ofMinutes(15));
+		for (int round = 0; round < 20; round++) {
+			String productId = product(3);
+			String owner = "user_" + round;
+			inventory.reserve(owner, productId, 3);
+
+			String orderId = "order_" + round;
+			runConcurrently(2, i -> () -> {
+				if (i == 0) {
+					inventory.convert(owner, orderId, Map.of(productId, 3));
+				} else {
+					inventory.releaseAll(owner);
+				}
+				return true;
+			});
+
+			// Release trước -> convert trừ bù 3; convert trước -> release không còn gì để trả
+			assertEquals(0, stockOf(productId), "round " + round);
+			assertEquals(0, activeHeld(productId), "round " + round);
+		}
+	}
+
+	private InventoryService inventory(Duration reservationTtl) {
+		InventoryProperties properties = new InventoryProperties();
+		properties.setReservationTtl(reservationTtl);
+		return new InventoryService(mongoTemplate, properties, mock(ProductCache.class),
+				mock(ProductStatistics.class), mock(CatalogVersionService.class));
+	}
+
+	private String product(int stock) {
+		return mongoTemplate.insert(Product.builder().name("Áo thun").stock(stock).build()).getId();
+	}
+
+	private int stockOf(String productId) {
+		return mongoTemplate.findById(productId, Product.class).getStock();
+	}
+
+	private long activeHeld(String productId) {
+		return mongoTemplate.find(activeOf(productId), StockReservation.class).stream()
+				.mapToLong(StockReservation::getQuantity)
+				.sum();
+	}
+
+	private static Query activeOf(String productId) {
+		return new Query(Criteria.where("productId").is(productId).and("status").is(StockReservation.ACTIVE));
+	}
+
+	/** Chạy n tác vụ cùng lúc (chờ chung một latch rồi mới bắt đầu), trả kết quả theo thứ tự. */
+	private static <T> List<T> runConcurrently(int n, IntFunction<Callable<T>> task) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<T>> futures = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			Callable<T> callable = task.apply(i);
+			futures.add(executor.submit(() -> {
+				start.await();
+				return callable.call();
+			}));
+		}
+		start.countDown();
+		List<T> results = new ArrayList<>();
+		for (Future<T> future : futures) {
+			results.add(future.get(30, TimeUnit.SECONDS));
+		}
+		return results;
+	}
+
+}
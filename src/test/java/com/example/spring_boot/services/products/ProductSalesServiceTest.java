@@ -0,0 +1,85 @@
+package com.example.spring_boot.services.products;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.example.spring_boot.domains.order.Order;
+import com.example.spring_boot.domains.order.OrderItem;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+
+@Testcontainers(disabledWithoutDocker = true)
+class ProductSalesServiceTest {
+
+	@Container
+	static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+	private static MongoClient client;
+	private MongoTemplate mongoTemplate;
+
+	@BeforeAll
+	static void connect() {
+		client = MongoClients.create(MONGO.getConnectionString());
+	}
+
+	@AfterAll
+	static void disconnect() {
+		client.close();
+	}
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate = new MongoTemplate(client, "sales_test");
+		mongoTemplate.getDb().drop();
+	}
+
+	@Test
+	void rebuildsRankingFromCountersWrittenByRecordOrder() {
+		String first = new ObjectId().toHexString();
+		String second = new ObjectId().toHexString();
+		new ProductSalesService(mongoTemplate).recordOrder(order(item(first, 2), item(second, 5), item(first, 1)));
+
+		// Instance mới = sau khi khởi động lại: ranking chỉ đến từ Mongo
+		ProductSalesService restarted = new ProductSalesService(mongoTemplate);
+		restarted.rebuildRankings();
+
+		assertEquals(List.of(second, first), restarted.topProductIds(SalesWindow.TOTAL, 10));
+		assertEquals(List.of(second, first), restarted.topProductIds(SalesWindow.LAST_7_DAYS, 10));
+	}
+
+	@Test
+	void readsCountersStoredWithObjectIdKeys() {
+		ObjectId productId = new ObjectId();
+		mongoTemplate.getCollection("product_sales")
+				.insertOne(new Document("_id", productId).append("totalQuantity", 4L));
+
+		ProductSalesService service = new ProductSalesService(mongoTemplate);
+		service.rebuildRankings();
+
+		assertEquals(List.of(productId.toHexString()), service.topProductIds(SalesWindow.TOTAL, 10));
+	}
+
+	private static Order order(OrderItem... items) {
+		Order order = new Order();
+		order.setId(new ObjectId().toHexString());
+		order.setItems(List.of(items));
+		return order;
+	}
+
+	private static OrderItem item(String productId, int quantity) {
+		return new OrderItem(productId, "Sản phẩm", 100000.0, quantity);
+	}
+
+}
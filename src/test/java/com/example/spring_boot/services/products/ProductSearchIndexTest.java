@@ -0,0 +1,60 @@
+package com.example.spring_boot.services.products;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.spring_boot.domains.products.Product;
+
+class ProductSearchIndexTest {
+
+	private ProductSearchIndex index;
+
+	@BeforeEach
+	void setUp() {
+		// index/search không chạm Mongo
+		index = new ProductSearchIndex(null);
+		index.index(product("p1", "Áo thun nam", "Cotton thoáng mát"));
+		index.index(product("p2", "Quần jean nữ", "Denim co giãn"));
+		index.index(product("p3", "Áo khoác nữ", "Chống nắng"));
+	}
+
+	@Test
+	void matchesWithoutDiacritics() {
+		assertEquals(List.of("p2"), index.search("quan jean ", 10));
+	}
+
+	@Test
+	void requiresEveryTokenWhenSomeDocumentHasAll() {
+		assertEquals(List.of("p3"), index.search("áo nữ ", 10));
+	}
+
+	@Test
+	void fallsBackToAnyTokenWhenNoDocumentHasAll() {
+		List<String> ids = index.search("thun denim ", 10);
+
+		assertEquals(2, ids.size());
+		assertTrue(ids.containsAll(List.of("p1", "p2")));
+	}
+
+	@Test
+	void expandsLastTokenAsPrefix() {
+		assertEquals(List.of("p3"), index.search("ao kho", 10));
+	}
+
+	@Test
+	void dropsRemovedProducts() {
+		index.remove("p3");
+
+		assertTrue(index.search("khoac ", 10).isEmpty());
+	}
+
+	private static Product product(String id, String name, String description) {
+		return Product.builder().id(id).name(name).description(description).build();
+	}
+
+}
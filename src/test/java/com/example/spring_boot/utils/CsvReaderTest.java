@@ -0,0 +1,71 @@
+package com.example.spring_boot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CsvReaderTest {
+
+	@Test
+	void readsPlainRecordsUntilEof() throws IOException {
+		CsvReader reader = reader("name,price\nÁo thun,150000\n");
+
+		assertEquals(List.of("name", "price"), reader.readRecord());
+		assertEquals(List.of("Áo thun", "150000"), reader.readRecord());
+		assertNull(reader.readRecord());
+	}
+
+	@Test
+	void keepsCommasAndEscapedQuotesInsideQuotedFields() throws IOException {
+		CsvReader reader = reader("\"Áo, size L\",\"Loại \"\"cao cấp\"\"\",\n");
+
+		assertEquals(List.of("Áo, size L", "Loại \"cao cấp\"", ""), reader.readRecord());
+	}
+
+	@Test
+	void keepsEmbeddedNewlinesAndCountsPhysicalLines() throws IOException {
+		CsvReader reader = reader("\"Dòng 1\nDòng 2\",x\nnext,y\n");
+
+		assertEquals(List.of("Dòng 1\nDòng 2", "x"), reader.readRecord());
+		assertEquals(3, reader.getLineNumber());
+		assertEquals(List.of("next", "y"), reader.readRecord());
+	}
+
+	@Test
+	void treatsCrlfAsOneLineBreak() throws IOException {
+		CsvReader reader = reader("a,b\r\nc,d\r\n");
+
+		assertEquals(List.of("a", "b"), reader.readRecord());
+		assertEquals(List.of("c", "d"), reader.readRecord());
+		assertNull(reader.readRecord());
+	}
+
+	@Test
+	void readsLastRecordWithoutTrailingNewline() throws IOException {
+		CsvReader reader = reader("a,\"b\"");
+
+		assertEquals(List.of("a", "b"), reader.readRecord());
+		assertNull(reader.readRecord());
+	}
+
+	@Test
+	void rejectsUnterminatedQuotedField() throws IOException {
+		CsvReader reader = reader("ok,1\n\"mở ngoặc,2\n");
+		reader.readRecord();
+
+		IOException error = assertThrows(IOException.class, reader::readRecord);
+		assertTrue(error.getMessage().contains("line 3"), error.getMessage());
+	}
+
+	private static CsvReader reader(String csv) {
+		return new CsvReader(new StringReader(csv));
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.example.spring_boot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+class CursorCodecTest {
+
+	private static final String ID = "64b7f0c2a1b2c3d4e5f60718";
+
+	@Test
+	void roundTripsInstantValue() {
+		Instant createdAt = Instant.ofEpochMilli(1_700_000_000_123L);
+		CursorCodec.Position position = CursorCodec.decode(CursorCodec.encode("createdAt", true, ID, createdAt));
+
+		assertEquals("createdAt", position.sortKey);
+		assertTrue(position.descending);
+		assertEquals(ID, position.id);
+		assertEquals(createdAt, position.value);
+	}
+
+	@Test
+	void roundTripsStringValueContainingSeparator() {
+		CursorCodec.Position position = CursorCodec.decode(CursorCodec.encode("name", false, ID, "Áo | thun"));
+
+		assertEquals("name", position.sortKey);
+		assertFalse(position.descending);
+		assertEquals("Áo | thun", position.value);
+	}
+
+	@Test
+	void roundTripsNullValue() {
+		CursorCodec.Position position = CursorCodec.decode(CursorCodec.encode("name", true, ID, null));
+
+		assertNull(position.value);
+		assertEquals(ID, position.id);
+	}
+
+	@Test
+	void rejectsCursorThatIsNotBase64() {
+		assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode("not*base64!"));
+	}
+
+	@Test
+	void rejectsUnknownVersion() {
+		assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode(raw("v2|name|a|" + ID + "|sfoo")));
+	}
+
+	@Test
+	void rejectsMissingParts() {
+		assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode(raw("v1|name|a|" + ID)));
+	}
+
+	@Test
+	void rejectsUnknownValueType() {
+		assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode(raw("v1|name|a|" + ID + "|xfoo")));
+	}
+
+	@Test
+	void rejectsTamperedTimestamp() {
+		assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode(raw("v1|createdAt|d|" + ID + "|tabc")));
+	}
+
+	@Test
+	void rejectsEmptyValue() {
+		assertThrows(IllegalArgumentException.class, () -> CursorCodec.decode(raw("v1|name|a|" + ID + "|")));
+	}
+
+	private static String raw(String payload) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
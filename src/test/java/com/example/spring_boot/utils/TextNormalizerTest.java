@@ -0,0 +1,39 @@
+package com.example.spring_boot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TextNormalizerTest {
+
+	@Test
+	void foldsVietnameseDiacritics() {
+		assertEquals("dien thoai", TextNormalizer.fold("Điện Thoại"));
+		assertEquals("ao so mi nu", TextNormalizer.fold("Áo Sơ Mi Nữ"));
+	}
+
+	@Test
+	void foldsLowercaseDStroke() {
+		assertEquals("do da", TextNormalizer.fold("đồ da"));
+	}
+
+	@Test
+	void foldsNullToEmpty() {
+		assertEquals("", TextNormalizer.fold(null));
+	}
+
+	@Test
+	void tokenizesOnNonAlphanumerics() {
+		assertEquals(List.of("giay", "the", "thao", "size", "42"),
+				TextNormalizer.tokenize("Giày thể-thao, size 42!"));
+	}
+
+	@Test
+	void stripsHtmlBeforeTokenizing() {
+		assertEquals(List.of("chat", "lieu", "cotton"),
+				TextNormalizer.tokenize(TextNormalizer.stripHtml("<p>Chất liệu&nbsp;<b>cotton</b></p>")));
+	}
+
+}